@@ -0,0 +1,175 @@
+package benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import document.DocumentReader;
+import paintwindow.ShapeStore;
+import paintwindow.Styles;
+
+/**
+ * Drawings and strokes the benchmarks run over. They are generated from a fixed seed,
+ * so every run measures the same work, or read from a saved document so the sizes
+ * of real drawings can be measured too.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class Datasets {
+
+    /** Width of the area generated drawings are spread over. */
+    public static final int WIDTH = 4000;
+
+    /** Height of the area generated drawings are spread over. */
+    public static final int HEIGHT = 3000;
+
+    /** Alpha bits of an opaque ARGB color. */
+    private static final int OPAQUE = 0xFF000000;
+
+    /** Seed every dataset is generated from. */
+    private static final long SEED = 305;
+
+    /** Widest a generated shape is before it is stroked. */
+    private static final int MAX_SIZE = 200;
+
+    /** Thickest stroke a generated shape is drawn with. */
+    private static final int MAX_WIDTH = 20;
+
+    /** Number of points in each freeform of a generated drawing. */
+    private static final int FREEFORM_POINTS = 40;
+
+    /** Number of kinds of shape in a generated drawing: lines, rectangles, ellipses, freeforms. */
+    private static final int KINDS = 4;
+
+    /** Farthest the mouse moves between two points of a generated freeform. */
+    private static final int STEP = 6;
+
+    /** Private constructor to prevent external creation of the class.*/
+    private Datasets() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Gets the drawing a benchmark should run over.
+     * @param theDocument Path of a saved document to read, or an empty string to
+     * generate a drawing instead.
+     * @param theCount Number of shapes to generate, if no document is given.
+     * @param theStyleRun Number of shapes in a row to generate with the same style,
+     * if no document is given.
+     * @return Shapes of the drawing.
+     * @throws IOException If the document could not be read.
+     */
+    public static ShapeStore drawing(final String theDocument, final int theCount,
+                                     final int theStyleRun) throws IOException {
+        if (theDocument.isEmpty()) {
+            return generateDrawing(theCount, theStyleRun);
+        }
+        return DocumentReader.load(Paths.get(theDocument));
+    }
+
+    /**
+     * Generates a drawing of lines, rectangles, ellipses and freeforms in turn,
+     * of random sizes, strokes and colors, spread across WIDTH by HEIGHT pixels.
+     * @param theCount Number of shapes to generate.
+     * @return Shapes of the drawing.
+     */
+    public static ShapeStore generateDrawing(final int theCount) {
+        return generateDrawing(theCount, 1);
+    }
+
+    /**
+     * Generates a drawing of lines, rectangles, ellipses and freeforms in turn,
+     * of random sizes spread across WIDTH by HEIGHT pixels. With a run of 1 every
+     * shape gets its own random stroke and translucent color. Longer runs share a
+     * random stroke and opaque color, as a person draws several shapes before
+     * picking another color.
+     * @param theCount Number of shapes to generate.
+     * @param theStyleRun Number of shapes in a row drawn with the same style.
+     * @return Shapes of the drawing.
+     */
+    public static ShapeStore generateDrawing(final int theCount, final int theStyleRun) {
+        final Random random = new Random(SEED);
+        final ShapeStore shapes = new ShapeStore();
+        BasicStroke stroke = null;
+        Color color = null;
+        for (int i = 0; i < theCount; i++) {
+            final int x = random.nextInt(WIDTH - MAX_SIZE);
+            final int y = random.nextInt(HEIGHT - MAX_SIZE);
+            final int width = 1 + random.nextInt(MAX_SIZE);
+            final int height = 1 + random.nextInt(MAX_SIZE);
+            final Shape shape;
+            switch (i % KINDS) {
+                case 0:
+                    shape = new Line2D.Double(x, y, x + width, y + height);
+                    break;
+                case 1:
+                    shape = new Rectangle2D.Double(x, y, width, height);
+                    break;
+                case 2:
+                    shape = new Ellipse2D.Double(x, y, width, height);
+                    break;
+                default:
+                    shape = generateFreeform(random, x, y, FREEFORM_POINTS);
+                    break;
+            }
+            if (i % theStyleRun == 0) {
+                stroke = Styles.stroke(1 + random.nextInt(MAX_WIDTH));
+                if (theStyleRun == 1) {
+                    color = Styles.color(random.nextInt());
+                } else {
+                    color = Styles.color(random.nextInt() | OPAQUE);
+                }
+            }
+            shapes.add(shape, stroke, color);
+        }
+        return shapes;
+    }
+
+    /**
+     * Generates the points of a freeform as a mouse would report them, each a few
+     * pixels from the last in a random direction.
+     * @param theCount Number of points.
+     * @return X and Y coordinates of each point, one after the other.
+     */
+    public static int[] generateStroke(final int theCount) {
+        final Random random = new Random(SEED);
+        final int[] points = new int[theCount * 2];
+        int x = WIDTH / 2;
+        int y = HEIGHT / 2;
+        for (int i = 0; i < theCount; i++) {
+            x = Math.max(0, Math.min(WIDTH, x + random.nextInt(2 * STEP + 1) - STEP));
+            y = Math.max(0, Math.min(HEIGHT, y + random.nextInt(2 * STEP + 1) - STEP));
+            points[2 * i] = x;
+            points[2 * i + 1] = y;
+        }
+        return points;
+    }
+
+    /**
+     * Generates a freeform as a path of a random walk.
+     * @param theRandom Source of the random steps.
+     * @param theX X coordinate of the first point.
+     * @param theY Y coordinate of the first point.
+     * @param theCount Number of points.
+     * @return Path through the points.
+     */
+    private static Shape generateFreeform(final Random theRandom, final int theX,
+                                          final int theY, final int theCount) {
+        final Path2D.Double path = new Path2D.Double();
+        int x = theX;
+        int y = theY;
+        path.moveTo(x, y);
+        for (int i = 1; i < theCount; i++) {
+            x += theRandom.nextInt(2 * STEP + 1) - STEP;
+            y += theRandom.nextInt(2 * STEP + 1) - STEP;
+            path.lineTo(x, y);
+        }
+        return path;
+    }
+}
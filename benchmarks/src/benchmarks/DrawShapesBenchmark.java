@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import paintwindow.ShapeStore;
+
+/**
+ * Times ShapeStore.drawAll drawing a whole generated drawing into an image, without
+ * the tiles around it, so the cost of the strokes and colors changing between shapes
+ * is not hidden by the cost of creating tiles.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DrawShapesBenchmark {
+
+    /** Number of shapes to generate. */
+    @Param({"20000"})
+    public int shapes;
+
+    /** Number of shapes in a row generated with the same stroke and color. */
+    @Param({"1", "64"})
+    public int styleRun;
+
+    /** Number of pixels per canvas pixel, where 0.25 fits the drawing in the image. */
+    @Param({"1", "0.25", "0.0625"})
+    public double scale;
+
+    /** Shapes of the drawing. */
+    private ShapeStore myStore;
+
+    /** Ids of every shape, in order. */
+    private int[] myIds;
+
+    /** Image the shapes are drawn into. */
+    private BufferedImage myImage;
+
+    /**
+     * Generates the drawing and the image.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        myStore = Datasets.generateDrawing(shapes, styleRun);
+        myIds = new int[myStore.size()];
+        for (int i = 0; i < myIds.length; i++) {
+            myIds[i] = i;
+        }
+        myImage = new BufferedImage((int) (Datasets.WIDTH * Math.min(1, scale)),
+                                    (int) (Datasets.HEIGHT * Math.min(1, scale)),
+                                    BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Draws every shape with new graphics scaled to the drawing.
+     * @return Image drawn into.
+     */
+    @Benchmark
+    public BufferedImage drawAll() {
+        final Graphics2D graphics = myImage.createGraphics();
+        try {
+            graphics.scale(scale, scale);
+            myStore.drawAll(graphics, myIds, scale);
+        } finally {
+            graphics.dispose();
+        }
+        return myImage;
+    }
+}
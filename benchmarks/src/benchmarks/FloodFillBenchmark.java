@@ -0,0 +1,90 @@
+package benchmarks;
+
+import drawtools.FloodFill;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times FloodFill filling the inside of a rectangle drawn around the edges of a
+ * large raster, the worst case of the fill tool, where nearly every pixel is filled.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+@State(Scope.Thread)
+public class FloodFillBenchmark {
+
+    /** Color of the inside of the rectangle. */
+    private static final int BACKGROUND = 0xFFFFFFFF;
+
+    /** Color of the outline of the rectangle. */
+    private static final int OUTLINE = 0xFF000000;
+
+    /** Width and height of the raster, in pixels. */
+    @Param({"8192"})
+    public int size;
+
+    /** Largest difference of each channel from the clicked pixel that is still filled. */
+    @Param({"0", "8"})
+    public int tolerance;
+
+    /** Pixels of the raster. */
+    private int[] myPixels;
+
+    /** Area of the canvas the raster covers. */
+    private Rectangle myArea;
+
+    /** Fill being timed. */
+    private FloodFill myFill;
+
+    /**
+     * Creates the raster and the fill.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        myPixels = new int[size * size];
+        myArea = new Rectangle(0, 0, size, size);
+        myFill = new FloodFill(tolerance);
+    }
+
+    /**
+     * Draws the rectangle again, since each fill clears the alpha of what it filled.
+     */
+    @Setup(Level.Invocation)
+    public void resetPixels() {
+        Arrays.fill(myPixels, BACKGROUND);
+        Arrays.fill(myPixels, 0, size, OUTLINE);
+        Arrays.fill(myPixels, size * (size - 1), size * size, OUTLINE);
+        for (int y = 0; y < size; y++) {
+            myPixels[y * size] = OUTLINE;
+            myPixels[y * size + size - 1] = OUTLINE;
+        }
+    }
+
+    /**
+     * Fills the inside of the rectangle from its center.
+     * @return Region filled.
+     */
+    @Benchmark
+    public Shape fill() {
+        return myFill.fill(myPixels, myArea, size / 2, size / 2);
+    }
+}
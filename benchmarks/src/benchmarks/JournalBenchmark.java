@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import document.JournalWriter;
+import paintwindow.DrawPanel;
+import paintwindow.Layer;
+import paintwindow.ShapeStore;
+
+/**
+ * Times appending a freeform to the autosave journal, with the toolkit headless.
+ * Appending only encodes the freeform into memory on the event dispatch thread, which
+ * should take microseconds, while the background thread writes and syncs it.
+ * The durable case also waits for the sync, which is what a stroke would cost if the
+ * event dispatch thread wrote the journal itself. Compacting the journal is included
+ * as often as it happens.
+ * The panel is only ever used by the benchmark thread, so it stands in for the
+ * event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class JournalBenchmark {
+
+    /** Number of points in the freeform. */
+    @Param({"200"})
+    public int points;
+
+    /** Directory holding the journal. */
+    private Path myDirectory;
+
+    /** Journal being appended to. */
+    private JournalWriter myJournal;
+
+    /** Layer holding the freeform. */
+    private Layer myLayer;
+
+    /**
+     * Draws the freeform on a panel and starts a journal of it.
+     * @throws IOException If the journal could not be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final int[] stroke = Datasets.generateStroke(points);
+        final Path2D.Float path = new Path2D.Float();
+        path.moveTo(stroke[0], stroke[1]);
+        for (int i = 2; i < stroke.length; i += 2) {
+            path.lineTo(stroke[i], stroke[i + 1]);
+        }
+        final ShapeStore shapes = new ShapeStore();
+        shapes.add(path, new BasicStroke(3), Color.BLACK);
+        final DrawPanel panel = new DrawPanel();
+        panel.addShapes(shapes);
+        myLayer = panel.getLayers().getActive();
+        myDirectory = Files.createTempDirectory("journal");
+        myJournal = new JournalWriter(myDirectory.resolve("bench.mpj"), panel);
+    }
+
+    /**
+     * Closes the journal and deletes it.
+     * @throws IOException If the journal could not be written or deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        myJournal.close();
+        Files.deleteIfExists(myJournal.getFile());
+        Files.deleteIfExists(myDirectory);
+    }
+
+    /**
+     * Appends the freeform to the journal, as when it is committed.
+     * @return Journal appended to.
+     */
+    @Benchmark
+    public JournalWriter append() {
+        myJournal.shapeAdded(myLayer, 0);
+        return myJournal;
+    }
+
+    /**
+     * Appends the freeform to the journal and waits until it is on the disk.
+     * @return Journal appended to.
+     * @throws IOException If the journal could not be written.
+     */
+    @Benchmark
+    public JournalWriter appendDurable() throws IOException {
+        myJournal.shapeAdded(myLayer, 0);
+        myJournal.flush();
+        return myJournal;
+    }
+}
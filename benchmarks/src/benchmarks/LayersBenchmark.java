@@ -0,0 +1,133 @@
+package benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import paintwindow.DrawPanel;
+import paintwindow.ShapeStore;
+
+/**
+ * Times drawing a shape on the top layer of a drawing and repainting the area it
+ * covers, with the toolkit headless. The layers beneath the top one are combined into
+ * cached tiles, so a drawing of 20 layers should cost about the same to edit as one
+ * of a single layer. Every layer holds the same generated shapes.
+ * The panel is only ever used by the benchmark thread, so it stands in for the
+ * event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class LayersBenchmark {
+
+    /** Width of the panel and the image it is painted into. */
+    private static final int WIDTH = 1280;
+
+    /** Height of the panel and the image it is painted into. */
+    private static final int HEIGHT = 800;
+
+    /** Number of different shapes drawn in turn by the edits. */
+    private static final int EDITS = 256;
+
+    /** Longest side of the area an edit covers, in pixels. */
+    private static final int EDIT_SIZE = 64;
+
+    /** Number of layers in the drawing. */
+    @Param({"1", "20"})
+    public int layers;
+
+    /** Number of shapes on each layer. */
+    @Param({"1000"})
+    public int shapes;
+
+    /** Panel holding the drawing, with its top layer active. */
+    private DrawPanel myPanel;
+
+    /** Shapes drawn by the edits, one to a store. */
+    private ShapeStore[] myEdits;
+
+    /** Image standing in for the screen. */
+    private BufferedImage myImage;
+
+    /** Index of the next edit. */
+    private int myNext;
+
+    /**
+     * Creates the layers, paints the whole panel once so every tile is drawn,
+     * and generates the edits.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final ShapeStore drawing = Datasets.generateDrawing(shapes);
+        myPanel = new DrawPanel();
+        myPanel.setSize(WIDTH, HEIGHT);
+        for (int layer = 0; layer < layers; layer++) {
+            if (layer > 0) {
+                myPanel.addLayer();
+            }
+            myPanel.addShapes(drawing);
+        }
+        myImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        paint(new Rectangle(0, 0, WIDTH, HEIGHT));
+        final Random random = new Random(1);
+        final BasicStroke stroke = new BasicStroke(3);
+        myEdits = new ShapeStore[EDITS];
+        for (int i = 0; i < EDITS; i++) {
+            final int x = random.nextInt(WIDTH - EDIT_SIZE);
+            final int y = random.nextInt(HEIGHT - EDIT_SIZE);
+            myEdits[i] = new ShapeStore();
+            myEdits[i].add(new Line2D.Double(x, y, x + random.nextInt(EDIT_SIZE),
+                                             y + random.nextInt(EDIT_SIZE)),
+                           stroke, new Color(random.nextInt(0x1000000)));
+        }
+    }
+
+    /**
+     * Paints an area of the panel into the image, as Swing does for each paint.
+     * @param theArea Area of the panel to paint.
+     * @return Image painted into.
+     */
+    private BufferedImage paint(final Rectangle theArea) {
+        final Graphics2D graphics = myImage.createGraphics();
+        try {
+            graphics.setClip(theArea);
+            myPanel.paintComponent(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return myImage;
+    }
+
+    /**
+     * Draws a shape on the top layer and repaints the area it covers.
+     * @return Image painted into.
+     */
+    @Benchmark
+    public BufferedImage editTopLayer() {
+        final ShapeStore edit = myEdits[myNext];
+        myNext = (myNext + 1) % EDITS;
+        myPanel.addShapes(edit);
+        return paint(edit.getBounds(0));
+    }
+}
@@ -0,0 +1,235 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import paintwindow.DrawPanel;
+import paintwindow.ShapeStore;
+import paintwindow.TiledCanvas;
+
+/**
+ * Times DrawPanel.paintComponent over drawings of different sizes, painted into
+ * an off-screen image the size of a typical window with the toolkit headless.
+ * A warm paint only copies tiles that are already drawn, as when the panel is
+ * repainted while drawing. A cold paint is the first paint of a freshly loaded
+ * drawing, which has to draw every shape in view onto new tiles first. A full
+ * redraw is a cold paint with the tiles redrawn on a given number of threads,
+ * for seeing how the redraw scales with the cores of the machine.
+ * The panel is only ever used by the benchmark thread, so it stands in for the
+ * event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    /** Width of the panel and the image it is painted into. */
+    private static final int WIDTH = 1280;
+
+    /** Height of the panel and the image it is painted into. */
+    private static final int HEIGHT = 800;
+
+    /**
+     * Drawing the panels are loaded with, read or generated once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Drawing {
+
+        /** Number of shapes to generate when no document is given. */
+        @Param({"1000", "10000", "100000"})
+        public int shapes;
+
+        /** Path of a saved document to paint instead, or empty to generate one. */
+        @Param({""})
+        public String document;
+
+        /** Number of shapes in a row generated with the same stroke and color. */
+        @Param({"1", "64"})
+        public int styleRun;
+
+        /** Number of zoom steps out from the drawing's own size, where 4 halves it. */
+        @Param({"0", "8"})
+        public int zoomOut;
+
+        /** Shapes of the drawing. */
+        private ShapeStore myStore;
+
+        /**
+         * Reads or generates the drawing.
+         * @throws IOException If the document could not be read.
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            myStore = Datasets.drawing(document, shapes, styleRun);
+        }
+
+        /**
+         * Creates a panel showing the drawing at the zoom being measured.
+         * @return New panel holding the drawing.
+         */
+        private DrawPanel createPanel() {
+            final DrawPanel panel = new DrawPanel();
+            panel.setSize(WIDTH, HEIGHT);
+            panel.addShapes(myStore);
+            if (zoomOut != 0) {
+                panel.getViewport().zoom(-zoomOut, 0, 0);
+            }
+            return panel;
+        }
+    }
+
+    /**
+     * Image the panel is painted into.
+     */
+    @State(Scope.Thread)
+    public static class Target {
+
+        /** Image standing in for the screen. */
+        private BufferedImage myImage;
+
+        /**
+         * Creates the image.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            myImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+
+        /**
+         * Paints a panel into the image with new graphics clipped to the whole panel,
+         * as Swing does for each paint.
+         * @param thePanel Panel to paint.
+         * @return Image painted into.
+         */
+        private BufferedImage paint(final DrawPanel thePanel) {
+            final Graphics2D graphics = myImage.createGraphics();
+            try {
+                graphics.setClip(0, 0, WIDTH, HEIGHT);
+                thePanel.paintComponent(graphics);
+            } finally {
+                graphics.dispose();
+            }
+            return myImage;
+        }
+    }
+
+    /**
+     * Number of threads out of date tiles are redrawn on. The pool is sized when the
+     * tiles are first used, and each set of parameters runs in its own fork.
+     */
+    @State(Scope.Benchmark)
+    public static class RedrawPool {
+
+        /** Number of threads to redraw tiles on. */
+        @Param({"1", "2", "4", "8"})
+        public int redrawThreads;
+
+        /**
+         * Sizes the pool before any tiles are used.
+         * @throws IllegalStateException If the pool was already sized differently.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            System.setProperty(TiledCanvas.REDRAW_THREADS_PROPERTY,
+                               Integer.toString(redrawThreads));
+            if (TiledCanvas.getRedrawThreads() != redrawThreads) {
+                throw new IllegalStateException("Tiles are redrawn on "
+                                                + TiledCanvas.getRedrawThreads()
+                                                + " threads, not " + redrawThreads);
+            }
+        }
+    }
+
+    /**
+     * Panel whose tiles are drawn once before it is measured.
+     */
+    @State(Scope.Thread)
+    public static class WarmPanel {
+
+        /** Panel being painted. */
+        private DrawPanel myPanel;
+
+        /**
+         * Creates the panel and paints it once so its tiles are drawn.
+         * @param theDrawing Drawing to load into the panel.
+         * @param theTarget Image to paint the panel into.
+         */
+        @Setup(Level.Trial)
+        public void setUp(final Drawing theDrawing, final Target theTarget) {
+            myPanel = theDrawing.createPanel();
+            theTarget.paint(myPanel);
+        }
+    }
+
+    /**
+     * Panel that is created again before every paint, so no tiles are drawn yet.
+     */
+    @State(Scope.Thread)
+    public static class ColdPanel {
+
+        /** Panel being painted. */
+        private DrawPanel myPanel;
+
+        /**
+         * Creates the panel.
+         * @param theDrawing Drawing to load into the panel.
+         */
+        @Setup(Level.Invocation)
+        public void setUp(final Drawing theDrawing) {
+            myPanel = theDrawing.createPanel();
+        }
+    }
+
+    /**
+     * Paints a panel whose tiles are already drawn.
+     * @param thePanel Panel to paint.
+     * @param theTarget Image to paint it into.
+     * @return Image painted into.
+     */
+    @Benchmark
+    public BufferedImage paintWarm(final WarmPanel thePanel, final Target theTarget) {
+        return theTarget.paint(thePanel.myPanel);
+    }
+
+    /**
+     * Paints a panel for the first time, drawing every shape in view onto its tiles.
+     * @param thePanel Panel to paint.
+     * @param theTarget Image to paint it into.
+     * @return Image painted into.
+     */
+    @Benchmark
+    public BufferedImage paintCold(final ColdPanel thePanel, final Target theTarget) {
+        return theTarget.paint(thePanel.myPanel);
+    }
+
+    /**
+     * Paints a panel for the first time with its tiles redrawn on a given number of
+     * threads, drawing every shape in view onto its tiles.
+     * @param thePool Number of threads the tiles are redrawn on.
+     * @param thePanel Panel to paint.
+     * @param theTarget Image to paint it into.
+     * @return Image painted into.
+     */
+    @Benchmark
+    public BufferedImage paintFullRedraw(final RedrawPool thePool, final ColdPanel thePanel,
+                                         final Target theTarget) {
+        return theTarget.paint(thePanel.myPanel);
+    }
+}
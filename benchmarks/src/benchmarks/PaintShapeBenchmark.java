@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import paintwindow.PaintShape;
+
+/**
+ * Times constructing a PaintShape from the outline each kind of tool produces,
+ * which copies the outline and works out its stroked bounds.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaintShapeBenchmark {
+
+    /** Stroke every shape is constructed with. */
+    private static final BasicStroke STROKE = new BasicStroke(5);
+
+    /** Color every shape is constructed with. */
+    private static final Color COLOR = new Color(51, 0, 111);
+
+    /** Kind of outline: line, rectangle, ellipse or freeform. */
+    @Param({"line", "rectangle", "ellipse", "freeform"})
+    public String kind;
+
+    /** Number of points in a freeform outline. */
+    @Param({"1000"})
+    public int points;
+
+    /** Outline the shape is constructed from. */
+    private Shape myOutline;
+
+    /**
+     * Creates the outline of the kind being measured.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("line".equals(kind)) {
+            myOutline = new Line2D.Double(10, 20, 300, 200);
+        } else if ("rectangle".equals(kind)) {
+            myOutline = new Rectangle2D.Double(10, 20, 300, 200);
+        } else if ("ellipse".equals(kind)) {
+            myOutline = new Ellipse2D.Double(10, 20, 300, 200);
+        } else if ("freeform".equals(kind)) {
+            final int[] stroke = Datasets.generateStroke(points);
+            final Path2D.Double path = new Path2D.Double();
+            path.moveTo(stroke[0], stroke[1]);
+            for (int i = 2; i < stroke.length; i += 2) {
+                path.lineTo(stroke[i], stroke[i + 1]);
+            }
+            myOutline = path;
+        } else {
+            throw new IllegalArgumentException("Unknown kind of outline: " + kind);
+        }
+    }
+
+    /**
+     * Constructs a shape from the outline.
+     * @return New shape.
+     */
+    @Benchmark
+    public PaintShape construct() {
+        return new PaintShape(myOutline, STROKE, COLOR);
+    }
+}
@@ -0,0 +1,413 @@
+package benchmarks;
+
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import document.ShapeRecord;
+import paintwindow.LatencyStats;
+import paintwindow.ShapeStore;
+import paintwindow.Styles;
+import session.SessionClient;
+import session.SessionListener;
+import session.SessionServer;
+
+/**
+ * Measures a shared canvas session on this machine with no display, as a reproducible
+ * check of how well the server fans changes out. Starts a server and a number of
+ * clients, has every client send its shapes one at a time at a steady rate, as
+ * drawing them would, and waits until every other client has received them all.
+ * Reports the rate shapes were sent and delivered, how many messages went out in each
+ * write, and the percentiles of the time from sending a shape to another client
+ * receiving it. Then a client joins late and reports how long it took to catch up with
+ * everything drawn so far.
+ * Usage: SessionLoadTest [clients] [shapes per client] [points per shape] [rate]
+ * The rate is the number of shapes each client sends a second, or 0 to send them as
+ * fast as possible, which measures how much the session can carry rather than how
+ * quickly it delivers. Exits with status 1 if a shape went missing.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class SessionLoadTest {
+
+    /** Number of clients unless given. */
+    private static final int DEFAULT_CLIENTS = 8;
+
+    /** Number of shapes each client sends unless given. */
+    private static final int DEFAULT_SHAPES = 2000;
+
+    /** Number of points in each shape unless given. */
+    private static final int DEFAULT_POINTS = 32;
+
+    /** Number of shapes each client sends a second unless given. */
+    private static final int DEFAULT_RATE = 200;
+
+    /** Longest time to wait for the shapes to arrive, in seconds. */
+    private static final long TIMEOUT_SECONDS = 120;
+
+    /** Exit status when shapes went missing. */
+    private static final int FAILURE_STATUS = 1;
+
+    /** Exit status when the arguments are not valid or the session failed. */
+    private static final int ERROR_STATUS = 2;
+
+    /** Number of bytes in a megabyte. */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /** Number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Number of clients sending shapes. */
+    private final int myClientCount;
+
+    /** Number of shapes each client sends. */
+    private final int myShapeCount;
+
+    /** Nanoseconds between the shapes a client sends, or 0 to send them at once. */
+    private final long myInterval;
+
+    /** Shapes each client sends, the same for every client. */
+    private final ShapeStore myShapes;
+
+    /** Time each shape was sent, by sending client and then by shape. */
+    private final AtomicLongArray[] mySendTimes;
+
+    /** Sending client of each peer id. */
+    private final int[] mySenders;
+
+    /** Time from sending each shape to each other client receiving it. */
+    private final LatencyStats myLatency;
+
+    /** Counted down by each client once it has received every shape of the others. */
+    private final CountDownLatch myDelivered;
+
+    /**
+     * Constructs a test.
+     * @param theClients Number of clients.
+     * @param theShapes Number of shapes each client sends.
+     * @param thePoints Number of points in each shape.
+     * @param theRate Number of shapes each client sends a second, or 0 for no limit.
+     */
+    private SessionLoadTest(final int theClients, final int theShapes, final int thePoints,
+                            final int theRate) {
+        myClientCount = theClients;
+        myShapeCount = theShapes;
+        if (theRate > 0) {
+            myInterval = (long) NANOS_PER_SECOND / theRate;
+        } else {
+            myInterval = 0;
+        }
+        myShapes = createShapes(theShapes, thePoints);
+        mySendTimes = new AtomicLongArray[theClients];
+        for (int i = 0; i < theClients; i++) {
+            mySendTimes[i] = new AtomicLongArray(theShapes);
+        }
+        mySenders = new int[theClients + 2];
+        myLatency = new LatencyStats();
+        myDelivered = new CountDownLatch(theClients);
+    }
+
+    /**
+     * Runs a test given on the command line and prints a report.
+     * @param theArgs Number of clients, shapes per client, points per shape and shapes
+     *        per client a second, each optional.
+     */
+    public static void main(final String[] theArgs) {
+        final int[] values = {DEFAULT_CLIENTS, DEFAULT_SHAPES, DEFAULT_POINTS, DEFAULT_RATE};
+        try {
+            if (theArgs.length > values.length) {
+                throw new NumberFormatException();
+            }
+            for (int i = 0; i < theArgs.length; i++) {
+                values[i] = Integer.parseInt(theArgs[i]);
+                if (values[i] < 0 || values[i] < 1 && i < 3 || i == 0 && values[i] < 2) {
+                    throw new NumberFormatException();
+                }
+            }
+        } catch (final NumberFormatException e) {
+            System.err.println("Usage: SessionLoadTest [clients] [shapes per client] "
+                               + "[points per shape] [rate]");
+            System.exit(ERROR_STATUS);
+        }
+        boolean passed = false;
+        try {
+            passed = new SessionLoadTest(values[0], values[1], values[2], values[3]).run();
+        } catch (final IOException | InterruptedException e) {
+            System.err.println("Session failed: " + e);
+            System.exit(ERROR_STATUS);
+        }
+        System.exit(passed ? 0 : FAILURE_STATUS);
+    }
+
+    /**
+     * Runs the test and prints a report.
+     * @return Whether every shape arrived.
+     * @throws IOException If the server could not be started or a client could not join.
+     * @throws InterruptedException If interrupted while waiting for the shapes.
+     */
+    private boolean run() throws IOException, InterruptedException {
+        final long shapeBytes = encodedSize();
+        System.out.println(myClientCount + " clients sending " + myShapeCount
+                           + " shapes of " + shapeBytes / myShapeCount + " bytes each");
+        try (SessionServer server = new SessionServer(0)) {
+            final SessionClient[] clients = new SessionClient[myClientCount];
+            for (int i = 0; i < myClientCount; i++) {
+                clients[i] = new SessionClient("localhost", server.getPort(), new Receiver());
+                mySenders[clients[i].getPeerId()] = i;
+            }
+            final Thread[] senders = new Thread[myClientCount];
+            final long start = System.nanoTime();
+            for (int i = 0; i < myClientCount; i++) {
+                final int index = i;
+                final SessionClient client = clients[i];
+                senders[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int id = 0; id < myShapeCount; id++) {
+                            final long due = start + id * myInterval;
+                            for (long now = System.nanoTime(); now < due;
+                                            now = System.nanoTime()) {
+                                LockSupport.parkNanos(due - now);
+                            }
+                            mySendTimes[index].set(id, System.nanoTime());
+                            client.sendShapes(myShapes, id, id + 1);
+                        }
+                    }
+                }, "Session load sender");
+                senders[i].start();
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            if (!myDelivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Shapes still missing after " + TIMEOUT_SECONDS + " s");
+                return false;
+            }
+            final double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+            report(server, clients, shapeBytes, seconds);
+            final boolean caughtUp = joinLate(server.getPort());
+            for (SessionClient client : clients) {
+                client.close();
+            }
+            return caughtUp;
+        }
+    }
+
+    /**
+     * Prints the rates, batching and latency of a finished run.
+     * @param theServer Server of the session.
+     * @param theClients Clients that sent the shapes.
+     * @param theShapeBytes Number of bytes of the shapes of one client once encoded.
+     * @param theSeconds Seconds from the first shape sent to the last one received.
+     */
+    private void report(final SessionServer theServer, final SessionClient[] theClients,
+                        final long theShapeBytes, final double theSeconds) {
+        final long sent = (long) myClientCount * myShapeCount;
+        final long delivered = sent * (myClientCount - 1);
+        long clientMessages = 0;
+        long clientWrites = 0;
+        for (SessionClient client : theClients) {
+            clientMessages += client.getMessageCount();
+            clientWrites += client.getWriteCount();
+        }
+        System.out.println("Sent " + sent + " shapes and delivered " + delivered + " in "
+                           + String.format("%.2f", theSeconds) + " s");
+        System.out.println("Rate: " + String.format("%.0f", sent / theSeconds)
+                           + " shapes/s sent, " + String.format("%.0f", delivered / theSeconds)
+                           + " shapes/s delivered, " + String.format("%.1f",
+                           theShapeBytes * (myClientCount - 1L) * myClientCount
+                           / BYTES_PER_MEGABYTE / theSeconds) + " MB/s fanned out");
+        System.out.println("Batching: " + String.format("%.1f", ratio(clientMessages,
+                           clientWrites)) + " messages per client write, "
+                           + String.format("%.1f", ratio(theServer.getDeliveryCount(),
+                           theServer.getWriteCount())) + " per server write");
+        System.out.println("Server wrote " + String.format("%.1f", theServer.getByteCount()
+                           / BYTES_PER_MEGABYTE) + " MB, dropped "
+                           + theServer.getDroppedCount() + " peers");
+        synchronized (myLatency) {
+            System.out.println("Send to receive: " + myLatency);
+        }
+    }
+
+    /**
+     * Joins the session with another client and checks that it is caught up with every
+     * shape sent so far.
+     * @param thePort Port of the server.
+     * @return Whether the client received every shape.
+     * @throws IOException If the client could not join.
+     * @throws InterruptedException If interrupted while waiting to catch up.
+     */
+    private boolean joinLate(final int thePort) throws IOException, InterruptedException {
+        final CountDownLatch synced = new CountDownLatch(1);
+        final long[] received = new long[1];
+        final long start = System.nanoTime();
+        final SessionClient late = new SessionClient("localhost", thePort, new Receiver() {
+            @Override
+            public void shapesAdded(final int thePeer, final ShapeStore theShapes) {
+                received[0] += theShapes.size();
+            }
+
+            @Override
+            public void synced() {
+                synced.countDown();
+            }
+        });
+        final boolean done = synced.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        final long nanos = System.nanoTime() - start;
+        late.close();
+        final long expected = (long) myClientCount * myShapeCount;
+        System.out.println("Late join caught up with " + received[0] + " of " + expected
+                           + " shapes in " + String.format("%.1f", nanos / NANOS_PER_MILLI)
+                           + " ms");
+        return done && received[0] == expected;
+    }
+
+    /**
+     * Creates the shapes the clients send, random strokes of line segments.
+     * @param theCount Number of shapes.
+     * @param thePoints Number of points in each shape.
+     * @return Store holding the shapes.
+     */
+    private static ShapeStore createShapes(final int theCount, final int thePoints) {
+        final Random random = new Random(theCount * 31L + thePoints);
+        final ShapeStore shapes = new ShapeStore();
+        for (int i = 0; i < theCount; i++) {
+            final Path2D.Float path = new Path2D.Float();
+            float x = random.nextInt(2000);
+            float y = random.nextInt(2000);
+            path.moveTo(x, y);
+            for (int j = 1; j < thePoints; j++) {
+                x += random.nextInt(21) - 10;
+                y += random.nextInt(21) - 10;
+                path.lineTo(x, y);
+            }
+            shapes.add(path, Styles.stroke(1 + random.nextInt(8)),
+                       Styles.color(0xFF000000 | random.nextInt(0x1000000)));
+        }
+        return shapes;
+    }
+
+    /**
+     * Gets the number of bytes of the shapes of one client once encoded.
+     * @return Number of bytes.
+     */
+    private long encodedSize() {
+        long size = 0;
+        for (int id = 0; id < myShapes.size(); id++) {
+            size += ShapeRecord.size(myShapes, id);
+        }
+        return size;
+    }
+
+    /**
+     * Divides two counts, giving 0 when there is nothing to divide by.
+     * @param theCount Count to divide.
+     * @param theBy Count to divide by.
+     * @return Quotient.
+     */
+    private static double ratio(final long theCount, final long theBy) {
+        if (theBy == 0) {
+            return 0;
+        }
+        return (double) theCount / theBy;
+    }
+
+    /**
+     * Listener of one client, timing the shapes it receives from the other clients.
+     */
+    private class Receiver implements SessionListener {
+
+        /** Number of shapes received from each sending client. */
+        private final int[] myReceived;
+
+        /** Number of shapes received from all of them. */
+        private long myTotal;
+
+        /**
+         * Constructs a listener that has received nothing.
+         */
+        Receiver() {
+            myReceived = new int[myClientCount];
+        }
+
+        /**
+         * Does nothing, since the peers are known by the test.
+         * @param thePeer Peer id of the peer.
+         */
+        @Override
+        public void peerJoined(final int thePeer) {
+        }
+
+        /**
+         * Does nothing, since the peers are known by the test.
+         * @param thePeer Peer id of the peer.
+         */
+        @Override
+        public void peerLeft(final int thePeer) {
+        }
+
+        /**
+         * Records the time each shape took to arrive, and counts down the delivered
+         * latch once every shape of the other clients arrived.
+         * @param thePeer Peer id of the sending client.
+         * @param theShapes Shapes received.
+         */
+        @Override
+        public void shapesAdded(final int thePeer, final ShapeStore theShapes) {
+            final long now = System.nanoTime();
+            final int sender = mySenders[thePeer];
+            for (int i = 0; i < theShapes.size(); i++) {
+                final long sent = mySendTimes[sender].get(myReceived[sender]++);
+                synchronized (myLatency) {
+                    myLatency.record(now - sent);
+                }
+            }
+            myTotal += theShapes.size();
+            if (myTotal == (long) myShapeCount * (myClientCount - 1)) {
+                myDelivered.countDown();
+            }
+        }
+
+        /**
+         * Does nothing, since the clients only add shapes.
+         * @param thePeer Peer id of the peer.
+         * @param theSize Number of shapes left on the layer.
+         */
+        @Override
+        public void shapesRemoved(final int thePeer, final int theSize) {
+        }
+
+        /**
+         * Does nothing, since the clients send no previews.
+         * @param thePeer Peer id of the peer.
+         * @param thePreview Preview of the peer.
+         */
+        @Override
+        public void previewChanged(final int thePeer, final ShapeStore thePreview) {
+        }
+
+        /**
+         * Does nothing, since the clients join before any shapes are sent.
+         */
+        @Override
+        public void synced() {
+        }
+
+        /**
+         * Reports an error that disconnected the client.
+         * @param theError Reason the client was disconnected, or null if it was closed.
+         */
+        @Override
+        public void disconnected(final IOException theError) {
+            if (theError != null) {
+                System.err.println("Client disconnected: " + theError.getMessage());
+            }
+        }
+    }
+}
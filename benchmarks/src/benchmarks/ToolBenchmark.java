@@ -0,0 +1,191 @@
+package benchmarks;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import drawtools.AbstractTool;
+import drawtools.EllipseTool;
+import drawtools.PencilTool;
+import drawtools.RectangleTool;
+import drawtools.StrokeSimplifier;
+
+/**
+ * Times the work the tools do for each mouse event and when a shape is committed:
+ * recording the points of a freeform, reading the shape back for every repaint,
+ * simplifying it, and generating the outlines of rectangles and ellipses.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolBenchmark {
+
+    /** Size of the rectangles and ellipses, which move by a pixel every call. */
+    private static final int SIZE = 300;
+
+    /**
+     * Freeform stroke recorded once per trial, and the points it was recorded from.
+     */
+    @State(Scope.Thread)
+    public static class Stroke {
+
+        /** Number of points in the stroke. */
+        @Param({"1000", "10000", "100000"})
+        public int points;
+
+        /** X and Y coordinates of each point, one after the other. */
+        private int[] myPoints;
+
+        /** Pencil that has recorded every point and is still drawing. */
+        private PencilTool myPencil;
+
+        /** Simplifier run over the stroke when it is committed. */
+        private StrokeSimplifier mySimplifier;
+
+        /**
+         * Generates the points and records them with a pencil.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            myPoints = Datasets.generateStroke(points);
+            myPencil = new PencilTool();
+            record(myPencil, myPoints);
+            mySimplifier = new StrokeSimplifier();
+        }
+    }
+
+    /**
+     * Tools for shapes that are only ever two points.
+     */
+    @State(Scope.Thread)
+    public static class Tools {
+
+        /** Rectangle tool. */
+        private final RectangleTool myRectangle = new RectangleTool();
+
+        /** Ellipse tool. */
+        private final EllipseTool myEllipse = new EllipseTool();
+
+        /** Offset of the current point, changed every call as the mouse would. */
+        private int myOffset;
+
+        /**
+         * Starts both tools at the origin.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            start(myRectangle);
+            start(myEllipse);
+        }
+
+        /**
+         * Enables a tool with its original point at the origin.
+         * @param theTool Tool to start.
+         */
+        private static void start(final AbstractTool theTool) {
+            theTool.setOrigX(0);
+            theTool.setOrigY(0);
+            theTool.setEnabled(true);
+        }
+
+        /**
+         * Moves a tool's current point a pixel further, as a drag would.
+         * @param theTool Tool to move.
+         */
+        private void move(final AbstractTool theTool) {
+            myOffset = (myOffset + 1) % SIZE;
+            theTool.setCurrPoint(SIZE + myOffset, SIZE - myOffset);
+        }
+    }
+
+    /**
+     * Records every point of a stroke with a pencil, starting a new freeform.
+     * @param thePencil Pencil to record with.
+     * @param thePoints X and Y coordinates of each point, one after the other.
+     */
+    private static void record(final PencilTool thePencil, final int[] thePoints) {
+        thePencil.setOrigX(thePoints[0]);
+        thePencil.setOrigY(thePoints[1]);
+        thePencil.setEnabled(true);
+        for (int i = 2; i < thePoints.length; i += 2) {
+            thePencil.setCurrPoint(thePoints[i], thePoints[i + 1]);
+        }
+    }
+
+    /**
+     * Records a whole freeform stroke, one mouse event at a time.
+     * @param theStroke Stroke to record.
+     * @return Shape of the freeform.
+     */
+    @Benchmark
+    public Shape pencilRecord(final Stroke theStroke) {
+        final PencilTool pencil = new PencilTool();
+        record(pencil, theStroke.myPoints);
+        return pencil.getShape();
+    }
+
+    /**
+     * Gets the shape of a long freeform and reads every segment of it,
+     * as drawing it in a repaint does.
+     * @param theStroke Stroke to read.
+     * @return Sum of the coordinates, so the reading is not optimized away.
+     */
+    @Benchmark
+    public double pencilGetShape(final Stroke theStroke) {
+        final double[] coords = new double[6];
+        double sum = 0;
+        for (PathIterator it = theStroke.myPencil.getShape().getPathIterator(null);
+                        !it.isDone(); it.next()) {
+            it.currentSegment(coords);
+            sum += coords[0] + coords[1];
+        }
+        return sum;
+    }
+
+    /**
+     * Simplifies a long freeform, as committing it does.
+     * @param theStroke Stroke to simplify.
+     * @return Simplified shape.
+     */
+    @Benchmark
+    public Shape pencilSimplify(final Stroke theStroke) {
+        return theStroke.myPencil.getSimplifiedShape(theStroke.mySimplifier);
+    }
+
+    /**
+     * Moves the rectangle tool and generates its shape.
+     * @param theTools Tools to use.
+     * @return Shape of the rectangle.
+     */
+    @Benchmark
+    public Shape rectangleShape(final Tools theTools) {
+        theTools.move(theTools.myRectangle);
+        return theTools.myRectangle.getShape();
+    }
+
+    /**
+     * Moves the ellipse tool and generates its shape.
+     * @param theTools Tools to use.
+     * @return Shape of the ellipse.
+     */
+    @Benchmark
+    public Shape ellipseShape(final Tools theTools) {
+        theTools.move(theTools.myEllipse);
+        return theTools.myEllipse.getShape();
+    }
+}
@@ -0,0 +1,89 @@
+package document;
+
+/**
+ * Constants describing the binary file format of a Magic Paint drawing.
+ * <p>
+ * A file starts with an 8 byte header holding the magic number and version,
+ * followed by a series of chunks. Each chunk starts with its type, the number
+ * of bytes after its header, and the number of shapes in it, so a reader can load
+ * a file one chunk at a time. The last chunk is always an end chunk, whose 8 byte
+ * body holds the position of the index chunk, or -1 if there is none, so the
+ * position can be found by reading the last 8 bytes of the file.
+ * </p>
+ * <p>
+ * Each shape in a shapes chunk is stored as its ARGB color, its stroke width,
+ * a flags byte telling whether it is stroked or filled, its number of segments and
+ * coordinates, the segment types as bytes, and then the coordinates as floats.
+ * Filled shapes have a stroke width of zero. All values are big-endian.
+ * </p>
+ * <p>
+ * The index chunk follows the last shapes chunk. It holds the number of shapes,
+ * the number of shapes per group and the number of groups, then the combined
+ * stroked bounds of each group of shapes, and finally the file position and
+ * stroked bounds of every shape. Bounds are stored as x, y, width, height.
+ * It lets a document be drawn straight from the file without reading every shape.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class DocumentFormat {
+
+    /** Magic number every document starts with, the characters "MPNT". */
+    public static final int MAGIC = 0x4D504E54;
+
+    /** Version of the format written by this program. */
+    public static final int VERSION = 1;
+
+    /** Size of the file header, in bytes. */
+    public static final int HEADER_SIZE = 8;
+
+    /** Size of the header of each chunk, in bytes. */
+    public static final int CHUNK_HEADER_SIZE = 12;
+
+    /** Size of the fixed part of each shape record, in bytes. */
+    public static final int RECORD_HEADER_SIZE = 17;
+
+    /** Type of the chunk that ends a document. */
+    public static final int CHUNK_END = 0;
+
+    /** Type of a chunk holding shape records. */
+    public static final int CHUNK_SHAPES = 1;
+
+    /** Type of the chunk holding the index of every shape. */
+    public static final int CHUNK_INDEX = 2;
+
+    /** Size of the body of the end chunk, in bytes. */
+    public static final int END_SIZE = 8;
+
+    /** Size of the fixed part of the index chunk, in bytes. */
+    public static final int INDEX_HEADER_SIZE = 12;
+
+    /** Number of shapes whose bounds are combined into each group of the index. */
+    public static final int INDEX_GROUP_SIZE = 1024;
+
+    /** Size of the bounds of each group in the index, in bytes. */
+    public static final int INDEX_GROUP_ENTRY_SIZE = 16;
+
+    /** Size of the position and bounds of each shape in the index, in bytes. */
+    public static final int INDEX_ENTRY_SIZE = 24;
+
+    /** Number of bytes of records a writer collects before starting a new chunk. */
+    public static final int TARGET_CHUNK_SIZE = 1 << 20;
+
+    /** Flags value of a shape that is stroked along its outline. */
+    public static final byte FLAG_STROKED = 0;
+
+    /** Flags value of a shape that is filled inside its outline. */
+    public static final byte FLAG_FILLED = 1;
+
+    /** Largest chunk a reader accepts, to reject corrupt files before allocating. */
+    public static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    /** File name extension for documents. */
+    public static final String EXTENSION = "mpd";
+
+    /** Private constructor to prevent external creation of the class.*/
+    private DocumentFormat() {
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,90 @@
+package document;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import paintwindow.DrawPanel;
+import paintwindow.ShapeStore;
+
+/**
+ * Opens a document in the background, handing each chunk of shapes to a DrawPanel
+ * as soon as it is read so large files appear progressively instead of blocking
+ * the event dispatch thread. Progress is reported as a percentage of the file read.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class DocumentLoader extends SwingWorker<Integer, ShapeStore> {
+
+    /** File being opened. */
+    private final Path myFile;
+
+    /** Panel the shapes are added to. */
+    private final DrawPanel myPanel;
+
+    /**
+     * Constructs a loader for a file. The panel should be cleared before it is executed.
+     * @param theFile File to open.
+     * @param thePanel Panel to add the shapes to.
+     */
+    public DocumentLoader(final Path theFile, final DrawPanel thePanel) {
+        super();
+        myFile = theFile;
+        myPanel = thePanel;
+    }
+
+    /**
+     * Reads the file one chunk at a time, publishing each chunk as it is read.
+     * @return Number of shapes read.
+     * @throws IOException If the file could not be read or is not a valid document.
+     */
+    @Override
+    protected Integer doInBackground() throws IOException {
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(myFile, StandardOpenOption.READ);
+             DocumentReader reader = new DocumentReader(channel)) {
+            final long size = Math.max(1, channel.size());
+            for (ShapeStore chunk = reader.readChunk(); chunk != null && !isCancelled();
+                            chunk = reader.readChunk()) {
+                count += chunk.size();
+                publish(chunk);
+                setProgress((int) Math.min(100, reader.getBytesRead() * 100 / size));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the chunks read so far to the panel, on the event dispatch thread.
+     * @param theChunks Chunks published since the last call.
+     */
+    @Override
+    protected void process(final List<ShapeStore> theChunks) {
+        for (ShapeStore chunk : theChunks) {
+            myPanel.addShapes(chunk);
+        }
+    }
+
+    /**
+     * Tells the user if the file could not be opened.
+     */
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            JOptionPane.showMessageDialog(myPanel, "Could not open " + myFile.getFileName()
+                                          + ":\n" + e.getCause().getMessage(),
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
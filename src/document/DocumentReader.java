@@ -0,0 +1,156 @@
+package document;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import paintwindow.ShapeStore;
+
+/**
+ * Reads shapes from a channel in the Magic Paint document format, one chunk at a time,
+ * so a caller can hand each batch of shapes on before the rest of the file is read.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class DocumentReader implements Closeable {
+
+    /** Channel the document is read from. */
+    private final ReadableByteChannel myChannel;
+
+    /** Buffer the current chunk is read into. Reused between chunks. */
+    private ByteBuffer myChunk;
+
+    /** Codec decoding the shapes read. */
+    private final ShapeRecord myRecord;
+
+    /** Whether the end chunk has been read. */
+    private boolean myDone;
+
+    /** Number of bytes read from the channel so far. */
+    private long myBytesRead;
+
+    /**
+     * Constructs a reader and checks the document header.
+     * @param theChannel Channel to read the document from. Closed when the reader is.
+     * @throws IOException If the header could not be read or is not a Magic Paint document.
+     */
+    public DocumentReader(final ReadableByteChannel theChannel) throws IOException {
+        myChannel = theChannel;
+        myChunk = ByteBuffer.allocateDirect(DocumentFormat.TARGET_CHUNK_SIZE);
+        myRecord = new ShapeRecord();
+        final ByteBuffer header = ByteBuffer.allocate(DocumentFormat.HEADER_SIZE);
+        readFully(header);
+        if (header.getInt() != DocumentFormat.MAGIC) {
+            throw new IOException("Not a Magic Paint document");
+        }
+        final int version = header.getInt();
+        if (version != DocumentFormat.VERSION) {
+            throw new IOException("Unsupported document version " + version);
+        }
+    }
+
+    /**
+     * Reads every shape in a file into a single store.
+     * @param theFile File to read.
+     * @return Every shape in the file, in order.
+     * @throws IOException If the file could not be read or is not a valid document.
+     */
+    public static ShapeStore load(final Path theFile) throws IOException {
+        final ShapeStore shapes = new ShapeStore();
+        try (DocumentReader reader = new DocumentReader(
+                        FileChannel.open(theFile, StandardOpenOption.READ))) {
+            for (ShapeStore chunk = reader.readChunk(); chunk != null;
+                            chunk = reader.readChunk()) {
+                shapes.addAll(chunk);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Reads the next chunk of shapes.
+     * @return Shapes in the next chunk, or null once the end of the document is reached.
+     * @throws IOException If the chunk could not be read or is corrupt.
+     */
+    public ShapeStore readChunk() throws IOException {
+        while (!myDone) {
+            final ByteBuffer header = ByteBuffer.allocate(DocumentFormat.CHUNK_HEADER_SIZE);
+            readFully(header);
+            final int type = header.getInt();
+            final int length = header.getInt();
+            final int count = header.getInt();
+            if (length < 0 || length > DocumentFormat.MAX_CHUNK_SIZE || count < 0) {
+                throw new IOException("Corrupt chunk header");
+            }
+            if (type == DocumentFormat.CHUNK_END || type == DocumentFormat.CHUNK_INDEX) {
+                //The index always follows the last shape, so there is nothing left to load.
+                myDone = true;
+            } else if (length > 0) {
+                if (myChunk.capacity() < length) {
+                    myChunk = ByteBuffer.allocateDirect(length);
+                }
+                myChunk.clear();
+                myChunk.limit(length);
+                readFully(myChunk);
+                if (type == DocumentFormat.CHUNK_SHAPES) {
+                    return readShapes(count);
+                }
+                //Chunks of unknown types are skipped so newer files still open.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of bytes read from the channel so far.
+     * @return Bytes read.
+     */
+    public long getBytesRead() {
+        return myBytesRead;
+    }
+
+    /**
+     * Closes the channel.
+     * @throws IOException If the channel could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        myChannel.close();
+    }
+
+    /**
+     * Decodes the shape records in the chunk buffer.
+     * @param theCount Number of shapes in the chunk.
+     * @return Shapes in the chunk.
+     * @throws IOException If a record is corrupt.
+     */
+    private ShapeStore readShapes(final int theCount) throws IOException {
+        final ShapeStore shapes = new ShapeStore();
+        for (int i = 0; i < theCount; i++) {
+            myRecord.read(myChunk, shapes);
+        }
+        return shapes;
+    }
+
+    /**
+     * Fills a buffer from the channel.
+     * @param theBuffer Buffer to fill up to its limit, then flipped for reading.
+     * @throws IOException If the channel ends before the buffer is full.
+     */
+    private void readFully(final ByteBuffer theBuffer) throws IOException {
+        while (theBuffer.hasRemaining()) {
+            final int read = myChannel.read(theBuffer);
+            if (read < 0) {
+                throw new EOFException("Document ended unexpectedly");
+            }
+            myBytesRead += read;
+        }
+        theBuffer.flip();
+    }
+}
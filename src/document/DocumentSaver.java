@@ -0,0 +1,117 @@
+package document;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import paintwindow.DrawPanel;
+import paintwindow.Layer;
+import paintwindow.ShapeStore;
+
+/**
+ * Saves the shapes of a DrawPanel in the background. A snapshot of the shapes is taken
+ * when the saver is constructed, so drawing can carry on while the file is written.
+ * The layers are written one after another from the bottom, hidden ones included,
+ * with the shapes of a layer's base document copied straight from its file first.
+ * The file holds no layers of its own, so they are flattened into one when it is opened.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class DocumentSaver extends SwingWorker<Void, Void> {
+
+    /** File being written. */
+    private final Path myFile;
+
+    /** Panel the shapes were copied from, used to show errors. */
+    private final DrawPanel myPanel;
+
+    /** Snapshots of the shapes of each layer, bottom first. */
+    private final List<ShapeStore> myShapes;
+
+    /**
+     * Archived documents whose shapes are written before those of each layer,
+     * with null for layers that have none.
+     */
+    private final List<MappedDocument> myBaseDocuments;
+
+    /**
+     * Constructs a saver, taking a snapshot of the shapes of the panel as they are right now.
+     * Must be constructed on the event dispatch thread.
+     * @param theFile File to write.
+     * @param thePanel Panel to save the shapes of.
+     */
+    public DocumentSaver(final Path theFile, final DrawPanel thePanel) {
+        super();
+        myFile = theFile;
+        myPanel = thePanel;
+        myShapes = new ArrayList<ShapeStore>();
+        myBaseDocuments = new ArrayList<MappedDocument>();
+        for (Layer layer : thePanel.getLayers().getLayers()) {
+            myShapes.add(layer.getShapes().snapshot());
+            myBaseDocuments.add(layer.getDocument());
+        }
+    }
+
+    /**
+     * Writes the base document's shapes and then the snapshot of shapes of each layer
+     * to a temporary file, then moves it over the file. An archive already at the file
+     * is replaced rather than overwritten, so layers and undo history drawing from it
+     * keep reading the old shapes, and a failed save leaves it whole.
+     * @return Nothing.
+     * @throws IOException If the file could not be written.
+     */
+    @Override
+    protected Void doInBackground() throws IOException {
+        final Path temporary = myFile.resolveSibling(myFile.getFileName() + ".tmp");
+        try {
+            try (DocumentWriter writer = new DocumentWriter(
+                            FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                             StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING))) {
+                for (int layer = 0; layer < myShapes.size(); layer++) {
+                    if (myBaseDocuments.get(layer) != null) {
+                        myBaseDocuments.get(layer).copyTo(writer);
+                    }
+                    writer.writeAll(myShapes.get(layer));
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, myFile, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temporary, myFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return null;
+    }
+
+    /**
+     * Tells the user if the file could not be saved.
+     */
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            JOptionPane.showMessageDialog(myPanel, "Could not save " + myFile.getFileName()
+                                          + ":\n" + e.getCause().getMessage(),
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
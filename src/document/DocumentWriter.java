@@ -0,0 +1,292 @@
+package document;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import paintwindow.ShapeStore;
+
+/**
+ * Writes shapes to a channel in the Magic Paint document format.
+ * Shape records are collected into a buffer and written one chunk at a time,
+ * so a file is written in a few large writes no matter how many shapes it holds.
+ * The position and bounds of every record are remembered so the index can be
+ * written when the writer is closed.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class DocumentWriter implements Closeable {
+
+    /** Channel the document is written to. */
+    private final WritableByteChannel myChannel;
+
+    /** Buffer holding the chunk being collected, with room for its header at the start. */
+    private ByteBuffer myChunk;
+
+    /** Number of shapes in the chunk being collected. */
+    private int myChunkShapes;
+
+    /** Codec encoding the shapes written. */
+    private final ShapeRecord myRecord;
+
+    /** Number of bytes written to the channel so far. */
+    private long myBytesWritten;
+
+    /** File position of every record written so far. */
+    private long[] myOffsets;
+
+    /** Stroked bounds of every record written so far, stored as x, y, width, height. */
+    private int[] myBounds;
+
+    /** Number of records written so far. */
+    private int myShapeCount;
+
+    /**
+     * Constructs a writer and writes the document header.
+     * @param theChannel Channel to write the document to. Closed when the writer is.
+     * @throws IOException If the header could not be written.
+     */
+    public DocumentWriter(final WritableByteChannel theChannel) throws IOException {
+        myChannel = theChannel;
+        myChunk = ByteBuffer.allocateDirect(DocumentFormat.TARGET_CHUNK_SIZE);
+        myRecord = new ShapeRecord();
+        myOffsets = new long[DocumentFormat.INDEX_GROUP_SIZE];
+        myBounds = new int[DocumentFormat.INDEX_GROUP_SIZE * 4];
+        final ByteBuffer header = ByteBuffer.allocate(DocumentFormat.HEADER_SIZE);
+        header.putInt(DocumentFormat.MAGIC);
+        header.putInt(DocumentFormat.VERSION);
+        header.flip();
+        writeFully(header);
+        startChunk();
+    }
+
+    /**
+     * Writes every shape in a store to a file, replacing anything already in it.
+     * @param theShapes Shapes to write, in the order they are drawn.
+     * @param theFile File to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void save(final ShapeStore theShapes, final Path theFile) throws IOException {
+        try (DocumentWriter writer = new DocumentWriter(
+                        FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                         StandardOpenOption.WRITE,
+                                         StandardOpenOption.TRUNCATE_EXISTING))) {
+            writer.writeAll(theShapes);
+        }
+    }
+
+    /**
+     * Writes every shape in a store, in order.
+     * @param theShapes Shapes to write.
+     * @throws IOException If a chunk could not be written.
+     */
+    public void writeAll(final ShapeStore theShapes) throws IOException {
+        for (int id = 0; id < theShapes.size(); id++) {
+            write(theShapes, id);
+        }
+    }
+
+    /**
+     * Writes a single shape from a store.
+     * @param theShapes Store holding the shape.
+     * @param theId Id of the shape in the store.
+     * @throws IOException If a full chunk could not be written.
+     */
+    public void write(final ShapeStore theShapes, final int theId) throws IOException {
+        startRecord(ShapeRecord.size(theShapes, theId), theShapes.getBounds(theId));
+        myRecord.write(myChunk, theShapes, theId);
+    }
+
+    /**
+     * Writes a single shape record from its raw parts.
+     * @param theRgb ARGB value of the shape's color.
+     * @param theWidth Width of the shape's stroke.
+     * @param theFlags Whether the shape is stroked or filled, as one of the flags values
+     *        of DocumentFormat.
+     * @param theSegments Segment types of the shape, using the PathIterator constants.
+     * @param theSegmentCount Number of segments to write.
+     * @param theCoords Coordinates of the shape, stored as x and y pairs.
+     * @param theCoordCount Number of coordinates to write.
+     * @param theBounds Stroked bounds of the shape, recorded in the index.
+     * @throws IOException If a full chunk could not be written.
+     */
+    public void writeRecord(final int theRgb, final float theWidth, final byte theFlags,
+                            final byte[] theSegments, final int theSegmentCount,
+                            final float[] theCoords, final int theCoordCount,
+                            final Rectangle theBounds) throws IOException {
+        startRecord(DocumentFormat.RECORD_HEADER_SIZE + theSegmentCount + theCoordCount * 4,
+                    theBounds);
+        ShapeRecord.put(myChunk, theRgb, theWidth, theFlags, theSegments, theSegmentCount,
+                        theCoords, theCoordCount);
+    }
+
+    /**
+     * Gets the number of bytes written to the channel so far.
+     * @return Bytes written, not counting the chunk still being collected.
+     */
+    public long getBytesWritten() {
+        return myBytesWritten;
+    }
+
+    /**
+     * Writes the last chunk, the index and the end of the document, then closes the channel.
+     * @throws IOException If the document could not be finished.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushChunk();
+            final long indexOffset = writeIndex();
+            final ByteBuffer end = ByteBuffer.allocate(DocumentFormat.CHUNK_HEADER_SIZE
+                                                       + DocumentFormat.END_SIZE);
+            end.putInt(DocumentFormat.CHUNK_END);
+            end.putInt(DocumentFormat.END_SIZE);
+            end.putInt(0);
+            end.putLong(indexOffset);
+            end.flip();
+            writeFully(end);
+        } finally {
+            myChannel.close();
+        }
+    }
+
+    /**
+     * Makes room in the chunk for the next record and remembers its position and bounds
+     * for the index.
+     * @param theSize Size of the record in bytes.
+     * @param theBounds Stroked bounds of the shape.
+     * @throws IOException If a full chunk could not be written.
+     */
+    private void startRecord(final int theSize, final Rectangle theBounds) throws IOException {
+        if (myChunk.remaining() < theSize) {
+            flushChunk();
+            if (myChunk.remaining() < theSize) {
+                //A single shape larger than a chunk gets a chunk of its own.
+                myChunk = ByteBuffer.allocateDirect(DocumentFormat.CHUNK_HEADER_SIZE + theSize);
+                startChunk();
+            }
+        }
+        if (myShapeCount == myOffsets.length) {
+            myOffsets = Arrays.copyOf(myOffsets, myShapeCount * 2);
+            myBounds = Arrays.copyOf(myBounds, myShapeCount * 8);
+        }
+        myOffsets[myShapeCount] = myBytesWritten + myChunk.position();
+        myBounds[myShapeCount * 4] = theBounds.x;
+        myBounds[myShapeCount * 4 + 1] = theBounds.y;
+        myBounds[myShapeCount * 4 + 2] = theBounds.width;
+        myBounds[myShapeCount * 4 + 3] = theBounds.height;
+        myShapeCount++;
+        myChunkShapes++;
+    }
+
+    /**
+     * Writes the index chunk, streaming it through the chunk buffer.
+     * @return File position of the index chunk, or -1 if the index is too large for
+     *         a single chunk and was left out.
+     * @throws IOException If the index could not be written.
+     */
+    private long writeIndex() throws IOException {
+        final int groupSize = DocumentFormat.INDEX_GROUP_SIZE;
+        final int groupCount = (myShapeCount + groupSize - 1) / groupSize;
+        final long length = DocumentFormat.INDEX_HEADER_SIZE
+                        + (long) groupCount * DocumentFormat.INDEX_GROUP_ENTRY_SIZE
+                        + (long) myShapeCount * DocumentFormat.INDEX_ENTRY_SIZE;
+        if (length > DocumentFormat.MAX_CHUNK_SIZE) {
+            return -1;
+        }
+        final long indexOffset = myBytesWritten;
+        myChunk.clear();
+        myChunk.putInt(DocumentFormat.CHUNK_INDEX);
+        myChunk.putInt((int) length);
+        myChunk.putInt(myShapeCount);
+        myChunk.putInt(myShapeCount);
+        myChunk.putInt(groupSize);
+        myChunk.putInt(groupCount);
+        for (int group = 0; group < groupCount; group++) {
+            final Rectangle bounds = new Rectangle(myBounds[group * groupSize * 4],
+                                                   myBounds[group * groupSize * 4 + 1],
+                                                   myBounds[group * groupSize * 4 + 2],
+                                                   myBounds[group * groupSize * 4 + 3]);
+            final int last = Math.min(myShapeCount, (group + 1) * groupSize);
+            for (int i = group * groupSize + 1; i < last; i++) {
+                bounds.add(new Rectangle(myBounds[i * 4], myBounds[i * 4 + 1],
+                                         myBounds[i * 4 + 2], myBounds[i * 4 + 3]));
+            }
+            drainIfFull(DocumentFormat.INDEX_GROUP_ENTRY_SIZE);
+            myChunk.putInt(bounds.x);
+            myChunk.putInt(bounds.y);
+            myChunk.putInt(bounds.width);
+            myChunk.putInt(bounds.height);
+        }
+        for (int i = 0; i < myShapeCount; i++) {
+            drainIfFull(DocumentFormat.INDEX_ENTRY_SIZE);
+            myChunk.putLong(myOffsets[i]);
+            myChunk.putInt(myBounds[i * 4]);
+            myChunk.putInt(myBounds[i * 4 + 1]);
+            myChunk.putInt(myBounds[i * 4 + 2]);
+            myChunk.putInt(myBounds[i * 4 + 3]);
+        }
+        myChunk.flip();
+        writeFully(myChunk);
+        myChunk.clear();
+        return indexOffset;
+    }
+
+    /**
+     * Writes out the chunk buffer if it can not fit the given number of bytes.
+     * @param theBytes Number of bytes about to be put in the buffer.
+     * @throws IOException If the buffer could not be written.
+     */
+    private void drainIfFull(final int theBytes) throws IOException {
+        if (myChunk.remaining() < theBytes) {
+            myChunk.flip();
+            writeFully(myChunk);
+            myChunk.clear();
+        }
+    }
+
+    /**
+     * Writes the chunk being collected, if it holds any shapes, and starts a new one.
+     * @throws IOException If the chunk could not be written.
+     */
+    private void flushChunk() throws IOException {
+        if (myChunkShapes == 0) {
+            return;
+        }
+        final int length = myChunk.position() - DocumentFormat.CHUNK_HEADER_SIZE;
+        myChunk.putInt(0, DocumentFormat.CHUNK_SHAPES);
+        myChunk.putInt(4, length);
+        myChunk.putInt(8, myChunkShapes);
+        myChunk.flip();
+        writeFully(myChunk);
+        if (myChunk.capacity() > DocumentFormat.TARGET_CHUNK_SIZE) {
+            myChunk = ByteBuffer.allocateDirect(DocumentFormat.TARGET_CHUNK_SIZE);
+        }
+        startChunk();
+    }
+
+    /**
+     * Empties the chunk buffer and leaves room for the chunk header.
+     */
+    private void startChunk() {
+        myChunk.clear();
+        myChunk.position(DocumentFormat.CHUNK_HEADER_SIZE);
+        myChunkShapes = 0;
+    }
+
+    /**
+     * Writes everything remaining in a buffer to the channel.
+     * @param theBuffer Buffer to write.
+     * @throws IOException If the channel could not be written to.
+     */
+    private void writeFully(final ByteBuffer theBuffer) throws IOException {
+        while (theBuffer.hasRemaining()) {
+            myBytesWritten += myChannel.write(theBuffer);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package document;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.imageio.ImageIO;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import paintwindow.DrawPanel;
+import paintwindow.Layer;
+import paintwindow.ShapeIndex;
+import paintwindow.ShapeStore;
+
+/**
+ * Exports the drawing of a DrawPanel to a PNG or JPEG image in the background,
+ * at any scale. A snapshot of the shapes is taken when the exporter is constructed,
+ * so drawing can carry on during the export. PNG images are drawn and written in horizontal
+ * bands, so memory use stays the same however large the image is. The JPEG writer
+ * needs the whole image at once, so JPEG exports are limited by the heap instead.
+ * Shown layers are drawn from the bottom up. Layers with an opacity or blend mode
+ * are drawn on a band of their own first and then combined with the layers beneath.
+ * Progress is reported as a percentage of the rows drawn, and cancelling the
+ * export stops it at the next band and removes the partly written file.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ImageExporter extends SwingWorker<Void, Void> {
+
+    /** Largest number of pixels drawn in a single band. */
+    private static final int BAND_PIXELS = 1 << 22;
+
+    /** Largest width or height of a JPEG image, in pixels. */
+    private static final int MAX_JPEG_SIZE = 65500;
+
+    /** Background color of the exported image, the same as the panel's. */
+    private static final Color BACKGROUND = Color.WHITE;
+
+    /** File being written. */
+    private final Path myFile;
+
+    /** Image format name of the file, either "png" or "jpeg". */
+    private final String myFormat;
+
+    /** Panel the shapes were copied from, used to show errors. */
+    private final DrawPanel myPanel;
+
+    /** Snapshots of the shapes of each shown layer, bottom first. */
+    private final List<ShapeStore> myShapes;
+
+    /**
+     * Archived documents drawn beneath the shapes of each shown layer,
+     * with null for layers that have none.
+     */
+    private final List<MappedDocument> myBaseDocuments;
+
+    /**
+     * Composites each shown layer is combined with the layers beneath it with,
+     * with null for layers drawn straight onto them.
+     */
+    private final List<Composite> myComposites;
+
+    /** Area of the canvas being exported. */
+    private final Rectangle myArea;
+
+    /** Number of image pixels per canvas pixel. */
+    private final double myScale;
+
+    /**
+     * Constructs an exporter, taking a snapshot of the shapes of the panel as they are right now.
+     * The exported area covers the panel and every shape drawn outside of it.
+     * Must be constructed on the event dispatch thread.
+     * @param theFile File to write. Its extension picks the image format.
+     * @param thePanel Panel to export the drawing of.
+     * @param theScale Number of image pixels per canvas pixel, such as 4 for print.
+     */
+    public ImageExporter(final Path theFile, final DrawPanel thePanel, final double theScale) {
+        super();
+        if (!(theScale > 0) || Double.isInfinite(theScale)) {
+            throw new IllegalArgumentException("Scale must be positive: " + theScale);
+        }
+        myFile = theFile;
+        myFormat = formatOf(theFile);
+        myPanel = thePanel;
+        myScale = theScale;
+        myShapes = new ArrayList<ShapeStore>();
+        myBaseDocuments = new ArrayList<MappedDocument>();
+        myComposites = new ArrayList<Composite>();
+        myArea = new Rectangle(0, 0, thePanel.getWidth(), thePanel.getHeight());
+        for (Layer layer : thePanel.getLayers().getLayers()) {
+            if (!layer.isVisible()) {
+                continue;
+            }
+            final ShapeStore shapes = layer.getShapes().snapshot();
+            final MappedDocument document = layer.getDocument();
+            myShapes.add(shapes);
+            myBaseDocuments.add(document);
+            myComposites.add(layer.isOpaque() ? null : layer.getComposite());
+            for (int id = 0; id < shapes.size(); id++) {
+                myArea.add(shapes.getBounds(id));
+            }
+            if (document != null) {
+                for (int group = 0; group < document.getGroupCount(); group++) {
+                    myArea.add(document.getGroupBounds(group));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a file name has an extension an image can be exported to.
+     * @param theFile File to check.
+     * @return Whether the file is a PNG or JPEG image.
+     */
+    public static boolean isSupported(final Path theFile) {
+        return formatOf(theFile) != null;
+    }
+
+    /**
+     * Draws the shapes band by band and writes the image.
+     * @return Nothing.
+     * @throws IOException If the image is too large or could not be written.
+     */
+    @Override
+    protected Void doInBackground() throws IOException {
+        if (myFormat == null) {
+            throw new IOException("Images can only be exported as PNG or JPEG");
+        }
+        final long width = (long) Math.ceil(myArea.width * myScale);
+        final long height = (long) Math.ceil(myArea.height * myScale);
+        final boolean composited = hasComposites();
+        final int bandHeight;
+        if ("png".equals(myFormat)) {
+            if (width > Integer.MAX_VALUE / 4 || height > Integer.MAX_VALUE) {
+                throw new IOException("Image is too large to export");
+            }
+            bandHeight = (int) Math.max(1, Math.min(height, BAND_PIXELS / width));
+        } else {
+            if (width > MAX_JPEG_SIZE || height > MAX_JPEG_SIZE
+                            || width * height * (composited ? 8 : 4)
+                                            > Runtime.getRuntime().maxMemory() / 2) {
+                throw new IOException("Image is too large to export as JPEG,"
+                                      + " export it as PNG instead");
+            }
+            bandHeight = (int) height;
+        }
+
+        final List<ShapeIndex> indexes = new ArrayList<ShapeIndex>();
+        for (ShapeStore shapes : myShapes) {
+            final ShapeIndex index = new ShapeIndex();
+            for (int id = 0; id < shapes.size(); id++) {
+                index.add(id, shapes.getBounds(id));
+            }
+            indexes.add(index);
+        }
+        boolean written = false;
+        try {
+            final BandedImage image = new BandedImage((int) width, (int) height,
+                                                      bandHeight, indexes, composited);
+            if (!ImageIO.write(image, myFormat, myFile.toFile())) {
+                throw new IOException("No image writer for " + myFormat);
+            }
+            written = true;
+        } catch (final CancellationException e) {
+            //Thrown out of the image writer when the export is cancelled.
+            return null;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(myFile);
+            }
+        }
+        setProgress(100);
+        return null;
+    }
+
+    /**
+     * Tells the user if the image could not be exported.
+     */
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            JOptionPane.showMessageDialog(myPanel, "Could not export " + myFile.getFileName()
+                                          + ":\n" + e.getCause().getMessage(),
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Tells whether any shown layer has to be combined with a composite.
+     * @return Whether a layer has an opacity or blend mode.
+     */
+    private boolean hasComposites() {
+        for (Composite composite : myComposites) {
+            if (composite != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the image format name for the extension of a file.
+     * @param theFile File to check.
+     * @return "png" or "jpeg", or null if the extension is neither.
+     */
+    private static String formatOf(final Path theFile) {
+        final String name = theFile.getFileName().toString().toLowerCase();
+        if (name.endsWith(".png")) {
+            return "png";
+        }
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "jpeg";
+        }
+        return null;
+    }
+
+    /**
+     * Image that is drawn one band of rows at a time as the writer asks for its pixels.
+     * Only the band holding the rows last asked for is kept. Writers read rows from
+     * top to bottom, so each band is drawn once.
+     */
+    private final class BandedImage implements RenderedImage {
+
+        /** Width of the image, in pixels. */
+        private final int myWidth;
+
+        /** Height of the image, in pixels. */
+        private final int myHeight;
+
+        /** Number of rows in each band. */
+        private final int myBandHeight;
+
+        /** Indexes over the snapshots of shapes, used to draw only those in a band. */
+        private final List<ShapeIndex> myIndexes;
+
+        /** Image the current band is drawn on. Reused between bands. */
+        private final BufferedImage myBand;
+
+        /**
+         * Image a layer with a composite is drawn on before it is combined with
+         * the band, or null if no layer has one. Reused between layers and bands.
+         */
+        private final BufferedImage myLayerBand;
+
+        /** Index of the band currently drawn on the band image, or -1 if there is none. */
+        private int myCurrentBand;
+
+        /**
+         * Constructs an image with nothing drawn yet.
+         * @param theWidth Width of the image, in pixels.
+         * @param theHeight Height of the image, in pixels.
+         * @param theBandHeight Number of rows in each band.
+         * @param theIndexes Indexes over the snapshots of shapes of each layer.
+         * @param theComposited Whether any layer has to be combined with a composite.
+         */
+        private BandedImage(final int theWidth, final int theHeight, final int theBandHeight,
+                            final List<ShapeIndex> theIndexes, final boolean theComposited) {
+            myWidth = theWidth;
+            myHeight = theHeight;
+            myBandHeight = theBandHeight;
+            myIndexes = theIndexes;
+            myBand = new BufferedImage(theWidth, theBandHeight, BufferedImage.TYPE_INT_RGB);
+            if (theComposited) {
+                myLayerBand = new BufferedImage(theWidth, theBandHeight,
+                                                BufferedImage.TYPE_INT_ARGB_PRE);
+            } else {
+                myLayerBand = null;
+            }
+            myCurrentBand = -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object getProperty(final String theName) {
+            return Image.UndefinedProperty;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ColorModel getColorModel() {
+            return myBand.getColorModel();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SampleModel getSampleModel() {
+            return myBand.getSampleModel();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getWidth() {
+            return myWidth;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getHeight() {
+            return myHeight;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        /**
+         * The whole image is a single tile, since writers that read tiles
+         * read all of them at once anyway.
+         * @return 1.
+         */
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        /**
+         * The whole image is a single tile.
+         * @return 1.
+         */
+        @Override
+        public int getNumYTiles() {
+            return 1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTileWidth() {
+            return myWidth;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTileHeight() {
+            return myHeight;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+
+        /**
+         * Gets the whole image. When the image is a single band the band itself is
+         * returned, otherwise every band is copied into a new raster.
+         * @param theTileX Column of the tile, always 0.
+         * @param theTileY Row of the tile, always 0.
+         * @return Pixels of the whole image.
+         */
+        @Override
+        public Raster getTile(final int theTileX, final int theTileY) {
+            if (myBandHeight == myHeight) {
+                drawBand(0);
+                return myBand.getRaster();
+            }
+            return getData();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, myWidth, myHeight));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Raster getData(final Rectangle theRect) {
+            final WritableRaster raster = myBand.getRaster().createCompatibleWritableRaster(
+                            theRect.width, theRect.height);
+            return copyData(raster.createWritableTranslatedChild(theRect.x, theRect.y));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WritableRaster copyData(final WritableRaster theRaster) {
+            final Rectangle rect = theRaster.getBounds().intersection(
+                            new Rectangle(0, 0, myWidth, myHeight));
+            int y = rect.y;
+            while (y < rect.y + rect.height) {
+                final int band = y / myBandHeight;
+                drawBand(band);
+                final int top = band * myBandHeight;
+                final int rows = Math.min(rect.y + rect.height, top + myBandHeight) - y;
+                final Raster source = myBand.getRaster().createChild(
+                                rect.x, y - top, rect.width, rows, rect.x, y, null);
+                theRaster.setRect(source);
+                y += rows;
+            }
+            return theRaster;
+        }
+
+        /**
+         * Draws a band onto the band image, unless it is already there.
+         * @param theBand Index of the band to draw.
+         * @throws CancellationException If the export has been cancelled.
+         */
+        private void drawBand(final int theBand) {
+            if (theBand == myCurrentBand) {
+                return;
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            final int top = theBand * myBandHeight;
+            final Rectangle area = new Rectangle(myArea.x,
+                                                 myArea.y + (int) Math.floor(top / myScale),
+                                                 myArea.width,
+                                                 (int) Math.ceil(myBandHeight / myScale) + 1);
+            final Graphics2D g2d = myBand.createGraphics();
+            g2d.setColor(BACKGROUND);
+            g2d.fillRect(0, 0, myWidth, myBandHeight);
+            for (int layer = 0; layer < myIndexes.size(); layer++) {
+                final Composite composite = myComposites.get(layer);
+                if (composite == null) {
+                    drawLayer(g2d, layer, top, area);
+                    continue;
+                }
+                final Graphics2D layerGraphics = myLayerBand.createGraphics();
+                layerGraphics.setComposite(AlphaComposite.Clear);
+                layerGraphics.fillRect(0, 0, myWidth, myBandHeight);
+                layerGraphics.setComposite(AlphaComposite.SrcOver);
+                drawLayer(layerGraphics, layer, top, area);
+                layerGraphics.dispose();
+                g2d.setComposite(composite);
+                g2d.drawImage(myLayerBand, 0, 0, null);
+                g2d.setComposite(AlphaComposite.SrcOver);
+            }
+            g2d.dispose();
+            myCurrentBand = theBand;
+            setProgress((int) Math.min(99, (long) (top + myBandHeight) * 100 / myHeight));
+        }
+
+        /**
+         * Draws the shapes of a layer that are in a band onto an image of the band.
+         * @param theGraphics Graphics of the band image, which is left as it was.
+         * @param theLayer Position of the layer among the shown layers.
+         * @param theTop Row of the image at the top of the band.
+         * @param theArea Area of the canvas the band covers.
+         */
+        private void drawLayer(final Graphics2D theGraphics, final int theLayer,
+                               final int theTop, final Rectangle theArea) {
+            final Graphics2D g2d = (Graphics2D) theGraphics.create();
+            g2d.translate(0, -theTop);
+            g2d.scale(myScale, myScale);
+            g2d.translate(-myArea.x, -myArea.y);
+            g2d.clip(theArea);
+            final MappedDocument document = myBaseDocuments.get(theLayer);
+            if (document != null) {
+                document.render(g2d, theArea);
+            }
+            myShapes.get(theLayer).drawAll(g2d, myIndexes.get(theLayer).query(theArea), 1);
+            g2d.dispose();
+        }
+    }
+}
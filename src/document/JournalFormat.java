@@ -0,0 +1,80 @@
+package document;
+
+/**
+ * Constants describing the binary file format of the autosave journal.
+ * <p>
+ * A journal starts with an 8 byte header holding the magic number and version,
+ * followed by records, each of which is one change to the drawing. Every record
+ * starts with the number of bytes in its type and body and ends with a CRC-32 of them,
+ * so a record torn by a crash in the middle of writing it is found and ignored along
+ * with everything after it. All values are big-endian.
+ * </p>
+ * <p>
+ * Layers are named by ids that the journal gives them, which never change while the
+ * program runs. A layer record holds everything about a layer but its shapes, and
+ * replaces whatever was on the layer before, so the shape records that follow it
+ * fill it in again. Shape records are stored as in a document, after the id of their
+ * layer. Truncate records remove the shapes at the end of a layer, property records
+ * change how a layer is shown, and order records set which layers make up the drawing,
+ * bottom first, and which of them is active.
+ * </p>
+ * <p>
+ * A journal is compacted by writing the drawing as it is into a new file made only of
+ * layer, shape and order records, and then moving it over the old one.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class JournalFormat {
+
+    /** Magic number every journal starts with, the characters "MPJL". */
+    public static final int MAGIC = 0x4D504A4C;
+
+    /** Version of the format written by this program. */
+    public static final int VERSION = 1;
+
+    /** Size of the file header, in bytes. */
+    public static final int HEADER_SIZE = 8;
+
+    /** Size of the length that starts each record, in bytes. */
+    public static final int LENGTH_SIZE = 4;
+
+    /** Size of the checksum that ends each record, in bytes. */
+    public static final int CHECKSUM_SIZE = 4;
+
+    /**
+     * Type of a record holding a layer's id, whether it is shown, its opacity,
+     * the ordinal of its blend mode, and the UTF-8 path of its base document
+     * after its length, or a length of -1 if it has none.
+     */
+    public static final byte LAYER = 1;
+
+    /** Type of a record holding the id of a layer and a shape added to its end. */
+    public static final byte SHAPE = 2;
+
+    /** Type of a record holding the id of a layer and the number of shapes left on it. */
+    public static final byte TRUNCATE = 3;
+
+    /**
+     * Type of a record holding the id of a layer, whether it is shown, its opacity and
+     * the ordinal of its blend mode.
+     */
+    public static final byte PROPERTIES = 4;
+
+    /**
+     * Type of a record holding the position of the active layer, the number of layers,
+     * and the id of each, bottom first.
+     */
+    public static final byte ORDER = 5;
+
+    /** Largest record a reader accepts, to reject corrupt lengths before allocating. */
+    public static final int MAX_RECORD_SIZE = 1 << 30;
+
+    /** File name extension for journals. */
+    public static final String EXTENSION = "mpj";
+
+    /** Private constructor to prevent external creation of the class.*/
+    private JournalFormat() {
+        throw new IllegalStateException();
+    }
+}
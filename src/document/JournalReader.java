@@ -0,0 +1,399 @@
+package document;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import paintwindow.BlendMode;
+import paintwindow.DrawPanel;
+import paintwindow.ShapeStore;
+
+/**
+ * Rebuilds the drawing kept in an autosave journal written by JournalWriter.
+ * The records are replayed in order until the end of the file, or until a record that
+ * was torn by a crash or fails its checksum, which ends the journal.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class JournalReader {
+
+    /** Layers of the drawing, bottom first. */
+    private final List<LayerState> myLayers;
+
+    /** Position of the active layer. */
+    private final int myActive;
+
+    /** Number of records replayed. */
+    private final int myRecordCount;
+
+    /** Whether the journal ended in a torn or corrupt record. */
+    private final boolean myTorn;
+
+    /**
+     * Constructs a reader holding a replayed drawing.
+     * @param theLayers Layers of the drawing, bottom first.
+     * @param theActive Position of the active layer.
+     * @param theRecordCount Number of records replayed.
+     * @param theTorn Whether the journal ended in a torn or corrupt record.
+     */
+    private JournalReader(final List<LayerState> theLayers, final int theActive,
+                          final int theRecordCount, final boolean theTorn) {
+        myLayers = theLayers;
+        myActive = theActive;
+        myRecordCount = theRecordCount;
+        myTorn = theTorn;
+    }
+
+    /**
+     * Reads a journal and replays it.
+     * @param theFile Journal to read.
+     * @return Reader holding the drawing kept in the journal.
+     * @throws IOException If the file could not be read, is not a journal, or holds
+     *         no complete drawing.
+     */
+    public static JournalReader read(final Path theFile) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(theFile));
+        if (buffer.remaining() < JournalFormat.HEADER_SIZE
+                        || buffer.getInt() != JournalFormat.MAGIC) {
+            throw new IOException("Not a Magic Paint journal");
+        }
+        final int version = buffer.getInt();
+        if (version > JournalFormat.VERSION) {
+            throw new IOException("Journal version " + version + " is newer than "
+                                  + JournalFormat.VERSION);
+        }
+        final Replay replay = new Replay();
+        final CRC32 checksum = new CRC32();
+        int count = 0;
+        boolean torn = false;
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < JournalFormat.LENGTH_SIZE) {
+                torn = true;
+                break;
+            }
+            final int length = buffer.getInt();
+            if (length < 1 || length > JournalFormat.MAX_RECORD_SIZE
+                            || buffer.remaining() < length + (long) JournalFormat.CHECKSUM_SIZE) {
+                torn = true;
+                break;
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            if (buffer.getInt(buffer.position() + length) != (int) checksum.getValue()) {
+                torn = true;
+                break;
+            }
+            final ByteBuffer record = buffer.slice();
+            record.limit(length);
+            try {
+                replay.apply(record);
+            } catch (final BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt journal record", e);
+            }
+            buffer.position(buffer.position() + length + JournalFormat.CHECKSUM_SIZE);
+            count++;
+        }
+        return new JournalReader(replay.getLayers(), replay.myActive, count, torn);
+    }
+
+    /**
+     * Gets the number of layers in the drawing.
+     * @return Number of layers.
+     */
+    public int getLayerCount() {
+        return myLayers.size();
+    }
+
+    /**
+     * Gets the shapes of a layer.
+     * @param theIndex Position of the layer, from the bottom.
+     * @return Shapes of the layer.
+     */
+    public ShapeStore getShapes(final int theIndex) {
+        return myLayers.get(theIndex).myShapes;
+    }
+
+    /**
+     * Gets the base document of a layer.
+     * @param theIndex Position of the layer, from the bottom.
+     * @return File of the document, or null if the layer has none.
+     */
+    public Path getDocument(final int theIndex) {
+        return myLayers.get(theIndex).myDocument;
+    }
+
+    /**
+     * Tells whether a layer is shown.
+     * @param theIndex Position of the layer, from the bottom.
+     * @return Whether the layer is shown.
+     */
+    public boolean isVisible(final int theIndex) {
+        return myLayers.get(theIndex).myVisible;
+    }
+
+    /**
+     * Gets the opacity of a layer.
+     * @param theIndex Position of the layer, from the bottom.
+     * @return Opacity from 0 to 1.
+     */
+    public float getOpacity(final int theIndex) {
+        return myLayers.get(theIndex).myOpacity;
+    }
+
+    /**
+     * Gets the blend mode of a layer.
+     * @param theIndex Position of the layer, from the bottom.
+     * @return Blend mode of the layer.
+     */
+    public BlendMode getBlendMode(final int theIndex) {
+        return myLayers.get(theIndex).myBlendMode;
+    }
+
+    /**
+     * Gets the position of the active layer.
+     * @return Position of the active layer, from the bottom.
+     */
+    public int getActiveIndex() {
+        return myActive;
+    }
+
+    /**
+     * Gets the number of shapes on every layer.
+     * @return Number of shapes in the drawing, not counting those of documents.
+     */
+    public int getShapeCount() {
+        int count = 0;
+        for (LayerState layer : myLayers) {
+            count += layer.myShapes.size();
+        }
+        return count;
+    }
+
+    /**
+     * Tells whether the drawing has nothing on it, so there is nothing to recover.
+     * @return Whether every layer is without shapes and a document.
+     */
+    public boolean isEmpty() {
+        for (LayerState layer : myLayers) {
+            if (!layer.myShapes.isEmpty() || layer.myDocument != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of records replayed.
+     * @return Number of records.
+     */
+    public int getRecordCount() {
+        return myRecordCount;
+    }
+
+    /**
+     * Tells whether the journal ended in a record torn by a crash, or one that failed
+     * its checksum. Everything before it was still replayed.
+     * @return Whether the end of the journal was lost.
+     */
+    public boolean isTorn() {
+        return myTorn;
+    }
+
+    /**
+     * Replaces the drawing of a panel with the one in the journal.
+     * Documents that no longer exist are left out, leaving their layers with only
+     * their shapes.
+     * @param thePanel Panel to restore the drawing into.
+     * @throws IOException If a document that exists could not be opened.
+     */
+    public void apply(final DrawPanel thePanel) throws IOException {
+        final List<ShapeStore> shapes = new ArrayList<ShapeStore>();
+        final List<MappedDocument> documents = new ArrayList<MappedDocument>();
+        try {
+            for (LayerState layer : myLayers) {
+                shapes.add(layer.myShapes);
+                if (layer.myDocument != null && Files.isRegularFile(layer.myDocument)) {
+                    documents.add(MappedDocument.open(layer.myDocument));
+                } else {
+                    documents.add(null);
+                }
+            }
+        } catch (final IOException e) {
+            for (MappedDocument document : documents) {
+                if (document != null) {
+                    document.close();
+                }
+            }
+            throw e;
+        }
+        thePanel.restore(shapes, documents, myActive);
+        for (int i = 0; i < myLayers.size(); i++) {
+            final LayerState layer = myLayers.get(i);
+            if (!layer.myVisible) {
+                thePanel.setLayerVisible(i, false);
+            }
+            if (layer.myOpacity != 1) {
+                thePanel.setLayerOpacity(i, layer.myOpacity);
+            }
+            if (layer.myBlendMode != BlendMode.NORMAL) {
+                thePanel.setLayerBlendMode(i, layer.myBlendMode);
+            }
+        }
+    }
+
+    /**
+     * Everything kept about one layer.
+     */
+    private static final class LayerState {
+
+        /** Shapes of the layer. */
+        private final ShapeStore myShapes;
+
+        /** File of the base document of the layer, or null if it has none. */
+        private Path myDocument;
+
+        /** Whether the layer is shown. */
+        private boolean myVisible;
+
+        /** Opacity of the layer. */
+        private float myOpacity;
+
+        /** Blend mode of the layer. */
+        private BlendMode myBlendMode;
+
+        /**
+         * Constructs an empty layer.
+         */
+        private LayerState() {
+            myShapes = new ShapeStore();
+        }
+    }
+
+    /**
+     * Drawing being rebuilt one record at a time.
+     */
+    private static final class Replay {
+
+        /** Every layer seen, by id. */
+        private final Map<Integer, LayerState> myStates;
+
+        /** Ids of the layers of the drawing, bottom first, or null before any order record. */
+        private int[] myOrder;
+
+        /** Position of the active layer. */
+        private int myActive;
+
+        /** Codec decoding the shapes. */
+        private final ShapeRecord myRecord;
+
+        /**
+         * Constructs an empty drawing.
+         */
+        private Replay() {
+            myStates = new HashMap<Integer, LayerState>();
+            myRecord = new ShapeRecord();
+        }
+
+        /**
+         * Applies one record to the drawing. Records of unknown types are skipped.
+         * @param theRecord Type and body of the record.
+         * @throws IOException If the record refers to a layer that does not exist.
+         */
+        private void apply(final ByteBuffer theRecord) throws IOException {
+            final byte type = theRecord.get();
+            if (type == JournalFormat.LAYER) {
+                final int id = theRecord.getInt();
+                final LayerState layer = new LayerState();
+                readProperties(theRecord, layer);
+                final int pathLength = theRecord.getInt();
+                if (pathLength >= 0) {
+                    final byte[] path = new byte[pathLength];
+                    theRecord.get(path);
+                    layer.myDocument = Paths.get(new String(path, StandardCharsets.UTF_8));
+                }
+                myStates.put(id, layer);
+            } else if (type == JournalFormat.SHAPE) {
+                myRecord.read(theRecord, getLayer(theRecord.getInt()).myShapes);
+            } else if (type == JournalFormat.TRUNCATE) {
+                final ShapeStore shapes = getLayer(theRecord.getInt()).myShapes;
+                final int size = theRecord.getInt();
+                if (size < 0 || size > shapes.size()) {
+                    throw new IOException("Corrupt truncate record");
+                }
+                shapes.truncate(size);
+            } else if (type == JournalFormat.PROPERTIES) {
+                readProperties(theRecord, getLayer(theRecord.getInt()));
+            } else if (type == JournalFormat.ORDER) {
+                final int active = theRecord.getInt();
+                final int count = theRecord.getInt();
+                if (count < 1 || count > theRecord.remaining() / 4 || active < 0
+                                || active >= count) {
+                    throw new IOException("Corrupt order record");
+                }
+                final int[] order = new int[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = theRecord.getInt();
+                    getLayer(order[i]);
+                }
+                myOrder = order;
+                myActive = active;
+            }
+        }
+
+        /**
+         * Gets the layers of the drawing as it is now.
+         * @return Layers, bottom first.
+         * @throws IOException If the journal never set the order of the layers.
+         */
+        private List<LayerState> getLayers() throws IOException {
+            if (myOrder == null) {
+                throw new IOException("Journal holds no complete drawing");
+            }
+            final List<LayerState> layers = new ArrayList<LayerState>(myOrder.length);
+            for (int id : myOrder) {
+                layers.add(myStates.get(id));
+            }
+            return layers;
+        }
+
+        /**
+         * Gets a layer that has been seen.
+         * @param theId Id of the layer.
+         * @return State of the layer.
+         * @throws IOException If no layer record has been seen for the id.
+         */
+        private LayerState getLayer(final int theId) throws IOException {
+            final LayerState layer = myStates.get(theId);
+            if (layer == null) {
+                throw new IOException("Journal refers to unknown layer " + theId);
+            }
+            return layer;
+        }
+
+        /**
+         * Reads whether a layer is shown, its opacity and its blend mode.
+         * @param theRecord Record positioned at the properties.
+         * @param theLayer Layer to set them on.
+         * @throws IOException If the properties are out of range.
+         */
+        private static void readProperties(final ByteBuffer theRecord, final LayerState theLayer)
+                        throws IOException {
+            theLayer.myVisible = theRecord.get() != 0;
+            theLayer.myOpacity = theRecord.getFloat();
+            final int mode = theRecord.get();
+            if (!(theLayer.myOpacity >= 0 && theLayer.myOpacity <= 1)
+                            || mode < 0 || mode >= BlendMode.values().length) {
+                throw new IOException("Corrupt layer properties");
+            }
+            theLayer.myBlendMode = BlendMode.values()[mode];
+        }
+    }
+}
@@ -0,0 +1,896 @@
+package document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+import paintwindow.DrawPanel;
+import paintwindow.DrawingListener;
+import paintwindow.Layer;
+import paintwindow.LayerStack;
+import paintwindow.ShapeStore;
+
+/**
+ * Keeps an autosave journal of a DrawPanel, so a drawing survives the program crashing.
+ * Every change to the drawing is appended to the journal as a record, as described in
+ * JournalFormat, and JournalReader can rebuild the drawing from it.
+ * <p>
+ * Records are encoded on the event dispatch thread into a buffer in memory, which takes
+ * microseconds, and written by a background thread, so drawing never waits on the disk.
+ * The thread writes everything buffered since its last write at once and then forces it
+ * to the disk, so however fast changes come, they are made durable together with one
+ * write and one sync. If the disk falls far behind, the buffered records are dropped
+ * and the drawing is written whole instead, so the buffer cannot grow without bound.
+ * </p>
+ * <p>
+ * Once more has been appended to the journal than the drawing itself takes, it is
+ * compacted by writing the drawing as it is into a new file that replaces it, so the
+ * journal stays about the size of the drawing and recovering it takes about as long as
+ * opening a document. The drawing is read for this from snapshots of the layers, which
+ * take constant time to make on the event dispatch thread.
+ * </p>
+ * Apart from flush and close, which wait for the background thread, every method must be
+ * called on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class JournalWriter implements DrawingListener, Closeable {
+
+    /** Fewest bytes appended since the journal was last compacted before it is again. */
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+    /** Most bytes buffered for the background thread before they are replaced by the drawing. */
+    private static final int MAX_PENDING_BYTES = 64 << 20;
+
+    /** Initial size of the buffers records are encoded into. */
+    private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+    /** Size a buffer is written out at while the journal is being compacted. */
+    private static final int COMPACT_BUFFER_SIZE = 1 << 20;
+
+    /** Journal file. */
+    private final Path myFile;
+
+    /** Panel whose drawing is kept. */
+    private final DrawPanel myPanel;
+
+    /** Ids the layers are named by in the journal. */
+    private final Map<Layer, Integer> myIds;
+
+    /** Layers written in full since the journal was last compacted. */
+    private final Set<Layer> myWritten;
+
+    /** Id to give the next layer seen. */
+    private int myNextId;
+
+    /** Bytes appended since the journal was last compacted. */
+    private long myAppended;
+
+    /** Size of the drawing when the journal was last compacted, in bytes. */
+    private long myCompactedSize;
+
+    /** Lock guarding everything shared with the background thread below. */
+    private final Object myLock;
+
+    /** Records encoded by the event dispatch thread and not yet handed to the background thread. */
+    private Encoder myPending;
+
+    /** Records being written by the background thread. Swapped with the pending records. */
+    private Encoder myWriting;
+
+    /** Drawing to compact the journal into before writing the pending records, or null. */
+    private Snapshot mySnapshot;
+
+    /** Number of changes handed to the background thread so far. */
+    private long myQueued;
+
+    /** Number of those changes durable on the disk. */
+    private long myDurable;
+
+    /** Number of times the background thread forced records to the disk. */
+    private long myCommits;
+
+    /** Number of records appended to the journal. */
+    private long myRecordCount;
+
+    /** Whether the writer is being closed. */
+    private boolean myClosed;
+
+    /** First error writing the journal, or null if there has been none. */
+    private IOException myError;
+
+    /** Channel the journal is appended to. Only used by the background thread. */
+    private FileChannel myChannel;
+
+    /** Thread writing the journal. */
+    private final Thread myThread;
+
+    /**
+     * Starts keeping a journal of a panel, replacing the file with its current drawing.
+     * @param theFile File to keep the journal in.
+     * @param thePanel Panel to keep the drawing of.
+     * @throws IOException If the file could not be created.
+     */
+    public JournalWriter(final Path theFile, final DrawPanel thePanel) throws IOException {
+        myFile = theFile.toAbsolutePath();
+        myPanel = thePanel;
+        myIds = new WeakHashMap<Layer, Integer>();
+        myWritten = Collections.newSetFromMap(new WeakHashMap<Layer, Boolean>());
+        myLock = new Object();
+        myPending = new Encoder(INITIAL_BUFFER_SIZE);
+        myWriting = new Encoder(INITIAL_BUFFER_SIZE);
+        final Path parent = myFile.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        myChannel = FileChannel.open(myFile, StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        synchronized (myLock) {
+            queueSnapshot(takeSnapshot(myPanel.getLayers()));
+        }
+        myThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeJournal();
+            }
+        }, "Journal writer");
+        myThread.setDaemon(true);
+        myThread.start();
+        myPanel.addDrawingListener(this);
+    }
+
+    /**
+     * Appends a shape added to a layer.
+     * @param theLayer Layer the shape was added to.
+     * @param theId Id of the shape.
+     */
+    @Override
+    public void shapeAdded(final Layer theLayer, final int theId) {
+        if (myWritten.contains(theLayer)) {
+            final ShapeStore shapes = theLayer.getShapes();
+            final int size = Encoder.shapeSize(shapes, theId);
+            synchronized (myLock) {
+                if (reserve(size)) {
+                    myPending.shape(idOf(theLayer), shapes, theId);
+                    appended(size);
+                }
+            }
+        } else {
+            writeLayer(theLayer);
+        }
+    }
+
+    /**
+     * Appends the removal of shapes from the end of a layer.
+     * @param theLayer Layer the shapes were removed from.
+     * @param theSize Number of shapes left on the layer.
+     */
+    @Override
+    public void shapesRemoved(final Layer theLayer, final int theSize) {
+        if (myWritten.contains(theLayer)) {
+            synchronized (myLock) {
+                if (reserve(Encoder.TRUNCATE_SIZE)) {
+                    myPending.truncate(idOf(theLayer), theSize);
+                    appended(Encoder.TRUNCATE_SIZE);
+                }
+            }
+        } else {
+            writeLayer(theLayer);
+        }
+    }
+
+    /**
+     * Appends a layer and all of its shapes, replacing what was on it.
+     * @param theLayer Layer that was replaced.
+     */
+    @Override
+    public void layerReplaced(final Layer theLayer) {
+        writeLayer(theLayer);
+    }
+
+    /**
+     * Appends the way a layer is shown.
+     * @param theLayer Layer that changed.
+     */
+    @Override
+    public void layerChanged(final Layer theLayer) {
+        if (myWritten.contains(theLayer)) {
+            synchronized (myLock) {
+                if (reserve(Encoder.PROPERTIES_SIZE)) {
+                    myPending.properties(idOf(theLayer), theLayer);
+                    appended(Encoder.PROPERTIES_SIZE);
+                }
+            }
+        } else {
+            writeLayer(theLayer);
+        }
+    }
+
+    /**
+     * Appends any layers not yet in the journal, followed by the order of the layers.
+     * @param theLayers Layers of the drawing.
+     */
+    @Override
+    public void layersChanged(final LayerStack theLayers) {
+        for (Layer layer : theLayers.getLayers()) {
+            if (!myWritten.contains(layer)) {
+                writeLayer(layer);
+            }
+        }
+        final int size = Encoder.orderSize(theLayers.size());
+        synchronized (myLock) {
+            if (reserve(size)) {
+                myPending.order(theLayers, myIds);
+                appended(size);
+            }
+        }
+    }
+
+    /**
+     * Compacts the journal into the new drawing.
+     * @param theLayers Layers of the drawing.
+     */
+    @Override
+    public void drawingReset(final LayerStack theLayers) {
+        final Snapshot snapshot = takeSnapshot(theLayers);
+        synchronized (myLock) {
+            queueSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Waits until every change appended so far is durable on the disk.
+     * @throws IOException If the journal could not be written, or the wait was interrupted.
+     */
+    public void flush() throws IOException {
+        synchronized (myLock) {
+            final long target = myQueued;
+            while (myDurable < target && myError == null && myThread.isAlive()) {
+                try {
+                    myLock.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the journal");
+                }
+            }
+            if (myError != null) {
+                throw myError;
+            }
+        }
+    }
+
+    /**
+     * Stops keeping the journal, once every change appended so far is durable on the disk.
+     * The file is left in place, so it should be deleted if the drawing no longer needs
+     * to be recovered.
+     * @throws IOException If any part of the journal could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        myPanel.removeDrawingListener(this);
+        synchronized (myLock) {
+            myClosed = true;
+            myLock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (myThread.isAlive()) {
+            try {
+                myThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            myChannel.close();
+        } catch (final IOException e) {
+            if (myError == null) {
+                myError = e;
+            }
+        }
+        if (myError != null) {
+            throw myError;
+        }
+    }
+
+    /**
+     * Gets the journal file.
+     * @return Path of the journal.
+     */
+    public Path getFile() {
+        return myFile;
+    }
+
+    /**
+     * Gets the number of records appended to the journal, not counting those written
+     * when it is compacted.
+     * @return Number of records.
+     */
+    public long getRecordCount() {
+        synchronized (myLock) {
+            return myRecordCount;
+        }
+    }
+
+    /**
+     * Gets the number of times records were forced to the disk. Fewer than the number
+     * of records when changes came faster than the disk could sync them.
+     * @return Number of syncs.
+     */
+    public long getCommitCount() {
+        synchronized (myLock) {
+            return myCommits;
+        }
+    }
+
+    /**
+     * Appends a layer and all of its shapes, marking it as written.
+     * @param theLayer Layer to write.
+     */
+    private void writeLayer(final Layer theLayer) {
+        final ShapeStore shapes = theLayer.getShapes();
+        final byte[] path = pathOf(theLayer.getDocument());
+        long size = Encoder.layerSize(path);
+        for (int id = 0; id < shapes.size(); id++) {
+            size += Encoder.shapeSize(shapes, id);
+        }
+        myWritten.add(theLayer);
+        synchronized (myLock) {
+            if (size > MAX_PENDING_BYTES) {
+                queueSnapshot(takeSnapshot(myPanel.getLayers()));
+            } else if (reserve((int) size)) {
+                final int layerId = idOf(theLayer);
+                myPending.layer(layerId, theLayer, path);
+                for (int id = 0; id < shapes.size(); id++) {
+                    myPending.shape(layerId, shapes, id);
+                }
+                appended(size);
+                myRecordCount += shapes.size();
+            }
+        }
+    }
+
+    /**
+     * Makes sure a record fits in the pending buffer. If the background thread has fallen
+     * so far behind that it would not, the pending records are replaced by the drawing,
+     * which the listener calls already include the record in. Must hold the lock.
+     * @param theSize Size of the record in bytes.
+     * @return Whether the record should be encoded.
+     */
+    private boolean reserve(final int theSize) {
+        if (myError != null || myClosed) {
+            return false;
+        }
+        if (myPending.size() + (long) theSize > MAX_PENDING_BYTES) {
+            queueSnapshot(takeSnapshot(myPanel.getLayers()));
+            return false;
+        }
+        myPending.ensureCapacity(theSize);
+        return true;
+    }
+
+    /**
+     * Counts a record just encoded, hands it to the background thread, and compacts the
+     * journal if enough has been appended. Must hold the lock.
+     * @param theSize Size of the record in bytes.
+     */
+    private void appended(final long theSize) {
+        myAppended += theSize;
+        myRecordCount++;
+        myQueued++;
+        myLock.notifyAll();
+        if (myAppended > Math.max(MIN_COMPACT_BYTES, myCompactedSize)) {
+            queueSnapshot(takeSnapshot(myPanel.getLayers()));
+        }
+    }
+
+    /**
+     * Replaces the pending records with a drawing to compact the journal into, and marks
+     * the layers in it as written. Must hold the lock.
+     * @param theSnapshot Drawing as it is now.
+     */
+    private void queueSnapshot(final Snapshot theSnapshot) {
+        if (myError != null || myClosed) {
+            return;
+        }
+        mySnapshot = theSnapshot;
+        myPending.clear();
+        myWritten.clear();
+        for (int i = 0; i < theSnapshot.myLayers.size(); i++) {
+            myWritten.add(theSnapshot.myLayers.get(i));
+        }
+        myAppended = 0;
+        myCompactedSize = theSnapshot.myByteSize;
+        myQueued++;
+        myLock.notifyAll();
+    }
+
+    /**
+     * Copies the state of the drawing so it can be written by the background thread.
+     * @param theLayers Layers of the drawing.
+     * @return Snapshot of the drawing.
+     */
+    private Snapshot takeSnapshot(final LayerStack theLayers) {
+        final Snapshot snapshot = new Snapshot(theLayers.size(), theLayers.getActiveIndex());
+        for (int i = 0; i < theLayers.size(); i++) {
+            final Layer layer = theLayers.get(i);
+            final ShapeStore shapes = layer.getShapes().snapshot();
+            snapshot.myLayers.add(layer);
+            snapshot.myShapes.add(shapes);
+            snapshot.myIds[i] = idOf(layer);
+            snapshot.myVisible[i] = layer.isVisible();
+            snapshot.myOpacity[i] = layer.getOpacity();
+            snapshot.myBlendMode[i] = (byte) layer.getBlendMode().ordinal();
+            snapshot.myPaths.add(pathOf(layer.getDocument()));
+            snapshot.myByteSize += shapes.getByteSize();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the id a layer is named by in the journal, giving it one if it has none.
+     * @param theLayer Layer to name.
+     * @return Id of the layer.
+     */
+    private int idOf(final Layer theLayer) {
+        Integer id = myIds.get(theLayer);
+        if (id == null) {
+            id = myNextId++;
+            myIds.put(theLayer, id);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the path of a document as it is stored in the journal.
+     * @param theDocument Document, or null if there is none.
+     * @return UTF-8 bytes of the absolute path of its file, or null if there is none.
+     */
+    private static byte[] pathOf(final MappedDocument theDocument) {
+        if (theDocument == null) {
+            return null;
+        }
+        return theDocument.getFile().toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the journal until the writer is closed or a write fails, on the background
+     * thread. Each pass takes everything handed over since the last one, compacts the
+     * journal if a snapshot is waiting, writes the records after it, and forces them
+     * to the disk together.
+     */
+    private void writeJournal() {
+        try {
+            while (true) {
+                final Snapshot snapshot;
+                final long queued;
+                synchronized (myLock) {
+                    while (mySnapshot == null && myPending.size() == 0 && !myClosed) {
+                        myLock.wait();
+                    }
+                    if (mySnapshot == null && myPending.size() == 0) {
+                        return;
+                    }
+                    snapshot = mySnapshot;
+                    mySnapshot = null;
+                    final Encoder pending = myPending;
+                    myPending = myWriting;
+                    myWriting = pending;
+                    queued = myQueued;
+                }
+                if (snapshot != null) {
+                    compact(snapshot);
+                }
+                if (myWriting.size() > 0) {
+                    final ByteBuffer buffer = myWriting.flip();
+                    while (buffer.hasRemaining()) {
+                        myChannel.write(buffer);
+                    }
+                    myChannel.force(false);
+                }
+                myWriting.clear();
+                synchronized (myLock) {
+                    myDurable = queued;
+                    myCommits++;
+                    myLock.notifyAll();
+                }
+            }
+        } catch (final IOException e) {
+            failed(e);
+        } catch (final InterruptedException e) {
+            failed(new InterruptedIOException("Journal writer interrupted"));
+        }
+    }
+
+    /**
+     * Records the first error writing the journal and wakes anyone waiting on it.
+     * No more changes are buffered once the journal has failed.
+     * @param theError Error writing the journal.
+     */
+    private void failed(final IOException theError) {
+        synchronized (myLock) {
+            if (myError == null) {
+                myError = theError;
+            }
+            mySnapshot = null;
+            myPending.clear();
+            myLock.notifyAll();
+        }
+    }
+
+    /**
+     * Replaces the journal with a drawing, on the background thread. The drawing is
+     * written to a temporary file and forced to the disk before it is moved over the
+     * journal, so a crash leaves either the old journal or the new one whole.
+     * @param theSnapshot Drawing to write.
+     * @throws IOException If the journal could not be replaced.
+     */
+    private void compact(final Snapshot theSnapshot) throws IOException {
+        final Path temporary = myFile.resolveSibling(myFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            final Encoder encoder = new Encoder(COMPACT_BUFFER_SIZE);
+            encoder.header();
+            for (int i = 0; i < theSnapshot.myShapes.size(); i++) {
+                final ShapeStore shapes = theSnapshot.myShapes.get(i);
+                final byte[] path = theSnapshot.myPaths.get(i);
+                final int layerId = theSnapshot.myIds[i];
+                encoder.ensureCapacity(Encoder.layerSize(path));
+                encoder.layer(layerId, theSnapshot.myVisible[i], theSnapshot.myOpacity[i],
+                              theSnapshot.myBlendMode[i], path);
+                for (int id = 0; id < shapes.size(); id++) {
+                    final int size = Encoder.shapeSize(shapes, id);
+                    if (encoder.size() + size > COMPACT_BUFFER_SIZE) {
+                        encoder.writeTo(channel);
+                    }
+                    encoder.ensureCapacity(size);
+                    encoder.shape(layerId, shapes, id);
+                }
+            }
+            encoder.ensureCapacity(Encoder.orderSize(theSnapshot.myIds.length));
+            encoder.order(theSnapshot.myActive, theSnapshot.myIds);
+            encoder.writeTo(channel);
+            channel.force(true);
+        }
+        myChannel.close();
+        try {
+            Files.move(temporary, myFile, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temporary, myFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory();
+        myChannel = FileChannel.open(myFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Forces the directory holding the journal to the disk, so the move replacing it is
+     * durable. Not every platform can open a directory, so failing to is ignored.
+     */
+    private void syncDirectory() {
+        final Path parent = myFile.getParent();
+        if (parent == null) {
+            return;
+        }
+        try (FileChannel directory = FileChannel.open(parent, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (final IOException e) {
+            //The move is still atomic, it just might not survive a power failure.
+        }
+    }
+
+    /**
+     * State of a drawing at one moment, read without touching the live layers.
+     */
+    private static final class Snapshot {
+
+        /** Layers of the drawing, bottom first, used to mark them as written. */
+        private final List<Layer> myLayers;
+
+        /** Snapshots of the shapes of each layer. */
+        private final List<ShapeStore> myShapes;
+
+        /** UTF-8 path of the document of each layer, or null for those with none. */
+        private final List<byte[]> myPaths;
+
+        /** Id of each layer. */
+        private final int[] myIds;
+
+        /** Whether each layer is shown. */
+        private final boolean[] myVisible;
+
+        /** Opacity of each layer. */
+        private final float[] myOpacity;
+
+        /** Ordinal of the blend mode of each layer. */
+        private final byte[] myBlendMode;
+
+        /** Position of the active layer. */
+        private final int myActive;
+
+        /** Memory used by the shapes of every layer, in bytes. */
+        private long myByteSize;
+
+        /**
+         * Constructs an empty snapshot to be filled in.
+         * @param theCount Number of layers.
+         * @param theActive Position of the active layer.
+         */
+        private Snapshot(final int theCount, final int theActive) {
+            myLayers = new ArrayList<Layer>(theCount);
+            myShapes = new ArrayList<ShapeStore>(theCount);
+            myPaths = new ArrayList<byte[]>(theCount);
+            myIds = new int[theCount];
+            myVisible = new boolean[theCount];
+            myOpacity = new float[theCount];
+            myBlendMode = new byte[theCount];
+            myActive = theActive;
+        }
+    }
+
+    /**
+     * Buffer records are encoded into, each framed by its length and checksum.
+     */
+    private static final class Encoder {
+
+        /** Size of a record framing a body, in bytes. */
+        private static final int FRAME_SIZE = JournalFormat.LENGTH_SIZE + 1
+                        + JournalFormat.CHECKSUM_SIZE;
+
+        /** Size of a truncate record, in bytes. */
+        private static final int TRUNCATE_SIZE = FRAME_SIZE + 8;
+
+        /** Size of a properties record, in bytes. */
+        private static final int PROPERTIES_SIZE = FRAME_SIZE + 10;
+
+        /** Checksum of the record being encoded. */
+        private final CRC32 myChecksum;
+
+        /** Buffer holding the encoded records. */
+        private ByteBuffer myBuffer;
+
+        /** Codec encoding the shapes. */
+        private final ShapeRecord myRecord;
+
+        /** Position of the body of the record being encoded. */
+        private int myStart;
+
+        /**
+         * Constructs an empty buffer.
+         * @param theCapacity Initial capacity in bytes.
+         */
+        private Encoder(final int theCapacity) {
+            myChecksum = new CRC32();
+            myBuffer = ByteBuffer.allocate(theCapacity);
+            myRecord = new ShapeRecord();
+        }
+
+        /**
+         * Gets the size of a shape record.
+         * @param theShapes Shapes holding the shape.
+         * @param theId Id of the shape.
+         * @return Size in bytes.
+         */
+        private static int shapeSize(final ShapeStore theShapes, final int theId) {
+            return FRAME_SIZE + 4 + ShapeRecord.size(theShapes, theId);
+        }
+
+        /**
+         * Gets the size of a layer record.
+         * @param thePath UTF-8 path of the document of the layer, or null if there is none.
+         * @return Size in bytes.
+         */
+        private static int layerSize(final byte[] thePath) {
+            return FRAME_SIZE + 14 + (thePath == null ? 0 : thePath.length);
+        }
+
+        /**
+         * Gets the size of an order record.
+         * @param theCount Number of layers.
+         * @return Size in bytes.
+         */
+        private static int orderSize(final int theCount) {
+            return FRAME_SIZE + 8 + theCount * 4;
+        }
+
+        /**
+         * Gets the number of bytes encoded.
+         * @return Size of the records in the buffer.
+         */
+        private int size() {
+            return myBuffer.position();
+        }
+
+        /**
+         * Grows the buffer if needed so a record fits after those already in it.
+         * @param theSize Size of the record in bytes.
+         */
+        private void ensureCapacity(final int theSize) {
+            if (myBuffer.remaining() < theSize) {
+                final int capacity = Math.max(myBuffer.position() + theSize,
+                                              myBuffer.capacity() * 2);
+                final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+                myBuffer.flip();
+                buffer.put(myBuffer);
+                myBuffer = buffer;
+            }
+        }
+
+        /**
+         * Empties the buffer.
+         */
+        private void clear() {
+            myBuffer.clear();
+        }
+
+        /**
+         * Gets the records for writing. The buffer must be cleared before more are encoded.
+         * @return Buffer from the start of the records to their end.
+         */
+        private ByteBuffer flip() {
+            myBuffer.flip();
+            return myBuffer;
+        }
+
+        /**
+         * Writes the records to a channel and empties the buffer.
+         * @param theChannel Channel to write to.
+         * @throws IOException If the records could not be written.
+         */
+        private void writeTo(final FileChannel theChannel) throws IOException {
+            myBuffer.flip();
+            while (myBuffer.hasRemaining()) {
+                theChannel.write(myBuffer);
+            }
+            myBuffer.clear();
+        }
+
+        /**
+         * Encodes the file header. The buffer must be empty and have room for it.
+         */
+        private void header() {
+            myBuffer.putInt(JournalFormat.MAGIC);
+            myBuffer.putInt(JournalFormat.VERSION);
+        }
+
+        /**
+         * Encodes a layer record.
+         * @param theId Id of the layer.
+         * @param theLayer Layer to encode.
+         * @param thePath UTF-8 path of the document of the layer, or null if there is none.
+         */
+        private void layer(final int theId, final Layer theLayer, final byte[] thePath) {
+            layer(theId, theLayer.isVisible(), theLayer.getOpacity(),
+                  (byte) theLayer.getBlendMode().ordinal(), thePath);
+        }
+
+        /**
+         * Encodes a layer record.
+         * @param theId Id of the layer.
+         * @param theVisible Whether the layer is shown.
+         * @param theOpacity Opacity of the layer.
+         * @param theBlendMode Ordinal of the blend mode of the layer.
+         * @param thePath UTF-8 path of the document of the layer, or null if there is none.
+         */
+        private void layer(final int theId, final boolean theVisible, final float theOpacity,
+                           final byte theBlendMode, final byte[] thePath) {
+            begin(JournalFormat.LAYER);
+            myBuffer.putInt(theId);
+            myBuffer.put(theVisible ? (byte) 1 : (byte) 0);
+            myBuffer.putFloat(theOpacity);
+            myBuffer.put(theBlendMode);
+            if (thePath == null) {
+                myBuffer.putInt(-1);
+            } else {
+                myBuffer.putInt(thePath.length);
+                myBuffer.put(thePath);
+            }
+            end();
+        }
+
+        /**
+         * Encodes a shape record.
+         * @param theLayer Id of the layer holding the shape.
+         * @param theShapes Shapes holding the shape.
+         * @param theId Id of the shape.
+         */
+        private void shape(final int theLayer, final ShapeStore theShapes, final int theId) {
+            begin(JournalFormat.SHAPE);
+            myBuffer.putInt(theLayer);
+            myRecord.write(myBuffer, theShapes, theId);
+            end();
+        }
+
+        /**
+         * Encodes a truncate record.
+         * @param theLayer Id of the layer.
+         * @param theSize Number of shapes left on the layer.
+         */
+        private void truncate(final int theLayer, final int theSize) {
+            begin(JournalFormat.TRUNCATE);
+            myBuffer.putInt(theLayer);
+            myBuffer.putInt(theSize);
+            end();
+        }
+
+        /**
+         * Encodes a properties record.
+         * @param theId Id of the layer.
+         * @param theLayer Layer to encode the properties of.
+         */
+        private void properties(final int theId, final Layer theLayer) {
+            begin(JournalFormat.PROPERTIES);
+            myBuffer.putInt(theId);
+            myBuffer.put(theLayer.isVisible() ? (byte) 1 : (byte) 0);
+            myBuffer.putFloat(theLayer.getOpacity());
+            myBuffer.put((byte) theLayer.getBlendMode().ordinal());
+            end();
+        }
+
+        /**
+         * Encodes an order record for the layers of a drawing.
+         * @param theLayers Layers of the drawing.
+         * @param theIds Ids of the layers, which must all have one.
+         */
+        private void order(final LayerStack theLayers, final Map<Layer, Integer> theIds) {
+            final int[] ids = new int[theLayers.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = theIds.get(theLayers.get(i));
+            }
+            order(theLayers.getActiveIndex(), ids);
+        }
+
+        /**
+         * Encodes an order record.
+         * @param theActive Position of the active layer.
+         * @param theIds Ids of the layers, bottom first.
+         */
+        private void order(final int theActive, final int[] theIds) {
+            begin(JournalFormat.ORDER);
+            myBuffer.putInt(theActive);
+            myBuffer.putInt(theIds.length);
+            for (int id : theIds) {
+                myBuffer.putInt(id);
+            }
+            end();
+        }
+
+        /**
+         * Starts a record, leaving room for its length.
+         * @param theType Type of the record.
+         */
+        private void begin(final byte theType) {
+            myBuffer.position(myBuffer.position() + JournalFormat.LENGTH_SIZE);
+            myStart = myBuffer.position();
+            myBuffer.put(theType);
+        }
+
+        /**
+         * Ends a record, filling in its length and appending its checksum.
+         */
+        private void end() {
+            final int length = myBuffer.position() - myStart;
+            myBuffer.putInt(myStart - JournalFormat.LENGTH_SIZE, length);
+            myChecksum.reset();
+            myChecksum.update(myBuffer.array(), myBuffer.arrayOffset() + myStart, length);
+            myBuffer.putInt((int) myChecksum.getValue());
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package document;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import drawtools.AbstractPathShape;
+import paintwindow.StyleBatch;
+import paintwindow.Styles;
+
+/**
+ * Read-only view of a document file that is mapped into memory instead of loaded.
+ * The index at the end of the file is used to find the shapes touching an area,
+ * and those shapes are drawn straight from the mapped file, so opening a document
+ * takes the same time and heap no matter how many shapes it holds.
+ * The operating system pages in only the parts of the file that are drawn.
+ * Drawing only reads the mapping, so it is safe from several threads at once,
+ * such as the event dispatch thread and an export running in the background.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class MappedDocument implements Closeable {
+
+    /** Number of bytes of the file each mapped segment starts after the previous one. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Number of bytes each segment overlaps the next, so records and index entries
+     * that start near the end of a segment can usually still be read from it.
+     */
+    private static final int SEGMENT_OVERLAP = 1 << 20;
+
+    /** Number of coordinates used by each PathIterator segment type. */
+    private static final int[] COORDS_PER_SEGMENT = {2, 2, 4, 6, 0};
+
+    /** File the document was opened from. */
+    private final Path myFile;
+
+    /** Channel to the file, used to read records that straddle two segments. */
+    private final FileChannel myChannel;
+
+    /** Mapped segments of the file, in order. */
+    private final MappedByteBuffer[] mySegments;
+
+    /** Size of the file, in bytes. */
+    private final long myFileSize;
+
+    /** Number of shapes in the document. */
+    private final int myShapeCount;
+
+    /** Number of shapes whose bounds are combined into each group of the index. */
+    private final int myGroupSize;
+
+    /** Number of groups in the index. */
+    private final int myGroupCount;
+
+    /** File position of the bounds of the first group in the index. */
+    private final long myGroupsStart;
+
+    /** File position of the first shape entry in the index. */
+    private final long myEntriesStart;
+
+    /**
+     * Constructs a view of an open file and checks its header and index.
+     * @param theFile File the channel was opened on.
+     * @param theChannel Channel to the file. Closed when the document is.
+     * @throws IOException If the file could not be mapped or has no valid index.
+     */
+    private MappedDocument(final Path theFile, final FileChannel theChannel) throws IOException {
+        myFile = theFile;
+        myChannel = theChannel;
+        myFileSize = theChannel.size();
+        final int segmentCount = (int) ((myFileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        mySegments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            final long start = i * SEGMENT_SIZE;
+            final long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, myFileSize - start);
+            mySegments[i] = theChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+
+        final long endStart = myFileSize - DocumentFormat.CHUNK_HEADER_SIZE
+                              - DocumentFormat.END_SIZE;
+        if (endStart < DocumentFormat.HEADER_SIZE) {
+            throw new IOException("Not a Magic Paint document");
+        }
+        final ByteBuffer header = region(0, DocumentFormat.HEADER_SIZE);
+        if (header.getInt(0) != DocumentFormat.MAGIC) {
+            throw new IOException("Not a Magic Paint document");
+        }
+        if (header.getInt(4) != DocumentFormat.VERSION) {
+            throw new IOException("Unsupported document version " + header.getInt(4));
+        }
+        final ByteBuffer end = region(endStart, DocumentFormat.CHUNK_HEADER_SIZE
+                                                + DocumentFormat.END_SIZE);
+        if (end.getInt(0) != DocumentFormat.CHUNK_END
+                        || end.getInt(4) != DocumentFormat.END_SIZE) {
+            throw new IOException("Document has no index, so it must be opened in full");
+        }
+        final long indexStart = end.getLong(DocumentFormat.CHUNK_HEADER_SIZE);
+        if (indexStart < DocumentFormat.HEADER_SIZE || indexStart > endStart
+                        - DocumentFormat.CHUNK_HEADER_SIZE - DocumentFormat.INDEX_HEADER_SIZE) {
+            throw new IOException("Document has no index, so it must be opened in full");
+        }
+        final ByteBuffer index = region(indexStart, DocumentFormat.CHUNK_HEADER_SIZE
+                                                    + DocumentFormat.INDEX_HEADER_SIZE);
+        final int length = index.getInt(4);
+        myShapeCount = index.getInt(DocumentFormat.CHUNK_HEADER_SIZE);
+        myGroupSize = index.getInt(DocumentFormat.CHUNK_HEADER_SIZE + 4);
+        myGroupCount = index.getInt(DocumentFormat.CHUNK_HEADER_SIZE + 8);
+        myGroupsStart = indexStart + DocumentFormat.CHUNK_HEADER_SIZE
+                        + DocumentFormat.INDEX_HEADER_SIZE;
+        myEntriesStart = myGroupsStart
+                         + (long) myGroupCount * DocumentFormat.INDEX_GROUP_ENTRY_SIZE;
+        if (index.getInt(0) != DocumentFormat.CHUNK_INDEX || myShapeCount < 0
+                        || myGroupSize <= 0 || myGroupCount < 0
+                        || myGroupCount != (myShapeCount + (long) myGroupSize - 1) / myGroupSize
+                        || myEntriesStart + (long) myShapeCount * DocumentFormat.INDEX_ENTRY_SIZE
+                           != indexStart + DocumentFormat.CHUNK_HEADER_SIZE + length
+                        || indexStart + DocumentFormat.CHUNK_HEADER_SIZE + length > endStart) {
+            throw new IOException("Corrupt document index");
+        }
+    }
+
+    /**
+     * Opens a document file for drawing straight from the file.
+     * @param theFile File to open.
+     * @return View of the document, which must be closed when no longer needed.
+     * @throws IOException If the file could not be opened or has no valid index.
+     */
+    public static MappedDocument open(final Path theFile) throws IOException {
+        final FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ);
+        try {
+            return new MappedDocument(theFile, channel);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the file the document was opened from.
+     * @return Path of the document's file.
+     */
+    public Path getFile() {
+        return myFile;
+    }
+
+    /**
+     * Gets the number of shapes in the document.
+     * @return Number of shapes.
+     */
+    public int size() {
+        return myShapeCount;
+    }
+
+    /**
+     * Gets the number of groups of shapes in the index.
+     * @return Number of groups.
+     */
+    public int getGroupCount() {
+        return myGroupCount;
+    }
+
+    /**
+     * Gets the combined stroked bounds of a group of shapes in the index.
+     * @param theGroup Index of the group.
+     * @return Area covered by every shape in the group.
+     */
+    public Rectangle getGroupBounds(final int theGroup) {
+        if (theGroup < 0 || theGroup >= myGroupCount) {
+            throw new IndexOutOfBoundsException("Group " + theGroup + " of " + myGroupCount);
+        }
+        return readBounds(region(myGroupsStart
+                                 + (long) theGroup * DocumentFormat.INDEX_GROUP_ENTRY_SIZE,
+                                 DocumentFormat.INDEX_GROUP_ENTRY_SIZE), 0);
+    }
+
+    /**
+     * Gets the stroked bounds of a shape.
+     * @param theId Position of the shape in the document.
+     * @return Area of the canvas the shape covers.
+     */
+    public Rectangle getBounds(final int theId) {
+        checkId(theId);
+        return readBounds(entry(theId), 8);
+    }
+
+    /**
+     * Draws every shape whose stroked bounds touch an area, in order, reading each
+     * one straight from the file. Whole groups of shapes outside the area are skipped
+     * using the index. Records that can not be read are skipped.
+     * @param theGraphics Graphics to draw the shapes with, already clipped to the area.
+     * @param theArea Area of the canvas that needs to be drawn.
+     */
+    public void render(final Graphics2D theGraphics, final Rectangle theArea) {
+        render(theGraphics, theArea, 1);
+    }
+
+    /**
+     * Draws every shape whose stroked bounds touch an area at a scale, in order.
+     * When zoomed out, a shape smaller than a pixel is drawn as a single pixel in its
+     * color, using the bounds in the index, so only the color of its record is read.
+     * The stroke and color of the graphics only change between shapes of different styles.
+     * @param theGraphics Graphics to draw the shapes with, already clipped to the area.
+     * @param theArea Area of the canvas that needs to be drawn.
+     * @param theScale Number of pixels per canvas pixel the graphics draw at.
+     */
+    public void render(final Graphics2D theGraphics, final Rectangle theArea,
+                       final double theScale) {
+        final int pixel = (int) Math.ceil(1 / theScale);
+        final StyleBatch batch = new StyleBatch(theGraphics);
+        for (int group = 0; group < myGroupCount; group++) {
+            if (!intersects(myGroupsStart
+                            + (long) group * DocumentFormat.INDEX_GROUP_ENTRY_SIZE, theArea)) {
+                continue;
+            }
+            final int last = (int) Math.min(myShapeCount, (long) (group + 1) * myGroupSize);
+            for (int id = group * myGroupSize; id < last; id++) {
+                final long entry = myEntriesStart + (long) id * DocumentFormat.INDEX_ENTRY_SIZE;
+                if (!intersects(entry + 8, theArea)) {
+                    continue;
+                }
+                final long position = getLong(entry);
+                final int width = getInt(entry + 16);
+                final int height = getInt(entry + 20);
+                if (Math.max(width, height) * theScale < 1) {
+                    if (position >= DocumentFormat.HEADER_SIZE && position <= myFileSize - 4) {
+                        batch.fillRect(getInt(entry + 8) + width / 2 - pixel / 2,
+                                       getInt(entry + 12) + height / 2 - pixel / 2,
+                                       pixel, pixel, Styles.color(getInt(position)));
+                    }
+                    continue;
+                }
+                final MappedPath path = record(position);
+                if (path != null && ShapeRecord.isFilled(path.myFlags)) {
+                    batch.fill(path, Styles.color(path.myRgb));
+                } else if (path != null) {
+                    batch.draw(path, Styles.stroke(path.myWidth), Styles.color(path.myRgb));
+                }
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Writes every shape in the document to a writer, in order,
+     * as when the document is saved with new shapes added to it.
+     * @param theWriter Writer to copy the shapes to.
+     * @throws IOException If a record could not be read or written.
+     */
+    public void copyTo(final DocumentWriter theWriter) throws IOException {
+        byte[] segments = new byte[64];
+        float[] coords = new float[128];
+        for (int id = 0; id < myShapeCount; id++) {
+            final ByteBuffer entry = entry(id);
+            final MappedPath path = record(entry.getLong(0));
+            if (path == null) {
+                throw new IOException("Corrupt shape record " + id);
+            }
+            if (segments.length < path.mySegmentCount) {
+                segments = new byte[path.mySegmentCount];
+            }
+            if (coords.length < path.myCoordCount) {
+                coords = new float[path.myCoordCount];
+            }
+            for (int i = 0; i < path.mySegmentCount; i++) {
+                segments[i] = path.myBuffer.get(path.mySegmentsStart + i);
+            }
+            for (int i = 0; i < path.myCoordCount; i++) {
+                coords[i] = path.myBuffer.getFloat(path.myCoordsStart + i * 4);
+            }
+            theWriter.writeRecord(path.myRgb, path.myWidth, path.myFlags, segments,
+                                  path.mySegmentCount, coords, path.myCoordCount,
+                                  readBounds(entry, 8));
+        }
+    }
+
+    /**
+     * Closes the channel to the file. The mapping itself is released once
+     * the document is no longer referenced.
+     * @throws IOException If the channel could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        myChannel.close();
+    }
+
+    /**
+     * Gets the index entry of a shape.
+     * @param theId Position of the shape in the document.
+     * @return Buffer holding the entry, starting at index 0.
+     */
+    private ByteBuffer entry(final int theId) {
+        return region(myEntriesStart + (long) theId * DocumentFormat.INDEX_ENTRY_SIZE,
+                      DocumentFormat.INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * Checks whether bounds stored in the file touch an area, without creating
+     * any objects, since every entry of a visible group is checked on each draw.
+     * @param thePosition File position of bounds stored as x, y, width, height.
+     * @param theArea Area to check against.
+     * @return Whether the bounds and the area overlap.
+     */
+    private boolean intersects(final long thePosition, final Rectangle theArea) {
+        final MappedByteBuffer segment = mySegments[(int) (thePosition / SEGMENT_SIZE)];
+        final int start = (int) (thePosition % SEGMENT_SIZE);
+        final int x = segment.getInt(start);
+        final int y = segment.getInt(start + 4);
+        final int width = segment.getInt(start + 8);
+        final int height = segment.getInt(start + 12);
+        return width > 0 && height > 0
+               && x < theArea.x + theArea.width && theArea.x < x + width
+               && y < theArea.y + theArea.height && theArea.y < y + height;
+    }
+
+    /**
+     * Reads a long from the file. Like the other fixed-size reads of the index,
+     * it always fits in one segment because segments overlap.
+     * @param thePosition File position of the value.
+     * @return Value that was read.
+     */
+    private long getLong(final long thePosition) {
+        return mySegments[(int) (thePosition / SEGMENT_SIZE)]
+                        .getLong((int) (thePosition % SEGMENT_SIZE));
+    }
+
+    /**
+     * Reads an int from the file. Like getLong, it always fits in one segment.
+     * @param thePosition File position of the value.
+     * @return Value that was read.
+     */
+    private int getInt(final long thePosition) {
+        return mySegments[(int) (thePosition / SEGMENT_SIZE)]
+                        .getInt((int) (thePosition % SEGMENT_SIZE));
+    }
+
+    /**
+     * Gets a view of the shape record at a position in the file.
+     * @param thePosition File position of the record.
+     * @return View of the record, or null if the record is corrupt or could not be read.
+     */
+    private MappedPath record(final long thePosition) {
+        if (thePosition < DocumentFormat.HEADER_SIZE
+                        || thePosition > myFileSize - DocumentFormat.RECORD_HEADER_SIZE) {
+            return null;
+        }
+        final ByteBuffer header = region(thePosition, DocumentFormat.RECORD_HEADER_SIZE);
+        if (header == null) {
+            return null;
+        }
+        final int segmentCount = header.getInt(9);
+        final int coordCount = header.getInt(13);
+        final long size = DocumentFormat.RECORD_HEADER_SIZE + (long) segmentCount
+                          + coordCount * 4L;
+        if (segmentCount < 0 || coordCount < 0 || size > DocumentFormat.MAX_CHUNK_SIZE
+                        || thePosition + size > myFileSize) {
+            return null;
+        }
+        final ByteBuffer record = region(thePosition, (int) size);
+        if (record == null) {
+            return null;
+        }
+        return new MappedPath(record, header.getInt(0), header.getFloat(4), header.get(8),
+                              segmentCount, coordCount);
+    }
+
+    /**
+     * Gets a buffer holding a range of the file. Ranges inside a single segment are
+     * a view of the mapped memory, and the rare range that straddles two segments
+     * is read from the channel instead.
+     * @param thePosition File position of the start of the range.
+     * @param theLength Number of bytes in the range.
+     * @return Buffer holding the range, starting at index 0, or null if it could not be read.
+     */
+    private ByteBuffer region(final long thePosition, final int theLength) {
+        final MappedByteBuffer segment = mySegments[(int) (thePosition / SEGMENT_SIZE)];
+        final int start = (int) (thePosition % SEGMENT_SIZE);
+        if (start + (long) theLength <= segment.capacity()) {
+            final ByteBuffer view = segment.duplicate();
+            view.position(start);
+            view.limit(start + theLength);
+            return view.slice();
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(theLength);
+        try {
+            while (copy.hasRemaining()) {
+                if (myChannel.read(copy, thePosition + copy.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+        } catch (final IOException e) {
+            return null;
+        }
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Reads bounds stored as x, y, width, height.
+     * @param theBuffer Buffer holding the bounds.
+     * @param theIndex Index of the bounds in the buffer.
+     * @return Bounds that were read.
+     */
+    private static Rectangle readBounds(final ByteBuffer theBuffer, final int theIndex) {
+        return new Rectangle(theBuffer.getInt(theIndex), theBuffer.getInt(theIndex + 4),
+                             theBuffer.getInt(theIndex + 8), theBuffer.getInt(theIndex + 12));
+    }
+
+    /**
+     * Checks that an id refers to a shape in the document.
+     * @param theId Id to check.
+     */
+    private void checkId(final int theId) {
+        if (theId < 0 || theId >= myShapeCount) {
+            throw new IndexOutOfBoundsException("Shape " + theId + " of " + myShapeCount);
+        }
+    }
+
+    /**
+     * Read-only shape that reads its geometry straight from a record in the file.
+     */
+    private static final class MappedPath extends AbstractPathShape {
+
+        /** Buffer holding the whole record, starting at index 0. */
+        private final ByteBuffer myBuffer;
+
+        /** ARGB value of the shape's color. */
+        private final int myRgb;
+
+        /** Width of the shape's stroke. */
+        private final float myWidth;
+
+        /** Whether the shape is stroked or filled, as one of the flags values of the format. */
+        private final byte myFlags;
+
+        /** Number of segments in the shape. */
+        private final int mySegmentCount;
+
+        /** Number of coordinates in the shape. */
+        private final int myCoordCount;
+
+        /** Index of the first segment type in the buffer. */
+        private final int mySegmentsStart;
+
+        /** Index of the first coordinate in the buffer. */
+        private final int myCoordsStart;
+
+        /**
+         * Constructs a view of a record.
+         * @param theBuffer Buffer holding the whole record, starting at index 0.
+         * @param theRgb ARGB value of the shape's color.
+         * @param theWidth Width of the shape's stroke.
+         * @param theFlags Whether the shape is stroked or filled.
+         * @param theSegmentCount Number of segments in the shape.
+         * @param theCoordCount Number of coordinates in the shape.
+         */
+        private MappedPath(final ByteBuffer theBuffer, final int theRgb, final float theWidth,
+                           final byte theFlags, final int theSegmentCount,
+                           final int theCoordCount) {
+            super();
+            myBuffer = theBuffer;
+            myRgb = theRgb;
+            myWidth = theWidth;
+            myFlags = theFlags;
+            mySegmentCount = theSegmentCount;
+            myCoordCount = theCoordCount;
+            mySegmentsStart = DocumentFormat.RECORD_HEADER_SIZE;
+            myCoordsStart = DocumentFormat.RECORD_HEADER_SIZE + theSegmentCount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Rectangle2D getBounds2D() {
+            if (myCoordCount < 2) {
+                return new Rectangle2D.Float();
+            }
+            float minX = Float.POSITIVE_INFINITY;
+            float minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY;
+            float maxY = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i + 1 < myCoordCount; i += 2) {
+                final float x = myBuffer.getFloat(myCoordsStart + i * 4);
+                final float y = myBuffer.getFloat(myCoordsStart + i * 4 + 4);
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+            return new Rectangle2D.Float(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public PathIterator getPathIterator(final AffineTransform theTransform) {
+            return new MappedPathIterator(this, theTransform);
+        }
+    }
+
+    /**
+     * Iterator over the segments of a record in the file. Iteration stops early at
+     * an unknown segment type or when the coordinates run out, so a corrupt record
+     * draws as much of itself as it can.
+     */
+    private static final class MappedPathIterator implements PathIterator {
+
+        /** Shape being iterated over. */
+        private final MappedPath myPath;
+
+        /** Transform applied to each coordinate, or null for none. */
+        private final AffineTransform myTransform;
+
+        /** Index of the current segment. */
+        private int mySegment;
+
+        /** Index of the first coordinate of the current segment. */
+        private int myCoord;
+
+        /**
+         * Constructs an iterator at the first segment of a shape.
+         * @param thePath Shape to iterate over.
+         * @param theTransform Transform applied to each coordinate, or null for none.
+         */
+        private MappedPathIterator(final MappedPath thePath,
+                                   final AffineTransform theTransform) {
+            myPath = thePath;
+            myTransform = theTransform;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isDone() {
+            if (mySegment >= myPath.mySegmentCount) {
+                return true;
+            }
+            final int type = type();
+            return type < 0 || type >= COORDS_PER_SEGMENT.length
+                   || myCoord + COORDS_PER_SEGMENT[type] > myPath.myCoordCount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void next() {
+            myCoord += COORDS_PER_SEGMENT[type()];
+            mySegment++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int currentSegment(final float[] theCoords) {
+            final int type = type();
+            final int count = COORDS_PER_SEGMENT[type];
+            for (int i = 0; i < count; i++) {
+                theCoords[i] = myPath.myBuffer.getFloat(myPath.myCoordsStart
+                                                        + (myCoord + i) * 4);
+            }
+            if (myTransform != null) {
+                myTransform.transform(theCoords, 0, theCoords, 0, count / 2);
+            }
+            return type;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int currentSegment(final double[] theCoords) {
+            final int type = type();
+            final int count = COORDS_PER_SEGMENT[type];
+            for (int i = 0; i < count; i++) {
+                theCoords[i] = myPath.myBuffer.getFloat(myPath.myCoordsStart
+                                                        + (myCoord + i) * 4);
+            }
+            if (myTransform != null) {
+                myTransform.transform(theCoords, 0, theCoords, 0, count / 2);
+            }
+            return type;
+        }
+
+        /**
+         * Gets the type of the current segment.
+         * @return PathIterator constant of the current segment.
+         */
+        private int type() {
+            return myPath.myBuffer.get(myPath.mySegmentsStart + mySegment);
+        }
+    }
+}
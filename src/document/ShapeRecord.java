@@ -0,0 +1,167 @@
+package document;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import paintwindow.ShapeStore;
+import paintwindow.Styles;
+
+/**
+ * Encodes shapes into the shape record described in DocumentFormat and decodes them
+ * back. Documents, journals and shared sessions all store shapes as this record, so
+ * this is the only place its layout is written out. The arrays a shape is copied
+ * through are kept between shapes, so a codec must only be used by one thread at a time.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ShapeRecord {
+
+    /** Position of the number of segments within a record. */
+    private static final int SEGMENT_COUNT_OFFSET = 9;
+
+    /** Position of the number of coordinates within a record. */
+    private static final int COORD_COUNT_OFFSET = 13;
+
+    /** Segment types of the shape being encoded or decoded. Reused between shapes. */
+    private byte[] mySegments;
+
+    /** Coordinates of the shape being encoded or decoded. Reused between shapes. */
+    private float[] myCoords;
+
+    /**
+     * Constructs a codec.
+     */
+    public ShapeRecord() {
+        mySegments = new byte[64];
+        myCoords = new float[128];
+    }
+
+    /**
+     * Gets the size of a shape once encoded.
+     * @param theShapes Shapes holding the shape.
+     * @param theId Id of the shape.
+     * @return Size in bytes.
+     */
+    public static int size(final ShapeStore theShapes, final int theId) {
+        return DocumentFormat.RECORD_HEADER_SIZE + theShapes.getSegmentCount(theId)
+                        + theShapes.getCoordCount(theId) * 4;
+    }
+
+    /**
+     * Gets whether the flags of a record mark the shape as filled.
+     * @param theFlags Flags byte of the record.
+     * @return Whether the shape is filled inside its outline.
+     */
+    public static boolean isFilled(final byte theFlags) {
+        return (theFlags & DocumentFormat.FLAG_FILLED) != 0;
+    }
+
+    /**
+     * Encodes a shape.
+     * @param theBuffer Buffer to encode into, with room for the shape.
+     * @param theShapes Shapes holding the shape.
+     * @param theId Id of the shape.
+     */
+    public void write(final ByteBuffer theBuffer, final ShapeStore theShapes, final int theId) {
+        final int segmentCount = theShapes.getSegmentCount(theId);
+        final int coordCount = theShapes.getCoordCount(theId);
+        if (mySegments.length < segmentCount) {
+            mySegments = new byte[Math.max(segmentCount, mySegments.length * 2)];
+        }
+        if (myCoords.length < coordCount) {
+            myCoords = new float[Math.max(coordCount, myCoords.length * 2)];
+        }
+        theShapes.getSegments(theId, mySegments, 0);
+        theShapes.getCoords(theId, myCoords, 0);
+        final byte flags;
+        if (theShapes.isFilled(theId)) {
+            flags = DocumentFormat.FLAG_FILLED;
+        } else {
+            flags = DocumentFormat.FLAG_STROKED;
+        }
+        put(theBuffer, theShapes.getColor(theId).getRGB(),
+            theShapes.getStroke(theId).getLineWidth(), flags,
+            mySegments, segmentCount, myCoords, coordCount);
+    }
+
+    /**
+     * Encodes a shape from its raw parts.
+     * @param theBuffer Buffer to encode into, with room for the shape.
+     * @param theRgb ARGB value of the shape's color.
+     * @param theWidth Width of the shape's stroke.
+     * @param theFlags Whether the shape is stroked or filled, as one of the flags values
+     *        of DocumentFormat.
+     * @param theSegments Segment types of the shape, using the PathIterator constants.
+     * @param theSegmentCount Number of segments to encode.
+     * @param theCoords Coordinates of the shape, stored as x and y pairs.
+     * @param theCoordCount Number of coordinates to encode.
+     */
+    public static void put(final ByteBuffer theBuffer, final int theRgb, final float theWidth,
+                           final byte theFlags, final byte[] theSegments,
+                           final int theSegmentCount, final float[] theCoords,
+                           final int theCoordCount) {
+        theBuffer.putInt(theRgb);
+        theBuffer.putFloat(theWidth);
+        theBuffer.put(theFlags);
+        theBuffer.putInt(theSegmentCount);
+        theBuffer.putInt(theCoordCount);
+        theBuffer.put(theSegments, 0, theSegmentCount);
+        theBuffer.asFloatBuffer().put(theCoords, 0, theCoordCount);
+        theBuffer.position(theBuffer.position() + theCoordCount * 4);
+    }
+
+    /**
+     * Decodes a shape and adds it to the end of a store.
+     * @param theBuffer Buffer positioned at the shape, left just past it.
+     * @param theShapes Store to add the shape to.
+     * @throws IOException If the shape is corrupt.
+     */
+    public void read(final ByteBuffer theBuffer, final ShapeStore theShapes) throws IOException {
+        try {
+            final int rgb = theBuffer.getInt();
+            final float width = theBuffer.getFloat();
+            final byte flags = theBuffer.get();
+            final int segmentCount = theBuffer.getInt();
+            final int coordCount = theBuffer.getInt();
+            if (segmentCount < 0 || coordCount < 0
+                            || segmentCount + coordCount * 4L > theBuffer.remaining()) {
+                throw new IOException("Corrupt shape record");
+            }
+            if (mySegments.length < segmentCount) {
+                mySegments = new byte[segmentCount];
+            }
+            if (myCoords.length < coordCount) {
+                myCoords = new float[coordCount];
+            }
+            theBuffer.get(mySegments, 0, segmentCount);
+            theBuffer.asFloatBuffer().get(myCoords, 0, coordCount);
+            theBuffer.position(theBuffer.position() + coordCount * 4);
+            theShapes.add(mySegments, segmentCount, myCoords, Styles.stroke(width),
+                          Styles.color(rgb), isFilled(flags));
+        } catch (final IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Corrupt shape record", e);
+        }
+    }
+
+    /**
+     * Skips over an encoded shape without decoding it, checking that it fits.
+     * @param theBuffer Buffer positioned at the shape, left just past it.
+     * @return Size of the shape in bytes.
+     * @throws IOException If the shape runs past the end of the buffer.
+     */
+    public static int skip(final ByteBuffer theBuffer) throws IOException {
+        final int start = theBuffer.position();
+        if (theBuffer.remaining() < DocumentFormat.RECORD_HEADER_SIZE) {
+            throw new IOException("Corrupt shape record");
+        }
+        final int segmentCount = theBuffer.getInt(start + SEGMENT_COUNT_OFFSET);
+        final int coordCount = theBuffer.getInt(start + COORD_COUNT_OFFSET);
+        final long size = DocumentFormat.RECORD_HEADER_SIZE + (long) segmentCount
+                        + coordCount * 4L;
+        if (segmentCount < 0 || coordCount < 0 || size > theBuffer.remaining()) {
+            throw new IOException("Corrupt shape record");
+        }
+        theBuffer.position(start + (int) size);
+        return (int) size;
+    }
+}
@@ -0,0 +1,90 @@
+package drawtools;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Abstract class for read-only shapes that are views over geometry stored elsewhere,
+ * such as a buffer of points or a packed array of coordinates.
+ * Subclasses only provide their bounds and a path iterator, and every other
+ * behavior of a Shape is worked out from the path.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public abstract class AbstractPathShape implements Shape {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final double theX, final double theY) {
+        return Path2D.contains(getPathIterator(null), theX, theY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final Point2D thePoint) {
+        return contains(thePoint.getX(), thePoint.getY());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(final double theX, final double theY,
+                              final double theWidth, final double theHeight) {
+        return Path2D.intersects(getPathIterator(null), theX, theY, theWidth, theHeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(final Rectangle2D theRect) {
+        return intersects(theRect.getX(), theRect.getY(),
+                          theRect.getWidth(), theRect.getHeight());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final double theX, final double theY,
+                            final double theWidth, final double theHeight) {
+        return Path2D.contains(getPathIterator(null), theX, theY, theWidth, theHeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final Rectangle2D theRect) {
+        return contains(theRect.getX(), theRect.getY(),
+                        theRect.getWidth(), theRect.getHeight());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PathIterator getPathIterator(final AffineTransform theTransform,
+                                        final double theFlatness) {
+        return new FlatteningPathIterator(getPathIterator(theTransform), theFlatness);
+    }
+}
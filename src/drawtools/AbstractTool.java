@@ -1,5 +1,7 @@
 package drawtools;
 
+import java.awt.Rectangle;
+
 /**
  * Abstract class that stores common behavior all Paint Tools have.
  * Includes coordinates for where the cursor is/was at various useful locations,
@@ -66,6 +68,15 @@ public abstract class AbstractTool implements PaintTool {
         myCurrY = theY;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCurrPoint(final int theX, final int theY) {
+        setCurrX(theX);
+        setCurrY(theY);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -148,6 +159,18 @@ public abstract class AbstractTool implements PaintTool {
         myEnabled = theEnabled;
     }
     
+    /**
+     * {@inheritDoc}
+     * Covers the original and current positions of the cursor, which holds
+     * the whole shape for tools that are redrawn from the origin each time.
+     */
+    @Override
+    public Rectangle getUpdateBounds() {
+        final Rectangle bounds = new Rectangle(myOrigX, myOrigY, 0, 0);
+        bounds.add(myCurrX, myCurrY);
+        return bounds;
+    }
+    
     /**
      * Returns the name of the tool for debugging purposes.
      * @return Name of the tool for debugging purposes.
@@ -0,0 +1,34 @@
+package drawtools;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Defines behavior for a type of tool that fills the area around where the mouse
+ * is pressed with the current color, out to the edges of whatever is drawn around it.
+ * The area is found all at once by flooding an image of the drawing when the mouse is
+ * pressed, so the tool has no shape of its own to show while the mouse is held down.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class FillTool extends AbstractTool {
+
+    /** Shape returned by the tool. Never modified. */
+    private static final Shape EMPTY_SHAPE = new Path2D.Double();
+
+    /**
+     * Sets the name for the current tool.
+     */
+    public FillTool() {
+        super("Fill Tool");
+    }
+
+    /**
+     * Returns an empty shape, since a fill is made when the mouse is pressed
+     * rather than drawn as the mouse moves.
+     * @return Empty shape.
+     */
+    public Shape getShape() {
+        return EMPTY_SHAPE;
+    }
+}
@@ -0,0 +1,427 @@
+package drawtools;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill over the pixels of an image of the drawing, used by the fill tool.
+ * Starting from a pixel, every pixel connected to it through its four neighbors that
+ * has nearly the same color is filled, a whole run of a row at a time, using an explicit
+ * stack of runs still to be looked beyond instead of recursion. Filled pixels are marked
+ * by clearing their alpha in the pixels themselves, so no mask is needed alongside them.
+ * <p>
+ * The region filled is handed back as rectangles rather than pixels: each run is recorded
+ * as it is filled, and runs directly below one another with the same ends are merged into
+ * one rectangle, so a region costs memory in proportion to its outline and not its area.
+ * The stack and runs are kept between fills so a fill allocates little beyond its result.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class FloodFill {
+
+    /** Default largest difference in any of red, green or blue that still gets filled. */
+    public static final int DEFAULT_TOLERANCE = 0;
+
+    /** Largest tolerance, at which every pixel of a connected area is filled. */
+    public static final int MAX_TOLERANCE = 255;
+
+    /** Number of bits each of the row and two ends of a run is packed into. */
+    private static final int RUN_BITS = 21;
+
+    /** Widest or tallest area that can be filled, so the runs can be packed. */
+    public static final int MAX_SIZE = 1 << RUN_BITS;
+
+    /** Mask of the bits of one packed value of a run. */
+    private static final long RUN_MASK = (1L << RUN_BITS) - 1;
+
+    /** Starting number of entries in the stack and runs. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Number of values in each entry of the stack. */
+    private static final int ENTRY_SIZE = 4;
+
+    /** Bits of a pixel holding its red, green and blue. */
+    private static final int RGB_MASK = 0xFFFFFF;
+
+    /** Largest difference in any of red, green or blue that still gets filled. */
+    private int myTolerance;
+
+    /** Runs still to be looked beyond, as row, left end, right end and direction. */
+    private int[] myStack;
+
+    /** Runs filled by the current fill, packed as row, left end and right end. */
+    private long[] myRuns;
+
+    /** Number of runs filled by the current fill. */
+    private int myRunCount;
+
+    /** Rectangles still growing downward while building the shape, as left, right and top. */
+    private int[] myOpen;
+
+    /** Rectangles that keep growing into the next row, as left, right and top. */
+    private int[] myNext;
+
+    /** Number of pixels filled by the last fill. */
+    private long myLastPixels;
+
+    /** Color of the pixel the current fill started at. */
+    private int myTarget;
+
+    /**
+     * Constructs a flood fill with the default tolerance.
+     */
+    public FloodFill() {
+        this(DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Constructs a flood fill with the given tolerance.
+     * @param theTolerance Largest difference in any of red, green or blue that still gets
+     *        filled, from 0 to MAX_TOLERANCE.
+     */
+    public FloodFill(final int theTolerance) {
+        setTolerance(theTolerance);
+        myStack = new int[INITIAL_CAPACITY * ENTRY_SIZE];
+        myRuns = new long[INITIAL_CAPACITY];
+        myOpen = new int[INITIAL_CAPACITY * 3];
+        myNext = new int[INITIAL_CAPACITY * 3];
+    }
+
+    /**
+     * Fills the region around a point. The pixels must all be opaque, and are changed
+     * by the fill: every filled pixel has its alpha cleared.
+     * @param thePixels ARGB pixels of the area, row by row.
+     * @param theArea Area of the canvas the pixels cover.
+     * @param theX X coordinate on the canvas to start filling at.
+     * @param theY Y coordinate on the canvas to start filling at.
+     * @return Rectangles covering every filled pixel, in canvas coordinates,
+     *         or an empty shape if the point is outside the area.
+     * @throws IllegalArgumentException If the area is wider or taller than MAX_SIZE or
+     *         there are fewer pixels than it covers.
+     */
+    public Shape fill(final int[] thePixels, final Rectangle theArea,
+                      final int theX, final int theY) {
+        final int width = theArea.width;
+        final int height = theArea.height;
+        if (width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Area is larger than " + MAX_SIZE + ": "
+                            + width + " by " + height);
+        }
+        if (thePixels.length < (long) width * height) {
+            throw new IllegalArgumentException(thePixels.length + " pixels can not cover "
+                            + width + " by " + height);
+        }
+        myRunCount = 0;
+        myLastPixels = 0;
+        if (!theArea.contains(theX, theY)) {
+            return new Path2D.Float();
+        }
+        flood(thePixels, width, height, theX - theArea.x, theY - theArea.y);
+        Arrays.sort(myRuns, 0, myRunCount);
+        return toShape(theArea.x, theArea.y);
+    }
+
+    /**
+     * Gets the largest difference in any of red, green or blue that still gets filled.
+     * @return Tolerance of the fill.
+     */
+    public int getTolerance() {
+        return myTolerance;
+    }
+
+    /**
+     * Sets the largest difference in any of red, green or blue from the color of the
+     * starting pixel that still gets filled. A tolerance of zero only fills that color.
+     * @param theTolerance Tolerance of the fill, from 0 to MAX_TOLERANCE.
+     */
+    public void setTolerance(final int theTolerance) {
+        if (theTolerance < 0 || theTolerance > MAX_TOLERANCE) {
+            throw new IllegalArgumentException("Tolerance must be from 0 to " + MAX_TOLERANCE
+                            + ": " + theTolerance);
+        }
+        myTolerance = theTolerance;
+    }
+
+    /**
+     * Gets the number of pixels filled by the last fill.
+     * @return Pixels filled by the last fill.
+     */
+    public long getLastPixelCount() {
+        return myLastPixels;
+    }
+
+    /**
+     * Fills every run connected to a pixel, following the seed fill of Heckbert: each
+     * entry of the stack is a run of the row beside it that was just filled, and only
+     * the pixels beyond it in its direction are looked at, plus any the new run sticks
+     * out past it by, which are looked at back in the other direction.
+     * @param thePixels Pixels of the area, row by row.
+     * @param theWidth Width of the area.
+     * @param theHeight Height of the area.
+     * @param theX X coordinate within the area to start at.
+     * @param theY Y coordinate within the area to start at.
+     */
+    private void flood(final int[] thePixels, final int theWidth, final int theHeight,
+                       final int theX, final int theY) {
+        myTarget = thePixels[theY * theWidth + theX];
+        int top = 0;
+        top = push(top, theY, theX, theX, 1, theHeight);
+        top = push(top, theY + 1, theX, theX, -1, theHeight);
+        while (top > 0) {
+            top -= ENTRY_SIZE;
+            final int direction = myStack[top + 3];
+            final int y = myStack[top] + direction;
+            final int left = myStack[top + 1];
+            final int right = myStack[top + 2];
+            final int row = y * theWidth;
+            int x = fillLeft(thePixels, row, left);
+            int start;
+            if (x < left) {
+                start = x + 1;
+                if (start < left) {
+                    top = push(top, y, start, left - 1, -direction, theHeight);
+                }
+                x = left + 1;
+            } else {
+                x = skip(thePixels, row, x + 1, right);
+                start = x;
+            }
+            while (start <= right) {
+                x = fillRight(thePixels, row, x, theWidth);
+                addRun(y, start, x - 1);
+                top = push(top, y, start, x - 1, direction, theHeight);
+                if (x > right + 1) {
+                    top = push(top, y, right + 1, x - 1, -direction, theHeight);
+                }
+                x = skip(thePixels, row, x + 1, right);
+                start = x;
+            }
+        }
+    }
+
+    /**
+     * Finds the first pixel of a row from a position onward that should be filled.
+     * @param thePixels Pixels of the area, row by row.
+     * @param theRow Index of the first pixel of the row.
+     * @param theFrom X coordinate to start looking at.
+     * @param theTo Last x coordinate to look at.
+     * @return X coordinate of the pixel, or one past theTo if there is none.
+     */
+    private int skip(final int[] thePixels, final int theRow, final int theFrom,
+                     final int theTo) {
+        int x = theFrom;
+        while (x <= theTo && !matches(thePixels[theRow + x])) {
+            x++;
+        }
+        return x;
+    }
+
+    /**
+     * Fills pixels of a row leftward from a position for as long as they should be filled.
+     * @param thePixels Pixels of the area, row by row.
+     * @param theRow Index of the first pixel of the row.
+     * @param theFrom X coordinate to start filling at.
+     * @return X coordinate of the first pixel not filled, which is -1 past the left edge.
+     */
+    private int fillLeft(final int[] thePixels, final int theRow, final int theFrom) {
+        int i = theRow + theFrom;
+        if (myTolerance == 0) {
+            final int target = myTarget;
+            while (i >= theRow && thePixels[i] == target) {
+                thePixels[i--] = target & RGB_MASK;
+            }
+        } else {
+            while (i >= theRow && matches(thePixels[i])) {
+                thePixels[i--] &= RGB_MASK;
+            }
+        }
+        return i - theRow;
+    }
+
+    /**
+     * Fills pixels of a row rightward from a position for as long as they should be
+     * filled. Without a tolerance this is the loop nearly all the time of a fill is spent
+     * in, so it only compares against a local copy of the starting color.
+     * @param thePixels Pixels of the area, row by row.
+     * @param theRow Index of the first pixel of the row.
+     * @param theFrom X coordinate to start filling at.
+     * @param theWidth Width of the area.
+     * @return X coordinate of the first pixel not filled, which is the width past the
+     *         right edge.
+     */
+    private int fillRight(final int[] thePixels, final int theRow, final int theFrom,
+                          final int theWidth) {
+        final int end = theRow + theWidth;
+        int i = theRow + theFrom;
+        if (myTolerance == 0) {
+            final int target = myTarget;
+            while (i < end && thePixels[i] == target) {
+                thePixels[i++] = target & RGB_MASK;
+            }
+        } else {
+            while (i < end && matches(thePixels[i])) {
+                thePixels[i++] &= RGB_MASK;
+            }
+        }
+        return i - theRow;
+    }
+
+    /**
+     * Records a run of a row that was just filled.
+     * @param theY Y coordinate of the row.
+     * @param theLeft X coordinate of the first pixel of the run.
+     * @param theRight X coordinate of the last pixel of the run.
+     */
+    private void addRun(final int theY, final int theLeft, final int theRight) {
+        if (myRunCount == myRuns.length) {
+            myRuns = Arrays.copyOf(myRuns, myRunCount * 2);
+        }
+        myRuns[myRunCount++] = (long) theY << (RUN_BITS * 2) | (long) theLeft << RUN_BITS
+                               | theRight;
+        myLastPixels += theRight - theLeft + 1;
+    }
+
+    /**
+     * Pushes a run onto the stack to be looked beyond, unless the row beyond it is
+     * outside the area. Popping it gives back the row beyond.
+     * @param theTop Number of values on the stack.
+     * @param theY Y coordinate of the run that was filled.
+     * @param theLeft X coordinate of the first pixel to look beyond.
+     * @param theRight X coordinate of the last pixel to look beyond.
+     * @param theDirection Row to look at relative to the run, 1 for below or -1 for above.
+     * @param theHeight Height of the area.
+     * @return Number of values on the stack afterwards.
+     */
+    private int push(final int theTop, final int theY, final int theLeft, final int theRight,
+                     final int theDirection, final int theHeight) {
+        final int next = theY + theDirection;
+        if (next < 0 || next >= theHeight) {
+            return theTop;
+        }
+        if (theTop + ENTRY_SIZE > myStack.length) {
+            myStack = Arrays.copyOf(myStack, myStack.length * 2);
+        }
+        myStack[theTop] = theY;
+        myStack[theTop + 1] = theLeft;
+        myStack[theTop + 2] = theRight;
+        myStack[theTop + 3] = theDirection;
+        return theTop + ENTRY_SIZE;
+    }
+
+    /**
+     * Gets whether a pixel should be filled. Pixels already filled never are, since
+     * their alpha has been cleared.
+     * @param thePixel ARGB value of the pixel.
+     * @return Whether the pixel is close enough to the starting color.
+     */
+    private boolean matches(final int thePixel) {
+        if (thePixel == myTarget) {
+            return true;
+        }
+        if (myTolerance == 0 || thePixel >>> 24 != myTarget >>> 24) {
+            return false;
+        }
+        return Math.abs((thePixel >> 16 & 0xFF) - (myTarget >> 16 & 0xFF)) <= myTolerance
+               && Math.abs((thePixel >> 8 & 0xFF) - (myTarget >> 8 & 0xFF)) <= myTolerance
+               && Math.abs((thePixel & 0xFF) - (myTarget & 0xFF)) <= myTolerance;
+    }
+
+    /**
+     * Builds the shape of the runs, which must be sorted by row and then left end.
+     * Each run that has the same ends as one in the row above extends its rectangle
+     * down, and every other run starts a new rectangle.
+     * @param theOffsetX X coordinate on the canvas of the left of the area.
+     * @param theOffsetY Y coordinate on the canvas of the top of the area.
+     * @return Rectangles covering every run.
+     */
+    private Shape toShape(final int theOffsetX, final int theOffsetY) {
+        final Path2D.Float path = new Path2D.Float();
+        int openCount = 0;
+        int previousY = -1;
+        int i = 0;
+        while (i < myRunCount) {
+            final int y = (int) (myRuns[i] >>> (RUN_BITS * 2));
+            if (y != previousY + 1) {
+                closeAll(path, openCount, previousY + 1, theOffsetX, theOffsetY);
+                openCount = 0;
+            }
+            int nextCount = 0;
+            int open = 0;
+            while (i < myRunCount && (int) (myRuns[i] >>> (RUN_BITS * 2)) == y) {
+                final int left = (int) (myRuns[i] >>> RUN_BITS & RUN_MASK);
+                final int right = (int) (myRuns[i] & RUN_MASK);
+                while (open < openCount && myOpen[open * 3] < left) {
+                    close(path, open, y, theOffsetX, theOffsetY);
+                    open++;
+                }
+                int rectTop = y;
+                if (open < openCount && myOpen[open * 3] == left) {
+                    if (myOpen[open * 3 + 1] == right) {
+                        rectTop = myOpen[open * 3 + 2];
+                    } else {
+                        close(path, open, y, theOffsetX, theOffsetY);
+                    }
+                    open++;
+                }
+                if (nextCount * 3 + 3 > myNext.length) {
+                    myNext = Arrays.copyOf(myNext, myNext.length * 2);
+                }
+                myNext[nextCount * 3] = left;
+                myNext[nextCount * 3 + 1] = right;
+                myNext[nextCount * 3 + 2] = rectTop;
+                nextCount++;
+                i++;
+            }
+            for (; open < openCount; open++) {
+                close(path, open, y, theOffsetX, theOffsetY);
+            }
+            final int[] swap = myOpen;
+            myOpen = myNext;
+            myNext = swap;
+            openCount = nextCount;
+            previousY = y;
+        }
+        closeAll(path, openCount, previousY + 1, theOffsetX, theOffsetY);
+        return path;
+    }
+
+    /**
+     * Adds every rectangle still growing to a path.
+     * @param thePath Path to add the rectangles to.
+     * @param theCount Number of rectangles still growing.
+     * @param theBottom Y coordinate within the area just below the rectangles.
+     * @param theOffsetX X coordinate on the canvas of the left of the area.
+     * @param theOffsetY Y coordinate on the canvas of the top of the area.
+     */
+    private void closeAll(final Path2D.Float thePath, final int theCount, final int theBottom,
+                          final int theOffsetX, final int theOffsetY) {
+        for (int open = 0; open < theCount; open++) {
+            close(thePath, open, theBottom, theOffsetX, theOffsetY);
+        }
+    }
+
+    /**
+     * Adds a rectangle that has stopped growing to a path. The rectangle covers its
+     * pixels edge to edge, so filling it fills exactly the pixels of its runs.
+     * @param thePath Path to add the rectangle to.
+     * @param theOpen Position of the rectangle among those still growing.
+     * @param theBottom Y coordinate within the area just below the rectangle.
+     * @param theOffsetX X coordinate on the canvas of the left of the area.
+     * @param theOffsetY Y coordinate on the canvas of the top of the area.
+     */
+    private void close(final Path2D.Float thePath, final int theOpen, final int theBottom,
+                       final int theOffsetX, final int theOffsetY) {
+        final float left = myOpen[theOpen * 3] + theOffsetX;
+        final float right = myOpen[theOpen * 3 + 1] + 1 + theOffsetX;
+        final float top = myOpen[theOpen * 3 + 2] + theOffsetY;
+        final float bottom = theBottom + theOffsetY;
+        thePath.moveTo(left, top);
+        thePath.lineTo(right, top);
+        thePath.lineTo(right, bottom);
+        thePath.lineTo(left, bottom);
+        thePath.closePath();
+    }
+}
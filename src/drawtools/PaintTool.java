@@ -1,5 +1,6 @@
 package drawtools;
 
+import java.awt.Rectangle;
 import java.awt.Shape;
 
 /**
@@ -20,6 +21,14 @@ public interface PaintTool {
      */
     void setCurrY(int theY);
     
+    /** 
+     * Sets where the cursor currently is in a single step, so tools that
+     * record every point the cursor passes through see each point once.
+     * @param theX X value to set where the cursor is.
+     * @param theY Y value to set where the cursor is.
+     */
+    void setCurrPoint(int theX, int theY);
+    
     /** 
      * Sets the original X value of where the cursor started dragging.
      * @param theX X value set when the DrawPanel is pressed at a location.
@@ -89,4 +98,11 @@ public interface PaintTool {
      * @return Shape Drawn by the tool given cursor coordinates.
      */
     Shape getShape();
+    
+    /**
+     * Returns the smallest rectangle holding the part of the shape that changed 
+     * the last time the cursor moved, not counting the thickness of the stroke.
+     * @return Area of the panel the tool's latest update covers.
+     */
+    Rectangle getUpdateBounds();
 }
@@ -1,44 +1,263 @@
 package drawtools;
 
+import java.awt.Rectangle;
 import java.awt.Shape;
-import java.awt.geom.Line2D;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 
 /**
  * Defines behavior for a type of tool that creates a freeform pencil
- * when called.
+ * when called. Every point the cursor passes through is recorded into a
+ * reusable buffer as it arrives, and the shape handed out is a view over
+ * that buffer, so drawing the freeform never allocates new geometry.
  * @author Daniel Looney
  * @version 17 November 2018
  */
 public final class PencilTool extends AbstractTool {
-    
-    /** Shape that will be used to store the current freeform. */
-    private Path2D.Double myPencilShape;
-    
+
+    /** Starting number of points the buffer can hold. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Shape returned while the tool is disabled. Never modified. */
+    private static final Shape EMPTY_SHAPE = new Path2D.Double();
+
+    /** Shape that will be used to view the current freeform. */
+    private final Shape myPencilShape;
+
+    /** Points of the current freeform, stored as x and y pairs. Reused between strokes. */
+    private int[] myPoints;
+
+    /** Number of points in the current freeform. */
+    private int myPointCount;
+
+    /** Smallest x coordinate of any point in the current freeform. */
+    private int myMinX;
+
+    /** Smallest y coordinate of any point in the current freeform. */
+    private int myMinY;
+
+    /** Largest x coordinate of any point in the current freeform. */
+    private int myMaxX;
+
+    /** Largest y coordinate of any point in the current freeform. */
+    private int myMaxY;
+
     /**
      * Sets the name for the current tool.
      */
     public PencilTool() {
         super("Pencil Tool");
-        myPencilShape = new Path2D.Double();
+        myPoints = new int[INITIAL_CAPACITY * 2];
+        myPencilShape = new PointPath();
     }
-    
+
+    /**
+     * {@inheritDoc}
+     * Also records the point into the freeform while the tool is enabled.
+     */
+    @Override
+    public void setCurrPoint(final int theX, final int theY) {
+        super.setCurrPoint(theX, theY);
+        if (getEnabled()) {
+            addPoint(theX, theY);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Enabling the tool starts a new freeform at the original position of the cursor.
+     */
+    @Override
+    public void setEnabled(final boolean theEnabled) {
+        if (theEnabled) {
+            myPointCount = 0;
+            addPoint(getOrigX(), getOrigY());
+        }
+        super.setEnabled(theEnabled);
+    }
+
     /**
-     * Returns a dynamically created freeform curve that is added to
+     * Returns a view of the freeform curve that is added to
      * whenever the mouse moves to a new coordinate on the GUI.
+     * Does not change or copy the freeform, so it can be called any number of times.
      * @return Current state of the freeform shape.
      */
     public Shape getShape() {
-        
         if (this.getEnabled()) {
-            myPencilShape.append(new Line2D.Double(this.getPrevX(), 
-                                                   this.getPrevY(), this.getCurrX(), 
-                                                   this.getCurrY()), true);
+            return myPencilShape;
+        }
+        return EMPTY_SHAPE;
+    }
+
+    /**
+     * Returns a simplified copy of the freeform, for use once the stroke is finished.
+     * @param theSimplifier Simplifier to run over the recorded points.
+     * @return Simplified freeform, or an empty shape if the tool is disabled.
+     */
+    public Shape getSimplifiedShape(final StrokeSimplifier theSimplifier) {
+        if (this.getEnabled()) {
+            return theSimplifier.simplify(myPoints, myPointCount);
+        }
+        return EMPTY_SHAPE;
+    }
+
+    /**
+     * Gets the number of points recorded in the current freeform. Points are only
+     * ever added to the end while the tool stays enabled, so a caller can pick up
+     * where it left off instead of walking the whole freeform again.
+     * @return Number of points, or 0 if the tool is disabled.
+     */
+    public int getPointCount() {
+        if (this.getEnabled()) {
+            return myPointCount;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the x coordinate of a point of the current freeform.
+     * @param theIndex Index of the point, less than getPointCount.
+     * @return X coordinate of the point.
+     */
+    public int getPointX(final int theIndex) {
+        return myPoints[theIndex * 2];
+    }
+
+    /**
+     * Gets the y coordinate of a point of the current freeform.
+     * @param theIndex Index of the point, less than getPointCount.
+     * @return Y coordinate of the point.
+     */
+    public int getPointY(final int theIndex) {
+        return myPoints[theIndex * 2 + 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only the newest segment of the freeform changes when the cursor moves.
+     */
+    @Override
+    public Rectangle getUpdateBounds() {
+        final Rectangle bounds = new Rectangle(getPrevX(), getPrevY(), 0, 0);
+        bounds.add(getCurrX(), getCurrY());
+        return bounds;
+    }
+
+    /**
+     * Adds a point to the end of the freeform, growing the buffer if needed.
+     * Points that repeat the last one are skipped since they add nothing to the curve.
+     * @param theX X coordinate of the point.
+     * @param theY Y coordinate of the point.
+     */
+    private void addPoint(final int theX, final int theY) {
+        if (myPointCount > 0 && myPoints[myPointCount * 2 - 2] == theX
+                        && myPoints[myPointCount * 2 - 1] == theY) {
+            return;
+        }
+        if (myPointCount * 2 == myPoints.length) {
+            myPoints = Arrays.copyOf(myPoints, myPoints.length * 2);
+        }
+        if (myPointCount == 0) {
+            myMinX = theX;
+            myMaxX = theX;
+            myMinY = theY;
+            myMaxY = theY;
         } else {
-            //Resets the freeform shape when the tool is disabled.
-            myPencilShape = new Path2D.Double();
+            myMinX = Math.min(myMinX, theX);
+            myMaxX = Math.max(myMaxX, theX);
+            myMinY = Math.min(myMinY, theY);
+            myMaxY = Math.max(myMaxY, theY);
+        }
+        myPoints[myPointCount * 2] = theX;
+        myPoints[myPointCount * 2 + 1] = theY;
+        myPointCount++;
+    }
+
+    /**
+     * Read-only view of the recorded points as a series of connected lines.
+     */
+    private final class PointPath extends AbstractPathShape {
+
+        @Override
+        public Rectangle getBounds() {
+            return new Rectangle(myMinX, myMinY, myMaxX - myMinX, myMaxY - myMinY);
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return getBounds();
+        }
+
+        @Override
+        public PathIterator getPathIterator(final AffineTransform theTransform) {
+            return new PointPathIterator(theTransform);
         }
-        return myPencilShape;
     }
-    
+
+    /**
+     * Iterates over the recorded points, starting with a move and then drawing
+     * a line to each following point. A single point becomes a line to itself
+     * so a click still leaves a dot.
+     */
+    private final class PointPathIterator implements PathIterator {
+
+        /** Transform applied to each point, or null for none. */
+        private final AffineTransform myTransform;
+
+        /** Number of segments, fixed when the iterator is created. */
+        private final int mySegmentCount;
+
+        /** Index of the current segment. */
+        private int mySegment;
+
+        /**
+         * Constructs an iterator over the points recorded so far.
+         * @param theTransform Transform applied to each point, or null for none.
+         */
+        private PointPathIterator(final AffineTransform theTransform) {
+            myTransform = theTransform;
+            mySegmentCount = myPointCount == 1 ? 2 : myPointCount;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mySegment >= mySegmentCount;
+        }
+
+        @Override
+        public void next() {
+            mySegment++;
+        }
+
+        @Override
+        public int currentSegment(final float[] theCoords) {
+            final int point = Math.min(mySegment, myPointCount - 1) * 2;
+            theCoords[0] = myPoints[point];
+            theCoords[1] = myPoints[point + 1];
+            if (myTransform != null) {
+                myTransform.transform(theCoords, 0, theCoords, 0, 1);
+            }
+            return mySegment == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        @Override
+        public int currentSegment(final double[] theCoords) {
+            final int point = Math.min(mySegment, myPointCount - 1) * 2;
+            theCoords[0] = myPoints[point];
+            theCoords[1] = myPoints[point + 1];
+            if (myTransform != null) {
+                myTransform.transform(theCoords, 0, theCoords, 0, 1);
+            }
+            return mySegment == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+
 }
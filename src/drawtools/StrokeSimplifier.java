@@ -0,0 +1,276 @@
+package drawtools;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Post-processing stage for freeform strokes that is run once a stroke is finished.
+ * Removes points that lie within a tolerance of the line through their neighbors
+ * using the Ramer-Douglas-Peucker algorithm, and can then join the remaining points
+ * with quadratic or cubic curves instead of straight lines.
+ * Keeps count of how many points it has removed.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class StrokeSimplifier {
+
+    /** Default distance, in pixels, a point can be from the simplified stroke. */
+    public static final double DEFAULT_TOLERANCE = 1.0;
+
+    /**
+     * How the points that are kept are joined together.
+     */
+    public enum CurveMode {
+        /** Straight lines between points. */
+        NONE,
+        /** Quadratic curves through the midpoints between points. */
+        QUADRATIC,
+        /** Cubic Catmull-Rom curves through every point. */
+        CUBIC
+    }
+
+    /** Distance, in pixels, a point can be from the simplified stroke. */
+    private double myTolerance;
+
+    /** How the points that are kept are joined together. */
+    private CurveMode myCurveMode;
+
+    /** Which points are kept by the current run. Reused between runs. */
+    private boolean[] myKeep;
+
+    /** Pairs of point indexes still to be checked by the current run. Reused between runs. */
+    private int[] myStack;
+
+    /** Number of points removed by the last run. */
+    private int myLastRemoved;
+
+    /** Number of points removed by every run so far. */
+    private long myTotalRemoved;
+
+    /**
+     * Constructs a simplifier with the default tolerance that joins points with lines.
+     */
+    public StrokeSimplifier() {
+        this(DEFAULT_TOLERANCE, CurveMode.NONE);
+    }
+
+    /**
+     * Constructs a simplifier with the given settings.
+     * @param theTolerance Distance, in pixels, a point can be from the simplified stroke.
+     * @param theCurveMode How the points that are kept are joined together.
+     */
+    public StrokeSimplifier(final double theTolerance, final CurveMode theCurveMode) {
+        setTolerance(theTolerance);
+        setCurveMode(theCurveMode);
+        myKeep = new boolean[0];
+        myStack = new int[0];
+    }
+
+    /**
+     * Simplifies a freeform stroke.
+     * @param thePoints Points of the stroke, stored as x and y pairs.
+     * @param theCount Number of points in the stroke.
+     * @return Simplified stroke.
+     */
+    public Shape simplify(final int[] thePoints, final int theCount) {
+        final Path2D.Float path = new Path2D.Float();
+        if (theCount == 0) {
+            myLastRemoved = 0;
+            return path;
+        }
+        final int kept = markKept(thePoints, theCount);
+        myLastRemoved = theCount - kept;
+        myTotalRemoved += myLastRemoved;
+
+        final int[] points = new int[kept * 2];
+        int next = 0;
+        for (int i = 0; i < theCount; i++) {
+            if (myKeep[i]) {
+                points[next++] = thePoints[i * 2];
+                points[next++] = thePoints[i * 2 + 1];
+            }
+        }
+        path.moveTo(points[0], points[1]);
+        if (kept == 1) {
+            //A single point becomes a line to itself so a click still leaves a dot.
+            path.lineTo(points[0], points[1]);
+        } else if (myCurveMode == CurveMode.QUADRATIC && kept > 2) {
+            appendQuadratic(path, points, kept);
+        } else if (myCurveMode == CurveMode.CUBIC && kept > 2) {
+            appendCubic(path, points, kept);
+        } else {
+            for (int i = 1; i < kept; i++) {
+                path.lineTo(points[i * 2], points[i * 2 + 1]);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Gets the distance, in pixels, a point can be from the simplified stroke.
+     * @return Tolerance of the simplifier.
+     */
+    public double getTolerance() {
+        return myTolerance;
+    }
+
+    /**
+     * Sets the distance, in pixels, a point can be from the simplified stroke.
+     * A tolerance of zero only removes points lying exactly on a line.
+     * @param theTolerance Tolerance of the simplifier.
+     */
+    public void setTolerance(final double theTolerance) {
+        if (theTolerance < 0 || Double.isNaN(theTolerance)) {
+            throw new IllegalArgumentException("Tolerance must not be negative: "
+                            + theTolerance);
+        }
+        myTolerance = theTolerance;
+    }
+
+    /**
+     * Gets how the points that are kept are joined together.
+     * @return Curve mode of the simplifier.
+     */
+    public CurveMode getCurveMode() {
+        return myCurveMode;
+    }
+
+    /**
+     * Sets how the points that are kept are joined together.
+     * @param theCurveMode Curve mode of the simplifier.
+     */
+    public void setCurveMode(final CurveMode theCurveMode) {
+        if (theCurveMode == null) {
+            throw new IllegalArgumentException("Curve mode must not be null");
+        }
+        myCurveMode = theCurveMode;
+    }
+
+    /**
+     * Gets the number of points removed from the last stroke.
+     * @return Points removed by the last run.
+     */
+    public int getLastRemoved() {
+        return myLastRemoved;
+    }
+
+    /**
+     * Gets the number of points removed from every stroke so far.
+     * @return Points removed by every run.
+     */
+    public long getTotalRemoved() {
+        return myTotalRemoved;
+    }
+
+    /**
+     * Marks which points are kept, using an explicit stack instead of recursion
+     * so very long strokes can not overflow the call stack.
+     * @param thePoints Points of the stroke, stored as x and y pairs.
+     * @param theCount Number of points in the stroke.
+     * @return Number of points kept.
+     */
+    private int markKept(final int[] thePoints, final int theCount) {
+        if (myKeep.length < theCount) {
+            myKeep = new boolean[theCount];
+            myStack = new int[theCount * 2];
+        }
+        Arrays.fill(myKeep, 0, theCount, false);
+        myKeep[0] = true;
+        myKeep[theCount - 1] = true;
+        int kept = theCount == 1 ? 1 : 2;
+        int top = 0;
+        myStack[top++] = 0;
+        myStack[top++] = theCount - 1;
+        while (top > 0) {
+            final int last = myStack[--top];
+            final int first = myStack[--top];
+            int farthest = -1;
+            double farthestDistance = myTolerance;
+            for (int i = first + 1; i < last; i++) {
+                final double distance = distance(thePoints, i, first, last);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                myKeep[farthest] = true;
+                kept++;
+                myStack[top++] = first;
+                myStack[top++] = farthest;
+                myStack[top++] = farthest;
+                myStack[top++] = last;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Gets the distance from a point to the segment between two other points.
+     * @param thePoints Points of the stroke, stored as x and y pairs.
+     * @param thePoint Index of the point to measure.
+     * @param theStart Index of the start of the segment.
+     * @param theEnd Index of the end of the segment.
+     * @return Distance from the point to the segment.
+     */
+    private static double distance(final int[] thePoints, final int thePoint,
+                                   final int theStart, final int theEnd) {
+        final double px = thePoints[thePoint * 2];
+        final double py = thePoints[thePoint * 2 + 1];
+        final double ax = thePoints[theStart * 2];
+        final double ay = thePoints[theStart * 2 + 1];
+        final double dx = thePoints[theEnd * 2] - ax;
+        final double dy = thePoints[theEnd * 2 + 1] - ay;
+        final double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        }
+        final double ex = ax + t * dx - px;
+        final double ey = ay + t * dy - py;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /**
+     * Joins points with quadratic curves that use each inner point as a control point
+     * and pass through the midpoints between them.
+     * @param thePath Path to add the curves to, already moved to the first point.
+     * @param thePoints Points to join, stored as x and y pairs.
+     * @param theCount Number of points to join.
+     */
+    private static void appendQuadratic(final Path2D thePath, final int[] thePoints,
+                                        final int theCount) {
+        for (int i = 1; i < theCount - 1; i++) {
+            final float x = thePoints[i * 2];
+            final float y = thePoints[i * 2 + 1];
+            thePath.quadTo(x, y, (x + thePoints[i * 2 + 2]) / 2f,
+                           (y + thePoints[i * 2 + 3]) / 2f);
+        }
+        thePath.lineTo(thePoints[theCount * 2 - 2], thePoints[theCount * 2 - 1]);
+    }
+
+    /**
+     * Joins points with cubic curves that pass through every point,
+     * converting the Catmull-Rom spline through them into Bezier control points.
+     * @param thePath Path to add the curves to, already moved to the first point.
+     * @param thePoints Points to join, stored as x and y pairs.
+     * @param theCount Number of points to join.
+     */
+    private static void appendCubic(final Path2D thePath, final int[] thePoints,
+                                    final int theCount) {
+        for (int i = 0; i < theCount - 1; i++) {
+            final int before = Math.max(i - 1, 0) * 2;
+            final int start = i * 2;
+            final int end = (i + 1) * 2;
+            final int after = Math.min(i + 2, theCount - 1) * 2;
+            thePath.curveTo(thePoints[start] + (thePoints[end] - thePoints[before]) / 6f,
+                            thePoints[start + 1]
+                                + (thePoints[end + 1] - thePoints[before + 1]) / 6f,
+                            thePoints[end] - (thePoints[after] - thePoints[start]) / 6f,
+                            thePoints[end + 1]
+                                - (thePoints[after + 1] - thePoints[start + 1]) / 6f,
+                            thePoints[end], thePoints[end + 1]);
+        }
+    }
+}
@@ -11,15 +11,27 @@ import javax.swing.UnsupportedLookAndFeelException;
  */
 public final class Driver {
 
+    /** Command line argument that draws the drawing panel with active rendering. */
+    private static final String ACTIVE_ARGUMENT = "--active";
+
+    /** 
+     * System property naming how the drawing panel is drawn, which is actively
+     * when set to "active" and by Swing otherwise.
+     */
+    private static final String RENDERER_PROPERTY = "paint.renderer";
+
     /** Private constructor to prevent external creation of the class.*/
     private Driver() {
         throw new IllegalStateException();
     }
     /**
      * Main method that invokes the GUI. 
+     * The drawing panel is drawn with active rendering instead of by Swing when the
+     * arguments include --active or the paint.renderer property is set to active.
      * @param theArgs Command line paramaters.
      */
     public static void main(final String[] theArgs) {
+        final boolean active = isActive(theArgs);
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -30,10 +42,24 @@ public final class Driver {
                                 | UnsupportedLookAndFeelException e) {
                     System.err.println("Metal Look and Feel is unsupported. Using defaults!");
                 }
-                new GUI().start();
+                new GUI(active).start();
             }
         });
 
     }
 
+    /**
+     * Tells whether the drawing panel should be drawn with active rendering.
+     * @param theArgs Command line paramaters.
+     * @return Whether active rendering was asked for.
+     */
+    private static boolean isActive(final String[] theArgs) {
+        for (final String arg : theArgs) {
+            if (ACTIVE_ARGUMENT.equals(arg)) {
+                return true;
+            }
+        }
+        return "active".equalsIgnoreCase(System.getProperty(RENDERER_PROPERTY));
+    }
+
 }
@@ -1,23 +1,51 @@
 package gui;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.swing.JOptionPane;
+import document.JournalFormat;
+import document.JournalReader;
+import document.JournalWriter;
+
 /**
  * Wrapper class that holds the GUI and all of its associated behavior.
  * Also makes sure that the GUI is only set to be visible after everything else
  * has been constructed.
  * Also sets the name of the program when called by the driver.
+ * Once shown, the drawing is kept in an autosave journal until the program closes,
+ * and if the program did not close properly last time, the drawing in the journal
+ * can be recovered.
  * @author DWLooney
  * @version 17 November 2018
  */
 public final class GUI {  
     
+    /** System property naming the autosave journal file. */
+    private static final String JOURNAL_PROPERTY = "paint.journal";
+    
     /** Stores the GUI of the program. */
     private PaintFrame myFrame;
     
+    /** Autosave journal of the drawing, or null if autosave is off. */
+    private JournalWriter myJournal;
+    
     /**
      * Constructs the GUI of the program with the specified name.
      */
     public GUI() {
-        myFrame = new PaintFrame("Magic Paint");
+        this(false);
+    }
+    
+    /**
+     * Constructs the GUI of the program with the specified name and rendering mode.
+     * @param theActive Whether to draw the drawing panel with active rendering.
+     */
+    public GUI(final boolean theActive) {
+        myFrame = new PaintFrame("Magic Paint", theActive);
     }
     
     /**
@@ -25,6 +53,92 @@ public final class GUI {
      */
     public void start() {
         myFrame.setVisible(true);
+        startJournal();
+    }
+    
+    /**
+     * Offers to recover the drawing from the autosave journal if one was left behind,
+     * then starts keeping the journal. It is deleted when the window is closed, since
+     * the drawing then no longer needs to be recovered.
+     */
+    private void startJournal() {
+        final Path file = getJournalFile();
+        if (Files.exists(file)) {
+            recover(file);
+        }
+        try {
+            myJournal = new JournalWriter(file, myFrame.getPanel());
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myFrame, "Could not start autosave in "
+                                          + file + ":\n" + e.getMessage());
+            return;
+        }
+        myFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(final WindowEvent theEvent) {
+                stopJournal();
+            }
+        });
+    }
+    
+    /**
+     * Stops keeping the autosave journal and deletes it.
+     */
+    private void stopJournal() {
+        try {
+            myJournal.close();
+        } catch (final IOException e) {
+            //The journal is deleted anyway, since the drawing is being closed.
+        }
+        try {
+            Files.deleteIfExists(myJournal.getFile());
+        } catch (final IOException e) {
+            System.err.println("Could not delete the autosave journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Asks whether to recover the drawing kept in a journal, and restores it if so.
+     * @param theFile Journal left behind by a run that did not close properly.
+     */
+    private void recover(final Path theFile) {
+        final JournalReader journal;
+        try {
+            journal = JournalReader.read(theFile);
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myFrame, "Could not recover the last drawing:\n"
+                                          + e.getMessage());
+            return;
+        }
+        if (journal.isEmpty()) {
+            return;
+        }
+        final int choice = JOptionPane.showConfirmDialog(myFrame,
+                        "Magic Paint did not close properly. Recover the last drawing ("
+                        + journal.getShapeCount() + " shapes on " + journal.getLayerCount()
+                        + " layers)?", "Recover Drawing", JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try {
+            journal.apply(myFrame.getPanel());
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myFrame, "Could not recover the last drawing:\n"
+                                          + e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the file the autosave journal is kept in, which is named by the paint.journal
+     * property, or is in the .magicpaint folder of the user's home otherwise.
+     * @return Path of the journal.
+     */
+    private static Path getJournalFile() {
+        final String property = System.getProperty(JOURNAL_PROPERTY);
+        if (property != null) {
+            return Paths.get(property);
+        }
+        return Paths.get(System.getProperty("user.home"), ".magicpaint", "autosave." + JournalFormat.EXTENSION);
     }
 }
     
\ No newline at end of file
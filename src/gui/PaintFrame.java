@@ -8,6 +8,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import buttons.ToolPair;
 import drawtools.EllipseTool;
+import drawtools.FillTool;
 import drawtools.LineTool;
 import drawtools.PencilTool;
 import drawtools.RectangleTool;
@@ -37,10 +38,21 @@ public final class PaintFrame extends JFrame {
      * @param theName Name the GUI should be set to.
      */
     public PaintFrame(final String theName) {
+        this(theName, false);
+    }
+
+    /**
+     * Constructs the JFrame based on default specifications, with a drawing panel
+     * that is either painted by Swing or drawn with active rendering.
+     * Adds all components and their associated buttons.
+     * @param theName Name the GUI should be set to.
+     * @param theActive Whether to draw the drawing panel with active rendering.
+     */
+    public PaintFrame(final String theName, final boolean theActive) {
         super(theName);
 
         myToolPairs = new ArrayList<ToolPair>();
-        myPanel = new DrawPanel();
+        myPanel = new DrawPanel(theActive);
         createToolPairs();
         setDefaults();
         addComponents();
@@ -56,6 +68,7 @@ public final class PaintFrame extends JFrame {
         myToolPairs.add(new ToolPair("Pencil", new PencilTool(), myPanel, false));
         myToolPairs.add(new ToolPair("Rectangle", new RectangleTool(), myPanel, false));
         myToolPairs.add(new ToolPair("Ellipse", new EllipseTool(), myPanel, false));
+        myToolPairs.add(new ToolPair("Fill", new FillTool(), myPanel, false));
     }
     
     /**
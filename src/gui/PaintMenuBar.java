@@ -2,23 +2,58 @@ package gui;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import javax.swing.AbstractButton;
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.KeyStroke;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import buttons.ColorChooserButton;
 import buttons.PaintThicknessSlider;
 import buttons.ToolPair;
+import document.DocumentFormat;
+import document.DocumentLoader;
+import document.DocumentSaver;
+import document.ImageExporter;
+import document.MappedDocument;
+import drawtools.StrokeSimplifier;
+import drawtools.StrokeSimplifier.CurveMode;
+import paintwindow.BlendMode;
 import paintwindow.DrawPanel;
+import paintwindow.Layer;
+import paintwindow.LayerStack;
+import paintwindow.RenderScheduler;
+import replay.InputTrace;
+import replay.TraceRecorder;
+import session.CanvasSession;
+import session.SessionProtocol;
+import session.SessionServer;
 
 /**
  * Creates the menu bar for the GUI and all its related components.
- * Includes buttons for color, thickness, clearing, the tools, and an about button.
+ * Includes buttons for opening and saving, recording input, undo and redo, zooming,
+ * layers, sharing the drawing in a session, color, thickness, stroke smoothing, clearing,
+ * the tools, and an about button.
  * @author DWLooney
  * @version 17 November 2018
  */
@@ -29,11 +64,37 @@ public final class PaintMenuBar extends JMenuBar {
      */
     private static final long serialVersionUID = 2993161445581846877L;
     
+    /** Tolerances, in pixels, freeform strokes can be simplified with. */
+    private static final double[] SMOOTHING_TOLERANCES = {0, 0.5, 1, 2, 4, 8};
+    
+    /** Names of the ways freeform strokes can be joined, in the order of CurveMode. */
+    private static final String[] CURVE_MODE_NAMES = {
+        "Straight Lines", "Quadratic Curves", "Cubic Curves",
+    };
+    
     /** Group of buttons for the drawing tools to ensure only one is selected at a time. */
     private final ButtonGroup myToolButtonGroup;
     
     /** Drawing panel for the menu to perform operations on. */
     private final DrawPanel myDrawPanel;
+    
+    /** File chooser shared by open and save, so it remembers the last folder used. */
+    private final JFileChooser myFileChooser;
+    
+    /** File chooser for exported images, kept apart so it keeps its own filter. */
+    private final JFileChooser myImageChooser;
+    
+    /** File chooser for input traces, kept apart so it keeps its own filter. */
+    private final JFileChooser myTraceChooser;
+    
+    /** Recorder of the input to the drawing panel, or null if it is not being recorded. */
+    private TraceRecorder myRecorder;
+    
+    /** Server of the session this program hosts, or null if it hosts none. */
+    private SessionServer myServer;
+    
+    /** Session the drawing is shared in, or null if it is not shared. */
+    private CanvasSession mySession;
 
     /**
      * Constructs the MenuBar and adds all its necessary components.
@@ -42,6 +103,15 @@ public final class PaintMenuBar extends JMenuBar {
      */
     public PaintMenuBar(final ArrayList<ToolPair> theToolPairs, final DrawPanel thePanel) {
         myDrawPanel = thePanel;
+        myFileChooser = new JFileChooser();
+        myFileChooser.setFileFilter(new FileNameExtensionFilter("Magic Paint Drawing", 
+                                                                DocumentFormat.EXTENSION));
+        myImageChooser = new JFileChooser();
+        myImageChooser.setFileFilter(new FileNameExtensionFilter("PNG or JPEG Image", 
+                                                                 "png", "jpg", "jpeg"));
+        myTraceChooser = new JFileChooser();
+        myTraceChooser.setFileFilter(new FileNameExtensionFilter("Input Trace", 
+                                                                 InputTrace.EXTENSION));
 
         //Creates a button group by grabbing the JMenuItem version for each tool button
         //And adding it to the group.
@@ -49,15 +119,622 @@ public final class PaintMenuBar extends JMenuBar {
         for (ToolPair pair : theToolPairs) {
             myToolButtonGroup.add(pair.getMenuButton());
         }
+        add(createFileDropDown());
+        add(createEditDropDown());
+        add(createViewDropDown());
+        add(createLayersDropDown());
+        add(createSessionDropDown());
         add(createOptionsDropDown());
         add(createToolsDropDown());
         add(createHelpDropDown());
         
     }
     
+    /**
+     * Creates a drop-down that holds buttons for opening and saving drawings.
+     * Opening replaces the current drawing and loads the file in the background,
+     * so shapes appear as they are read. Opening an archive instead maps the file and
+     * draws only the shapes in view straight from it, which suits very large drawings.
+     * Saving and exporting images also happen in the background.
+     * Recording input writes the mouse events of the panel to a trace that can be
+     * replayed without a display, until the recording is stopped.
+     * @return Drop-down that holds the file buttons.
+     */
+    public JMenu createFileDropDown() {
+        final JMenu file = new JMenu("File");
+        final JMenuItem openButton = new JMenuItem("Open...");
+        openButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                if (myFileChooser.showOpenDialog(myDrawPanel) == JFileChooser.APPROVE_OPTION) {
+                    myDrawPanel.reset();
+                    new DocumentLoader(myFileChooser.getSelectedFile().toPath(), 
+                                       myDrawPanel).execute();
+                }
+            }
+        });
+        final JMenuItem archiveButton = new JMenuItem("Open Archive...");
+        archiveButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                if (myFileChooser.showOpenDialog(myDrawPanel) == JFileChooser.APPROVE_OPTION) {
+                    final File source = myFileChooser.getSelectedFile();
+                    try {
+                        myDrawPanel.setBaseDocument(MappedDocument.open(source.toPath()));
+                    } catch (final IOException e) {
+                        JOptionPane.showMessageDialog(myDrawPanel, "Could not open "
+                                                      + source.getName() + ":\n"
+                                                      + e.getMessage(), "Magic Paint",
+                                                      JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }
+        });
+        final JMenuItem saveButton = new JMenuItem("Save As...");
+        saveButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                if (myFileChooser.showSaveDialog(myDrawPanel) == JFileChooser.APPROVE_OPTION) {
+                    File target = myFileChooser.getSelectedFile();
+                    if (!target.getName().contains(".")) {
+                        target = new File(target.getPath() + "." + DocumentFormat.EXTENSION);
+                    }
+                    new DocumentSaver(target.toPath(), myDrawPanel).execute();
+                }
+            }
+        });
+        final JMenuItem exportButton = new JMenuItem("Export Image...");
+        exportButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                exportImage();
+            }
+        });
+        file.add(openButton);
+        file.add(archiveButton);
+        file.add(saveButton);
+        file.addSeparator();
+        file.add(exportButton);
+        file.addSeparator();
+        file.add(createRecordButton());
+        return file;
+    }
+    
+    /**
+     * Creates a button that starts recording the input of the panel to a trace,
+     * and stops the recording when pressed again.
+     * @return Button that starts and stops recording.
+     */
+    private JMenuItem createRecordButton() {
+        final JMenuItem recordButton = new JMenuItem("Record Input...");
+        recordButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                if (myRecorder == null) {
+                    startRecording();
+                } else {
+                    stopRecording();
+                }
+                if (myRecorder == null) {
+                    recordButton.setText("Record Input...");
+                } else {
+                    recordButton.setText("Stop Recording");
+                }
+            }
+        });
+        return recordButton;
+    }
+    
+    /**
+     * Asks for a trace file and starts recording the input of the panel into it.
+     * Files without an extension get the trace extension.
+     */
+    private void startRecording() {
+        if (myTraceChooser.showSaveDialog(myDrawPanel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = myTraceChooser.getSelectedFile();
+        if (!target.getName().contains(".")) {
+            target = new File(target.getPath() + "." + InputTrace.EXTENSION);
+        }
+        try {
+            myRecorder = new TraceRecorder(target.toPath(), myDrawPanel);
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myDrawPanel, "Could not record to "
+                                          + target.getName() + ":\n" + e.getMessage(),
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * Stops recording the input of the panel and reports how much was recorded.
+     */
+    private void stopRecording() {
+        final TraceRecorder recorder = myRecorder;
+        myRecorder = null;
+        try {
+            recorder.stop();
+            JOptionPane.showMessageDialog(myDrawPanel, "Recorded " 
+                                          + recorder.getRecordCount() + " events.",
+                                          "Magic Paint", JOptionPane.INFORMATION_MESSAGE);
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myDrawPanel, "Could not record the input:\n"
+                                          + e.getMessage(), "Magic Paint",
+                                          JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * Asks for an image file and scale, then exports the drawing in the background
+     * with a progress dialog that can cancel the export.
+     * Files without an extension are exported as PNG.
+     */
+    private void exportImage() {
+        if (myImageChooser.showSaveDialog(myDrawPanel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = myImageChooser.getSelectedFile();
+        if (!target.getName().contains(".")) {
+            target = new File(target.getPath() + ".png");
+        }
+        if (!ImageExporter.isSupported(target.toPath())) {
+            JOptionPane.showMessageDialog(myDrawPanel, "Images can only be exported as "
+                                          + "PNG or JPEG.", "Magic Paint",
+                                          JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final String[] scales = {"1x", "2x", "4x", "8x"};
+        final Object scale = JOptionPane.showInputDialog(myDrawPanel, "Image scale:", 
+                                                         "Export Image", 
+                                                         JOptionPane.QUESTION_MESSAGE, null,
+                                                         scales, scales[0]);
+        if (scale == null) {
+            return;
+        }
+        final String factor = scale.toString();
+        final ImageExporter exporter = new ImageExporter(target.toPath(), myDrawPanel,
+                        Integer.parseInt(factor.substring(0, factor.length() - 1)));
+        showProgress(exporter, "Exporting " + target.getName());
+        exporter.execute();
+    }
+    
+    /**
+     * Shows a progress dialog for a background task that closes when the task
+     * is done, and cancels the task if the dialog is cancelled.
+     * @param theWorker Task to show the progress of.
+     * @param theMessage Message shown in the dialog.
+     */
+    private void showProgress(final SwingWorker<?, ?> theWorker, final String theMessage) {
+        final ProgressMonitor monitor = new ProgressMonitor(myDrawPanel, theMessage, 
+                                                            null, 0, 100);
+        theWorker.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(final PropertyChangeEvent theEvent) {
+                if (monitor.isCanceled()) {
+                    theWorker.cancel(false);
+                }
+                if ("progress".equals(theEvent.getPropertyName())) {
+                    monitor.setProgress((Integer) theEvent.getNewValue());
+                } else if (theWorker.isDone()) {
+                    monitor.close();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Creates a drop-down that holds buttons for undoing and redoing changes to the
+     * drawing, which are only enabled when there is something to undo or redo.
+     * @return Drop-down that holds the edit buttons.
+     */
+    public JMenu createEditDropDown() {
+        final JMenu edit = new JMenu("Edit");
+        final JMenuItem undoButton = new JMenuItem("Undo");
+        undoButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, 
+                                                         InputEvent.CTRL_DOWN_MASK));
+        undoButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.undo();
+            }
+        });
+        final JMenuItem redoButton = new JMenuItem("Redo");
+        redoButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, 
+                                                         InputEvent.CTRL_DOWN_MASK));
+        redoButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.redo();
+            }
+        });
+        undoButton.setEnabled(false);
+        redoButton.setEnabled(false);
+        myDrawPanel.getHistory().addChangeListener(new ChangeListener() {
+            public void stateChanged(final ChangeEvent theEvent) {
+                undoButton.setEnabled(myDrawPanel.getHistory().canUndo());
+                redoButton.setEnabled(myDrawPanel.getHistory().canRedo());
+            }
+        });
+        edit.add(undoButton);
+        edit.add(redoButton);
+        return edit;
+    }
+    
+    /**
+     * Creates a drop-down that holds buttons for zooming the drawing in and out
+     * and for going back to its own size. The mouse wheel zooms as well.
+     * Also holds the input latency report and the switch for showing the metrics
+     * of the panel over the drawing.
+     * @return Drop-down that holds the view buttons.
+     */
+    public JMenu createViewDropDown() {
+        final JMenu view = new JMenu("View");
+        final JMenuItem zoomInButton = new JMenuItem("Zoom In");
+        zoomInButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, 
+                                                           InputEvent.CTRL_DOWN_MASK));
+        zoomInButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.zoomIn();
+            }
+        });
+        final JMenuItem zoomOutButton = new JMenuItem("Zoom Out");
+        zoomOutButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, 
+                                                            InputEvent.CTRL_DOWN_MASK));
+        zoomOutButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.zoomOut();
+            }
+        });
+        final JMenuItem actualSizeButton = new JMenuItem("Actual Size");
+        actualSizeButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, 
+                                                               InputEvent.CTRL_DOWN_MASK));
+        actualSizeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.resetView();
+            }
+        });
+        final JMenuItem latencyButton = new JMenuItem("Input Latency...");
+        latencyButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                showLatency();
+            }
+        });
+        view.add(zoomInButton);
+        view.add(zoomOutButton);
+        view.add(actualSizeButton);
+        view.addSeparator();
+        final JCheckBoxMenuItem metricsButton = new JCheckBoxMenuItem("Show Metrics");
+        metricsButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        metricsButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.setHudVisible(metricsButton.isSelected());
+            }
+        });
+        view.add(latencyButton);
+        view.add(metricsButton);
+        return view;
+    }
+    
+    /**
+     * Shows how long mouse input has taken to reach the screen and how long frames
+     * have taken to draw since the panel was created or the numbers were last reset,
+     * and offers to reset them.
+     */
+    private void showLatency() {
+        final RenderScheduler scheduler = myDrawPanel.getRenderScheduler();
+        final String[] choices = {"OK", "Reset"};
+        final int choice = JOptionPane.showOptionDialog(myDrawPanel, "Input to screen: "
+                        + scheduler.getLatencyStats() + "\nFrame time ("
+                        + myDrawPanel.getRenderingMode() + "): "
+                        + scheduler.getFrameTimeStats() + "\n" + scheduler.getRequestCount()
+                        + " repaints requested in " + scheduler.getFrameCount() + " frames of "
+                        + scheduler.getFrameInterval() + " ms", "Input Latency",
+                        JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null,
+                        choices, choices[0]);
+        if (choice == 1) {
+            scheduler.getLatencyStats().reset();
+            scheduler.getFrameTimeStats().reset();
+        }
+    }
+    
+    /**
+     * Creates a drop-down that holds buttons for adding, removing and moving layers,
+     * for showing the active layer and setting its opacity and blend mode, and for
+     * choosing the active layer from a list with the top layer first. The drop-down is
+     * filled again whenever the layers of the panel change.
+     * @return Drop-down that holds the layer buttons.
+     */
+    public JMenu createLayersDropDown() {
+        final JMenu layers = new JMenu("Layers");
+        fillLayersDropDown(layers);
+        myDrawPanel.addPropertyChangeListener(DrawPanel.LAYERS_PROPERTY,
+                                              new PropertyChangeListener() {
+                public void propertyChange(final PropertyChangeEvent theEvent) {
+                    fillLayersDropDown(layers);
+                }
+            });
+        return layers;
+    }
+    
+    /**
+     * Replaces the buttons of the layers drop-down with ones for the layers as they are.
+     * @param theLayers Drop-down to fill.
+     */
+    private void fillLayersDropDown(final JMenu theLayers) {
+        theLayers.removeAll();
+        final LayerStack stack = myDrawPanel.getLayers();
+        final int activeIndex = stack.getActiveIndex();
+        final Layer active = stack.getActive();
+        final JMenuItem newButton = new JMenuItem("New Layer");
+        newButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, 
+                                                        InputEvent.CTRL_DOWN_MASK
+                                                        | InputEvent.SHIFT_DOWN_MASK));
+        newButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.addLayer();
+            }
+        });
+        final JMenuItem deleteButton = new JMenuItem("Delete Layer");
+        deleteButton.setEnabled(stack.size() > 1);
+        deleteButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.removeLayer();
+            }
+        });
+        final JMenuItem upButton = new JMenuItem("Move Layer Up");
+        upButton.setEnabled(activeIndex < stack.size() - 1);
+        upButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.moveLayer(activeIndex, activeIndex + 1);
+            }
+        });
+        final JMenuItem downButton = new JMenuItem("Move Layer Down");
+        downButton.setEnabled(activeIndex > 0);
+        downButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.moveLayer(activeIndex, activeIndex - 1);
+            }
+        });
+        theLayers.add(newButton);
+        theLayers.add(deleteButton);
+        theLayers.add(upButton);
+        theLayers.add(downButton);
+        theLayers.addSeparator();
+        final JCheckBoxMenuItem showButton = new JCheckBoxMenuItem("Show Layer",
+                                                                   active.isVisible());
+        showButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                myDrawPanel.setLayerVisible(activeIndex, showButton.isSelected());
+            }
+        });
+        final JMenuItem opacityButton = new JMenuItem("Opacity...");
+        opacityButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                chooseOpacity(activeIndex, active);
+            }
+        });
+        final JMenu blendMenu = new JMenu("Blend Mode");
+        final ButtonGroup blendGroup = new ButtonGroup();
+        for (final BlendMode mode : BlendMode.values()) {
+            final JRadioButtonMenuItem modeButton = new JRadioButtonMenuItem(
+                            mode.toString(), mode == active.getBlendMode());
+            modeButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent theEvent) {
+                    myDrawPanel.setLayerBlendMode(activeIndex, mode);
+                }
+            });
+            blendGroup.add(modeButton);
+            blendMenu.add(modeButton);
+        }
+        theLayers.add(showButton);
+        theLayers.add(opacityButton);
+        theLayers.add(blendMenu);
+        theLayers.addSeparator();
+        final ButtonGroup layerGroup = new ButtonGroup();
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            final int index = i;
+            final Layer layer = stack.get(i);
+            String name = layer.getName();
+            if (!layer.isVisible()) {
+                name += " (hidden)";
+            }
+            final JRadioButtonMenuItem layerButton = new JRadioButtonMenuItem(
+                            name, i == activeIndex);
+            layerButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent theEvent) {
+                    myDrawPanel.setActiveLayer(index);
+                }
+            });
+            layerGroup.add(layerButton);
+            theLayers.add(layerButton);
+        }
+    }
+    
+    /**
+     * Asks for the opacity of a layer and sets it.
+     * @param theIndex Position of the layer.
+     * @param theLayer Layer to set the opacity of.
+     */
+    private void chooseOpacity(final int theIndex, final Layer theLayer) {
+        final String[] opacities = {"100%", "75%", "50%", "25%", "10%"};
+        final String percent = Math.round(theLayer.getOpacity() * 100) + "%";
+        String current = opacities[0];
+        for (String opacity : opacities) {
+            if (opacity.equals(percent)) {
+                current = opacity;
+            }
+        }
+        final Object opacity = JOptionPane.showInputDialog(myDrawPanel, "Opacity of "
+                                                           + theLayer.getName() + ":",
+                                                           "Layer Opacity",
+                                                           JOptionPane.QUESTION_MESSAGE, null,
+                                                           opacities, current);
+        if (opacity == null) {
+            return;
+        }
+        final String chosen = opacity.toString();
+        myDrawPanel.setLayerOpacity(theIndex, Integer.parseInt(
+                        chosen.substring(0, chosen.length() - 1)) / 100f);
+    }
+    
+    /**
+     * Creates a drop-down that holds buttons for sharing the drawing with other people
+     * in a session, either hosted by this program or joined on another computer, and
+     * for leaving it. The switch for previews shows the others each shape as it is drawn
+     * rather than only once it is finished.
+     * @return Drop-down that holds the session buttons.
+     */
+    public JMenu createSessionDropDown() {
+        final JMenu session = new JMenu("Session");
+        final JMenuItem hostButton = new JMenuItem("Host Session...");
+        final JMenuItem joinButton = new JMenuItem("Join Session...");
+        final JMenuItem leaveButton = new JMenuItem("Leave Session");
+        final JCheckBoxMenuItem previewButton = new JCheckBoxMenuItem("Share Tool Previews",
+                                                                      true);
+        hostButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                hostSession(previewButton.isSelected());
+            }
+        });
+        joinButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                joinSession(previewButton.isSelected());
+            }
+        });
+        leaveButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                mySession.close();
+            }
+        });
+        previewButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                if (mySession != null) {
+                    mySession.setSharingPreviews(previewButton.isSelected());
+                }
+            }
+        });
+        session.addMenuListener(new MenuListener() {
+            public void menuSelected(final MenuEvent theEvent) {
+                hostButton.setEnabled(mySession == null);
+                joinButton.setEnabled(mySession == null);
+                leaveButton.setEnabled(mySession != null);
+            }
+            
+            public void menuDeselected(final MenuEvent theEvent) {
+            }
+            
+            public void menuCanceled(final MenuEvent theEvent) {
+            }
+        });
+        session.add(hostButton);
+        session.add(joinButton);
+        session.add(leaveButton);
+        session.addSeparator();
+        session.add(previewButton);
+        return session;
+    }
+    
+    /**
+     * Asks for a port, starts a session server on it, and joins it.
+     * The server stops when the session is left.
+     * @param thePreviews Whether to share previews of the shapes being drawn.
+     */
+    private void hostSession(final boolean thePreviews) {
+        final Object answer = JOptionPane.showInputDialog(myDrawPanel, "Port to host on:",
+                                                          "Host Session",
+                                                          JOptionPane.QUESTION_MESSAGE, null,
+                                                          null, SessionProtocol.DEFAULT_PORT);
+        if (answer == null) {
+            return;
+        }
+        final int port;
+        try {
+            port = Integer.parseInt(answer.toString().trim());
+        } catch (final NumberFormatException e) {
+            JOptionPane.showMessageDialog(myDrawPanel, answer + " is not a port.",
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        try {
+            myServer = new SessionServer(port);
+        } catch (final IOException e) {
+            JOptionPane.showMessageDialog(myDrawPanel, "Could not host on port " + port
+                                          + ":\n" + e.getMessage(), "Magic Paint",
+                                          JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        startSession("localhost", myServer.getPort(), thePreviews);
+    }
+    
+    /**
+     * Asks for the address of a session server and joins it. The port may be left off
+     * the address to use the default port.
+     * @param thePreviews Whether to share previews of the shapes being drawn.
+     */
+    private void joinSession(final boolean thePreviews) {
+        final Object answer = JOptionPane.showInputDialog(myDrawPanel, "Address of the host:",
+                                                          "Join Session",
+                                                          JOptionPane.QUESTION_MESSAGE, null,
+                                                          null, "localhost:"
+                                                          + SessionProtocol.DEFAULT_PORT);
+        if (answer == null) {
+            return;
+        }
+        final String address = answer.toString().trim();
+        final int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            startSession(address, SessionProtocol.DEFAULT_PORT, thePreviews);
+            return;
+        }
+        try {
+            startSession(address.substring(0, colon),
+                         Integer.parseInt(address.substring(colon + 1)), thePreviews);
+        } catch (final NumberFormatException e) {
+            JOptionPane.showMessageDialog(myDrawPanel, address + " is not an address.",
+                                          "Magic Paint", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * Joins a session, stopping the hosted server if it could not be joined.
+     * When the session ends, says why if it was not left on purpose.
+     * @param theHost Name or address of the server.
+     * @param thePort Port of the server.
+     * @param thePreviews Whether to share previews of the shapes being drawn.
+     */
+    private void startSession(final String theHost, final int thePort,
+                              final boolean thePreviews) {
+        try {
+            mySession = new CanvasSession(myDrawPanel, theHost, thePort);
+        } catch (final IOException e) {
+            stopServer();
+            JOptionPane.showMessageDialog(myDrawPanel, "Could not join " + theHost + ":"
+                                          + thePort + ":\n" + e.getMessage(), "Magic Paint",
+                                          JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        mySession.setSharingPreviews(thePreviews);
+        mySession.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(final PropertyChangeEvent theEvent) {
+                final CanvasSession ended = (CanvasSession) theEvent.getSource();
+                mySession = null;
+                stopServer();
+                if (ended.getError() != null) {
+                    JOptionPane.showMessageDialog(myDrawPanel, "Disconnected from the "
+                                                  + "session:\n" + ended.getError()
+                                                  .getMessage(), "Magic Paint",
+                                                  JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Stops the hosted server, if there is one, disconnecting everyone in its session.
+     */
+    private void stopServer() {
+        if (myServer != null) {
+            myServer.close();
+            myServer = null;
+        }
+    }
+    
     /**
      * Creates a drop-down that holds various options for the GUI.
-     * Includes a slider for thickness, a clear button, and a color chooser button.
+     * Includes a slider for thickness, how freeform strokes are smoothed, a clear button,
+     * and a color chooser button.
      * @return Drop-down that holds all the options buttons.
      */
     public JMenu createOptionsDropDown() {
@@ -65,6 +742,7 @@ public final class PaintMenuBar extends JMenuBar {
         final JMenu thicknessSliderContainer = new JMenu("Thickness");
         thicknessSliderContainer.add(new PaintThicknessSlider(myDrawPanel));
         options.add(thicknessSliderContainer);
+        options.add(createSmoothingMenu());
         options.addSeparator();
         //Will create a new color chooser dialogue each time the button is pressed.
         options.add(new ColorChooserButton(myDrawPanel, "JMenuItem").getButton());
@@ -73,6 +751,43 @@ public final class PaintMenuBar extends JMenuBar {
         return options;
     }
     
+    /**
+     * Creates a menu choosing how freeform strokes are smoothed when they are finished:
+     * how far the simplifier may move a point, and how the points it keeps are joined.
+     * @return Menu of the smoothing settings.
+     */
+    private JMenu createSmoothingMenu() {
+        final JMenu smoothing = new JMenu("Smoothing");
+        final StrokeSimplifier simplifier = myDrawPanel.getSimplifier();
+        final ButtonGroup toleranceGroup = new ButtonGroup();
+        for (final double tolerance : SMOOTHING_TOLERANCES) {
+            final JRadioButtonMenuItem toleranceButton = new JRadioButtonMenuItem(
+                            "Tolerance " + tolerance + " px",
+                            tolerance == simplifier.getTolerance());
+            toleranceButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent theEvent) {
+                    simplifier.setTolerance(tolerance);
+                }
+            });
+            toleranceGroup.add(toleranceButton);
+            smoothing.add(toleranceButton);
+        }
+        smoothing.addSeparator();
+        final ButtonGroup curveGroup = new ButtonGroup();
+        for (final CurveMode mode : CurveMode.values()) {
+            final JRadioButtonMenuItem curveButton = new JRadioButtonMenuItem(
+                            CURVE_MODE_NAMES[mode.ordinal()], mode == simplifier.getCurveMode());
+            curveButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent theEvent) {
+                    simplifier.setCurveMode(mode);
+                }
+            });
+            curveGroup.add(curveButton);
+            smoothing.add(curveButton);
+        }
+        return smoothing;
+    }
+    
     /**
      * Creates a drop-down of radio buttons that holds each type of tool necessary.
      * @return Drop-down that holds all the tool buttons.
@@ -0,0 +1,155 @@
+package paintwindow;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferStrategy;
+import javax.swing.SwingUtilities;
+
+/**
+ * Heavyweight canvas that covers a DrawPanel and draws it with active rendering,
+ * instead of leaving it to Swing's repaint manager and double buffer. Every frame
+ * draws the whole view into the back buffer of a BufferStrategy, which page flips
+ * where the display allows it and blits otherwise, and then shows it at once.
+ * The back buffers are accelerated images the system can take away, so a frame is
+ * drawn again until its contents survive. Mouse events are passed on to the panel,
+ * which still holds the drawing and the tools.
+ * Must only be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ActiveCanvas extends Canvas {
+
+    /** Auto-generated ID for serialization purposes. */
+    private static final long serialVersionUID = 4437012857092316417L;
+
+    /** Number of buffers to render with, one front and one back. */
+    private static final int BUFFERS = 2;
+
+    /** Panel whose view is drawn. */
+    private final DrawPanel myPanel;
+
+    /**
+     * Constructs a canvas that draws a panel and passes the mouse on to it.
+     * @param thePanel Panel to draw.
+     */
+    public ActiveCanvas(final DrawPanel thePanel) {
+        myPanel = thePanel;
+        setFocusable(false);
+        final MouseAdapter forwarder = new MouseForwarder();
+        addMouseListener(forwarder);
+        addMouseMotionListener(forwarder);
+        addMouseWheelListener(forwarder);
+    }
+
+    /**
+     * Draws a frame when the system asks for the canvas to be painted,
+     * as when it is first shown or uncovered.
+     * @param theGraphics Graphics of the canvas, which are not used.
+     */
+    @Override
+    public void paint(final Graphics theGraphics) {
+        render();
+    }
+
+    /**
+     * Draws a frame without clearing the canvas first, which would only make it flicker.
+     * @param theGraphics Graphics of the canvas, which are not used.
+     */
+    @Override
+    public void update(final Graphics theGraphics) {
+        render();
+    }
+
+    /**
+     * Draws the whole view of the panel into the back buffer and shows it,
+     * creating the buffers the first time the canvas can be drawn.
+     */
+    public void render() {
+        if (!isDisplayable() || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        if (getBufferStrategy() == null) {
+            createBufferStrategy(BUFFERS);
+        }
+        final BufferStrategy strategy = getBufferStrategy();
+        final Rectangle area = new Rectangle(0, 0, getWidth(), getHeight());
+        final long start = System.nanoTime();
+        do {
+            do {
+                final Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    g2d.setColor(Color.WHITE);
+                    g2d.fill(area);
+                    myPanel.paintView(g2d, area);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        myPanel.getMetrics().recordPaint(System.nanoTime() - start);
+    }
+
+    /**
+     * Tells whether frames are shown by flipping pages instead of copying the back buffer.
+     * @return Whether the buffers page flip, which is false until the first frame.
+     */
+    public boolean isPageFlipping() {
+        final BufferStrategy strategy = getBufferStrategy();
+        return strategy != null && strategy.getCapabilities().isPageFlipping();
+    }
+
+    /**
+     * Passes mouse events on the canvas to the panel beneath it, as if they had
+     * happened on the panel, so it handles them the same way in either rendering mode.
+     */
+    private final class MouseForwarder extends MouseAdapter {
+
+        /**
+         * Passes on an event to the panel.
+         * @param theEvent Event that happened on the canvas.
+         */
+        private void forward(final MouseEvent theEvent) {
+            myPanel.dispatchEvent(SwingUtilities.convertMouseEvent(ActiveCanvas.this,
+                                                                   theEvent, myPanel));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void mousePressed(final MouseEvent theEvent) {
+            forward(theEvent);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void mouseReleased(final MouseEvent theEvent) {
+            forward(theEvent);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void mouseDragged(final MouseEvent theEvent) {
+            forward(theEvent);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void mouseWheelMoved(final MouseWheelEvent theEvent) {
+            forward(theEvent);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package paintwindow;
+
+import java.awt.Rectangle;
+
+/**
+ * A command that only adds shapes on top of the drawing, so it can be replayed onto
+ * a raster checkpoint of its tiles taken before it instead of redrawing them.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface AppendCommand extends DrawCommand {
+
+    /**
+     * Gets the area of the canvas the shapes the command added cover.
+     * @return Stroked bounds of the shapes.
+     */
+    Rectangle getBounds();
+
+    /**
+     * Draws the shapes the command added onto the tiles within an area, for when those
+     * tiles have been restored from a checkpoint taken before it. Only called while the
+     * command is applied.
+     * @param theArea Area of the canvas whose tiles were restored.
+     */
+    void replay(Rectangle theArea);
+}
@@ -0,0 +1,291 @@
+package paintwindow;
+
+import java.awt.Composite;
+import java.awt.CompositeContext;
+import java.awt.RenderingHints;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Composite for the blend modes Java2D has no AlphaComposite for. Each row of
+ * pixels is read into premultiplied ARGB ints, blended, and written back.
+ * Rasters of packed int RGB pixels, such as tiles and most screen images, are read
+ * straight from their data, and pixels of any other kind go through their color model.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+final class BlendComposite implements Composite {
+
+    /** Largest value of a color channel. */
+    private static final int MAX = 255;
+
+    /** Mode the pixels are blended in. */
+    private final BlendMode myMode;
+
+    /** Opacity the source is drawn with, from 0 to 255. */
+    private final int myOpacity;
+
+    /**
+     * Constructs a composite.
+     * @param theMode Mode the pixels are blended in.
+     * @param theOpacity Opacity the source is drawn with, from 0 to 1.
+     * @throws IllegalArgumentException If the opacity is outside of 0 to 1.
+     */
+    BlendComposite(final BlendMode theMode, final float theOpacity) {
+        if (!(theOpacity >= 0 && theOpacity <= 1)) {
+            throw new IllegalArgumentException("Opacity must be from 0 to 1: " + theOpacity);
+        }
+        myMode = theMode;
+        myOpacity = Math.round(theOpacity * MAX);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompositeContext createContext(final ColorModel theSourceModel,
+                                          final ColorModel theDestinationModel,
+                                          final RenderingHints theHints) {
+        return new BlendContext(theSourceModel, theDestinationModel);
+    }
+
+    /**
+     * Blends a premultiplied source pixel onto a premultiplied backdrop pixel.
+     * @param theSource Source pixel, already scaled by the opacity.
+     * @param theBackdrop Pixel beneath it.
+     * @return Blended premultiplied pixel.
+     */
+    private int blend(final int theSource, final int theBackdrop) {
+        final int sa = theSource >>> 24;
+        if (sa == 0) {
+            return theBackdrop;
+        }
+        final int ba = theBackdrop >>> 24;
+        final int alpha = sa + ba - div255(sa * ba);
+        int pixel = alpha << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            final int s = (theSource >> shift) & MAX;
+            final int b = (theBackdrop >> shift) & MAX;
+            final int channel;
+            switch (myMode) {
+                case MULTIPLY:
+                    channel = div255(s * (MAX - ba) + b * (MAX - sa) + s * b);
+                    break;
+                case SCREEN:
+                    channel = s + b - div255(s * b);
+                    break;
+                case DARKEN:
+                    channel = s + b - div255(Math.max(s * ba, b * sa));
+                    break;
+                case LIGHTEN:
+                    channel = s + b - div255(Math.min(s * ba, b * sa));
+                    break;
+                default:
+                    channel = s + div255(b * (MAX - sa));
+                    break;
+            }
+            pixel |= Math.min(alpha, channel) << shift;
+        }
+        return pixel;
+    }
+
+    /**
+     * Divides a product of two channel values by 255, rounding to the nearest value.
+     * @param theValue Value from 0 to 255 * 255.
+     * @return Value divided by 255.
+     */
+    private static int div255(final int theValue) {
+        final int rounded = theValue + 128;
+        return (rounded + (rounded >> 8)) >> 8;
+    }
+
+    /**
+     * Tells whether a color model packs RGB pixels into ints, with or without alpha,
+     * so its pixels can be read straight from the data of its rasters.
+     * @param theModel Color model to check.
+     * @return Whether the pixels are packed int RGB.
+     */
+    private static boolean isPackedRgb(final ColorModel theModel) {
+        if (!(theModel instanceof DirectColorModel)
+                        || theModel.getTransferType() != DataBuffer.TYPE_INT) {
+            return false;
+        }
+        final DirectColorModel model = (DirectColorModel) theModel;
+        return model.getRedMask() == 0xFF0000 && model.getGreenMask() == 0xFF00
+                        && model.getBlueMask() == 0xFF
+                        && (model.getAlphaMask() == 0 || model.getAlphaMask() == 0xFF000000);
+    }
+
+    /**
+     * Blends the rasters handed to it by Java2D for one drawing operation.
+     */
+    private final class BlendContext implements CompositeContext {
+
+        /** Color model of the source pixels. */
+        private final ColorModel mySourceModel;
+
+        /** Color model of the destination pixels. */
+        private final ColorModel myDestinationModel;
+
+        /** Whether the source pixels are packed int RGB. */
+        private final boolean mySourcePacked;
+
+        /** Whether the destination pixels are packed int RGB. */
+        private final boolean myDestinationPacked;
+
+        /**
+         * Constructs a context.
+         * @param theSourceModel Color model of the source pixels.
+         * @param theDestinationModel Color model of the destination pixels.
+         */
+        private BlendContext(final ColorModel theSourceModel,
+                             final ColorModel theDestinationModel) {
+            mySourceModel = theSourceModel;
+            myDestinationModel = theDestinationModel;
+            mySourcePacked = isPackedRgb(theSourceModel);
+            myDestinationPacked = isPackedRgb(theDestinationModel);
+        }
+
+        /**
+         * Blends the source onto the destination one row at a time.
+         * @param theSource Source pixels.
+         * @param theDestinationIn Destination pixels to blend onto.
+         * @param theDestinationOut Raster to write the result to.
+         */
+        @Override
+        public void compose(final Raster theSource, final Raster theDestinationIn,
+                            final WritableRaster theDestinationOut) {
+            final int width = Math.min(theSource.getWidth(), theDestinationIn.getWidth());
+            final int height = Math.min(theSource.getHeight(), theDestinationIn.getHeight());
+            final int[] source = new int[width];
+            final int[] destination = new int[width];
+            for (int y = 0; y < height; y++) {
+                read(theSource, mySourceModel, mySourcePacked, y, source);
+                read(theDestinationIn, myDestinationModel, myDestinationPacked, y, destination);
+                for (int x = 0; x < width; x++) {
+                    int pixel = source[x];
+                    if (myOpacity < MAX) {
+                        pixel = scale(pixel, myOpacity);
+                    }
+                    destination[x] = blend(pixel, destination[x]);
+                }
+                write(theDestinationOut, y, destination);
+            }
+        }
+
+        /**
+         * Does nothing, since the context holds no native resources.
+         */
+        @Override
+        public void dispose() {
+            //Nothing to release.
+        }
+
+        /**
+         * Reads a row of a raster as premultiplied ARGB pixels.
+         * @param theRaster Raster to read.
+         * @param theModel Color model of the raster.
+         * @param thePacked Whether the raster holds packed int RGB pixels.
+         * @param theRow Row to read, counted from the top of the raster.
+         * @param thePixels Array to read the pixels into, as wide as the row.
+         */
+        private void read(final Raster theRaster, final ColorModel theModel,
+                          final boolean thePacked, final int theRow, final int[] thePixels) {
+            final int x = theRaster.getMinX();
+            final int y = theRaster.getMinY() + theRow;
+            if (thePacked) {
+                theRaster.getDataElements(x, y, thePixels.length, 1, thePixels);
+                if (!theModel.hasAlpha()) {
+                    for (int i = 0; i < thePixels.length; i++) {
+                        thePixels[i] |= 0xFF000000;
+                    }
+                } else if (!theModel.isAlphaPremultiplied()) {
+                    for (int i = 0; i < thePixels.length; i++) {
+                        thePixels[i] = premultiply(thePixels[i]);
+                    }
+                }
+                return;
+            }
+            Object element = null;
+            for (int i = 0; i < thePixels.length; i++) {
+                element = theRaster.getDataElements(x + i, y, element);
+                thePixels[i] = premultiply(theModel.getRGB(element));
+            }
+        }
+
+        /**
+         * Writes a row of premultiplied ARGB pixels to the destination.
+         * @param theRaster Raster to write.
+         * @param theRow Row to write, counted from the top of the raster.
+         * @param thePixels Pixels of the row.
+         */
+        private void write(final WritableRaster theRaster, final int theRow,
+                           final int[] thePixels) {
+            final int x = theRaster.getMinX();
+            final int y = theRaster.getMinY() + theRow;
+            if (myDestinationPacked) {
+                if (myDestinationModel.hasAlpha()
+                                && !myDestinationModel.isAlphaPremultiplied()) {
+                    for (int i = 0; i < thePixels.length; i++) {
+                        thePixels[i] = unpremultiply(thePixels[i]);
+                    }
+                }
+                theRaster.setDataElements(x, y, thePixels.length, 1, thePixels);
+                return;
+            }
+            Object element = null;
+            for (int i = 0; i < thePixels.length; i++) {
+                element = myDestinationModel.getDataElements(unpremultiply(thePixels[i]),
+                                                             element);
+                theRaster.setDataElements(x + i, y, element);
+            }
+        }
+    }
+
+    /**
+     * Scales every channel of a premultiplied pixel, alpha included.
+     * @param thePixel Premultiplied pixel.
+     * @param theFactor Factor from 0 to 255.
+     * @return Scaled pixel.
+     */
+    private static int scale(final int thePixel, final int theFactor) {
+        return div255((thePixel >>> 24) * theFactor) << 24
+                        | div255(((thePixel >> 16) & MAX) * theFactor) << 16
+                        | div255(((thePixel >> 8) & MAX) * theFactor) << 8
+                        | div255((thePixel & MAX) * theFactor);
+    }
+
+    /**
+     * Converts a pixel from straight to premultiplied alpha.
+     * @param thePixel Straight ARGB pixel.
+     * @return Premultiplied pixel.
+     */
+    private static int premultiply(final int thePixel) {
+        final int alpha = thePixel >>> 24;
+        if (alpha == MAX) {
+            return thePixel;
+        }
+        return alpha << 24 | scale(thePixel, alpha) & 0xFFFFFF;
+    }
+
+    /**
+     * Converts a pixel from premultiplied to straight alpha.
+     * @param thePixel Premultiplied ARGB pixel.
+     * @return Straight pixel.
+     */
+    private static int unpremultiply(final int thePixel) {
+        final int alpha = thePixel >>> 24;
+        if (alpha == MAX || alpha == 0) {
+            return thePixel;
+        }
+        int pixel = alpha << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            pixel |= Math.min(MAX, (((thePixel >> shift) & MAX) * MAX + alpha / 2) / alpha)
+                            << shift;
+        }
+        return pixel;
+    }
+}
@@ -0,0 +1,62 @@
+package paintwindow;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+
+/**
+ * How the pixels of a layer are combined with everything beneath it.
+ * Every mode but normal is worked out per color channel on premultiplied values,
+ * so transparent parts of a layer leave what is beneath them unchanged.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public enum BlendMode {
+
+    /** Draws the layer over what is beneath it. */
+    NORMAL("Normal"),
+
+    /** Multiplies the colors, which darkens like layers of ink. */
+    MULTIPLY("Multiply"),
+
+    /** Multiplies the inverse of the colors, which lightens like overlapping light. */
+    SCREEN("Screen"),
+
+    /** Keeps the darker of the two colors in each channel. */
+    DARKEN("Darken"),
+
+    /** Keeps the lighter of the two colors in each channel. */
+    LIGHTEN("Lighten");
+
+    /** Name of the mode shown to the user. */
+    private final String myName;
+
+    /**
+     * Constructs a mode.
+     * @param theName Name of the mode shown to the user.
+     */
+    BlendMode(final String theName) {
+        myName = theName;
+    }
+
+    /**
+     * Gets a composite that draws images onto what is beneath them in this mode.
+     * Normal mode uses an AlphaComposite, which Java2D can accelerate.
+     * @param theOpacity Opacity the images are drawn with, from 0 to 1.
+     * @return Composite for the mode.
+     */
+    public Composite getComposite(final float theOpacity) {
+        if (this == NORMAL) {
+            return AlphaComposite.getInstance(AlphaComposite.SRC_OVER, theOpacity);
+        }
+        return new BlendComposite(this, theOpacity);
+    }
+
+    /**
+     * Gets the name of the mode shown to the user.
+     * @return Name of the mode.
+     */
+    @Override
+    public String toString() {
+        return myName;
+    }
+}
@@ -0,0 +1,439 @@
+package paintwindow;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.Timer;
+import drawtools.StrokeSimplifier;
+
+/**
+ * Instrumentation of a DrawPanel: how long paints take, how fast the mouse is dragged,
+ * how many repaints are coalesced, how many shapes there are and how much memory they
+ * and the tile cache use, how often the tile cache already has what is painted, and how
+ * many points the simplifier removed from freeform strokes.
+ * Counting costs a few increments per event and paint, so it is always on. While the
+ * panel is shown, the counts are published once a second, both as an MBean named
+ * magicpaint:type=CanvasMetrics and to the heads-up display the panel can draw over
+ * the drawing. Published values can be read from any thread.
+ * Everything else must only be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class CanvasMetrics implements CanvasMetricsMBean {
+
+    /** Domain and type of the name the metrics are registered under. */
+    public static final String OBJECT_NAME = "magicpaint:type=CanvasMetrics";
+
+    /** Milliseconds between updates of the published values. */
+    private static final int UPDATE_INTERVAL = 1000;
+
+    /** Number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** Number of bytes in a megabyte. */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /** Distance of the heads-up display from the corner of the panel and its text. */
+    private static final int HUD_MARGIN = 6;
+
+    /** Background of the heads-up display. */
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+
+    /** Font of the heads-up display. */
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    /** Number of lines in the heads-up display. */
+    private static final int HUD_LINES = 6;
+
+    /** Widest line of the heads-up display, in characters. */
+    private static final int HUD_COLUMNS = 48;
+
+    /** Number of metrics constructed so far, used to name each one uniquely. */
+    private static int instanceCount;
+
+    /** Panel being measured. */
+    private final DrawPanel myPanel;
+
+    /** Layers of the panel, whose tiles are measured. */
+    private final LayerStack myLayers;
+
+    /** Name the metrics are registered under. */
+    private final ObjectName myName;
+
+    /** Timer publishing the values once a second while the panel is shown. */
+    private final Timer myTimer;
+
+    /** Time each paint of the panel took. */
+    private final LatencyStats myPaintTimes;
+
+    /** Number of drags handled since the panel was constructed. */
+    private long myDragCount;
+
+    /** Number of drags handled as of the last update. */
+    private long myLastDragCount;
+
+    /** Time of the last update, from System.nanoTime. */
+    private long myLastUpdate;
+
+    /** Repaint requests of the scheduler as of the last reset. */
+    private long myBaseRequests;
+
+    /** Frames of the scheduler as of the last reset. */
+    private long myBaseFrames;
+
+    /** Tile cache hits as of the last reset. */
+    private long myBaseHits;
+
+    /** Tile cache misses as of the last reset. */
+    private long myBaseMisses;
+
+    /** Points removed by the simplifier as of the last reset. */
+    private long myBaseRemoved;
+
+    /** Published number of paints. */
+    private volatile long myPaintCount;
+
+    /** Published mean paint time. */
+    private volatile double myPaintMean;
+
+    /** Published median paint time. */
+    private volatile double myPaintMedian;
+
+    /** Published 95th percentile of the paint time. */
+    private volatile double myPaint95;
+
+    /** Published 99th percentile of the paint time. */
+    private volatile double myPaint99;
+
+    /** Published longest paint time. */
+    private volatile double myPaintMax;
+
+    /** Published drags per second. */
+    private volatile double myDragRate;
+
+    /** Published number of coalesced repaints. */
+    private volatile long myCoalesced;
+
+    /** Published number of shapes. */
+    private volatile int myShapeCount;
+
+    /** Published geometry memory. */
+    private volatile long myGeometryBytes;
+
+    /** Published tile cache hit rate. */
+    private volatile double myTileHitRate;
+
+    /** Published tile image memory. */
+    private volatile long myTileBytes;
+
+    /** Published checkpoint memory. */
+    private volatile long myCheckpointBytes;
+
+    /** Published number of points removed by the simplifier. */
+    private volatile long mySimplifiedPoints;
+
+    /** Published number of points removed from the last freeform stroke. */
+    private volatile int myLastSimplifiedPoints;
+
+    /**
+     * Constructs the metrics of a panel.
+     * @param thePanel Panel to measure.
+     * @param theLayers Layers of the panel.
+     */
+    CanvasMetrics(final DrawPanel thePanel, final LayerStack theLayers) {
+        myPanel = thePanel;
+        myLayers = theLayers;
+        myPaintTimes = new LatencyStats();
+        myTileHitRate = 1;
+        instanceCount++;
+        try {
+            if (instanceCount == 1) {
+                myName = new ObjectName(OBJECT_NAME);
+            } else {
+                myName = new ObjectName(OBJECT_NAME + ",id=" + instanceCount);
+            }
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        }
+        myTimer = new Timer(UPDATE_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                update();
+            }
+        });
+    }
+
+    /**
+     * Starts publishing the values and registers the MBean, as when the panel is shown.
+     */
+    void start() {
+        myLastUpdate = System.nanoTime();
+        myLastDragCount = myDragCount;
+        update();
+        myTimer.start();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, myName);
+        } catch (final InstanceAlreadyExistsException e) {
+            //Already registered by an earlier start.
+        } catch (final JMException e) {
+            System.err.println("Could not register canvas metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops publishing the values and unregisters the MBean, as when the panel is hidden.
+     */
+    void stop() {
+        myTimer.stop();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(myName);
+        } catch (final InstanceNotFoundException e) {
+            //Was never registered.
+        } catch (final JMException e) {
+            System.err.println("Could not unregister canvas metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records how long a paint of the panel took.
+     * @param theNanos Duration of the paint in nanoseconds.
+     */
+    void recordPaint(final long theNanos) {
+        myPaintTimes.record(theNanos);
+    }
+
+    /**
+     * Records that a mouse drag was handled.
+     */
+    void recordDrag() {
+        myDragCount++;
+    }
+
+    /**
+     * Publishes the current values, and repaints the heads-up display if it is shown.
+     */
+    private void update() {
+        final long now = System.nanoTime();
+        final double seconds = (now - myLastUpdate) / NANOS_PER_SECOND;
+        if (seconds > 0) {
+            myDragRate = (myDragCount - myLastDragCount) / seconds;
+        }
+        myLastUpdate = now;
+        myLastDragCount = myDragCount;
+        myPaintCount = myPaintTimes.getCount();
+        myPaintMean = myPaintTimes.getMeanMillis();
+        myPaintMedian = myPaintTimes.getPercentileMillis(50);
+        myPaint95 = myPaintTimes.getPercentileMillis(95);
+        myPaint99 = myPaintTimes.getPercentileMillis(99);
+        myPaintMax = myPaintTimes.getMaxMillis();
+        final RenderScheduler scheduler = myPanel.getRenderScheduler();
+        myCoalesced = Math.max(0, scheduler.getRequestCount() - myBaseRequests
+                                  - (scheduler.getFrameCount() - myBaseFrames));
+        myShapeCount = myLayers.getShapeCount();
+        myGeometryBytes = myLayers.getGeometryByteSize();
+        final long hits = myLayers.getTileHits() - myBaseHits;
+        final long lookups = hits + myLayers.getTileMisses() - myBaseMisses;
+        myTileHitRate = lookups == 0 ? 1 : (double) hits / lookups;
+        myTileBytes = myLayers.getImageByteSize();
+        myCheckpointBytes = myPanel.getHistory().getCheckpointBytes();
+        final StrokeSimplifier simplifier = myPanel.getSimplifier();
+        mySimplifiedPoints = simplifier.getTotalRemoved() - myBaseRemoved;
+        myLastSimplifiedPoints = simplifier.getLastRemoved();
+        if (myPanel.isHudVisible()) {
+            myPanel.repaint(getHudBounds());
+        }
+    }
+
+    /**
+     * Gets the area of the panel the heads-up display covers.
+     * @return Bounds of the display in panel coordinates.
+     */
+    Rectangle getHudBounds() {
+        final FontMetrics metrics = myPanel.getFontMetrics(HUD_FONT);
+        return new Rectangle(HUD_MARGIN, HUD_MARGIN,
+                             metrics.charWidth('0') * HUD_COLUMNS + 2 * HUD_MARGIN,
+                             metrics.getHeight() * HUD_LINES + 2 * HUD_MARGIN);
+    }
+
+    /**
+     * Draws the heads-up display showing the published values in the top left corner.
+     * @param theGraphics Graphics of the panel, using panel coordinates.
+     */
+    void drawHud(final Graphics2D theGraphics) {
+        final Rectangle bounds = getHudBounds();
+        theGraphics.setColor(HUD_BACKGROUND);
+        theGraphics.fill(bounds);
+        theGraphics.setColor(Color.WHITE);
+        theGraphics.setFont(HUD_FONT);
+        final FontMetrics metrics = theGraphics.getFontMetrics();
+        final String[] lines = {
+            String.format("Paint %.1f ms avg %.1f p95 %.1f max (%d)", myPaintMean,
+                          myPaint95, myPaintMax, myPaintCount),
+            String.format("Drag %.0f/s, %d repaints coalesced", myDragRate, myCoalesced),
+            String.format("Shapes %d, geometry %.1f MB", myShapeCount,
+                          myGeometryBytes / BYTES_PER_MEGABYTE),
+            String.format("Tiles %.1f%% hits, %.1f MB", myTileHitRate * 100,
+                          myTileBytes / BYTES_PER_MEGABYTE),
+            String.format("Undo checkpoints %.1f MB", myCheckpointBytes / BYTES_PER_MEGABYTE),
+            String.format("Simplified %d points, %d last stroke", mySimplifiedPoints,
+                          myLastSimplifiedPoints),
+        };
+        int y = bounds.y + HUD_MARGIN + metrics.getAscent();
+        for (String line : lines) {
+            theGraphics.drawString(line, bounds.x + HUD_MARGIN, y);
+            y += metrics.getHeight();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPaintCount() {
+        return myPaintCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPaintMeanMillis() {
+        return myPaintMean;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPaintMedianMillis() {
+        return myPaintMedian;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPaint95thPercentileMillis() {
+        return myPaint95;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPaint99thPercentileMillis() {
+        return myPaint99;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPaintMaxMillis() {
+        return myPaintMax;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDragEventsPerSecond() {
+        return myDragRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCoalescedEvents() {
+        return myCoalesced;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getShapeCount() {
+        return myShapeCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getGeometryBytes() {
+        return myGeometryBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getTileHitRate() {
+        return myTileHitRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTileBytes() {
+        return myTileBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCheckpointBytes() {
+        return myCheckpointBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSimplifiedPoints() {
+        return mySimplifiedPoints;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLastSimplifiedPoints() {
+        return myLastSimplifiedPoints;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Called from a JMX client, so the reset itself happens on the event dispatch thread.
+     */
+    @Override
+    public void reset() {
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                myPaintTimes.reset();
+                final RenderScheduler scheduler = myPanel.getRenderScheduler();
+                myBaseRequests = scheduler.getRequestCount();
+                myBaseFrames = scheduler.getFrameCount();
+                myBaseHits = myLayers.getTileHits();
+                myBaseMisses = myLayers.getTileMisses();
+                myBaseRemoved = myPanel.getSimplifier().getTotalRemoved();
+                update();
+            }
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package paintwindow;
+
+/**
+ * Management interface of the metrics of a DrawPanel, so they can be watched with
+ * JConsole or any other JMX client while the program runs. The values are those
+ * published at the last update, which happens once a second while the panel is shown.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface CanvasMetricsMBean {
+
+    /**
+     * Gets the number of times the panel was painted since the metrics were reset.
+     * @return Number of paints.
+     */
+    long getPaintCount();
+
+    /**
+     * Gets the mean time a paint of the panel took.
+     * @return Mean paint time in milliseconds.
+     */
+    double getPaintMeanMillis();
+
+    /**
+     * Gets the median time a paint of the panel took.
+     * @return Median paint time in milliseconds.
+     */
+    double getPaintMedianMillis();
+
+    /**
+     * Gets the time 95 percent of the paints of the panel took at most.
+     * @return 95th percentile of the paint time in milliseconds.
+     */
+    double getPaint95thPercentileMillis();
+
+    /**
+     * Gets the time 99 percent of the paints of the panel took at most.
+     * @return 99th percentile of the paint time in milliseconds.
+     */
+    double getPaint99thPercentileMillis();
+
+    /**
+     * Gets the longest time a paint of the panel took.
+     * @return Longest paint time in milliseconds.
+     */
+    double getPaintMaxMillis();
+
+    /**
+     * Gets the number of mouse drags handled in the last second.
+     * @return Drag events per second.
+     */
+    double getDragEventsPerSecond();
+
+    /**
+     * Gets the number of repaints asked for by input that were merged into a frame
+     * with others since the metrics were reset. No event is dropped: each still
+     * reaches the tool, and only its repaint is shared.
+     * @return Number of coalesced repaints.
+     */
+    long getCoalescedEvents();
+
+    /**
+     * Gets the number of shapes on every layer of the panel, counting those of their
+     * base documents.
+     * @return Number of shapes.
+     */
+    int getShapeCount();
+
+    /**
+     * Estimates the memory used by the geometry of the committed shapes.
+     * @return Approximate number of bytes.
+     */
+    long getGeometryBytes();
+
+    /**
+     * Gets the share of tiles painted since the metrics were reset that were
+     * already up to date.
+     * @return Tile cache hit rate from 0 to 1, or 1 if no tiles were painted.
+     */
+    double getTileHitRate();
+
+    /**
+     * Gets the memory used by the images of the tile cache.
+     * @return Number of bytes used by tile images.
+     */
+    long getTileBytes();
+
+    /**
+     * Gets the memory used by the undo checkpoints.
+     * @return Number of bytes used by checkpoints.
+     */
+    long getCheckpointBytes();
+
+    /**
+     * Gets the number of points the simplifier removed from freeform strokes since the
+     * metrics were reset.
+     * @return Number of points removed.
+     */
+    long getSimplifiedPoints();
+
+    /**
+     * Gets the number of points the simplifier removed from the last freeform stroke.
+     * @return Number of points removed.
+     */
+    int getLastSimplifiedPoints();
+
+    /**
+     * Forgets the paint times, coalesced repaints, tile cache hits and simplified points
+     * counted so far.
+     */
+    void reset();
+}
@@ -0,0 +1,34 @@
+package paintwindow;
+
+/**
+ * One change to the drawing that can be undone and redone.
+ * A command is recorded in the UndoHistory after it has already been applied.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface DrawCommand {
+
+    /**
+     * Reverses the change, marking the tiles it touched as out of date.
+     */
+    void undo();
+
+    /**
+     * Applies the change again after it was undone, drawing it onto the tiles.
+     */
+    void redo();
+
+    /**
+     * Gets the tiles the command draws onto, which raster checkpoints for undoing it
+     * are taken of. Commands that only change which tiles are shown, such as those
+     * reordering layers, have none.
+     * @return Tiles the command changes, or null if it changes none.
+     */
+    TiledCanvas getCanvas();
+
+    /**
+     * Releases anything the command holds on to, once it has been dropped from
+     * the history and can never be undone or redone again.
+     */
+    void discard();
+}
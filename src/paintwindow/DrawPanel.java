@@ -6,24 +6,54 @@ import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import document.MappedDocument;
 import drawtools.AbstractTool;
+import drawtools.FillTool;
+import drawtools.FloodFill;
 import drawtools.LineTool;
+import drawtools.PencilTool;
+import drawtools.StrokeSimplifier;
 
 /**
  * JPanel that encompasses the drawing window for the program.
  * Clicking or dragging on this panel will draw lines or shapes depending
- * on the selected tool. MouseEvent listeners determine when to draw something.
+ * on the selected tool, or fill the area around the click with the fill tool.
+ * MouseEvent listeners determine when to draw something.
  * Also includes behavior for a clear button that is
  * attached to listeners so it can determine whether it should be enabled or not.
+ * The drawing can be zoomed with the mouse wheel and panned by dragging with the
+ * middle or right mouse button, and the tools draw in canvas coordinates either way.
+ * The panel can instead be drawn with active rendering by a canvas covering it,
+ * which is chosen when the panel is constructed.
+ * The drawing is made of layers, and the tools draw on the active layer, which is
+ * what clearing clears. Adding, removing and moving layers can be undone.
+ * Drawing listeners, such as the autosave journal, are told of every change to the drawing.
+ * In a shared session the drawings of other people are shown on peer layers over the
+ * drawing, along with previews of the shapes they are drawing.
  * @author DWLooney
  * @version 17 November 2018
  */
@@ -32,12 +62,33 @@ public class DrawPanel extends JPanel {
     /** Auto-generated ID for serialization purposes.*/
     private static final long serialVersionUID = -950718375757439961L;
     
+    /** Name of the property changed when the current tool is set. */
+    public static final String TOOL_PROPERTY = "tool";
+    
+    /** Name of the property changed when the color of new shapes is set. */
+    public static final String COLOR_PROPERTY = "color";
+    
+    /** Name of the property changed when the thickness of new shapes is set. */
+    public static final String STROKE_PROPERTY = "stroke";
+    
+    /** Name of the property changed when the layers or the way they are shown change. */
+    public static final String LAYERS_PROPERTY = "layers";
+    
+    /** Color of the paper beneath the drawing. */
+    private static final Color PAPER_COLOR = Color.WHITE;
+    
     /** Default color for a shape, set to UW Purple according to specification. */
     private static final Color DEFAULT_COLOR = new Color(51, 0, 111);
     
     /** Default width of a stroke before clicking on the thickness slider in the GUI. */
     private static final int DEFAULT_WIDTH = 5;
     
+    /** Widest and tallest area of a zoom level a fill covers, bounding the pixels it floods. */
+    private static final int MAX_FILL_SIZE = 8192;
+    
+    /** Masks of the red, green, blue and alpha of the pixels the fill tool floods. */
+    private static final int[] RGBA_MASKS = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+    
     /** Button that will clear the panel of all shapes when clicked. */
     private final JMenuItem myClearButton;
     
@@ -51,46 +102,367 @@ public class DrawPanel extends JPanel {
     private AbstractTool myCurrTool;
     
     /** 
-     * Collection of previous
-     * shapes that will drawn on the panel when paintComponent() is called. 
+     * Layers of the drawing, each holding its committed shapes and the tiled off-screen
+     * images they are flattened into, so a repaint only has to copy the visible tiles
+     * instead of re-stroking every shape.
      */
-    private List<PaintShape> myShapesPanel;
+    private final LayerStack myLayers;
+    
+    /** Commands applied to the drawing, so they can be undone and redone. */
+    private final UndoHistory myHistory;
+    
+    /** Objects told of every change to the drawing. */
+    private final List<DrawingListener> myDrawingListeners;
+    
+    /** Shapes other people in a shared session are drawing, by their peer layers. */
+    private final Map<Layer, ShapeStore> myPeerPreviews;
+    
+    /** Post-processing run over freeform strokes when they are committed. */
+    private final StrokeSimplifier mySimplifier;
+    
+    /** Flood fill used by the fill tool to find the area to fill. */
+    private final FloodFill myFloodFill;
+    
+    /** Pixels the fill tool floods, kept between fills and grown as the view needs. */
+    private int[] myFillPixels;
+    
+    /** Fill running in the background, or null if there is none. */
+    private FillWorker myFillWorker;
+    
+    /** Area of the canvas the current tool was last repainted in, or null if there is none. */
+    private Rectangle myToolBounds;
+    
+    /** Zoom and pan mapping the canvas onto the panel. */
+    private final Viewport myViewport;
+    
+    /** Paces repaints caused by dragging the mouse to one per display refresh. */
+    private final RenderScheduler myScheduler;
+    
+    /** Paint times, event rates, memory and cache use of the panel. */
+    private final CanvasMetrics myMetrics;
+    
+    /** Image of the freeform being drawn, so it is not stroked again on every paint. */
+    private final LiveStroke myLiveStroke;
+    
+    /** Whether the metrics are drawn over the drawing. */
+    private boolean myHudVisible;
+    
+    /** Canvas drawing the panel with active rendering, or null if Swing paints it. */
+    private final ActiveCanvas myActiveCanvas;
+    
+    /** Whether the mouse is dragging the canvas around instead of drawing. */
+    private boolean myPanning;
+    
+    /** X coordinate on the panel the mouse was last at while panning. */
+    private int myPanX;
+    
+    /** Y coordinate on the panel the mouse was last at while panning. */
+    private int myPanY;
+    
+    /**
+     * Constructs a DrawPanel according to default behavior, painted by Swing.
+     */
+    public DrawPanel() {
+        this(false);
+    }
     
     /**
      * Constructs a DrawPanel according to default behavior.
      * Also initializes the tool type and properties according to specification.
      * Adds two MouseListeners for the purpose of drawing onto the panel.
+     * @param theActive Whether to draw the panel with active rendering instead of
+     * letting Swing paint it.
      */
-    public DrawPanel() {
+    public DrawPanel(final boolean theActive) {
         myClearButton = createClearButton();
         myCurrTool = new LineTool();
-        myShapesPanel = new ArrayList<PaintShape>();
+        myLayers = new LayerStack(PAPER_COLOR);
+        mySimplifier = new StrokeSimplifier();
+        myFloodFill = new FloodFill();
+        myFillPixels = new int[0];
+        myHistory = new UndoHistory();
+        myDrawingListeners = new ArrayList<DrawingListener>();
+        myPeerPreviews = new LinkedHashMap<Layer, ShapeStore>();
+        myMetrics = new CanvasMetrics(this, myLayers);
+        myViewport = new Viewport();
+        myScheduler = new RenderScheduler(this);
+        myLiveStroke = new LiveStroke();
         setDefaults();
         this.addMouseListener(new MyMousePressedAdapter());
         this.addMouseMotionListener(new MyMouseMovementAdapter());
+        this.addMouseWheelListener(new MyMouseWheelAdapter());
+        if (theActive) {
+            myActiveCanvas = new ActiveCanvas(this);
+            add(myActiveCanvas, BorderLayout.CENTER);
+        } else {
+            myActiveCanvas = null;
+        }
     }
     
     /**
      * Behavior for what happens when the panel needs to be updated internally or
-     * when the paint() method is called. Will first draw all previous shapes that
-     * were created, and then draws the current shape according to where the
-     * mouse is currently at.
+     * when the paint() method is called. Will first copy the tiles holding all
+     * previous shapes that were created, and then draws the current shape
+     * according to where the mouse is currently at.
+     * Only the tiles inside the clip of the graphics are touched. The tiles are
+     * those of the zoom level at or just above the zoom, scaled down the rest of the way.
+     * With active rendering the canvas covering the panel draws all of this instead.
      */
     @Override
     public void paintComponent(final Graphics theGraphics) {
+        if (myActiveCanvas != null) {
+            return;
+        }
+        final long start = System.nanoTime();
         super.paintComponent(theGraphics);
         final Graphics2D g2d = (Graphics2D) theGraphics;
         
-        //Iterates through the array of shapes and sets the appropriate
-        //properties of the Graphics2D of the panel for each one.
-        for (PaintShape shape : myShapesPanel) {
-            g2d.setColor(shape.getColor());
-            g2d.setStroke(shape.getStroke());
-            g2d.draw(shape.getShape());
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        paintView(g2d, clip);
+        myMetrics.recordPaint(System.nanoTime() - start);
+    }
+    
+    /**
+     * Draws the view of the panel over its background: the tiles of the layers of
+     * committed shapes in an area, then the current shape of the tool, and then the
+     * metrics if they are shown. A freeform in progress is copied from its live image,
+     * which only has the points added since the last paint stroked into it.
+     * The current shape is drawn over every layer, even those above the active one,
+     * and over the previews of other people in a shared session.
+     * @param theGraphics Graphics of the panel to draw with.
+     * @param theClip Area of the panel to draw.
+     */
+    void paintView(final Graphics2D theGraphics, final Rectangle theClip) {
+        final AffineTransform panelTransform = theGraphics.getTransform();
+        final Graphics2D tiles = (Graphics2D) theGraphics.create();
+        tiles.translate(myViewport.getOffsetX(), myViewport.getOffsetY());
+        final double scale = myViewport.getLevelScale();
+        if (scale != 1) {
+            tiles.scale(scale, scale);
+            tiles.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+                                   RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        myLayers.paint(tiles, myViewport.toLevel(theClip), myViewport.getLevel());
+        tiles.dispose();
+        if (!myPeerPreviews.isEmpty()) {
+            final Graphics2D previews = (Graphics2D) theGraphics.create();
+            previews.transform(myViewport.getTransform());
+            for (ShapeStore preview : myPeerPreviews.values()) {
+                preview.draw(previews, 0);
+            }
+            previews.dispose();
         }
-        g2d.setColor(myColor);
-        g2d.setStroke(myStroke);
-        g2d.draw(myCurrTool.getShape());
+        if (myLiveStroke.isActive()) {
+            myLiveStroke.paint(theGraphics, theClip, myViewport.getTransform(),
+                               getWidth(), getHeight());
+        } else {
+            theGraphics.transform(myViewport.getTransform());
+            theGraphics.setColor(myColor);
+            theGraphics.setStroke(myStroke);
+            theGraphics.draw(myCurrTool.getShape());
+        }
+        if (myHudVisible && theClip.intersects(myMetrics.getHudBounds())) {
+            theGraphics.setTransform(panelTransform);
+            myMetrics.drawHud(theGraphics);
+        }
+    }
+    
+    /**
+     * Starts publishing the metrics of the panel once it can be shown.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        myMetrics.start();
+    }
+    
+    /**
+     * Stops publishing the metrics of the panel once it can no longer be shown.
+     */
+    @Override
+    public void removeNotify() {
+        myMetrics.stop();
+        super.removeNotify();
+    }
+    
+    /**
+     * Gets the metrics of the panel.
+     * @return Paint times, event rates, memory and cache use of the panel.
+     */
+    public CanvasMetrics getMetrics() {
+        return myMetrics;
+    }
+    
+    /**
+     * Shows or hides the metrics over the top left corner of the drawing.
+     * @param theVisible Whether to show the metrics.
+     */
+    public void setHudVisible(final boolean theVisible) {
+        myHudVisible = theVisible;
+        repaint(myMetrics.getHudBounds());
+    }
+    
+    /**
+     * Tells whether the metrics are shown over the drawing.
+     * @return Whether the metrics are shown.
+     */
+    public boolean isHudVisible() {
+        return myHudVisible;
+    }
+    
+    /**
+     * Requests a repaint of only the area the current tool has touched since
+     * the last request, which is the union of its old and new bounds.
+     * Both are grown by the thickness of the stroke. The repaint happens in the next
+     * frame, together with those of any other events before it.
+     * @param theInputTime Time of the event that moved the tool, from System.nanoTime.
+     */
+    private void repaintTool(final long theInputTime) {
+        final Rectangle bounds = PaintShape.getStrokedBounds(myCurrTool.getUpdateBounds(), 
+                                                             myStroke);
+        final Rectangle changed;
+        if (myToolBounds == null) {
+            changed = bounds;
+        } else {
+            changed = bounds.union(myToolBounds);
+        }
+        myToolBounds = bounds;
+        myScheduler.request(myViewport.toPanel(changed), theInputTime);
+    }
+    
+    /**
+     * Requests a repaint of an area of the panel. With active rendering the area is
+     * drawn by the next frame of the canvas instead of by Swing's repaint manager.
+     * @param theTime Milliseconds before the repaint should happen, which are ignored
+     * with active rendering.
+     * @param theX X coordinate of the area.
+     * @param theY Y coordinate of the area.
+     * @param theWidth Width of the area.
+     * @param theHeight Height of the area.
+     */
+    @Override
+    public void repaint(final long theTime, final int theX, final int theY,
+                        final int theWidth, final int theHeight) {
+        if (myActiveCanvas == null) {
+            super.repaint(theTime, theX, theY, theWidth, theHeight);
+        } else {
+            myScheduler.request(new Rectangle(theX, theY, theWidth, theHeight),
+                                System.nanoTime());
+        }
+    }
+    
+    /**
+     * Paints an area of the panel right away. With active rendering the canvas
+     * draws a whole frame instead, since its back buffer is not kept between frames.
+     * @param theX X coordinate of the area.
+     * @param theY Y coordinate of the area.
+     * @param theWidth Width of the area.
+     * @param theHeight Height of the area.
+     */
+    @Override
+    public void paintImmediately(final int theX, final int theY,
+                                 final int theWidth, final int theHeight) {
+        if (myActiveCanvas == null) {
+            super.paintImmediately(theX, theY, theWidth, theHeight);
+        } else {
+            myActiveCanvas.render();
+        }
+    }
+    
+    /**
+     * Gets a description of how the panel is drawn, for comparing frame times.
+     * @return Name of the rendering mode.
+     */
+    public String getRenderingMode() {
+        if (myActiveCanvas == null) {
+            return "Swing";
+        }
+        if (myActiveCanvas.isPageFlipping()) {
+            return "Active, page flipping";
+        }
+        return "Active, blitting";
+    }
+    
+    /**
+     * Requests a repaint of the part of the panel showing an area of the canvas.
+     * @param theArea Area of the canvas that changed.
+     */
+    private void repaintCanvas(final Rectangle theArea) {
+        repaint(myViewport.toPanel(theArea));
+    }
+    
+    /**
+     * Zooms in one step, keeping the center of the panel where it is.
+     */
+    public void zoomIn() {
+        zoom(1, getWidth() / 2, getHeight() / 2);
+    }
+    
+    /**
+     * Zooms out one step, keeping the center of the panel where it is.
+     */
+    public void zoomOut() {
+        zoom(-1, getWidth() / 2, getHeight() / 2);
+    }
+    
+    /**
+     * Shows the canvas at its own size with its origin at the top left of the panel.
+     */
+    public void resetView() {
+        myViewport.reset();
+        repaint();
+    }
+    
+    /**
+     * Zooms by a number of steps around a point of the panel and repaints it.
+     * @param theSteps Number of steps to zoom in by, or out by if negative.
+     * @param theX X coordinate on the panel to zoom around.
+     * @param theY Y coordinate on the panel to zoom around.
+     */
+    private void zoom(final int theSteps, final int theX, final int theY) {
+        if (myViewport.zoom(theSteps, theX, theY)) {
+            repaint();
+        }
+    }
+    
+    /**
+     * Gets the zoom and pan of the panel.
+     * @return Viewport mapping the canvas onto the panel.
+     */
+    public Viewport getViewport() {
+        return myViewport;
+    }
+    
+    /**
+     * Gets the scheduler pacing repaints caused by the mouse, so its frame interval
+     * can be tuned against the latencies it measures.
+     * @return Render scheduler of the panel.
+     */
+    public RenderScheduler getRenderScheduler() {
+        return myScheduler;
+    }
+    
+    /**
+     * Gets the committed shape of the active layer whose stroked bounds are closest
+     * to a point, for use by tools that pick existing shapes.
+     * @param theX X coordinate on the panel.
+     * @param theY Y coordinate on the panel.
+     * @param theMaxDistance Farthest the shape can be from the point, in panel pixels.
+     * @return Closest shape, or null if none is close enough.
+     */
+    public PaintShape getNearestShape(final int theX, final int theY, 
+                                      final double theMaxDistance) {
+        final Layer layer = myLayers.getActive();
+        final int id = layer.getIndex().nearest(myViewport.toCanvasX(theX), 
+                                                myViewport.toCanvasY(theY),
+                                                theMaxDistance / myViewport.getZoom());
+        if (id < 0) {
+            return null;
+        }
+        return layer.getShapes().get(id);
     }
     
     /**
@@ -103,14 +475,508 @@ public class DrawPanel extends JPanel {
         final JMenuItem clearButton = new JMenuItem("Clear");     
         clearButton.addActionListener(new ActionListener() {
             public void actionPerformed(final ActionEvent theEvent) {
-                myShapesPanel = new ArrayList<PaintShape>();
-                clearButton.setEnabled(false);
-                repaint();
+                clearShapes();
             }
         });
         return clearButton;
     }
     
+    /**
+     * Removes every committed shape and the base document from the active layer as
+     * a command that can be undone, and updates the panel to reflect changes. The tiles
+     * are kept as the checkpoint used to undo it, so the layer comes back without a redraw.
+     */
+    public void clearShapes() {
+        final Layer layer = myLayers.getActive();
+        if (layer.isEmpty()) {
+            return;
+        }
+        final ClearCommand command = new ClearCommand(layer);
+        layer.getShapes().clear();
+        layer.getIndex().clear();
+        layer.setDocument(null);
+        myHistory.push(command, layer.getCanvas().detach());
+        myLayers.changedAll(layer);
+        fireLayerReplaced(layer);
+        updateClearButton();
+        repaint();
+    }
+    
+    /**
+     * Starts a new, empty drawing with a single layer, dropping the undo history and
+     * closing the base document, as when a different drawing is opened.
+     */
+    public void reset() {
+        myHistory.reset();
+        for (Layer layer : myLayers.getLayers()) {
+            closeDocument(layer.getDocument());
+        }
+        myLayers.reset();
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.drawingReset(myLayers);
+        }
+        layersChanged();
+    }
+    
+    /**
+     * Replaces the drawing with layers of shapes, as when a drawing is recovered,
+     * dropping the undo history. The layers are all shown, fully opaque, in normal mode.
+     * @param theShapes Shapes of each layer, bottom first. There must be at least one.
+     * @param theDocuments Base documents of each layer, with null for layers that have
+     *        none. The panel closes them once they are replaced.
+     * @param theActive Position of the layer to make active.
+     * @throws IllegalArgumentException If there are no layers, the lists differ in
+     *         length, or the active layer is not one of them.
+     */
+    public void restore(final List<ShapeStore> theShapes,
+                        final List<MappedDocument> theDocuments, final int theActive) {
+        if (theShapes.isEmpty() || theShapes.size() != theDocuments.size()
+                        || theActive < 0 || theActive >= theShapes.size()) {
+            throw new IllegalArgumentException("Layers do not match: " + theShapes.size()
+                                               + " shapes, " + theDocuments.size()
+                                               + " documents, active " + theActive);
+        }
+        myHistory.reset();
+        for (Layer layer : myLayers.getLayers()) {
+            closeDocument(layer.getDocument());
+        }
+        myLayers.reset();
+        final List<Layer> layers = new ArrayList<Layer>();
+        for (int i = 0; i < theShapes.size(); i++) {
+            final Layer layer;
+            if (i == 0) {
+                layer = myLayers.getActive();
+            } else {
+                layer = myLayers.createLayer();
+            }
+            final MappedDocument document = theDocuments.get(i);
+            layer.setDocument(document);
+            if (document != null) {
+                for (int group = 0; group < document.getGroupCount(); group++) {
+                    layer.getCanvas().addArea(document.getGroupBounds(group));
+                }
+            }
+            layer.getShapes().addAll(theShapes.get(i));
+            for (int id = 0; id < layer.getShapes().size(); id++) {
+                final Rectangle bounds = layer.getShapes().getBounds(id);
+                layer.getIndex().add(id, bounds);
+                layer.getCanvas().addArea(bounds, layer.getShapes().getShape(id),
+                                          layer.getShapes().getReach(id));
+            }
+            layers.add(layer);
+        }
+        myLayers.setTo(layers, theActive);
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.drawingReset(myLayers);
+        }
+        layersChanged();
+    }
+    
+    /**
+     * Adds an object to be told of every change to the drawing.
+     * @param theListener Listener to add.
+     */
+    public void addDrawingListener(final DrawingListener theListener) {
+        myDrawingListeners.add(theListener);
+    }
+    
+    /**
+     * Removes an object from those told of changes to the drawing.
+     * @param theListener Listener to remove.
+     */
+    public void removeDrawingListener(final DrawingListener theListener) {
+        myDrawingListeners.remove(theListener);
+    }
+    
+    /**
+     * Tells the drawing listeners that everything on a layer was replaced.
+     * @param theLayer Layer that was replaced.
+     */
+    private void fireLayerReplaced(final Layer theLayer) {
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.layerReplaced(theLayer);
+        }
+    }
+    
+    /**
+     * Tells the drawing listeners that how a layer is shown changed.
+     * @param theLayer Layer that changed.
+     */
+    private void fireLayerChanged(final Layer theLayer) {
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.layerChanged(theLayer);
+        }
+    }
+    
+    /**
+     * Tells the drawing listeners that the layers or the active layer changed.
+     */
+    private void fireLayersChanged() {
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.layersChanged(myLayers);
+        }
+    }
+    
+    /**
+     * Adds a peer layer showing the drawing of another person in a shared session over
+     * the drawing. It is not part of the drawing, so drawing listeners are not told of it.
+     * @param theName Name of the layer shown to the user.
+     * @return New, empty peer layer.
+     */
+    public Layer addPeerLayer(final String theName) {
+        final Layer layer = new Layer(theName);
+        myLayers.addPeer(layer);
+        return layer;
+    }
+    
+    /**
+     * Removes a peer layer and its preview, as when the person leaves the session.
+     * @param theLayer Peer layer to remove.
+     */
+    public void removePeerLayer(final Layer theLayer) {
+        setPeerPreview(theLayer, null);
+        myLayers.removePeer(theLayer);
+        repaint();
+    }
+    
+    /**
+     * Adds shapes to the end of a peer layer.
+     * @param theLayer Peer layer to add to.
+     * @param theShapes Shapes to add.
+     */
+    public void addPeerShapes(final Layer theLayer, final ShapeStore theShapes) {
+        final int first = theLayer.getShapes().size();
+        theLayer.getShapes().addAll(theShapes);
+        for (int id = first; id < theLayer.getShapes().size(); id++) {
+            placeShape(theLayer, id);
+        }
+    }
+    
+    /**
+     * Removes shapes from the end of a peer layer, as when the person undoes them
+     * or clears their drawing.
+     * @param theLayer Peer layer to remove from.
+     * @param theSize Number of shapes to leave on the layer.
+     * @throws IndexOutOfBoundsException If the layer holds fewer shapes than that.
+     */
+    public void truncatePeerLayer(final Layer theLayer, final int theSize) {
+        final ShapeStore shapes = theLayer.getShapes();
+        if (theSize < 0 || theSize > shapes.size()) {
+            throw new IndexOutOfBoundsException("Cannot truncate " + shapes.size()
+                                                + " shapes to " + theSize);
+        }
+        if (theSize == 0) {
+            shapes.clear();
+            theLayer.getIndex().clear();
+            theLayer.getCanvas().clear();
+            repaint();
+            return;
+        }
+        Rectangle removed = null;
+        for (int id = theSize; id < shapes.size(); id++) {
+            if (removed == null) {
+                removed = shapes.getBounds(id);
+            } else {
+                removed.add(shapes.getBounds(id));
+            }
+        }
+        if (removed != null) {
+            shapes.truncate(theSize);
+            theLayer.getIndex().truncate(theSize);
+            theLayer.getCanvas().invalidate(removed);
+            repaintCanvas(removed);
+        }
+    }
+    
+    /**
+     * Shows the shape another person in a shared session is drawing, before they
+     * finish it.
+     * @param theLayer Peer layer of the person.
+     * @param thePreview Store holding the shape as its only one, or null for none.
+     */
+    public void setPeerPreview(final Layer theLayer, final ShapeStore thePreview) {
+        final ShapeStore old;
+        if (thePreview == null) {
+            old = myPeerPreviews.remove(theLayer);
+        } else {
+            old = myPeerPreviews.put(theLayer, thePreview);
+        }
+        if (old != null) {
+            repaintCanvas(old.getBounds(0));
+        }
+        if (thePreview != null) {
+            repaintCanvas(thePreview.getBounds(0));
+        }
+    }
+    
+    /**
+     * Undoes the most recent change to the drawing, if there is one.
+     */
+    public void undo() {
+        if (myHistory.canUndo()) {
+            myHistory.undo();
+            layersChanged();
+        }
+    }
+    
+    /**
+     * Redoes the most recently undone change to the drawing, if there is one.
+     */
+    public void redo() {
+        if (myHistory.canRedo()) {
+            myHistory.redo();
+            layersChanged();
+        }
+    }
+    
+    /**
+     * Gets the history of changes to the drawing, so its state can be watched
+     * and its checkpoint budget tuned.
+     * @return Undo history of the panel.
+     */
+    public UndoHistory getHistory() {
+        return myHistory;
+    }
+    
+    /**
+     * Enables the clear button only when the active layer has something to clear.
+     */
+    private void updateClearButton() {
+        myClearButton.setEnabled(!myLayers.getActive().isEmpty());
+    }
+    
+    /**
+     * Adds a batch of committed shapes to the end of the active layer,
+     * as when a document is loaded, and draws them onto the tiles they cover.
+     * @param theShapes Shapes to add, in the order they should be drawn.
+     */
+    public void addShapes(final ShapeStore theShapes) {
+        final Layer layer = myLayers.getActive();
+        final int first = layer.getShapes().size();
+        //The shapes are not in the history, so they could not be replayed onto checkpoints.
+        myHistory.dropCheckpoints(layer.getCanvas());
+        layer.getShapes().addAll(theShapes);
+        for (int id = first; id < layer.getShapes().size(); id++) {
+            commitShape(layer, id);
+        }
+        updateClearButton();
+    }
+    
+    /**
+     * Replaces the drawing with an archived document that is drawn straight from
+     * its file, so only the shapes in view are ever read. New shapes are drawn on top,
+     * on the same layer. The panel closes the document once it is replaced and can no
+     * longer be undone back.
+     * @param theDocument Document to draw beneath the committed shapes.
+     */
+    public void setBaseDocument(final MappedDocument theDocument) {
+        reset();
+        final Layer layer = myLayers.getActive();
+        layer.setDocument(theDocument);
+        for (int group = 0; group < theDocument.getGroupCount(); group++) {
+            final Rectangle bounds = theDocument.getGroupBounds(group);
+            layer.getCanvas().addArea(bounds);
+            myLayers.changed(layer, bounds);
+        }
+        fireLayerReplaced(layer);
+        updateClearButton();
+        repaint();
+    }
+    
+    /**
+     * Closes an archived document that is no longer drawn.
+     * @param theDocument Document to close, or null to do nothing.
+     */
+    private static void closeDocument(final MappedDocument theDocument) {
+        if (theDocument != null) {
+            try {
+                theDocument.close();
+            } catch (final IOException e) {
+                //The document is only read from, so nothing is lost.
+            }
+        }
+    }
+    
+    /**
+     * Gets the committed shapes of the active layer, for reading only.
+     * The collection keeps changing as shapes are drawn, so it must only be read
+     * on the event dispatch thread. Work on other threads should read a snapshot of it.
+     * @return Every committed shape on the active layer.
+     */
+    public ShapeStore getShapes() {
+        return myLayers.getActive().getShapes();
+    }
+    
+    /**
+     * Gets the layers of the drawing, for reading only. They are changed through the
+     * panel, which keeps their tiles up to date and records changes to undo.
+     * @return Layers of the drawing.
+     */
+    public LayerStack getLayers() {
+        return myLayers;
+    }
+    
+    /**
+     * Adds an empty layer above the active layer and makes it the active layer,
+     * as a command that can be undone.
+     */
+    public void addLayer() {
+        final List<Layer> layers = new ArrayList<Layer>(myLayers.getLayers());
+        final int index = myLayers.getActiveIndex() + 1;
+        layers.add(index, myLayers.createLayer());
+        changeLayers(layers, index);
+    }
+    
+    /**
+     * Removes the active layer, as a command that can be undone, and makes the layer
+     * beneath it the active layer. The last layer can not be removed.
+     */
+    public void removeLayer() {
+        if (myLayers.size() == 1) {
+            return;
+        }
+        final List<Layer> layers = new ArrayList<Layer>(myLayers.getLayers());
+        final int index = myLayers.getActiveIndex();
+        layers.remove(index);
+        changeLayers(layers, Math.max(0, index - 1));
+    }
+    
+    /**
+     * Moves a layer to another position, as a command that can be undone.
+     * The active layer stays the active layer wherever it ends up.
+     * @param theIndex Position of the layer to move.
+     * @param theNewIndex Position to move it to.
+     */
+    public void moveLayer(final int theIndex, final int theNewIndex) {
+        if (theNewIndex < 0 || theNewIndex >= myLayers.size() || theIndex == theNewIndex) {
+            return;
+        }
+        final Layer active = myLayers.getActive();
+        final List<Layer> layers = new ArrayList<Layer>(myLayers.getLayers());
+        layers.add(theNewIndex, layers.remove(theIndex));
+        changeLayers(layers, layers.indexOf(active));
+    }
+    
+    /**
+     * Chooses the layer the tools draw on.
+     * @param theIndex Position of the layer, from 0 at the bottom.
+     */
+    public void setActiveLayer(final int theIndex) {
+        myLayers.setActive(theIndex);
+        fireLayersChanged();
+        layersChanged();
+    }
+    
+    /**
+     * Shows or hides a layer.
+     * @param theIndex Position of the layer.
+     * @param theVisible Whether the layer is shown.
+     */
+    public void setLayerVisible(final int theIndex, final boolean theVisible) {
+        myLayers.setVisible(theIndex, theVisible);
+        fireLayerChanged(myLayers.get(theIndex));
+        layersChanged();
+    }
+    
+    /**
+     * Sets the opacity a layer is shown with.
+     * @param theIndex Position of the layer.
+     * @param theOpacity Opacity from 0 to 1.
+     */
+    public void setLayerOpacity(final int theIndex, final float theOpacity) {
+        myLayers.setOpacity(theIndex, theOpacity);
+        fireLayerChanged(myLayers.get(theIndex));
+        layersChanged();
+    }
+    
+    /**
+     * Sets how a layer is combined with the layers beneath it.
+     * @param theIndex Position of the layer.
+     * @param theMode Blend mode of the layer.
+     */
+    public void setLayerBlendMode(final int theIndex, final BlendMode theMode) {
+        myLayers.setBlendMode(theIndex, theMode);
+        fireLayerChanged(myLayers.get(theIndex));
+        layersChanged();
+    }
+    
+    /**
+     * Replaces the layers as a command that can be undone.
+     * @param theLayers Layers of the drawing after the change, bottom first.
+     * @param theActive Position of the active layer after the change.
+     */
+    private void changeLayers(final List<Layer> theLayers, final int theActive) {
+        final LayerCommand command = new LayerCommand(theLayers, theActive);
+        myLayers.setTo(theLayers, theActive);
+        myHistory.push(command);
+        fireLayersChanged();
+        layersChanged();
+    }
+    
+    /**
+     * Updates the panel after the layers or the way they are shown changed, telling
+     * listeners of LAYERS_PROPERTY and repainting the whole drawing.
+     */
+    private void layersChanged() {
+        updateClearButton();
+        firePropertyChange(LAYERS_PROPERTY, null, myLayers);
+        repaint();
+    }
+    
+    /**
+     * Places a shape that was just added to a layer, and tells the drawing listeners.
+     * @param theLayer Layer holding the shape.
+     * @param theId Id of the new shape.
+     */
+    private void commitShape(final Layer theLayer, final int theId) {
+        placeShape(theLayer, theId);
+        for (DrawingListener listener : myDrawingListeners) {
+            listener.shapeAdded(theLayer, theId);
+        }
+    }
+    
+    /**
+     * Indexes a shape that was just added to a layer, draws it onto the
+     * tiles it covers, and repaints its area of the panel.
+     * @param theLayer Layer holding the shape.
+     * @param theId Id of the new shape.
+     */
+    private void placeShape(final Layer theLayer, final int theId) {
+        final Rectangle bounds = theLayer.getShapes().getBounds(theId);
+        theLayer.getIndex().add(theId, bounds);
+        drawOntoTiles(theLayer, theId);
+        repaintCanvas(bounds);
+    }
+    
+    /**
+     * Draws a shape of a layer onto the tiles it reaches, at every zoom level, and
+     * marks the combined tiles of the layers around it out of date there.
+     * @param theLayer Layer holding the shape.
+     * @param theId Id of the shape.
+     */
+    private void drawOntoTiles(final Layer theLayer, final int theId) {
+        final ShapeStore shapes = theLayer.getShapes();
+        final Rectangle bounds = shapes.getBounds(theId);
+        theLayer.getCanvas().draw(bounds, shapes.getShape(theId), shapes.getReach(theId),
+                                  shapeRenderer(shapes, theId));
+        myLayers.changed(theLayer, bounds);
+    }
+    
+    /**
+     * Creates a renderer drawing a single shape.
+     * @param theShapes Store holding the shape.
+     * @param theId Id of the shape.
+     * @return Renderer drawing only the shape.
+     */
+    private static TileRenderer shapeRenderer(final ShapeStore theShapes, final int theId) {
+        return new TileRenderer() {
+            @Override
+            public void render(final Graphics2D theGraphics, final Rectangle theArea) {
+                theShapes.draw(theGraphics, theId, theGraphics.getTransform().getScaleX());
+            }
+        };
+    }
+    
     /**
      * Gets the clear button for use by other GUI components.
      * @return Clear button attached to the current DrawPanel being used.
@@ -121,18 +987,170 @@ public class DrawPanel extends JPanel {
     
     /**
      * Sets the current type of tool to be used on the DrawPanel.
+     * Listeners of TOOL_PROPERTY are told about the change.
      * @param theTool Type of tool the DrawPanel should be set to.
      */
     public void setCurrentTool(final AbstractTool theTool) {
+        final AbstractTool old = myCurrTool;
         myCurrTool = theTool;
+        myLiveStroke.stop();
+        firePropertyChange(TOOL_PROPERTY, old, theTool);
+    }
+    
+    /**
+     * Gets the current type of tool used on the DrawPanel.
+     * @return Tool the DrawPanel is set to.
+     */
+    public AbstractTool getCurrentTool() {
+        return myCurrTool;
     }
     
     /**
-     * Sets the color that should be used when drawing a shape.
+     * Gets the simplifier that freeform strokes are run through when committed,
+     * so its tolerance and curve mode can be changed.
+     * @return Simplifier used for freeform strokes.
+     */
+    public StrokeSimplifier getSimplifier() {
+        return mySimplifier;
+    }
+    
+    /**
+     * Gets the flood fill the fill tool finds areas with, so its tolerance can be changed.
+     * @return Flood fill used by the fill tool.
+     */
+    public FloodFill getFloodFill() {
+        return myFloodFill;
+    }
+    
+    /**
+     * Fills the area around a point of the view with the current color, as a shape
+     * that can be undone like any other. The shown layers are copied out of the tiles of
+     * the current zoom level into a buffer that is kept between fills and covers only
+     * the view, and the buffer is flooded from the point in the background. The
+     * rectangles of the area found are then committed as a filled shape on the layer that
+     * was active, scaled from the pixels of the level to the canvas. Clicks while a fill
+     * is in progress are ignored. Nothing is filled if filling would not change the pixel
+     * clicked, or if the newest shape there on the active layer is already a fill of the
+     * color, so clicking again with a translucent color does not darken the area.
+     * @param theX X coordinate on the panel.
+     * @param theY Y coordinate on the panel.
+     */
+    private void fill(final int theX, final int theY) {
+        if (myFillWorker != null) {
+            return;
+        }
+        final Rectangle point = myViewport.toLevel(new Rectangle(theX, theY, 1, 1));
+        final Rectangle area = myViewport.toLevel(new Rectangle(0, 0, getWidth(), getHeight()));
+        area.add(point.x + 1, point.y + 1);
+        area.setBounds(area.intersection(new Rectangle(point.x - MAX_FILL_SIZE / 2,
+                                                       point.y - MAX_FILL_SIZE / 2,
+                                                       MAX_FILL_SIZE, MAX_FILL_SIZE)));
+        final int size = area.width * area.height;
+        if (myFillPixels.length < size) {
+            myFillPixels = new int[size];
+        }
+        final BufferedImage image = new BufferedImage(ColorModel.getRGBdefault(),
+                        Raster.createPackedRaster(new DataBufferInt(myFillPixels, size),
+                                                  area.width, area.height, area.width,
+                                                  RGBA_MASKS, null), false, null);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(getBackground());
+        graphics.fillRect(0, 0, area.width, area.height);
+        graphics.translate(-area.x, -area.y);
+        myLayers.paint(graphics, area, myViewport.getLevel());
+        graphics.dispose();
+        final int pixel = myFillPixels[(point.y - area.y) * area.width + point.x - area.x];
+        if (isFilled(pixel, myViewport.toCanvasX(theX), myViewport.toCanvasY(theY))) {
+            return;
+        }
+        myFillWorker = new FillWorker(myLayers.getActive(), myColor, area, point.x, point.y,
+                                      myViewport.getLevel());
+        myFillWorker.execute();
+    }
+    
+    /**
+     * Tells whether filling at a point would change nothing: the color drawn over the
+     * pixel there gives the same pixel, or the newest shape of the active layer at the
+     * point is a fill of the current color.
+     * @param thePixel Opaque pixel at the point, as shown.
+     * @param theX X coordinate on the canvas.
+     * @param theY Y coordinate on the canvas.
+     * @return Whether to skip the fill.
+     */
+    private boolean isFilled(final int thePixel, final int theX, final int theY) {
+        final int alpha = myColor.getAlpha();
+        boolean same = true;
+        for (int shift = 0; shift < 24; shift += 8) {
+            final int under = thePixel >> shift & 0xFF;
+            final int over = myColor.getRGB() >> shift & 0xFF;
+            final int result = (over * alpha + under * (255 - alpha) + 127) / 255;
+            same &= Math.abs(result - under) <= 1;
+        }
+        if (same) {
+            return true;
+        }
+        final ShapeStore shapes = myLayers.getActive().getShapes();
+        final int[] ids = myLayers.getActive().getIndex().query(new Rectangle(theX, theY, 1, 1));
+        for (int i = ids.length - 1; i >= 0; i--) {
+            final int id = ids[i];
+            if (shapes.isFilled(id) && shapes.getShape(id).contains(theX + 0.5, theY + 0.5)) {
+                return shapes.getColor(id) == myColor;
+            }
+            if (!shapes.isFilled(id) && shapes.getStroke(id).createStrokedShape(
+                            shapes.getShape(id)).contains(theX + 0.5, theY + 0.5)) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Waits for a fill in progress and commits it right away, rather than when the event
+     * dispatch thread next gets to it, as when input is replayed and each fill must be in
+     * the drawing before the next event. Must be called on the event dispatch thread.
+     */
+    public void finishFill() {
+        if (myFillWorker != null) {
+            commitFill(myFillWorker);
+        }
+    }
+    
+    /**
+     * Commits the area found by a fill, unless it was already committed or its layer was
+     * removed from the drawing while it ran.
+     * @param theWorker Fill that finished.
+     */
+    private void commitFill(final FillWorker theWorker) {
+        if (myFillWorker != theWorker) {
+            return;
+        }
+        myFillWorker = null;
+        final Shape area;
+        try {
+            area = theWorker.get();
+        } catch (final InterruptedException | ExecutionException e) {
+            return;
+        }
+        final Layer layer = theWorker.myLayer;
+        if (area.getBounds().isEmpty() || myLayers.indexOf(layer) < 0) {
+            return;
+        }
+        final int id = layer.getShapes().addFill(area, theWorker.myColor);
+        commitShape(layer, id);
+        myHistory.push(new AddShapeCommand(layer, id));
+        myClearButton.setEnabled(true);
+    }
+    
+    /**
+     * Sets the color that should be used when drawing a shape. The shared color of
+     * the same value from Styles is kept, so shapes of one color can be drawn together.
+     * Listeners of COLOR_PROPERTY are told about the change.
      * @param theColor Color of the shape the tool should draw.
      */
     public void setColor(final Color theColor) {
-        myColor = theColor;
+        final Color old = myColor;
+        myColor = Styles.color(theColor);
+        firePropertyChange(COLOR_PROPERTY, old, myColor);
     }
     
     /**
@@ -145,10 +1163,21 @@ public class DrawPanel extends JPanel {
     
     /**
      * Sets the thickness the current tool should be drawn at.
+     * Listeners of STROKE_PROPERTY are told about the change.
      * @param theThickness Thickness the tool should be drawn at.
      */
     public void setStroke(final int theThickness) {
-        myStroke = new BasicStroke(theThickness);
+        final int old = getStrokeWidth();
+        myStroke = Styles.stroke(theThickness);
+        firePropertyChange(STROKE_PROPERTY, old, theThickness);
+    }
+    
+    /**
+     * Gets the thickness the current tool is drawn at.
+     * @return Thickness of the tool's stroke.
+     */
+    public int getStrokeWidth() {
+        return (int) myStroke.getLineWidth();
     }
     
     /**
@@ -158,10 +1187,10 @@ public class DrawPanel extends JPanel {
     public void setDefaults() { 
         setCursor(new Cursor(Cursor.CROSSHAIR_CURSOR));
         myClearButton.setEnabled(false);
-        myColor = DEFAULT_COLOR;
-        myStroke = new BasicStroke(DEFAULT_WIDTH);
+        myColor = Styles.color(DEFAULT_COLOR);
+        myStroke = Styles.stroke(DEFAULT_WIDTH);
         setLayout(new BorderLayout());
-        setBackground(Color.WHITE);
+        setBackground(PAPER_COLOR);
     }
     
     /**
@@ -173,14 +1202,26 @@ public class DrawPanel extends JPanel {
         
         /**
          * Runs whenever the action is fired. Sets the current position of the
-         * mouse in the DrawTool.
+         * mouse in the DrawTool, and repaints only the area the tool changed.
+         * While panning, moves the canvas with the mouse instead. Either way the repaint
+         * waits for the next frame, so every point is still recorded by the tool but
+         * a fast mouse does not cause more repaints than the display can show.
          * @param theEvent Event that happens whenever the mouse is dragged.
          */
         @Override
         public void mouseDragged(final MouseEvent theEvent) {
-            myCurrTool.setCurrX(theEvent.getX());
-            myCurrTool.setCurrY(theEvent.getY());
-            repaint();
+            final long inputTime = RenderScheduler.getInputTime(theEvent);
+            myMetrics.recordDrag();
+            if (myPanning) {
+                myViewport.pan(theEvent.getX() - myPanX, theEvent.getY() - myPanY);
+                myPanX = theEvent.getX();
+                myPanY = theEvent.getY();
+                myScheduler.request(new Rectangle(0, 0, getWidth(), getHeight()), inputTime);
+                return;
+            }
+            myCurrTool.setCurrPoint(myViewport.toCanvasX(theEvent.getX()), 
+                                    myViewport.toCanvasY(theEvent.getY()));
+            repaintTool(inputTime);
         }
         
     }
@@ -195,34 +1236,401 @@ public class DrawPanel extends JPanel {
          * Enables the tool and initializes it to current values if the mouse is 
          * clicked on the panel. 
          * Only enables the tool if the specified thickness is greater than zero.
+         * A freeform starts a new live image, so it can be shown as it is drawn.
+         * The fill tool fills the area around the point right away instead.
+         * The middle and right mouse buttons start panning instead.
          * @param theEvent Event that happens whenever the mouse is pressed.
          */
         @Override
         public void mousePressed(final MouseEvent theEvent) {
+            if (SwingUtilities.isMiddleMouseButton(theEvent) 
+                            || SwingUtilities.isRightMouseButton(theEvent)) {
+                myPanning = true;
+                myPanX = theEvent.getX();
+                myPanY = theEvent.getY();
+                return;
+            }
+            if (myCurrTool instanceof FillTool) {
+                fill(theEvent.getX(), theEvent.getY());
+                return;
+            }
+            final int x = myViewport.toCanvasX(theEvent.getX());
+            final int y = myViewport.toCanvasY(theEvent.getY());
             //Initializes the values of the tool to current defaults in order to
             //avoid unwanted behavior.
-            myCurrTool.setOrigX(theEvent.getX());
-            myCurrTool.setOrigY(theEvent.getY());
-            myCurrTool.setCurrX(theEvent.getX());
-            myCurrTool.setCurrY(theEvent.getY());
+            myCurrTool.setOrigX(x);
+            myCurrTool.setOrigY(y);
+            myCurrTool.setCurrPoint(x, y);
             if (myStroke.getLineWidth() > 0) {
                 myCurrTool.setEnabled(true);
+                if (myCurrTool instanceof PencilTool) {
+                    myLiveStroke.start((PencilTool) myCurrTool, myStroke, myColor);
+                }
             }
+            myToolBounds = null;
+            repaintTool(RenderScheduler.getInputTime(theEvent));
         }
         
         /**
-         * Disables the tool and adds the shape created to a collection for future use
-         * by the DrawPanel. Enables the button for clearing the panel since there are shapes
-         * to clear now.
+         * Disables the tool and adds the shape created to the active layer for future use
+         * by the DrawPanel. The shape is also drawn onto the tiles it covers once here,
+         * so it never has to be stroked again. Freeform strokes are simplified first.
+         * Enables the button for clearing the panel since there are shapes to clear now.
+         * Releasing the button that was panning only stops the panning, and releasing
+         * the fill tool does nothing, since its fill was made when it was pressed.
          * @param theEvent Event that happens whenever the mouse is released.
          */
         @Override
         public void mouseReleased(final MouseEvent theEvent) {
-            myShapesPanel.add(new PaintShape(myCurrTool.getShape(), 
-                                           new BasicStroke(myStroke.getLineWidth()), myColor));
+            if (SwingUtilities.isMiddleMouseButton(theEvent) 
+                            || SwingUtilities.isRightMouseButton(theEvent)) {
+                myPanning = false;
+                return;
+            }
+            if (myCurrTool instanceof FillTool) {
+                return;
+            }
+            Shape toolShape = myCurrTool.getShape();
+            if (myCurrTool instanceof PencilTool) {
+                toolShape = ((PencilTool) myCurrTool).getSimplifiedShape(mySimplifier);
+            }
+            final Layer layer = myLayers.getActive();
+            final int id = layer.getShapes().add(toolShape, myStroke, myColor);
+            commitShape(layer, id);
+            myHistory.push(new AddShapeCommand(layer, id));
             myClearButton.setEnabled(true);
             myCurrTool.setEnabled(false);
-            repaint();
+            myLiveStroke.stop();
+            if (myToolBounds != null) {
+                repaintCanvas(myToolBounds);
+                myToolBounds = null;
+            }
+        }
+    }
+    
+    /**
+     * Listens for the mouse wheel on the DrawPanel, which zooms the drawing.
+     */
+    public class MyMouseWheelAdapter extends MouseAdapter {
+        
+        /**
+         * Zooms in a step when the wheel is rolled away from the user and out a step
+         * when rolled toward them, keeping the point under the mouse where it is.
+         * @param theEvent Event that happens whenever the mouse wheel is moved.
+         */
+        @Override
+        public void mouseWheelMoved(final MouseWheelEvent theEvent) {
+            zoom(-theEvent.getWheelRotation(), theEvent.getX(), theEvent.getY());
+        }
+    }
+    
+    /**
+     * Floods the pixels copied for a fill in the background and builds the shape of
+     * the area found, then commits it on the event dispatch thread.
+     */
+    private final class FillWorker extends SwingWorker<Shape, Void> {
+        
+        /** Layer that was active when the fill was clicked, which the area is added to. */
+        private final Layer myLayer;
+        
+        /** Color to fill with. */
+        private final Color myColor;
+        
+        /** Area of the zoom level the pixels cover. */
+        private final Rectangle myArea;
+        
+        /** X coordinate on the zoom level to flood from. */
+        private final int myX;
+        
+        /** Y coordinate on the zoom level to flood from. */
+        private final int myY;
+        
+        /** Zoom level the pixels were copied from. */
+        private final int myLevel;
+        
+        /**
+         * Constructs a fill of the pixels just copied.
+         * @param theLayer Layer to add the area to.
+         * @param theColor Color to fill with.
+         * @param theArea Area of the zoom level the pixels cover.
+         * @param theX X coordinate on the zoom level to flood from.
+         * @param theY Y coordinate on the zoom level to flood from.
+         * @param theLevel Zoom level the pixels were copied from.
+         */
+        private FillWorker(final Layer theLayer, final Color theColor, final Rectangle theArea,
+                           final int theX, final int theY, final int theLevel) {
+            myLayer = theLayer;
+            myColor = theColor;
+            myArea = theArea;
+            myX = theX;
+            myY = theY;
+            myLevel = theLevel;
+        }
+        
+        /**
+         * Floods the pixels and scales the area found to the canvas.
+         * @return Area to fill, in canvas coordinates.
+         */
+        @Override
+        protected Shape doInBackground() {
+            final Shape area = myFloodFill.fill(myFillPixels, myArea, myX, myY);
+            if (myLevel == 0) {
+                return area;
+            }
+            final double scale = Math.pow(2, -myLevel);
+            return AffineTransform.getScaleInstance(scale, scale).createTransformedShape(area);
+        }
+        
+        /**
+         * Commits the area, unless it already was.
+         */
+        @Override
+        protected void done() {
+            commitFill(this);
+        }
+    }
+    
+    /**
+     * Command for a shape drawn with a tool. Undoing it moves the shape out of
+     * its layer and redoing it moves the shape back.
+     */
+    private final class AddShapeCommand implements AppendCommand {
+        
+        /** Layer the shape was drawn on. */
+        private final Layer myLayer;
+        
+        /** Id of the shape, which is its position in the layer. */
+        private final int myId;
+        
+        /** Stroked bounds of the shape. */
+        private final Rectangle myBounds;
+        
+        /** Snapshot of the layer's shapes ending with the shape while it is undone, or null. */
+        private ShapeStore myUndone;
+        
+        /**
+         * Constructs a command for a shape that was just committed.
+         * @param theLayer Layer the shape was drawn on.
+         * @param theId Id of the shape.
+         */
+        private AddShapeCommand(final Layer theLayer, final int theId) {
+            myLayer = theLayer;
+            myId = theId;
+            myBounds = theLayer.getShapes().getBounds(theId);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void undo() {
+            myUndone = myLayer.getShapes().snapshot();
+            myLayer.getShapes().truncate(myId);
+            myLayer.getIndex().truncate(myId);
+            myLayer.getCanvas().invalidate(myBounds);
+            myLayers.changed(myLayer, myBounds);
+            for (DrawingListener listener : myDrawingListeners) {
+                listener.shapesRemoved(myLayer, myId);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void redo() {
+            myLayer.getShapes().setTo(myUndone);
+            myUndone = null;
+            commitShape(myLayer, myId);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Rectangle getBounds() {
+            return new Rectangle(myBounds);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void replay(final Rectangle theArea) {
+            myLayer.getCanvas().replay(myBounds, theArea,
+                                       shapeRenderer(myLayer.getShapes(), myId));
+            myLayers.changed(myLayer, myBounds);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public TiledCanvas getCanvas() {
+            return myLayer.getCanvas();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void discard() {
+            myUndone = null;
+        }
+    }
+    
+    /**
+     * Command for clearing a layer. Keeps the cleared shapes and base document
+     * so undoing it can put them back.
+     */
+    private final class ClearCommand implements DrawCommand {
+        
+        /** Layer that was cleared. */
+        private final Layer myLayer;
+        
+        /** Snapshot of the shapes that were cleared. */
+        private final ShapeStore myCleared;
+        
+        /** Base document that was cleared, or null if there was none. */
+        private final MappedDocument myClearedDocument;
+        
+        /**
+         * Constructs a command that remembers what is on a layer right now.
+         * @param theLayer Layer about to be cleared.
+         */
+        private ClearCommand(final Layer theLayer) {
+            myLayer = theLayer;
+            myCleared = theLayer.getShapes().snapshot();
+            myClearedDocument = theLayer.getDocument();
+        }
+        
+        /**
+         * Puts the cleared shapes back. Every area they cover is marked out of date,
+         * in case the history has no checkpoint to restore the tiles from.
+         */
+        @Override
+        public void undo() {
+            final TiledCanvas canvas = myLayer.getCanvas();
+            myLayer.getShapes().setTo(myCleared);
+            myLayer.setDocument(myClearedDocument);
+            canvas.clear();
+            if (myClearedDocument != null) {
+                for (int group = 0; group < myClearedDocument.getGroupCount(); group++) {
+                    canvas.addArea(myClearedDocument.getGroupBounds(group));
+                }
+            }
+            for (int id = 0; id < myCleared.size(); id++) {
+                final Rectangle bounds = myCleared.getBounds(id);
+                myLayer.getIndex().add(id, bounds);
+                canvas.addArea(bounds);
+            }
+            myLayers.changedAll(myLayer);
+            fireLayerReplaced(myLayer);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void redo() {
+            myLayer.getShapes().clear();
+            myLayer.getIndex().clear();
+            myLayer.setDocument(null);
+            myLayer.getCanvas().clear();
+            myLayers.changedAll(myLayer);
+            fireLayerReplaced(myLayer);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public TiledCanvas getCanvas() {
+            return myLayer.getCanvas();
+        }
+        
+        /**
+         * Closes the cleared base document unless it is back on the layer.
+         */
+        @Override
+        public void discard() {
+            if (myClearedDocument != myLayer.getDocument()) {
+                closeDocument(myClearedDocument);
+            }
+        }
+    }
+    
+    /**
+     * Command for adding, removing or moving layers. Keeps the layers from before
+     * and after the change along with their tiles, so undoing or redoing it only
+     * has to combine the tiles of the layers again.
+     */
+    private final class LayerCommand implements DrawCommand {
+        
+        /** Layers before the change, bottom first. */
+        private final List<Layer> myBefore;
+        
+        /** Position of the active layer before the change. */
+        private final int myActiveBefore;
+        
+        /** Layers after the change, bottom first. */
+        private final List<Layer> myAfter;
+        
+        /** Position of the active layer after the change. */
+        private final int myActiveAfter;
+        
+        /**
+         * Constructs a command that remembers the layers as they are right now.
+         * @param theLayers Layers after the change, bottom first.
+         * @param theActive Position of the active layer after the change.
+         */
+        private LayerCommand(final List<Layer> theLayers, final int theActive) {
+            myBefore = myLayers.getLayers();
+            myActiveBefore = myLayers.getActiveIndex();
+            myAfter = new ArrayList<Layer>(theLayers);
+            myActiveAfter = theActive;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void undo() {
+            myLayers.setTo(myBefore, myActiveBefore);
+            fireLayersChanged();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void redo() {
+            myLayers.setTo(myAfter, myActiveAfter);
+            fireLayersChanged();
+        }
+        
+        /**
+         * Gets no tiles, since the tiles of every layer are kept as they are.
+         * @return Null.
+         */
+        @Override
+        public TiledCanvas getCanvas() {
+            return null;
+        }
+        
+        /**
+         * Closes the base documents of the layers it held that are no longer in the drawing.
+         */
+        @Override
+        public void discard() {
+            final List<Layer> held = new ArrayList<Layer>(myBefore);
+            held.addAll(myAfter);
+            for (Layer layer : held) {
+                if (myLayers.indexOf(layer) < 0) {
+                    closeDocument(layer.getDocument());
+                    layer.setDocument(null);
+                }
+            }
         }
     }
 
@@ -0,0 +1,55 @@
+package paintwindow;
+
+import java.util.EventListener;
+
+/**
+ * Listener for every change to what a DrawPanel draws, told of each change after it
+ * is made, whether it comes from a tool, undo or redo, or loading a drawing.
+ * Together the calls describe the drawing completely, so a listener can keep a copy
+ * of it, as the autosave journal does. Changes to the view, the tool or the style of
+ * new shapes are not included. Called on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface DrawingListener extends EventListener {
+
+    /**
+     * Called when a shape is added to the end of a layer.
+     * @param theLayer Layer the shape was added to.
+     * @param theId Id of the shape, which is its position in the layer.
+     */
+    void shapeAdded(Layer theLayer, int theId);
+
+    /**
+     * Called when the shapes at the end of a layer are removed, as when drawing
+     * them is undone.
+     * @param theLayer Layer the shapes were removed from.
+     * @param theSize Number of shapes left on the layer.
+     */
+    void shapesRemoved(Layer theLayer, int theSize);
+
+    /**
+     * Called when everything on a layer is replaced, as when it is cleared or
+     * given a base document.
+     * @param theLayer Layer that was replaced.
+     */
+    void layerReplaced(Layer theLayer);
+
+    /**
+     * Called when whether a layer is shown, its opacity or its blend mode changes.
+     * @param theLayer Layer that changed.
+     */
+    void layerChanged(Layer theLayer);
+
+    /**
+     * Called when layers are added, removed or moved, or another layer is made active.
+     * @param theLayers Layers of the drawing as they are now.
+     */
+    void layersChanged(LayerStack theLayers);
+
+    /**
+     * Called when the whole drawing is replaced, as when a new one is started.
+     * @param theLayers Layers of the drawing as they are now.
+     */
+    void drawingReset(LayerStack theLayers);
+}
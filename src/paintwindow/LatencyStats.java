@@ -0,0 +1,129 @@
+package paintwindow;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies, such as the time from a mouse event to the frame that shows it.
+ * Latencies are counted in buckets a tenth of a millisecond wide up to a limit, so
+ * recording one never allocates and percentiles are exact to the width of a bucket.
+ * Latencies past the limit are counted in the last bucket, but the maximum is exact.
+ * Not thread safe; it is meant to be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class LatencyStats {
+
+    /** Width of each bucket, in nanoseconds. */
+    private static final long BUCKET_NANOS = 100000;
+
+    /** Number of buckets, covering up to a quarter of a second. */
+    private static final int BUCKET_COUNT = 2500;
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Number of latencies in each bucket. */
+    private final long[] myBuckets;
+
+    /** Number of latencies recorded. */
+    private long myCount;
+
+    /** Sum of every latency recorded, in nanoseconds. */
+    private long myTotal;
+
+    /** Longest latency recorded, in nanoseconds. */
+    private long myMax;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyStats() {
+        myBuckets = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Records a latency.
+     * @param theNanos Latency in nanoseconds. Negative values are counted as zero.
+     */
+    public void record(final long theNanos) {
+        final long nanos = Math.max(0, theNanos);
+        myBuckets[(int) Math.min(BUCKET_COUNT - 1, nanos / BUCKET_NANOS)]++;
+        myCount++;
+        myTotal += nanos;
+        myMax = Math.max(myMax, nanos);
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     * @return Number of latencies.
+     */
+    public long getCount() {
+        return myCount;
+    }
+
+    /**
+     * Gets the mean latency.
+     * @return Mean latency in milliseconds, or 0 if none were recorded.
+     */
+    public double getMeanMillis() {
+        if (myCount == 0) {
+            return 0;
+        }
+        return myTotal / NANOS_PER_MILLI / myCount;
+    }
+
+    /**
+     * Gets the longest latency.
+     * @return Longest latency in milliseconds, or 0 if none were recorded.
+     */
+    public double getMaxMillis() {
+        return myMax / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the latency that a given share of the recorded latencies are at or under,
+     * rounded up to the end of its bucket.
+     * @param thePercentile Share of the latencies, from 0 to 100.
+     * @return Latency in milliseconds at the percentile, or 0 if none were recorded.
+     */
+    public double getPercentileMillis(final double thePercentile) {
+        if (thePercentile < 0 || thePercentile > 100) {
+            throw new IllegalArgumentException("Percentile must be from 0 to 100: "
+                                               + thePercentile);
+        }
+        if (myCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(myCount * thePercentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += myBuckets[i];
+            if (seen >= rank) {
+                return Math.min(myMax, (i + 1) * BUCKET_NANOS) / NANOS_PER_MILLI;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Forgets every latency recorded.
+     */
+    public void reset() {
+        Arrays.fill(myBuckets, 0);
+        myCount = 0;
+        myTotal = 0;
+        myMax = 0;
+    }
+
+    /**
+     * Summarizes the latencies for display.
+     * @return Count, mean, median, 95th and 99th percentile and maximum.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d samples, mean %.1f ms, p50 %.1f ms, p95 %.1f ms, "
+                             + "p99 %.1f ms, max %.1f ms", myCount, getMeanMillis(),
+                             getPercentileMillis(50), getPercentileMillis(95),
+                             getPercentileMillis(99), getMaxMillis());
+    }
+}
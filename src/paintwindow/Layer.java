@@ -0,0 +1,210 @@
+package paintwindow;
+
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import document.MappedDocument;
+
+/**
+ * One layer of a drawing, with its own shapes, the index over them and the tiles
+ * they are flattened into, so drawing on one layer never redraws another. A layer can
+ * also hold an archived document, drawn straight from its file beneath its shapes.
+ * Whether the layer is shown, its opacity and its blend mode only change how its tiles
+ * are combined with those of the other layers, so they are changed through the
+ * LayerStack holding it, which keeps its combined tiles up to date.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class Layer {
+
+    /** Name of the layer shown to the user. */
+    private final String myName;
+
+    /** Committed shapes of the layer. */
+    private final ShapeStore myShapes;
+
+    /** Spatial index over the bounds of the shapes, kept in step with them. */
+    private final ShapeIndex myIndex;
+
+    /** Tiles the shapes of the layer are flattened into. */
+    private final TiledCanvas myCanvas;
+
+    /** Archived document drawn beneath the shapes, or null if there is none. */
+    private MappedDocument myDocument;
+
+    /** Whether the layer is shown. */
+    private boolean myVisible;
+
+    /** Opacity the layer is shown with, from 0 to 1. */
+    private float myOpacity;
+
+    /** How the layer is combined with the layers beneath it. */
+    private BlendMode myBlendMode;
+
+    /**
+     * Constructs an empty layer that is shown, fully opaque, in normal mode.
+     * @param theName Name of the layer shown to the user.
+     */
+    Layer(final String theName) {
+        myName = theName;
+        myShapes = new ShapeStore();
+        myIndex = new ShapeIndex();
+        myCanvas = new TiledCanvas(new TileRenderer() {
+            @Override
+            public void render(final Graphics2D theGraphics, final Rectangle theArea) {
+                drawShapes(theGraphics, theArea);
+            }
+        });
+        myVisible = true;
+        myOpacity = 1;
+        myBlendMode = BlendMode.NORMAL;
+    }
+
+    /**
+     * Gets the name of the layer shown to the user.
+     * @return Name of the layer.
+     */
+    public String getName() {
+        return myName;
+    }
+
+    /**
+     * Gets the committed shapes of the layer, for reading only.
+     * The collection keeps changing as shapes are drawn, so it must only be read
+     * on the event dispatch thread. Work on other threads should read a snapshot of it.
+     * @return Every committed shape on the layer.
+     */
+    public ShapeStore getShapes() {
+        return myShapes;
+    }
+
+    /**
+     * Gets the spatial index over the shapes of the layer.
+     * @return Index over the shapes.
+     */
+    ShapeIndex getIndex() {
+        return myIndex;
+    }
+
+    /**
+     * Gets the tiles the shapes of the layer are flattened into.
+     * @return Tiles of the layer.
+     */
+    TiledCanvas getCanvas() {
+        return myCanvas;
+    }
+
+    /**
+     * Gets the archived document drawn beneath the shapes of the layer.
+     * @return Document of the layer, or null if there is none.
+     */
+    public MappedDocument getDocument() {
+        return myDocument;
+    }
+
+    /**
+     * Sets the archived document drawn beneath the shapes of the layer.
+     * @param theDocument Document of the layer, or null for none.
+     */
+    void setDocument(final MappedDocument theDocument) {
+        myDocument = theDocument;
+    }
+
+    /**
+     * Tells whether the layer holds no shapes and no document.
+     * @return Whether there is nothing on the layer.
+     */
+    public boolean isEmpty() {
+        return myShapes.isEmpty() && myDocument == null;
+    }
+
+    /**
+     * Tells whether the layer is shown.
+     * @return Whether the layer is shown.
+     */
+    public boolean isVisible() {
+        return myVisible;
+    }
+
+    /**
+     * Shows or hides the layer.
+     * @param theVisible Whether the layer is shown.
+     */
+    void setVisible(final boolean theVisible) {
+        myVisible = theVisible;
+    }
+
+    /**
+     * Gets the opacity the layer is shown with.
+     * @return Opacity from 0 to 1.
+     */
+    public float getOpacity() {
+        return myOpacity;
+    }
+
+    /**
+     * Sets the opacity the layer is shown with.
+     * @param theOpacity Opacity from 0 to 1.
+     * @throws IllegalArgumentException If the opacity is outside of 0 to 1.
+     */
+    void setOpacity(final float theOpacity) {
+        if (!(theOpacity >= 0 && theOpacity <= 1)) {
+            throw new IllegalArgumentException("Opacity must be from 0 to 1: " + theOpacity);
+        }
+        myOpacity = theOpacity;
+    }
+
+    /**
+     * Gets how the layer is combined with the layers beneath it.
+     * @return Blend mode of the layer.
+     */
+    public BlendMode getBlendMode() {
+        return myBlendMode;
+    }
+
+    /**
+     * Sets how the layer is combined with the layers beneath it.
+     * @param theMode Blend mode of the layer.
+     * @throws NullPointerException If the mode is null.
+     */
+    void setBlendMode(final BlendMode theMode) {
+        if (theMode == null) {
+            throw new NullPointerException("Blend mode must not be null");
+        }
+        myBlendMode = theMode;
+    }
+
+    /**
+     * Tells whether the layer is drawn as it is, fully opaque in normal mode, so its
+     * tiles can be copied without a composite.
+     * @return Whether the layer needs no composite.
+     */
+    public boolean isOpaque() {
+        return myOpacity == 1 && myBlendMode == BlendMode.NORMAL;
+    }
+
+    /**
+     * Gets the composite the tiles of the layer are drawn onto the layers beneath with.
+     * @return Composite for the opacity and blend mode of the layer.
+     */
+    public Composite getComposite() {
+        return myBlendMode.getComposite(myOpacity);
+    }
+
+    /**
+     * Draws every committed shape of the layer that touches the given area, skipping
+     * the rest. Shapes of the document are drawn first, straight from its file.
+     * Called from the tile redraw pool while the event dispatch thread waits, so it
+     * only reads the shapes, their index and the document. Tiles of zoomed out
+     * levels are drawn with less detail.
+     * @param theGraphics Graphics to draw the shapes with, already clipped to the area.
+     * @param theArea Area of the canvas that needs to be drawn.
+     */
+    private void drawShapes(final Graphics2D theGraphics, final Rectangle theArea) {
+        final double scale = theGraphics.getTransform().getScaleX();
+        if (myDocument != null) {
+            myDocument.render(theGraphics, theArea, scale);
+        }
+        myShapes.drawAll(theGraphics, myIndex.query(theArea), scale);
+    }
+}
@@ -0,0 +1,526 @@
+package paintwindow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import document.MappedDocument;
+
+/**
+ * Ordered layers of a drawing, bottom first, one of which is being drawn on.
+ * <p>
+ * Every layer keeps its own tiles, so drawing on the active layer only redraws its
+ * tiles. The layers beneath the active one are combined into one more set of tiles,
+ * laid over the paper, and those above it into another, so painting the drawing
+ * copies three tiles for each square of the view however many layers there are.
+ * The combined tiles are built from the tiles of the layers and only redrawn where a
+ * layer in them changes, as when a change to another layer is undone or redone.
+ * Choosing another layer or changing how one is shown rebuilds them.
+ * </p>
+ * <p>
+ * Layers above the active one can only be combined ahead of time when they are all
+ * in normal mode, since the others blend with the active layer beneath them. If any
+ * is not, the layers above are painted one at a time instead.
+ * </p>
+ * <p>
+ * Other people drawing in a shared session each have a peer layer, painted over all
+ * of the layers of the drawing. Peer layers are not part of the drawing, so they are
+ * never active, combined, saved or changed by undo and redo.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class LayerStack {
+
+    /** Color of the paper beneath every layer. */
+    private final Color myPaper;
+
+    /** Layers of the drawing, bottom first. */
+    private final List<Layer> myLayers;
+
+    /** Layers of other people in a shared session, painted over the drawing. */
+    private final List<Layer> myPeers;
+
+    /** Combined tiles of the shown layers beneath the active one, over the paper. */
+    private final TiledCanvas myBelow;
+
+    /** Combined tiles of the shown layers above the active one. */
+    private final TiledCanvas myAbove;
+
+    /** Position of the layer being drawn on. */
+    private int myActive;
+
+    /** Whether the combined tiles match the layers they are built from. */
+    private boolean myCombined;
+
+    /** Whether any layer beneath the active one is shown. */
+    private boolean myBelowShown;
+
+    /** Whether any layer above the active one is shown. */
+    private boolean myAboveShown;
+
+    /** Whether the layers above the active one are painted from their combined tiles. */
+    private boolean myAboveCombined;
+
+    /** Number of layers created so far, used to name new ones. */
+    private int myCreated;
+
+    /** Tile cache hits of layers that have been taken out of the stack. */
+    private long myRemovedHits;
+
+    /** Tile cache misses of layers that have been taken out of the stack. */
+    private long myRemovedMisses;
+
+    /**
+     * Constructs a stack holding a single empty layer.
+     * @param thePaper Color of the paper beneath every layer.
+     */
+    LayerStack(final Color thePaper) {
+        myPaper = thePaper;
+        myLayers = new ArrayList<Layer>();
+        myPeers = new ArrayList<Layer>();
+        myBelow = new TiledCanvas(new TileRenderer() {
+            @Override
+            public void render(final Graphics2D theGraphics, final Rectangle theArea) {
+                theGraphics.setColor(myPaper);
+                theGraphics.fill(theArea);
+                combine(theGraphics, theArea, 0, myActive);
+            }
+        });
+        myAbove = new TiledCanvas(new TileRenderer() {
+            @Override
+            public void render(final Graphics2D theGraphics, final Rectangle theArea) {
+                combine(theGraphics, theArea, myActive + 1, myLayers.size());
+            }
+        });
+        reset();
+    }
+
+    /**
+     * Gets the number of layers.
+     * @return Number of layers, at least one.
+     */
+    public int size() {
+        return myLayers.size();
+    }
+
+    /**
+     * Gets a layer.
+     * @param theIndex Position of the layer, from 0 at the bottom.
+     * @return Layer at the position.
+     */
+    public Layer get(final int theIndex) {
+        return myLayers.get(theIndex);
+    }
+
+    /**
+     * Gets the position of a layer.
+     * @param theLayer Layer to find.
+     * @return Position of the layer, or -1 if it is not in the stack.
+     */
+    public int indexOf(final Layer theLayer) {
+        return myLayers.indexOf(theLayer);
+    }
+
+    /**
+     * Gets the layer being drawn on.
+     * @return Active layer.
+     */
+    public Layer getActive() {
+        return myLayers.get(myActive);
+    }
+
+    /**
+     * Gets the position of the layer being drawn on.
+     * @return Position of the active layer.
+     */
+    public int getActiveIndex() {
+        return myActive;
+    }
+
+    /**
+     * Gets the layers in order, as a list that does not change with the stack.
+     * @return Copy of the layers, bottom first.
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(new ArrayList<Layer>(myLayers));
+    }
+
+    /**
+     * Creates an empty layer with a name not used before, without adding it.
+     * @return New layer.
+     */
+    Layer createLayer() {
+        myCreated++;
+        return new Layer("Layer " + myCreated);
+    }
+
+    /**
+     * Replaces the layers and chooses the active one, as when a change to the order
+     * of the layers is made, undone or redone.
+     * @param theLayers Layers of the drawing, bottom first.
+     * @param theActive Position of the layer to draw on.
+     */
+    void setTo(final List<Layer> theLayers, final int theActive) {
+        if (theLayers.isEmpty() || theActive < 0 || theActive >= theLayers.size()) {
+            throw new IllegalArgumentException("No layer " + theActive + " of "
+                                               + theLayers.size());
+        }
+        for (Layer layer : myLayers) {
+            if (!theLayers.contains(layer)) {
+                myRemovedHits += layer.getCanvas().getTileHits();
+                myRemovedMisses += layer.getCanvas().getTileMisses();
+            }
+        }
+        for (Layer layer : theLayers) {
+            if (!myLayers.contains(layer)) {
+                myRemovedHits -= layer.getCanvas().getTileHits();
+                myRemovedMisses -= layer.getCanvas().getTileMisses();
+            }
+        }
+        myLayers.clear();
+        myLayers.addAll(theLayers);
+        myActive = theActive;
+        myCombined = false;
+    }
+
+    /**
+     * Chooses the layer to draw on.
+     * @param theIndex Position of the layer.
+     */
+    void setActive(final int theIndex) {
+        if (theIndex < 0 || theIndex >= myLayers.size()) {
+            throw new IndexOutOfBoundsException("No layer " + theIndex);
+        }
+        if (theIndex != myActive) {
+            myActive = theIndex;
+            myCombined = false;
+        }
+    }
+
+    /**
+     * Shows or hides a layer.
+     * @param theIndex Position of the layer.
+     * @param theVisible Whether the layer is shown.
+     */
+    void setVisible(final int theIndex, final boolean theVisible) {
+        myLayers.get(theIndex).setVisible(theVisible);
+        changedLook(theIndex);
+    }
+
+    /**
+     * Sets the opacity a layer is shown with.
+     * @param theIndex Position of the layer.
+     * @param theOpacity Opacity from 0 to 1.
+     */
+    void setOpacity(final int theIndex, final float theOpacity) {
+        myLayers.get(theIndex).setOpacity(theOpacity);
+        changedLook(theIndex);
+    }
+
+    /**
+     * Sets how a layer is combined with the layers beneath it.
+     * @param theIndex Position of the layer.
+     * @param theMode Blend mode of the layer.
+     */
+    void setBlendMode(final int theIndex, final BlendMode theMode) {
+        myLayers.get(theIndex).setBlendMode(theMode);
+        changedLook(theIndex);
+    }
+
+    /**
+     * Replaces every layer with a single empty one, as when a different drawing is
+     * opened. The documents of the layers are not closed.
+     */
+    void reset() {
+        setTo(Collections.singletonList(new Layer("Layer 1")), 0);
+        myCreated = 1;
+    }
+
+    /**
+     * Adds a peer layer over those already painted over the drawing.
+     * @param theLayer Layer of another person in a shared session.
+     */
+    void addPeer(final Layer theLayer) {
+        myPeers.add(theLayer);
+    }
+
+    /**
+     * Removes a peer layer.
+     * @param theLayer Layer of another person in a shared session.
+     */
+    void removePeer(final Layer theLayer) {
+        myPeers.remove(theLayer);
+    }
+
+    /**
+     * Gets the peer layers painted over the drawing.
+     * @return Peer layers, bottom first, which must not be changed.
+     */
+    public List<Layer> getPeers() {
+        return Collections.unmodifiableList(myPeers);
+    }
+
+    /**
+     * Marks an area of a layer as changed after its tiles were drawn on or marked out
+     * of date, so the combined tiles it is part of are redrawn there.
+     * @param theLayer Layer that changed.
+     * @param theArea Area of the canvas that changed.
+     */
+    void changed(final Layer theLayer, final Rectangle theArea) {
+        final int index = myLayers.indexOf(theLayer);
+        if (!myCombined || index == myActive || index < 0 || !theLayer.isVisible()) {
+            return;
+        }
+        if (index < myActive) {
+            myBelow.addArea(theArea);
+        } else if (myAboveCombined) {
+            myAbove.addArea(theArea);
+        }
+    }
+
+    /**
+     * Marks the whole of a layer as changed after its tiles were replaced, as when it
+     * was cleared or restored from a checkpoint, so the combined tiles are rebuilt.
+     * @param theLayer Layer that changed.
+     */
+    void changedAll(final Layer theLayer) {
+        if (myLayers.indexOf(theLayer) != myActive) {
+            myCombined = false;
+        }
+    }
+
+    /**
+     * Paints every shown layer over an area of a zoom level: the combined tiles beneath
+     * the active layer, then the tiles of the active layer, then those above it, and
+     * then the peer layers.
+     * Out of date tiles of the layers are redrawn first, and then any out of date
+     * combined tiles are drawn from them.
+     * @param theGraphics Graphics to paint with, using the pixels of the level.
+     * @param theArea Area to paint, in the pixels of the level.
+     * @param theLevel Zoom level to paint, from TiledCanvas.MIN_LEVEL to MAX_LEVEL.
+     */
+    public void paint(final Graphics2D theGraphics, final Rectangle theArea,
+                      final int theLevel) {
+        if (!myCombined) {
+            rebuild();
+        }
+        if (myBelowShown) {
+            paintCombined(myBelow, 0, myActive, theGraphics, theArea, theLevel);
+        }
+        final Layer active = getActive();
+        if (active.isVisible()) {
+            paintLayer(active, theGraphics, theArea, theLevel);
+        }
+        if (myAboveShown && myAboveCombined) {
+            paintCombined(myAbove, myActive + 1, myLayers.size(), theGraphics, theArea,
+                          theLevel);
+        } else if (myAboveShown) {
+            for (int i = myActive + 1; i < myLayers.size(); i++) {
+                if (myLayers.get(i).isVisible()) {
+                    paintLayer(myLayers.get(i), theGraphics, theArea, theLevel);
+                }
+            }
+        }
+        for (Layer peer : myPeers) {
+            if (peer.isVisible()) {
+                paintLayer(peer, theGraphics, theArea, theLevel);
+            }
+        }
+    }
+
+    /**
+     * Gets the area covered by the tiles of every layer.
+     * @return Area of the canvas covered by tiles, or an empty rectangle if there are none.
+     */
+    public Rectangle getBounds() {
+        Rectangle bounds = new Rectangle();
+        for (Layer layer : myLayers) {
+            final Rectangle layerBounds = layer.getCanvas().getBounds();
+            if (bounds.isEmpty()) {
+                bounds = layerBounds;
+            } else if (!layerBounds.isEmpty()) {
+                bounds.add(layerBounds);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Gets the number of shapes on every layer, including those of their documents.
+     * @return Number of shapes.
+     */
+    public int getShapeCount() {
+        int count = 0;
+        for (Layer layer : myLayers) {
+            count += layer.getShapes().size();
+            final MappedDocument document = layer.getDocument();
+            if (document != null) {
+                count += document.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the memory used by the shapes of every layer.
+     * @return Number of bytes used by the shapes.
+     */
+    public long getGeometryByteSize() {
+        long bytes = 0;
+        for (Layer layer : myLayers) {
+            bytes += layer.getShapes().getByteSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the memory used by the tile images of every layer and the combined tiles.
+     * @return Number of bytes used by tile images.
+     */
+    public long getImageByteSize() {
+        long bytes = myBelow.getImageByteSize() + myAbove.getImageByteSize();
+        for (Layer layer : myLayers) {
+            bytes += layer.getCanvas().getImageByteSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of tiles painted that were already up to date, counting the
+     * tiles of every layer there has been and the combined tiles.
+     * @return Number of cache hits since the stack was constructed.
+     */
+    public long getTileHits() {
+        long hits = myRemovedHits + myBelow.getTileHits() + myAbove.getTileHits();
+        for (Layer layer : myLayers) {
+            hits += layer.getCanvas().getTileHits();
+        }
+        return hits;
+    }
+
+    /**
+     * Gets the number of tiles painted that had to be drawn first, counting the
+     * tiles of every layer there has been and the combined tiles.
+     * @return Number of cache misses since the stack was constructed.
+     */
+    public long getTileMisses() {
+        long misses = myRemovedMisses + myBelow.getTileMisses() + myAbove.getTileMisses();
+        for (Layer layer : myLayers) {
+            misses += layer.getCanvas().getTileMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * Marks the combined tiles a layer is part of as needing to be rebuilt after the
+     * way it is shown changed. The active layer is part of neither.
+     * @param theIndex Position of the layer.
+     */
+    private void changedLook(final int theIndex) {
+        if (theIndex != myActive) {
+            myCombined = false;
+        }
+    }
+
+    /**
+     * Rebuilds the combined tiles beneath and above the active layer, so that each
+     * has a tile, out of date, wherever a shown layer of it has one.
+     */
+    private void rebuild() {
+        myBelow.clear();
+        myAbove.clear();
+        myBelowShown = false;
+        myAboveShown = false;
+        myAboveCombined = true;
+        for (int i = 0; i < myLayers.size(); i++) {
+            final Layer layer = myLayers.get(i);
+            if (i < myActive && layer.isVisible()) {
+                myBelowShown = true;
+                myBelow.addTilesOf(layer.getCanvas());
+            } else if (i > myActive && layer.isVisible()) {
+                myAboveShown = true;
+                myAboveCombined &= layer.getBlendMode() == BlendMode.NORMAL;
+            }
+        }
+        if (myAboveCombined) {
+            for (int i = myActive + 1; i < myLayers.size(); i++) {
+                if (myLayers.get(i).isVisible()) {
+                    myAbove.addTilesOf(myLayers.get(i).getCanvas());
+                }
+            }
+        }
+        myCombined = true;
+    }
+
+    /**
+     * Paints combined tiles, first bringing the tiles of the layers they are built from
+     * up to date wherever any combined tile in the area is out of date.
+     * @param theCombined Combined tiles to paint.
+     * @param theFrom Position of the bottom layer they are built from.
+     * @param theTo Position just past the top layer they are built from.
+     * @param theGraphics Graphics to paint with, using the pixels of the level.
+     * @param theArea Area to paint, in the pixels of the level.
+     * @param theLevel Zoom level to paint.
+     */
+    private void paintCombined(final TiledCanvas theCombined, final int theFrom,
+                               final int theTo, final Graphics2D theGraphics,
+                               final Rectangle theArea, final int theLevel) {
+        if (!theCombined.isUpToDate(theArea, theLevel)) {
+            for (int i = theFrom; i < theTo; i++) {
+                if (myLayers.get(i).isVisible()) {
+                    myLayers.get(i).getCanvas().update(theArea, theLevel);
+                }
+            }
+        }
+        theCombined.paint(theGraphics, theArea, theLevel);
+    }
+
+    /**
+     * Paints the tiles of a single layer with its opacity and blend mode.
+     * @param theLayer Layer to paint.
+     * @param theGraphics Graphics to paint with, using the pixels of the level.
+     * @param theArea Area to paint, in the pixels of the level.
+     * @param theLevel Zoom level to paint.
+     */
+    private static void paintLayer(final Layer theLayer, final Graphics2D theGraphics,
+                                   final Rectangle theArea, final int theLevel) {
+        if (theLayer.isOpaque()) {
+            theLayer.getCanvas().paint(theGraphics, theArea, theLevel);
+            return;
+        }
+        final Graphics2D g2d = (Graphics2D) theGraphics.create();
+        g2d.setComposite(theLayer.getComposite());
+        theLayer.getCanvas().paint(g2d, theArea, theLevel);
+        g2d.dispose();
+    }
+
+    /**
+     * Draws the up to date tiles of a range of layers onto a combined tile, each with
+     * its opacity and blend mode. Called from the tile redraw pool while the event
+     * dispatch thread waits, so it only reads the tiles of the layers.
+     * @param theGraphics Graphics of the combined tile, as handed to a TileRenderer.
+     * @param theArea Area of the canvas being drawn.
+     * @param theFrom Position of the bottom layer to draw.
+     * @param theTo Position just past the top layer to draw.
+     */
+    private void combine(final Graphics2D theGraphics, final Rectangle theArea,
+                         final int theFrom, final int theTo) {
+        for (int i = theFrom; i < theTo; i++) {
+            final Layer layer = myLayers.get(i);
+            if (!layer.isVisible()) {
+                continue;
+            }
+            if (layer.isOpaque()) {
+                layer.getCanvas().drawCached(theGraphics, theArea);
+            } else {
+                final Graphics2D g2d = (Graphics2D) theGraphics.create();
+                g2d.setComposite(layer.getComposite());
+                layer.getCanvas().drawCached(g2d, theArea);
+                g2d.dispose();
+            }
+        }
+    }
+}
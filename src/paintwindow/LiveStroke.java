@@ -0,0 +1,347 @@
+package paintwindow;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import drawtools.PencilTool;
+
+/**
+ * Image of the freeform a PencilTool is drawing, kept up to date one segment at a time,
+ * so showing a stroke in progress costs the same however long it has grown instead of
+ * stroking the whole freeform again on every paint.
+ * <p>
+ * A stroke is the union of its segments, the joins between them and a cap at each end,
+ * so it can be drawn in pieces that cover the same pixels the whole stroke would.
+ * When a point arrives, the join before it can no longer change, so the two segments
+ * around that join are stroked into the image for good with butt caps. A cap is drawn
+ * by stroking its segment with the real stroke and clipping away the half of the
+ * segment at the other end. Only points of the freeform are ever stroked, so they are
+ * rounded to the pixel grid exactly as when the whole freeform is stroked. The last
+ * segment and its end cap are drawn over a saved copy of the pixels underneath, which
+ * is put back before the next point is added. The image is drawn in opaque color and
+ * painted with the alpha of the stroke's color, so a translucent stroke blends once
+ * where its pieces overlap, just as the finished shape will.
+ * </p>
+ * The image covers the panel at the resolution of the screen, and is redrawn from every
+ * point if the view or the size of the panel changes in the middle of a stroke.
+ * Must only be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+final class LiveStroke {
+
+    /** Pixels added around the area of a piece to cover rounding when it is rasterized. */
+    private static final int MARGIN = 2;
+
+    /** Widest a stroke can be on screen, in pixels, and still be drawn as a thin line. */
+    private static final double THIN_WIDTH = 1;
+
+    /** Alpha of an opaque color. */
+    private static final int OPAQUE = 255;
+
+    /** Transparent color the image is cleared to. */
+    private static final Color CLEAR = new Color(0, 0, 0, 0);
+
+    /** Freeform being drawn. */
+    private PencilTool myPencil;
+
+    /** Stroke of the freeform. */
+    private BasicStroke myStroke;
+
+    /** Stroke with butt caps used for the pieces of the freeform. */
+    private BasicStroke myPieceStroke;
+
+    /** Color of the freeform. */
+    private Color myColor;
+
+    /** Image the freeform is drawn into, or null until the first stroke. */
+    private BufferedImage myImage;
+
+    /** Graphics drawing into the image in canvas coordinates, or null if there is no image. */
+    private Graphics2D myGraphics;
+
+    /** Transform from the canvas to the pixels of the image. */
+    private AffineTransform myTransform;
+
+    /** Number of pixels of the image per pixel of the panel. */
+    private double myDeviceScale;
+
+    /** Number of points of the freeform drawn into the image. */
+    private int myPointCount;
+
+    /** Area of the image holding the last segment, or null if it is not drawn. */
+    private Rectangle myTailArea;
+
+    /** Pixels of the image under the last segment before it was drawn. Reused. */
+    private int[] myTailPixels;
+
+    /** Area of the image drawn into since it was last cleared, or null if none. */
+    private Rectangle myDirty;
+
+    /**
+     * Constructs a live stroke that is not drawing anything yet.
+     */
+    LiveStroke() {
+        myTailPixels = new int[0];
+        myTransform = new AffineTransform();
+    }
+
+    /**
+     * Starts showing a new freeform, clearing the last one.
+     * @param thePencil Tool drawing the freeform.
+     * @param theStroke Stroke of the freeform.
+     * @param theColor Color of the freeform.
+     */
+    void start(final PencilTool thePencil, final BasicStroke theStroke, final Color theColor) {
+        myPencil = thePencil;
+        myStroke = theStroke;
+        myPieceStroke = new BasicStroke(theStroke.getLineWidth(), BasicStroke.CAP_BUTT,
+                                        theStroke.getLineJoin(), theStroke.getMiterLimit());
+        myColor = theColor;
+        clear();
+    }
+
+    /**
+     * Stops showing the freeform.
+     */
+    void stop() {
+        myPencil = null;
+    }
+
+    /**
+     * Checks whether a freeform is being shown.
+     * @return Whether there is a freeform.
+     */
+    boolean isActive() {
+        return myPencil != null;
+    }
+
+    /**
+     * Paints the freeform, first drawing any points added since the last paint.
+     * @param theGraphics Graphics of the panel, using panel coordinates.
+     * @param theClip Area of the panel to paint.
+     * @param theView Transform from the canvas to the panel.
+     * @param theWidth Width of the panel.
+     * @param theHeight Height of the panel.
+     */
+    void paint(final Graphics2D theGraphics, final Rectangle theClip,
+               final AffineTransform theView, final int theWidth, final int theHeight) {
+        update(theGraphics.getTransform().getScaleX(), theView, theWidth, theHeight);
+        if (myImage == null) {
+            return;
+        }
+        final Graphics2D g2d = (Graphics2D) theGraphics.create();
+        if (myColor.getAlpha() != OPAQUE) {
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER,
+                                                        myColor.getAlpha() / (float) OPAQUE));
+        }
+        g2d.clip(theClip);
+        g2d.scale(1 / myDeviceScale, 1 / myDeviceScale);
+        g2d.drawImage(myImage, 0, 0, null);
+        g2d.dispose();
+    }
+
+    /**
+     * Draws the points added to the freeform since the last update. Starts over
+     * from the first point if the image no longer matches the panel or the view.
+     * @param theDeviceScale Number of screen pixels per pixel of the panel.
+     * @param theView Transform from the canvas to the panel.
+     * @param theWidth Width of the panel.
+     * @param theHeight Height of the panel.
+     */
+    private void update(final double theDeviceScale, final AffineTransform theView,
+                        final int theWidth, final int theHeight) {
+        final int width = (int) Math.ceil(theWidth * theDeviceScale);
+        final int height = (int) Math.ceil(theHeight * theDeviceScale);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final AffineTransform transform = AffineTransform.getScaleInstance(theDeviceScale,
+                                                                           theDeviceScale);
+        transform.concatenate(theView);
+        if (myImage == null || myImage.getWidth() != width || myImage.getHeight() != height) {
+            if (myGraphics != null) {
+                myGraphics.dispose();
+            }
+            myImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            myGraphics = myImage.createGraphics();
+            myDirty = null;
+            myTailArea = null;
+            myPointCount = 0;
+        }
+        final int count = myPencil.getPointCount();
+        if (!transform.equals(myTransform) || count < myPointCount) {
+            clear();
+        }
+        myDeviceScale = theDeviceScale;
+        myTransform = transform;
+        if (count == myPointCount) {
+            return;
+        }
+        myGraphics.setTransform(transform);
+        myGraphics.setColor(new Color(myColor.getRGB() | OPAQUE << 24));
+        restoreTail();
+        if (myStroke.getLineWidth() * Math.sqrt(Math.abs(transform.getDeterminant()))
+                        <= THIN_WIDTH) {
+            //Thin lines have no caps or joins, so each segment is simply drawn for good.
+            for (int i = myPointCount; i < count; i++) {
+                drawPiece(segment(Math.max(i - 1, 0), i), myStroke, null);
+            }
+            myPointCount = count;
+            return;
+        }
+        for (int i = Math.max(myPointCount, 1); i < count; i++) {
+            if (i == 1) {
+                drawCap(0, 1);
+            } else {
+                final Path2D.Float corner = new Path2D.Float();
+                corner.moveTo(myPencil.getPointX(i - 2), myPencil.getPointY(i - 2));
+                corner.lineTo(myPencil.getPointX(i - 1), myPencil.getPointY(i - 1));
+                corner.lineTo(myPencil.getPointX(i), myPencil.getPointY(i));
+                drawPiece(corner, myPieceStroke, null);
+            }
+        }
+        myPointCount = count;
+        drawTail();
+    }
+
+    /**
+     * Draws the cap at one end of a segment, along with the half of the segment
+     * next to it, by stroking the segment and clipping away the other half.
+     * Only points of the freeform are stroked, so they are rounded to the pixel grid
+     * just as they are when the whole freeform is stroked.
+     * @param theEnd Index of the point at the end that gets the cap.
+     * @param theOther Index of the point at the other end of the segment.
+     */
+    private void drawCap(final int theEnd, final int theOther) {
+        final int x = myPencil.getPointX(theEnd);
+        final int y = myPencil.getPointY(theEnd);
+        final int otherX = myPencil.getPointX(theOther);
+        final int otherY = myPencil.getPointY(theOther);
+        final double length = Math.hypot(x - otherX, y - otherY);
+        final double reach = length + myStroke.getLineWidth() * myStroke.getMiterLimit();
+        final double dirX = (x - otherX) / length * reach;
+        final double dirY = (y - otherY) / length * reach;
+        final double midX = (x + otherX) / 2.0;
+        final double midY = (y + otherY) / 2.0;
+        final Path2D.Double half = new Path2D.Double();
+        half.moveTo(midX - dirY, midY + dirX);
+        half.lineTo(midX - dirY + dirX, midY + dirX + dirY);
+        half.lineTo(midX + dirY + dirX, midY - dirX + dirY);
+        half.lineTo(midX + dirY, midY - dirX);
+        half.closePath();
+        drawPiece(segment(theOther, theEnd), myStroke, half);
+    }
+
+    /**
+     * Draws the second half of the last segment and its end cap over a saved copy of
+     * the pixels under them. A freeform of a single point is drawn as the dot the
+     * finished shape will leave.
+     */
+    private void drawTail() {
+        final int last = myPointCount - 1;
+        final Shape segment = segment(Math.max(last - 1, 0), last);
+        final Rectangle tailArea = areaOf(segment, myStroke);
+        if (tailArea.isEmpty()) {
+            return;
+        }
+        final int size = tailArea.width * tailArea.height;
+        if (myTailPixels.length < size) {
+            myTailPixels = new int[Math.max(size, myTailPixels.length * 2)];
+        }
+        myImage.getRaster().getDataElements(tailArea.x, tailArea.y, tailArea.width,
+                                            tailArea.height, myTailPixels);
+        myTailArea = tailArea;
+        if (last == 0) {
+            drawPiece(segment, myStroke, null);
+        } else {
+            drawCap(last, last - 1);
+        }
+    }
+
+    /**
+     * Gets the outline of a segment between two points of the freeform. A path is used
+     * rather than a Line2D, which Java2D strokes along a path of its own that rounds
+     * differently from the freeform's.
+     * @param theFrom Index of the point the segment starts at.
+     * @param theTo Index of the point the segment ends at.
+     * @return Segment between the points.
+     */
+    private Shape segment(final int theFrom, final int theTo) {
+        final Path2D.Float segment = new Path2D.Float();
+        segment.moveTo(myPencil.getPointX(theFrom), myPencil.getPointY(theFrom));
+        segment.lineTo(myPencil.getPointX(theTo), myPencil.getPointY(theTo));
+        return segment;
+    }
+
+    /**
+     * Puts back the pixels under the last segment, if it is drawn.
+     */
+    private void restoreTail() {
+        if (myTailArea != null) {
+            final WritableRaster raster = myImage.getRaster();
+            raster.setDataElements(myTailArea.x, myTailArea.y, myTailArea.width,
+                                   myTailArea.height, myTailPixels);
+            myTailArea = null;
+        }
+    }
+
+    /**
+     * Strokes a piece of the freeform into the image.
+     * @param thePiece Outline of the piece in canvas coordinates.
+     * @param theStroke Stroke to draw the piece with.
+     * @param theClip Area of the canvas to keep of the stroked piece, or null for all of it.
+     */
+    private void drawPiece(final Shape thePiece, final BasicStroke theStroke,
+                           final Shape theClip) {
+        myGraphics.setStroke(theStroke);
+        if (theClip != null) {
+            myGraphics.clip(theClip);
+        }
+        myGraphics.draw(thePiece);
+        myGraphics.setClip(null);
+        final Rectangle area = areaOf(thePiece, theStroke);
+        if (myDirty == null) {
+            myDirty = area;
+        } else {
+            myDirty.add(area);
+        }
+    }
+
+    /**
+     * Gets the pixels of the image a piece can touch once it is stroked.
+     * @param thePiece Outline of the piece in canvas coordinates.
+     * @param theStroke Stroke the piece is drawn with.
+     * @return Area of the image, clipped to its bounds.
+     */
+    private Rectangle areaOf(final Shape thePiece, final BasicStroke theStroke) {
+        final Rectangle area = myTransform.createTransformedShape(
+                        PaintShape.getStrokedBounds(thePiece.getBounds2D(), theStroke))
+                        .getBounds();
+        area.grow(MARGIN, MARGIN);
+        return area.intersection(new Rectangle(0, 0, myImage.getWidth(), myImage.getHeight()));
+    }
+
+    /**
+     * Erases everything drawn into the image and forgets the points drawn.
+     */
+    private void clear() {
+        if (myImage != null && myDirty != null) {
+            myGraphics.setTransform(new AffineTransform());
+            myGraphics.setComposite(AlphaComposite.Src);
+            myGraphics.setColor(CLEAR);
+            myGraphics.fill(myDirty);
+            myGraphics.setComposite(AlphaComposite.SrcOver);
+        }
+        myDirty = null;
+        myTailArea = null;
+        myPointCount = 0;
+    }
+}
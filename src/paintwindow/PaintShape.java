@@ -2,8 +2,10 @@ package paintwindow;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * Creates a shape in the form of a Path2D that holds information
@@ -22,6 +24,9 @@ public final class PaintShape {
     /** Stores the color of the shape. */
     private final Color myColor;
     
+    /** Stores the area of the panel the shape covers once it is stroked. */
+    private final Rectangle myBounds;
+    
     /**
      * Constructs the shape based on the specified color and thickness.
      * @param theShape Shape to be stored when created.
@@ -31,8 +36,41 @@ public final class PaintShape {
     public PaintShape(final Shape theShape, 
                       final BasicStroke theStroke, final Color theColor) {
         myShape = new Path2D.Double(theShape);
-        myStroke = new BasicStroke(theStroke.getLineWidth());
+        myStroke = Styles.stroke(theStroke.getLineWidth());
         myColor = theColor;
+        myBounds = getStrokedBounds(myShape.getBounds2D(), myStroke);
+    }
+    
+    /**
+     * Grows the bounds of an outline by the farthest a stroke can reach past it.
+     * @param theBounds Bounds of the outline before it is stroked.
+     * @param theStroke Stroke the outline will be drawn with.
+     * @return Whole-pixel area of the panel the stroked outline can touch.
+     */
+    public static Rectangle getStrokedBounds(final Rectangle2D theBounds, 
+                                             final BasicStroke theStroke) {
+        final int reach = getReach(theStroke);
+        final Rectangle bounds = theBounds.getBounds();
+        bounds.grow(reach, reach);
+        return bounds;
+    }
+    
+    /**
+     * Gets the farthest a stroke can reach past the outline it is drawn along.
+     * Mitered corners can stick out by half the width times the miter limit,
+     * while caps and other joins only reach out by half the width.
+     * @param theStroke Stroke the outline will be drawn with.
+     * @return Whole number of pixels the stroked outline can touch past the outline.
+     */
+    public static int getReach(final BasicStroke theStroke) {
+        double pad = theStroke.getLineWidth() / 2.0;
+        if (theStroke.getLineJoin() == BasicStroke.JOIN_MITER) {
+            pad *= Math.max(theStroke.getMiterLimit(), Math.sqrt(2));
+        } else if (theStroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+            pad *= Math.sqrt(2);
+        }
+        //One extra pixel covers rounding when the outline is rasterized.
+        return (int) Math.ceil(pad) + 1;
     }
     
     /**
@@ -58,4 +96,12 @@ public final class PaintShape {
     public Color getColor() {
         return myColor;
     }
+    
+    /**
+     * Gets the area of the panel the shape covers once it is stroked.
+     * @return Area of the panel the stroked shape can touch.
+     */
+    public Rectangle getBounds() {
+        return myBounds;
+    }
 }
@@ -0,0 +1,224 @@
+package paintwindow;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Paces the repaints that input causes on a component to one frame per display refresh.
+ * Input handlers only record the area that changed, so a burst of events from a mouse
+ * that polls far faster than the display refreshes is handled cheaply, and every area
+ * requested between two frames is painted together by the next one. The events are
+ * still all handled, so tools see every point. Each frame also records how long the
+ * oldest input it shows waited to reach the screen, and how long it took to draw,
+ * so different ways of drawing the component can be compared on the same input.
+ * Must only be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class RenderScheduler {
+
+    /** Refresh rate assumed when the display does not report one. */
+    public static final int DEFAULT_REFRESH_RATE = 60;
+
+    /** Number of frames with nothing to paint before the timer stops. */
+    private static final int IDLE_FRAMES = 2;
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Component being painted. */
+    private final JComponent myComponent;
+
+    /** Timer firing once per frame while there is input to show. */
+    private final Timer myTimer;
+
+    /** Time from input to the frame that shows it. */
+    private final LatencyStats myLatency;
+
+    /** Time each frame took to paint and reach the screen. */
+    private final LatencyStats myFrameTimes;
+
+    /** Area of the component requested since the last frame, or null if there is none. */
+    private Rectangle myDirty;
+
+    /** Time of the oldest input not shown yet, from System.nanoTime. */
+    private long myOldestInput;
+
+    /** Number of frames in a row that had nothing to paint. */
+    private int myIdleFrames;
+
+    /** Number of requests made. */
+    private long myRequestCount;
+
+    /** Number of frames painted. */
+    private long myFrameCount;
+
+    /**
+     * Constructs a scheduler paced to the refresh rate of the default display.
+     * @param theComponent Component to paint.
+     */
+    public RenderScheduler(final JComponent theComponent) {
+        myComponent = theComponent;
+        myLatency = new LatencyStats();
+        myFrameTimes = new LatencyStats();
+        myTimer = new Timer(1000 / getRefreshRate(), new ActionListener() {
+            public void actionPerformed(final ActionEvent theEvent) {
+                frame();
+            }
+        });
+    }
+
+    /**
+     * Gets the refresh rate of the default display.
+     * @return Refreshes per second, or DEFAULT_REFRESH_RATE if it is not known.
+     */
+    public static int getRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        final int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                        .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        if (rate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        return rate;
+    }
+
+    /**
+     * Gets when an input event happened on the clock latencies are measured with.
+     * Event times only have millisecond precision, so this takes the time the event
+     * waited in the queue away from the current time.
+     * @param theEvent Event being handled.
+     * @return Time of the event, from System.nanoTime.
+     */
+    public static long getInputTime(final InputEvent theEvent) {
+        final long waited = Math.max(0, System.currentTimeMillis() - theEvent.getWhen());
+        return System.nanoTime() - waited * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Asks for an area to be painted in the next frame because of input.
+     * @param theArea Area of the component that changed.
+     * @param theInputTime Time of the input that changed it, from System.nanoTime.
+     */
+    public void request(final Rectangle theArea, final long theInputTime) {
+        myRequestCount++;
+        if (myDirty == null) {
+            myDirty = new Rectangle(theArea);
+            myOldestInput = theInputTime;
+        } else {
+            myDirty.add(theArea);
+            myOldestInput = Math.min(myOldestInput, theInputTime);
+        }
+        myIdleFrames = 0;
+        if (!myTimer.isRunning()) {
+            myTimer.start();
+        }
+    }
+
+    /**
+     * Paints whatever has been requested right away instead of in the next frame.
+     */
+    public void flush() {
+        if (myDirty != null) {
+            paint();
+        }
+    }
+
+    /**
+     * Takes the area requested since the last frame without painting it, for a caller
+     * that paints the component somewhere else, as a headless replay does.
+     * @return Area that was requested, or null if there is none.
+     */
+    public Rectangle takePendingArea() {
+        final Rectangle dirty = myDirty;
+        myDirty = null;
+        return dirty;
+    }
+
+    /**
+     * Gets the time between frames.
+     * @return Milliseconds between frames.
+     */
+    public int getFrameInterval() {
+        return myTimer.getDelay();
+    }
+
+    /**
+     * Sets the time between frames, to trade latency against the work done per event.
+     * @param theMillis Milliseconds between frames.
+     */
+    public void setFrameInterval(final int theMillis) {
+        if (theMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + theMillis);
+        }
+        myTimer.setDelay(theMillis);
+    }
+
+    /**
+     * Gets the time from input to the frame that showed it, for each frame.
+     * @return Latencies of the frames painted.
+     */
+    public LatencyStats getLatencyStats() {
+        return myLatency;
+    }
+
+    /**
+     * Gets the time each frame took to paint and reach the screen.
+     * @return Durations of the frames painted.
+     */
+    public LatencyStats getFrameTimeStats() {
+        return myFrameTimes;
+    }
+
+    /**
+     * Gets the number of times an area was requested, which is about one per event.
+     * @return Number of requests.
+     */
+    public long getRequestCount() {
+        return myRequestCount;
+    }
+
+    /**
+     * Gets the number of frames painted, which is at most one per refresh.
+     * @return Number of frames.
+     */
+    public long getFrameCount() {
+        return myFrameCount;
+    }
+
+    /**
+     * Paints the area requested since the last frame, or stops the timer once
+     * there has been nothing to paint for a few frames.
+     */
+    private void frame() {
+        if (myDirty != null) {
+            paint();
+        } else if (++myIdleFrames >= IDLE_FRAMES) {
+            myTimer.stop();
+        }
+    }
+
+    /**
+     * Paints the requested area now, makes sure it reaches the screen,
+     * and records how long the oldest input in it waited and how long the paint took.
+     */
+    private void paint() {
+        final Rectangle dirty = myDirty;
+        myDirty = null;
+        final long start = System.nanoTime();
+        myComponent.paintImmediately(dirty);
+        Toolkit.getDefaultToolkit().sync();
+        final long end = System.nanoTime();
+        myFrameCount++;
+        myFrameTimes.record(end - start);
+        myLatency.record(end - myOldestInput);
+    }
+}
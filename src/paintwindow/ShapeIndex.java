@@ -0,0 +1,392 @@
+package paintwindow;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid over the bounds of every committed shape, used to find the shapes
+ * touching an area of the panel without looking at all of them.
+ * Shapes are identified by their position in the collection of the DrawPanel,
+ * and must be added in increasing order so each cell stays sorted.
+ * Shapes too large to be worth splitting across cells are kept in a separate list
+ * that every query checks. Queries of an area only read the index, so several threads
+ * can make them at once as long as no shapes are being added.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ShapeIndex {
+
+    /** Default width and height of a grid cell, in pixels. */
+    public static final int DEFAULT_CELL_SIZE = 64;
+
+    /** Most cells a shape can be added to before it is kept in the large shape list. */
+    private static final int MAX_CELLS_PER_SHAPE = 256;
+
+    /** Starting capacity of every growable array. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Width and height of a grid cell, in pixels. */
+    private final int myCellSize;
+
+    /** Cells that hold at least one shape, keyed by their packed column and row. */
+    private final Map<Long, Cell> myCells;
+
+    /** Shapes that cover too many cells to be stored in them. */
+    private final Cell myLargeShapes;
+
+    /** Bounds of every shape, stored as x, y, width, height for each id. */
+    private int[] myBounds;
+
+    /** Search number each id was last seen in, used to skip duplicates across cells. */
+    private int[] mySeen;
+
+    /** Number of shapes that have been added. */
+    private int mySize;
+
+    /** Number of the current nearest shape search, compared against mySeen. */
+    private int myQuery;
+
+    /** Smallest column of any occupied cell. */
+    private int myMinCol;
+
+    /** Smallest row of any occupied cell. */
+    private int myMinRow;
+
+    /** Largest column of any occupied cell. */
+    private int myMaxCol;
+
+    /** Largest row of any occupied cell. */
+    private int myMaxRow;
+
+    /**
+     * Constructs an empty index with the default cell size.
+     */
+    public ShapeIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs an empty index with the given cell size.
+     * @param theCellSize Width and height of a grid cell, in pixels.
+     */
+    public ShapeIndex(final int theCellSize) {
+        if (theCellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + theCellSize);
+        }
+        myCellSize = theCellSize;
+        myCells = new HashMap<Long, Cell>();
+        myLargeShapes = new Cell();
+        myBounds = new int[INITIAL_CAPACITY * 4];
+        mySeen = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a shape to the index. Ids must be added in order starting from zero.
+     * @param theId Position of the shape in the collection of shapes.
+     * @param theBounds Area of the panel the stroked shape covers.
+     */
+    public void add(final int theId, final Rectangle theBounds) {
+        if (theId != mySize) {
+            throw new IllegalArgumentException("Expected id " + mySize + " but got " + theId);
+        }
+        if (mySize == mySeen.length) {
+            myBounds = Arrays.copyOf(myBounds, mySize * 8);
+            mySeen = Arrays.copyOf(mySeen, mySize * 2);
+        }
+        myBounds[theId * 4] = theBounds.x;
+        myBounds[theId * 4 + 1] = theBounds.y;
+        myBounds[theId * 4 + 2] = theBounds.width;
+        myBounds[theId * 4 + 3] = theBounds.height;
+        mySize++;
+
+        final int minCol = cellOf(theBounds.x);
+        final int minRow = cellOf(theBounds.y);
+        final int maxCol = cellOf(theBounds.x + theBounds.width);
+        final int maxRow = cellOf(theBounds.y + theBounds.height);
+        if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > MAX_CELLS_PER_SHAPE) {
+            myLargeShapes.add(theId);
+            return;
+        }
+        if (myCells.isEmpty()) {
+            myMinCol = minCol;
+            myMinRow = minRow;
+            myMaxCol = maxCol;
+            myMaxRow = maxRow;
+        } else {
+            myMinCol = Math.min(myMinCol, minCol);
+            myMinRow = Math.min(myMinRow, minRow);
+            myMaxCol = Math.max(myMaxCol, maxCol);
+            myMaxRow = Math.max(myMaxRow, maxRow);
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                final Long key = key(col, row);
+                Cell cell = myCells.get(key);
+                if (cell == null) {
+                    cell = new Cell();
+                    myCells.put(key, cell);
+                }
+                cell.add(theId);
+            }
+        }
+    }
+
+    /**
+     * Removes every shape from the index.
+     */
+    public void clear() {
+        myCells.clear();
+        myLargeShapes.clear();
+        mySize = 0;
+    }
+
+    /**
+     * Removes every shape from the given id onward, as when recent shapes are undone.
+     * Ids are added in order, so each removed shape is at the end of its cells.
+     * @param theSize Number of shapes to keep.
+     */
+    public void truncate(final int theSize) {
+        if (theSize < 0 || theSize > mySize) {
+            throw new IndexOutOfBoundsException("Size " + theSize + " of " + mySize);
+        }
+        for (int id = mySize - 1; id >= theSize; id--) {
+            final int minCol = cellOf(myBounds[id * 4]);
+            final int minRow = cellOf(myBounds[id * 4 + 1]);
+            final int maxCol = cellOf(myBounds[id * 4] + myBounds[id * 4 + 2]);
+            final int maxRow = cellOf(myBounds[id * 4 + 1] + myBounds[id * 4 + 3]);
+            if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > MAX_CELLS_PER_SHAPE) {
+                myLargeShapes.mySize--;
+                continue;
+            }
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    final Long key = key(col, row);
+                    final Cell cell = myCells.get(key);
+                    cell.mySize--;
+                    if (cell.mySize == 0) {
+                        myCells.remove(key);
+                    }
+                }
+            }
+        }
+        mySize = theSize;
+    }
+
+    /**
+     * Gets the number of shapes in the index.
+     * @return Number of shapes that have been added.
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Finds every shape whose bounds touch the given area. Shapes found in more
+     * than one cell are removed once the ids are sorted, rather than marked as seen,
+     * so the index is not written to and can be queried from several threads.
+     * @param theArea Area of the panel to search.
+     * @return Ids of the shapes touching the area, in the order they were added.
+     */
+    public int[] query(final Rectangle theArea) {
+        final Cell found = new Cell();
+        collect(myLargeShapes, theArea, found);
+        final int minCol = cellOf(theArea.x);
+        final int minRow = cellOf(theArea.y);
+        final int maxCol = cellOf(theArea.x + theArea.width);
+        final int maxRow = cellOf(theArea.y + theArea.height);
+        if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > myCells.size()) {
+            //Visiting the occupied cells directly is cheaper than walking an empty grid.
+            for (Cell cell : myCells.values()) {
+                collect(cell, theArea, found);
+            }
+        } else {
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    final Cell cell = myCells.get(key(col, row));
+                    if (cell != null) {
+                        collect(cell, theArea, found);
+                    }
+                }
+            }
+        }
+        Arrays.sort(found.myIds, 0, found.mySize);
+        int unique = 0;
+        for (int i = 0; i < found.mySize; i++) {
+            if (unique == 0 || found.myIds[i] != found.myIds[unique - 1]) {
+                found.myIds[unique++] = found.myIds[i];
+            }
+        }
+        return Arrays.copyOf(found.myIds, unique);
+    }
+
+    /**
+     * Finds the shape whose bounds are closest to a point.
+     * Searches outward one ring of cells at a time, stopping once no unvisited cell
+     * can hold anything closer than the best shape so far.
+     * @param theX X coordinate of the point.
+     * @param theY Y coordinate of the point.
+     * @param theMaxDistance Farthest a shape's bounds can be from the point to be found,
+     *        which may be Double.POSITIVE_INFINITY to find the closest shape at any distance.
+     * @return Id of the closest shape, the newest one on a tie, or -1 if none is in range.
+     */
+    public int nearest(final int theX, final int theY, final double theMaxDistance) {
+        nextQuery();
+        int best = -1;
+        double bestDistance = theMaxDistance;
+        for (int i = 0; i < myLargeShapes.mySize; i++) {
+            final int id = myLargeShapes.myIds[i];
+            final double distance = distance(id, theX, theY);
+            if (distance < bestDistance || distance == bestDistance && id > best) {
+                best = id;
+                bestDistance = distance;
+            }
+        }
+        final int col = cellOf(theX);
+        final int row = cellOf(theY);
+        //No ring past the farthest occupied cell can hold anything. The distance is clamped
+        //first so an infinite or huge one does not overflow.
+        final long maxRing = Math.min((long) Math.min(Math.ceil(theMaxDistance / myCellSize),
+                                                      Integer.MAX_VALUE) + 1,
+                                      Math.max(Math.max((long) col - myMinCol, 
+                                                        (long) myMaxCol - col),
+                                               Math.max((long) row - myMinRow, 
+                                                        (long) myMaxRow - row)));
+        for (int ring = 0; ring <= maxRing && !myCells.isEmpty(); ring++) {
+            //Every cell in this ring is at least (ring - 1) cells away from the point.
+            if (best >= 0 && (ring - 1) * (double) myCellSize > bestDistance) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                final int step = r == row - ring || r == row + ring ? 1 : 2 * ring;
+                for (int c = col - ring; c <= col + ring; c += Math.max(step, 1)) {
+                    final Cell cell = myCells.get(key(c, r));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.mySize; i++) {
+                        final int id = cell.myIds[i];
+                        if (mySeen[id] == myQuery) {
+                            continue;
+                        }
+                        mySeen[id] = myQuery;
+                        final double distance = distance(id, theX, theY);
+                        if (distance < bestDistance || distance == bestDistance && id > best) {
+                            best = id;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the shapes in a cell that touch the area.
+     * @param theCell Cell to search.
+     * @param theArea Area of the panel being searched.
+     * @param theFound Ids found so far by the current query, which may repeat.
+     */
+    private void collect(final Cell theCell, final Rectangle theArea, final Cell theFound) {
+        for (int i = 0; i < theCell.mySize; i++) {
+            final int id = theCell.myIds[i];
+            if (intersects(id, theArea)) {
+                theFound.add(id);
+            }
+        }
+    }
+
+    /**
+     * Starts a new nearest shape search, resetting the record of seen ids if the counter wraps around.
+     */
+    private void nextQuery() {
+        myQuery++;
+        if (myQuery == 0) {
+            Arrays.fill(mySeen, 0);
+            myQuery = 1;
+        }
+    }
+
+    /**
+     * Checks whether the bounds of a shape touch an area.
+     * @param theId Id of the shape.
+     * @param theArea Area of the panel.
+     * @return Whether the bounds and the area overlap.
+     */
+    private boolean intersects(final int theId, final Rectangle theArea) {
+        final int x = myBounds[theId * 4];
+        final int y = myBounds[theId * 4 + 1];
+        return x < theArea.x + theArea.width && theArea.x < x + myBounds[theId * 4 + 2]
+                        && y < theArea.y + theArea.height
+                        && theArea.y < y + myBounds[theId * 4 + 3];
+    }
+
+    /**
+     * Gets the distance from a point to the bounds of a shape.
+     * @param theId Id of the shape.
+     * @param theX X coordinate of the point.
+     * @param theY Y coordinate of the point.
+     * @return Distance to the closest edge of the bounds, or zero if the point is inside.
+     */
+    private double distance(final int theId, final int theX, final int theY) {
+        final int x = myBounds[theId * 4];
+        final int y = myBounds[theId * 4 + 1];
+        final double dx = Math.max(0, Math.max(x - theX, theX - (x + myBounds[theId * 4 + 2])));
+        final double dy = Math.max(0, Math.max(y - theY, theY - (y + myBounds[theId * 4 + 3])));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Gets the column or row of the cell holding a coordinate.
+     * @param theCoordinate X or Y coordinate on the panel.
+     * @return Column or row of the cell, rounding down for negative coordinates.
+     */
+    private int cellOf(final int theCoordinate) {
+        if (theCoordinate >= 0) {
+            return theCoordinate / myCellSize;
+        }
+        return -((-theCoordinate - 1) / myCellSize) - 1;
+    }
+
+    /**
+     * Packs the column and row of a cell into a single map key.
+     * @param theCol Column of the cell.
+     * @param theRow Row of the cell.
+     * @return Key of the cell in the map of cells.
+     */
+    private static Long key(final int theCol, final int theRow) {
+        return ((long) theCol << 32) | (theRow & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Growable list of shape ids held by one cell of the grid.
+     */
+    private static final class Cell {
+
+        /** Ids of the shapes in the cell, in the order they were added. */
+        private int[] myIds = new int[INITIAL_CAPACITY];
+
+        /** Number of ids in the cell. */
+        private int mySize;
+
+        /**
+         * Adds an id to the end of the cell.
+         * @param theId Id of the shape to add.
+         */
+        private void add(final int theId) {
+            if (mySize == myIds.length) {
+                myIds = Arrays.copyOf(myIds, mySize * 2);
+            }
+            myIds[mySize++] = theId;
+        }
+
+        /**
+         * Removes every id from the cell.
+         */
+        private void clear() {
+            mySize = 0;
+        }
+    }
+}
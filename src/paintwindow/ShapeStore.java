@@ -0,0 +1,988 @@
+package paintwindow;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import drawtools.AbstractPathShape;
+
+/**
+ * Compact collection of every committed shape on a DrawPanel.
+ * Instead of one object per shape, the geometry of the shapes is packed into
+ * arrays of coordinates and segment types, and each shape only stores
+ * where its geometry starts along with an index into palettes of the strokes
+ * and colors in use. Shapes are identified by the order they were added in.
+ * Most shapes are stroked along their outline, but the regions of the fill tool are
+ * filled inside it instead. Those are stored with a stroke of zero width, so their
+ * bounds are just those of their outline.
+ * <p>
+ * The shapes are split into chunks of a fixed number of shapes, each with its own
+ * arrays, and the store is persistent: a snapshot shares every chunk and palette
+ * with the store it was taken from, so taking one costs the same however many
+ * shapes there are. Shared chunks and palettes are never changed. A store copies a
+ * chunk or palette the first time it changes one it shares, so a snapshot can be
+ * read from another thread with no locking while the original keeps changing.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ShapeStore {
+
+    /** Number of bits of an id that give its position within its chunk. */
+    private static final int CHUNK_SHIFT = 10;
+
+    /** Number of shapes in every chunk but the last. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /** Mask giving the position of an id within its chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Starting capacity of every growable array. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Distance, in pixels, a point is skipped within when drawing zoomed out. */
+    private static final double LOD_TOLERANCE = 0.5;
+
+    /** Number of coordinates used by each segment type, indexed by the type. */
+    private static final int[] COORDS_PER_SEGMENT = {2, 2, 4, 6, 0};
+
+    /** Chunks of shapes, in order. Slots past the last chunk are null. */
+    private Chunk[] myChunks;
+
+    /** Whether the array of chunks belongs to this store alone and can be changed. */
+    private boolean myChunksOwned;
+
+    /** Token marking the chunks that belong to this store alone and can be changed. */
+    private Object myOwner;
+
+    /** Every distinct stroke in use, in the order first seen. */
+    private Palette<BasicStroke> myStrokes;
+
+    /** Every distinct color in use, in the order first seen. */
+    private Palette<Color> myColors;
+
+    /** Number of shapes in the store. */
+    private int mySize;
+
+    /**
+     * Constructs an empty store.
+     */
+    public ShapeStore() {
+        clear();
+    }
+
+    /**
+     * Constructs a snapshot that shares everything with another store.
+     * @param theOther Store to take the snapshot of.
+     */
+    private ShapeStore(final ShapeStore theOther) {
+        share(theOther);
+    }
+
+    /**
+     * Takes a snapshot of the store. The snapshot shares every chunk with the store,
+     * so it takes constant time and no copying, and neither sees later changes to the
+     * other. The snapshot can be read from any thread while this store keeps changing.
+     * @return Snapshot of the shapes in the store as they are right now.
+     */
+    public ShapeStore snapshot() {
+        return new ShapeStore(this);
+    }
+
+    /**
+     * Replaces every shape in the store with those of another store, sharing its chunks
+     * instead of copying them, as when a snapshot is put back.
+     * @param theOther Store to take the shapes from, which is left unchanged.
+     */
+    public void setTo(final ShapeStore theOther) {
+        if (theOther != this) {
+            share(theOther);
+        }
+    }
+
+    /**
+     * Adds a shape to the end of the store by copying its outline.
+     * @param theShape Outline of the shape.
+     * @param theStroke Stroke the shape is drawn with.
+     * @param theColor Color the shape is drawn with.
+     * @return Id of the shape, which is its position in the store.
+     */
+    public int add(final Shape theShape, final BasicStroke theStroke, final Color theColor) {
+        return add(theShape, theStroke, theColor, false);
+    }
+
+    /**
+     * Adds a shape that is filled inside its outline to the end of the store, by copying
+     * its outline.
+     * @param theArea Outline of the area to fill.
+     * @param theColor Color the area is filled with.
+     * @return Id of the shape, which is its position in the store.
+     */
+    public int addFill(final Shape theArea, final Color theColor) {
+        return add(theArea, Styles.stroke(0), theColor, true);
+    }
+
+    /**
+     * Adds a shape to the end of the store by copying its outline.
+     * @param theShape Outline of the shape.
+     * @param theStroke Stroke the shape is drawn with.
+     * @param theColor Color the shape is drawn with.
+     * @param theFilled Whether the shape is filled inside its outline instead of stroked.
+     * @return Id of the shape, which is its position in the store.
+     */
+    private int add(final Shape theShape, final BasicStroke theStroke, final Color theColor,
+                    final boolean theFilled) {
+        final Chunk chunk = writableTail();
+        final int local = mySize & CHUNK_MASK;
+        final float[] coords = new float[6];
+        int coordEnd = chunk.myCoordStarts[local];
+        int segmentEnd = chunk.mySegmentStarts[local];
+        for (PathIterator it = theShape.getPathIterator(null); !it.isDone(); it.next()) {
+            final int type = it.currentSegment(coords);
+            final int count = COORDS_PER_SEGMENT[type];
+            chunk.ensureGeometryCapacity(segmentEnd + 1, coordEnd + count);
+            chunk.mySegments[segmentEnd++] = (byte) type;
+            System.arraycopy(coords, 0, chunk.myCoords, coordEnd, count);
+            coordEnd += count;
+        }
+        return finishShape(chunk, segmentEnd, coordEnd, theStroke, theColor, theFilled);
+    }
+
+    /**
+     * Adds a shape to the end of the store from raw segment types and coordinates,
+     * as used by documents read from a file.
+     * @param theSegments Segment types of the shape, using the PathIterator constants.
+     * @param theSegmentCount Number of segments to read.
+     * @param theCoords Coordinates of the segments, stored as x and y pairs.
+     * @param theStroke Stroke the shape is drawn with.
+     * @param theColor Color the shape is drawn with.
+     * @param theFilled Whether the shape is filled inside its outline instead of stroked.
+     * @return Id of the shape, which is its position in the store.
+     * @throws IllegalArgumentException If a segment type is unknown or there are
+     *         fewer coordinates than the segments need.
+     */
+    public int add(final byte[] theSegments, final int theSegmentCount, final float[] theCoords,
+                   final BasicStroke theStroke, final Color theColor,
+                   final boolean theFilled) {
+        int coordCount = 0;
+        for (int i = 0; i < theSegmentCount; i++) {
+            if (theSegments[i] < 0 || theSegments[i] >= COORDS_PER_SEGMENT.length) {
+                throw new IllegalArgumentException("Unknown segment type " + theSegments[i]);
+            }
+            coordCount += COORDS_PER_SEGMENT[theSegments[i]];
+        }
+        if (coordCount > theCoords.length) {
+            throw new IllegalArgumentException("Segments need " + coordCount
+                                               + " coordinates but only " + theCoords.length
+                                               + " were given");
+        }
+        return addRaw(theSegments, 0, theSegmentCount, theCoords, 0, coordCount,
+                      theStroke, theColor, theFilled);
+    }
+
+    /**
+     * Adds every shape of another store to the end of this one, in order.
+     * @param theOther Store to copy the shapes from.
+     */
+    public void addAll(final ShapeStore theOther) {
+        addAll(theOther, 0, theOther.mySize);
+    }
+
+    /**
+     * Adds a range of shapes from another store to the end of this one, in order.
+     * @param theOther Store to copy the shapes from.
+     * @param theFrom Id of the first shape to copy.
+     * @param theTo Id just past the last shape to copy.
+     */
+    public void addAll(final ShapeStore theOther, final int theFrom, final int theTo) {
+        if (theFrom < 0 || theTo > theOther.mySize || theFrom > theTo) {
+            throw new IndexOutOfBoundsException("Range " + theFrom + " to " + theTo
+                                                + " of " + theOther.mySize);
+        }
+        //Reads through a snapshot so copying a store onto itself is safe.
+        final ShapeStore source = theOther == this ? snapshot() : theOther;
+        for (int id = theFrom; id < theTo; id++) {
+            final Chunk chunk = source.chunkOf(id);
+            final int local = id & CHUNK_MASK;
+            final int segmentStart = chunk.mySegmentStarts[local];
+            final int coordStart = chunk.myCoordStarts[local];
+            addRaw(chunk.mySegments, segmentStart,
+                   chunk.mySegmentStarts[local + 1] - segmentStart,
+                   chunk.myCoords, coordStart, chunk.myCoordStarts[local + 1] - coordStart,
+                   source.getStroke(id), source.getColor(id), source.isFilled(id));
+        }
+    }
+
+    /**
+     * Removes every shape from the store and releases its memory.
+     * Snapshots taken before keep their shapes.
+     */
+    public void clear() {
+        myChunks = new Chunk[INITIAL_CAPACITY];
+        myChunksOwned = true;
+        myOwner = new Object();
+        myStrokes = new Palette<BasicStroke>();
+        myColors = new Palette<Color>();
+        mySize = 0;
+    }
+
+    /**
+     * Removes every shape from the given id onward, as when recent shapes are undone.
+     * The memory they used is kept for the shapes added next, unless it is shared
+     * with a snapshot.
+     * @param theSize Number of shapes to keep.
+     */
+    public void truncate(final int theSize) {
+        if (theSize < 0 || theSize > mySize) {
+            throw new IndexOutOfBoundsException("Size " + theSize + " of " + mySize);
+        }
+        final int chunkCount = (theSize + CHUNK_MASK) >> CHUNK_SHIFT;
+        if (chunkCount < (mySize + CHUNK_MASK) >> CHUNK_SHIFT) {
+            ownChunks();
+            Arrays.fill(myChunks, chunkCount, myChunks.length, null);
+        }
+        mySize = theSize;
+    }
+
+    /**
+     * Gets the number of shapes in the store.
+     * @return Number of shapes that have been added.
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Gets whether the store has no shapes.
+     * @return Whether the store is empty.
+     */
+    public boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    /**
+     * Estimates the memory used by the geometry, strokes and colors of the shapes,
+     * counting the arrays of every chunk whether or not a snapshot shares them.
+     * @return Approximate number of bytes used by the store.
+     */
+    public long getByteSize() {
+        long bytes = (long) myChunks.length * Integer.SIZE / Byte.SIZE;
+        final int chunkCount = (mySize + CHUNK_MASK) >> CHUNK_SHIFT;
+        for (int i = 0; i < chunkCount; i++) {
+            bytes += myChunks[i].getByteSize();
+        }
+        return bytes + (long) (myStrokes.myValues.length + myColors.myValues.length)
+                        * Integer.SIZE / Byte.SIZE;
+    }
+
+    /**
+     * Gets a read-only view of the outline of a shape that reads straight from the store.
+     * The view is only valid until the shape is next removed from the store.
+     * @param theId Id of the shape.
+     * @return Outline of the shape.
+     */
+    public Shape getShape(final int theId) {
+        return new StoredPath(chunkOf(theId), theId & CHUNK_MASK, 0);
+    }
+
+    /**
+     * Gets the stroke a shape is drawn with.
+     * @param theId Id of the shape.
+     * @return Stroke of the shape.
+     */
+    public BasicStroke getStroke(final int theId) {
+        return myStrokes.get(chunkOf(theId).myStrokeIds[theId & CHUNK_MASK]);
+    }
+
+    /**
+     * Gets the color a shape is drawn with.
+     * @param theId Id of the shape.
+     * @return Color of the shape.
+     */
+    public Color getColor(final int theId) {
+        return myColors.get(chunkOf(theId).myColorIds[theId & CHUNK_MASK]);
+    }
+
+    /**
+     * Gets whether a shape is filled inside its outline instead of stroked along it.
+     * @param theId Id of the shape.
+     * @return Whether the shape is filled.
+     */
+    public boolean isFilled(final int theId) {
+        return chunkOf(theId).myFilled[theId & CHUNK_MASK];
+    }
+
+    /**
+     * Gets the area of the panel a shape covers once it is stroked.
+     * @param theId Id of the shape.
+     * @return Area of the panel the stroked shape can touch.
+     */
+    public Rectangle getBounds(final int theId) {
+        final int[] bounds = chunkOf(theId).myBounds;
+        final int local = (theId & CHUNK_MASK) * 4;
+        return new Rectangle(bounds[local], bounds[local + 1],
+                             bounds[local + 2], bounds[local + 3]);
+    }
+
+    /**
+     * Gets the farthest a shape can reach past its outline once stroked.
+     * @param theId Id of the shape.
+     * @return Whole number of pixels the stroked shape can touch past its outline.
+     */
+    public int getReach(final int theId) {
+        return PaintShape.getReach(getStroke(theId));
+    }
+
+    /**
+     * Copies a shape out of the store into its own standalone object.
+     * @param theId Id of the shape.
+     * @return Standalone copy of the shape.
+     */
+    public PaintShape get(final int theId) {
+        return new PaintShape(getShape(theId), getStroke(theId), getColor(theId));
+    }
+
+    /**
+     * Draws a shape with its own stroke and color.
+     * @param theGraphics Graphics to draw the shape with.
+     * @param theId Id of the shape.
+     */
+    public void draw(final Graphics2D theGraphics, final int theId) {
+        draw(theGraphics, theId, 1);
+    }
+
+    /**
+     * Draws a shape with its own stroke and color at a scale, simplifying it when it is
+     * zoomed out. A shape smaller than a pixel is drawn as a single pixel in its color,
+     * and points of an outline closer than half a pixel to the last point drawn are
+     * skipped, so dense freeform strokes cost little to draw when zoomed far out.
+     * Filled shapes keep every point, since skipping the corners of their rectangles
+     * would leave gaps between them.
+     * @param theGraphics Graphics to draw the shape with.
+     * @param theId Id of the shape.
+     * @param theScale Number of pixels per canvas pixel the graphics draw at.
+     */
+    public void draw(final Graphics2D theGraphics, final int theId, final double theScale) {
+        final StyleBatch batch = new StyleBatch(theGraphics);
+        draw(batch, theId, theScale);
+        batch.flush();
+    }
+
+    /**
+     * Draws shapes in order, each as draw would, only changing the stroke and color
+     * of the graphics between shapes of different styles.
+     * @param theGraphics Graphics to draw the shapes with.
+     * @param theIds Ids of the shapes, in the order to draw them.
+     * @param theScale Number of pixels per canvas pixel the graphics draw at.
+     */
+    public void drawAll(final Graphics2D theGraphics, final int[] theIds,
+                        final double theScale) {
+        final StyleBatch batch = new StyleBatch(theGraphics);
+        for (int id : theIds) {
+            draw(batch, id, theScale);
+        }
+        batch.flush();
+    }
+
+    /**
+     * Adds a shape to a batch, simplified for the scale it is drawn at.
+     * @param theBatch Batch to draw the shape with.
+     * @param theId Id of the shape.
+     * @param theScale Number of pixels per canvas pixel the graphics draw at.
+     */
+    private void draw(final StyleBatch theBatch, final int theId, final double theScale) {
+        final Chunk chunk = chunkOf(theId);
+        final int local = theId & CHUNK_MASK;
+        final Color color = myColors.get(chunk.myColorIds[local]);
+        final boolean filled = chunk.myFilled[local];
+        if (theScale >= 1) {
+            if (filled) {
+                theBatch.fill(new StoredPath(chunk, local, 0), color);
+            } else {
+                theBatch.draw(new StoredPath(chunk, local, 0),
+                              myStrokes.get(chunk.myStrokeIds[local]), color);
+            }
+            return;
+        }
+        final int[] bounds = chunk.myBounds;
+        final int x = bounds[local * 4];
+        final int y = bounds[local * 4 + 1];
+        final int width = bounds[local * 4 + 2];
+        final int height = bounds[local * 4 + 3];
+        if (Math.max(width, height) * theScale < 1) {
+            final int pixel = (int) Math.ceil(1 / theScale);
+            theBatch.fillRect(x + width / 2 - pixel / 2, y + height / 2 - pixel / 2,
+                              pixel, pixel, color);
+        } else if (filled) {
+            theBatch.fill(new StoredPath(chunk, local, 0), color);
+        } else {
+            theBatch.draw(new StoredPath(chunk, local, LOD_TOLERANCE / theScale),
+                          myStrokes.get(chunk.myStrokeIds[local]), color);
+        }
+    }
+
+    /**
+     * Gets the number of segments in the outline of a shape.
+     * @param theId Id of the shape.
+     * @return Number of segments in the shape.
+     */
+    public int getSegmentCount(final int theId) {
+        final Chunk chunk = chunkOf(theId);
+        final int local = theId & CHUNK_MASK;
+        return chunk.mySegmentStarts[local + 1] - chunk.mySegmentStarts[local];
+    }
+
+    /**
+     * Gets the number of coordinates in the outline of a shape, counting x and y separately.
+     * @param theId Id of the shape.
+     * @return Number of coordinates in the shape.
+     */
+    public int getCoordCount(final int theId) {
+        final Chunk chunk = chunkOf(theId);
+        final int local = theId & CHUNK_MASK;
+        return chunk.myCoordStarts[local + 1] - chunk.myCoordStarts[local];
+    }
+
+    /**
+     * Copies the segment types of a shape, using the PathIterator constants.
+     * @param theId Id of the shape.
+     * @param theTarget Array to copy the segment types into.
+     * @param theOffset Position in the array to start copying to.
+     */
+    public void getSegments(final int theId, final byte[] theTarget, final int theOffset) {
+        final Chunk chunk = chunkOf(theId);
+        final int local = theId & CHUNK_MASK;
+        final int start = chunk.mySegmentStarts[local];
+        System.arraycopy(chunk.mySegments, start, theTarget, theOffset,
+                         chunk.mySegmentStarts[local + 1] - start);
+    }
+
+    /**
+     * Copies the coordinates of a shape, stored as x and y pairs.
+     * @param theId Id of the shape.
+     * @param theTarget Array to copy the coordinates into.
+     * @param theOffset Position in the array to start copying to.
+     */
+    public void getCoords(final int theId, final float[] theTarget, final int theOffset) {
+        final Chunk chunk = chunkOf(theId);
+        final int local = theId & CHUNK_MASK;
+        final int start = chunk.myCoordStarts[local];
+        System.arraycopy(chunk.myCoords, start, theTarget, theOffset,
+                         chunk.myCoordStarts[local + 1] - start);
+    }
+
+    /**
+     * Makes this store share every chunk and palette of another store. Neither store
+     * owns anything afterwards, so both copy whatever they change from then on.
+     * @param theOther Store to share with.
+     */
+    private void share(final ShapeStore theOther) {
+        myChunks = theOther.myChunks;
+        myStrokes = theOther.myStrokes.share();
+        myColors = theOther.myColors.share();
+        mySize = theOther.mySize;
+        myChunksOwned = false;
+        theOther.myChunksOwned = false;
+        myOwner = new Object();
+        theOther.myOwner = new Object();
+    }
+
+    /**
+     * Adds a shape to the end of the store by copying raw geometry.
+     * @param theSegments Array holding the segment types.
+     * @param theSegmentStart Index of the first segment type to copy.
+     * @param theSegmentCount Number of segments to copy.
+     * @param theCoords Array holding the coordinates.
+     * @param theCoordStart Index of the first coordinate to copy.
+     * @param theCoordCount Number of coordinates to copy.
+     * @param theStroke Stroke the shape is drawn with.
+     * @param theColor Color the shape is drawn with.
+     * @param theFilled Whether the shape is filled inside its outline instead of stroked.
+     * @return Id of the shape.
+     */
+    private int addRaw(final byte[] theSegments, final int theSegmentStart,
+                       final int theSegmentCount, final float[] theCoords,
+                       final int theCoordStart, final int theCoordCount,
+                       final BasicStroke theStroke, final Color theColor,
+                       final boolean theFilled) {
+        final Chunk chunk = writableTail();
+        final int local = mySize & CHUNK_MASK;
+        final int segmentStart = chunk.mySegmentStarts[local];
+        final int coordStart = chunk.myCoordStarts[local];
+        chunk.ensureGeometryCapacity(segmentStart + theSegmentCount,
+                                     coordStart + theCoordCount);
+        System.arraycopy(theSegments, theSegmentStart, chunk.mySegments, segmentStart,
+                         theSegmentCount);
+        System.arraycopy(theCoords, theCoordStart, chunk.myCoords, coordStart, theCoordCount);
+        return finishShape(chunk, segmentStart + theSegmentCount, coordStart + theCoordCount,
+                           theStroke, theColor, theFilled);
+    }
+
+    /**
+     * Records a shape whose geometry has just been written after the last shape.
+     * @param theChunk Chunk the shape was written to.
+     * @param theSegmentEnd Index past the last segment of the shape in the chunk.
+     * @param theCoordEnd Index past the last coordinate of the shape in the chunk.
+     * @param theStroke Stroke the shape is drawn with.
+     * @param theColor Color the shape is drawn with.
+     * @param theFilled Whether the shape is filled inside its outline instead of stroked.
+     * @return Id of the shape.
+     */
+    private int finishShape(final Chunk theChunk, final int theSegmentEnd,
+                            final int theCoordEnd, final BasicStroke theStroke,
+                            final Color theColor, final boolean theFilled) {
+        final int id = mySize++;
+        final int local = id & CHUNK_MASK;
+        theChunk.myCoordStarts[local + 1] = theCoordEnd;
+        theChunk.mySegmentStarts[local + 1] = theSegmentEnd;
+        theChunk.myStrokeIds[local] = myStrokes.intern(theStroke);
+        theChunk.myColorIds[local] = myColors.intern(theColor);
+        theChunk.myFilled[local] = theFilled;
+
+        final Rectangle bounds = PaintShape.getStrokedBounds(
+                        theChunk.outlineBounds(theChunk.myCoordStarts[local], theCoordEnd),
+                        theStroke);
+        theChunk.myBounds[local * 4] = bounds.x;
+        theChunk.myBounds[local * 4 + 1] = bounds.y;
+        theChunk.myBounds[local * 4 + 2] = bounds.width;
+        theChunk.myBounds[local * 4 + 3] = bounds.height;
+        return id;
+    }
+
+    /**
+     * Gets the chunk the next shape is added to, starting a new chunk if the last one
+     * is full and copying the last one if it is shared with a snapshot.
+     * @return Chunk owned by this store with room for one more shape.
+     */
+    private Chunk writableTail() {
+        final int index = mySize >> CHUNK_SHIFT;
+        final Chunk chunk = index < myChunks.length ? myChunks[index] : null;
+        if (chunk != null && chunk.myOwner == myOwner) {
+            return chunk;
+        }
+        ownChunks();
+        if (index == myChunks.length) {
+            myChunks = Arrays.copyOf(myChunks, myChunks.length * 2);
+        }
+        myChunks[index] = chunk == null ? new Chunk(myOwner) : new Chunk(chunk, myOwner);
+        return myChunks[index];
+    }
+
+    /**
+     * Copies the array of chunks if it is shared with a snapshot.
+     */
+    private void ownChunks() {
+        if (!myChunksOwned) {
+            myChunks = myChunks.clone();
+            myChunksOwned = true;
+        }
+    }
+
+    /**
+     * Gets the chunk holding a shape, making sure the id refers to a shape in the store.
+     * @param theId Id of the shape.
+     * @return Chunk holding the shape.
+     */
+    private Chunk chunkOf(final int theId) {
+        if (theId < 0 || theId >= mySize) {
+            throw new IndexOutOfBoundsException("Shape " + theId + " of " + mySize);
+        }
+        return myChunks[theId >> CHUNK_SHIFT];
+    }
+
+    /**
+     * Arrays holding the geometry, styles and bounds of up to a chunk of shapes.
+     * Only the store that owns a chunk may change it.
+     */
+    private static final class Chunk {
+
+        /** Token of the store allowed to change the chunk. */
+        private final Object myOwner;
+
+        /** Coordinates of every segment of every shape, stored as x and y pairs. */
+        private float[] myCoords;
+
+        /** Type of every segment of every shape, using the PathIterator constants. */
+        private byte[] mySegments;
+
+        /** Index of the first coordinate of each shape, with one extra entry for the end. */
+        private final int[] myCoordStarts;
+
+        /** Index of the first segment of each shape, with one extra entry for the end. */
+        private final int[] mySegmentStarts;
+
+        /** Index of each shape's stroke in the stroke palette. */
+        private final int[] myStrokeIds;
+
+        /** Index of each shape's color in the color palette. */
+        private final int[] myColorIds;
+
+        /** Stroked bounds of each shape, stored as x, y, width, height. */
+        private final int[] myBounds;
+
+        /** Whether each shape is filled inside its outline instead of stroked. */
+        private final boolean[] myFilled;
+
+        /**
+         * Constructs an empty chunk.
+         * @param theOwner Token of the store allowed to change the chunk.
+         */
+        private Chunk(final Object theOwner) {
+            myOwner = theOwner;
+            myCoords = new float[INITIAL_CAPACITY * 2];
+            mySegments = new byte[INITIAL_CAPACITY];
+            myCoordStarts = new int[CHUNK_SIZE + 1];
+            mySegmentStarts = new int[CHUNK_SIZE + 1];
+            myStrokeIds = new int[CHUNK_SIZE];
+            myColorIds = new int[CHUNK_SIZE];
+            myBounds = new int[CHUNK_SIZE * 4];
+            myFilled = new boolean[CHUNK_SIZE];
+        }
+
+        /**
+         * Gets the memory used by the arrays of the chunk.
+         * @return Number of bytes in the arrays.
+         */
+        private long getByteSize() {
+            return (long) myCoords.length * Float.SIZE / Byte.SIZE + mySegments.length
+                            + myFilled.length + (long) (myCoordStarts.length + mySegmentStarts.length
+                                            + myStrokeIds.length + myColorIds.length
+                                            + myBounds.length) * Integer.SIZE / Byte.SIZE;
+        }
+
+        /**
+         * Constructs a copy of another chunk.
+         * @param theOther Chunk to copy.
+         * @param theOwner Token of the store allowed to change the copy.
+         */
+        private Chunk(final Chunk theOther, final Object theOwner) {
+            myOwner = theOwner;
+            myCoords = theOther.myCoords.clone();
+            mySegments = theOther.mySegments.clone();
+            myCoordStarts = theOther.myCoordStarts.clone();
+            mySegmentStarts = theOther.mySegmentStarts.clone();
+            myStrokeIds = theOther.myStrokeIds.clone();
+            myColorIds = theOther.myColorIds.clone();
+            myBounds = theOther.myBounds.clone();
+            myFilled = theOther.myFilled.clone();
+        }
+
+        /**
+         * Makes sure the geometry arrays can hold the given number of segments and coordinates.
+         * @param theSegments Number of segments needed.
+         * @param theCoords Number of coordinates needed.
+         */
+        private void ensureGeometryCapacity(final int theSegments, final int theCoords) {
+            if (theSegments > mySegments.length) {
+                mySegments = Arrays.copyOf(mySegments, Math.max(theSegments,
+                                                                mySegments.length * 2));
+            }
+            if (theCoords > myCoords.length) {
+                myCoords = Arrays.copyOf(myCoords, Math.max(theCoords, myCoords.length * 2));
+            }
+        }
+
+        /**
+         * Gets the bounds of a range of coordinates, including curve control points.
+         * @param theStart Index of the first coordinate.
+         * @param theEnd Index past the last coordinate.
+         * @return Bounds of every point in the range.
+         */
+        private Rectangle2D outlineBounds(final int theStart, final int theEnd) {
+            if (theStart == theEnd) {
+                return new Rectangle2D.Float();
+            }
+            float minX = myCoords[theStart];
+            float minY = myCoords[theStart + 1];
+            float maxX = minX;
+            float maxY = minY;
+            for (int i = theStart + 2; i < theEnd; i += 2) {
+                minX = Math.min(minX, myCoords[i]);
+                maxX = Math.max(maxX, myCoords[i]);
+                minY = Math.min(minY, myCoords[i + 1]);
+                maxY = Math.max(maxY, myCoords[i + 1]);
+            }
+            return new Rectangle2D.Float(minX, minY, maxX - minX, maxY - minY);
+        }
+    }
+
+    /**
+     * Growable list of distinct values, such as strokes or colors, with a lookup of the
+     * position of each. A palette shared with a snapshot is copied before it is added to.
+     * @param <T> Type of the values in the palette.
+     */
+    private static final class Palette<T> {
+
+        /** Values in the palette, in the order they were added. */
+        private Object[] myValues;
+
+        /** Number of values in the palette. */
+        private int myCount;
+
+        /** Position of each value in the palette, or null until it is first needed. */
+        private Map<T, Integer> myLookup;
+
+        /** Whether the array of values belongs to this palette alone and can be changed. */
+        private boolean myOwned;
+
+        /**
+         * Constructs an empty palette.
+         */
+        private Palette() {
+            myValues = new Object[INITIAL_CAPACITY];
+            myLookup = new HashMap<T, Integer>();
+            myOwned = true;
+        }
+
+        /**
+         * Constructs a palette sharing the values of another.
+         * @param theOther Palette to share with.
+         */
+        private Palette(final Palette<T> theOther) {
+            myValues = theOther.myValues;
+            myCount = theOther.myCount;
+        }
+
+        /**
+         * Creates a palette sharing the values of this one. Neither palette owns the
+         * values afterwards.
+         * @return Palette with the same values.
+         */
+        private Palette<T> share() {
+            myOwned = false;
+            return new Palette<T>(this);
+        }
+
+        /**
+         * Gets a value in the palette.
+         * @param theIndex Position of the value.
+         * @return Value at that position.
+         */
+        @SuppressWarnings("unchecked")
+        private T get(final int theIndex) {
+            return (T) myValues[theIndex];
+        }
+
+        /**
+         * Finds the position of a value, adding it if it is new.
+         * @param theValue Value to look up.
+         * @return Position of the value in the palette.
+         */
+        private int intern(final T theValue) {
+            if (myLookup == null) {
+                myLookup = new HashMap<T, Integer>();
+                for (int i = 0; i < myCount; i++) {
+                    myLookup.put(get(i), i);
+                }
+            }
+            Integer index = myLookup.get(theValue);
+            if (index == null) {
+                if (!myOwned || myCount == myValues.length) {
+                    myValues = Arrays.copyOf(myValues, Math.max(myCount * 2, INITIAL_CAPACITY));
+                    myOwned = true;
+                }
+                index = myCount;
+                myValues[myCount++] = theValue;
+                myLookup.put(theValue, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Read-only outline of one shape that iterates over the arrays of its chunk.
+     */
+    private static final class StoredPath extends AbstractPathShape {
+
+        /** Chunk holding the shape. */
+        private final Chunk myChunk;
+
+        /** Position of the shape within its chunk. */
+        private final int myLocal;
+
+        /** Distance within which points after the last one drawn are skipped, or 0. */
+        private final double myTolerance;
+
+        /**
+         * Constructs the outline of a shape.
+         * @param theChunk Chunk holding the shape.
+         * @param theLocal Position of the shape within its chunk.
+         * @param theTolerance Distance within which points after the last one drawn
+         *        are skipped, or 0 to keep every point.
+         */
+        private StoredPath(final Chunk theChunk, final int theLocal,
+                           final double theTolerance) {
+            myChunk = theChunk;
+            myLocal = theLocal;
+            myTolerance = theTolerance;
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return myChunk.outlineBounds(myChunk.myCoordStarts[myLocal],
+                                         myChunk.myCoordStarts[myLocal + 1]);
+        }
+
+        @Override
+        public PathIterator getPathIterator(final AffineTransform theTransform) {
+            return new StoredPathIterator(myChunk, myChunk.mySegmentStarts[myLocal],
+                                          myChunk.mySegmentStarts[myLocal + 1],
+                                          myChunk.myCoordStarts[myLocal], myTolerance,
+                                          theTransform);
+        }
+    }
+
+    /**
+     * Iterates over a range of segments in the arrays of a chunk. With a tolerance,
+     * segments ending within it of the end of the last segment returned are skipped,
+     * except for the last segment before each move, close or the end of the outline,
+     * so every piece of the outline still ends where it should.
+     */
+    private static final class StoredPathIterator implements PathIterator {
+
+        /** Coordinates of the chunk being iterated over. */
+        private final float[] myCoords;
+
+        /** Segment types of the chunk being iterated over. */
+        private final byte[] mySegments;
+
+        /** Transform applied to each point, or null for none. */
+        private final AffineTransform myTransform;
+
+        /** Index past the last segment to iterate over. */
+        private final int mySegmentEnd;
+
+        /** Distance within which segment ends are skipped, or 0 to keep every segment. */
+        private final double myTolerance;
+
+        /** Index of the current segment. */
+        private int mySegment;
+
+        /** Index of the first coordinate of the current segment. */
+        private int myCoord;
+
+        /** X coordinate the last segment returned ended at. */
+        private float myLastX;
+
+        /** Y coordinate the last segment returned ended at. */
+        private float myLastY;
+
+        /** X coordinate of the last move returned, which a close goes back to. */
+        private float myMoveX;
+
+        /** Y coordinate of the last move returned, which a close goes back to. */
+        private float myMoveY;
+
+        /**
+         * Constructs an iterator over a range of segments.
+         * @param theChunk Chunk holding the segments.
+         * @param theSegmentStart Index of the first segment.
+         * @param theSegmentEnd Index past the last segment.
+         * @param theCoordStart Index of the first coordinate of the first segment.
+         * @param theTolerance Distance within which segment ends are skipped, or 0.
+         * @param theTransform Transform applied to each point, or null for none.
+         */
+        private StoredPathIterator(final Chunk theChunk, final int theSegmentStart,
+                                   final int theSegmentEnd, final int theCoordStart,
+                                   final double theTolerance,
+                                   final AffineTransform theTransform) {
+            myCoords = theChunk.myCoords;
+            mySegments = theChunk.mySegments;
+            mySegment = theSegmentStart;
+            mySegmentEnd = theSegmentEnd;
+            myCoord = theCoordStart;
+            myTolerance = theTolerance;
+            myTransform = theTransform;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mySegment >= mySegmentEnd;
+        }
+
+        @Override
+        public void next() {
+            final int type = mySegments[mySegment];
+            final int count = COORDS_PER_SEGMENT[type];
+            if (type == SEG_CLOSE) {
+                myLastX = myMoveX;
+                myLastY = myMoveY;
+            } else {
+                myLastX = myCoords[myCoord + count - 2];
+                myLastY = myCoords[myCoord + count - 1];
+                if (type == SEG_MOVETO) {
+                    myMoveX = myLastX;
+                    myMoveY = myLastY;
+                }
+            }
+            myCoord += count;
+            mySegment++;
+            while (myTolerance > 0 && isSkippable()) {
+                myCoord += COORDS_PER_SEGMENT[mySegments[mySegment]];
+                mySegment++;
+            }
+        }
+
+        /**
+         * Gets whether the current segment draws to a point within the tolerance of
+         * the last point returned and is followed by another drawing segment.
+         * @return Whether the current segment can be skipped.
+         */
+        private boolean isSkippable() {
+            if (mySegment + 1 >= mySegmentEnd || !isDrawing(mySegments[mySegment])
+                            || !isDrawing(mySegments[mySegment + 1])) {
+                return false;
+            }
+            final int end = myCoord + COORDS_PER_SEGMENT[mySegments[mySegment]];
+            return Math.abs(myCoords[end - 2] - myLastX) <= myTolerance
+                   && Math.abs(myCoords[end - 1] - myLastY) <= myTolerance;
+        }
+
+        /**
+         * Gets whether a segment type draws from the current point to a new one.
+         * @param theType Segment type, using the PathIterator constants.
+         * @return Whether the segment is a line or curve.
+         */
+        private boolean isDrawing(final byte theType) {
+            return theType == SEG_LINETO || theType == SEG_QUADTO || theType == SEG_CUBICTO;
+        }
+
+        @Override
+        public int currentSegment(final float[] theCoords) {
+            final int type = mySegments[mySegment];
+            final int count = COORDS_PER_SEGMENT[type];
+            if (myTransform == null) {
+                System.arraycopy(myCoords, myCoord, theCoords, 0, count);
+            } else {
+                myTransform.transform(myCoords, myCoord, theCoords, 0, count / 2);
+            }
+            return type;
+        }
+
+        @Override
+        public int currentSegment(final double[] theCoords) {
+            final int type = mySegments[mySegment];
+            final int count = COORDS_PER_SEGMENT[type];
+            if (myTransform == null) {
+                for (int i = 0; i < count; i++) {
+                    theCoords[i] = myCoords[myCoord + i];
+                }
+            } else {
+                myTransform.transform(myCoords, myCoord, theCoords, 0, count / 2);
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package paintwindow;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+
+/**
+ * Draws shapes in order while only changing the color and stroke of the graphics when
+ * they differ from those of the shape before, so a run of shapes in the same style
+ * costs one change of state rather than one per shape. Styles are the same when they
+ * are the same instances, as those from Styles are.
+ * <p>
+ * Runs of the single pixels standing in for shapes too small to see are merged into
+ * one path and filled at once. Outlines are still stroked one at a time: stroking a
+ * path merged from many overlapping outlines gives the rasterizer far more edges to
+ * sort on each row, and measured slower than stroking them apart. Translucent pixels
+ * are never merged, since where they overlap each has to blend over the last.
+ * Merging opaque ones fills exactly the same pixels as long as antialiasing is off,
+ * as it is on every graphics the shapes are drawn with.
+ * </p>
+ * Shapes are only guaranteed to be drawn once flush has been called.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class StyleBatch {
+
+    /** Most pixels merged into one fill, which bounds the size of the merged path. */
+    private static final int MAX_RECTS = 256;
+
+    /** Alpha of an opaque color. */
+    private static final int OPAQUE = 255;
+
+    /** Graphics the shapes are drawn with. */
+    private final Graphics2D myGraphics;
+
+    /** Rectangles waiting to be filled, or null until first needed. */
+    private Path2D.Float myRects;
+
+    /** Number of rectangles waiting to be filled. */
+    private int myPending;
+
+    /** Color of the rectangles waiting to be filled. */
+    private Color myRectColor;
+
+    /** Stroke last set on the graphics, or null if it has not been set. */
+    private Stroke myStroke;
+
+    /** Color last set on the graphics, or null if it has not been set. */
+    private Color myColor;
+
+    /**
+     * Constructs a batch drawing with a graphics. The batch sets the color and stroke
+     * of the graphics as it draws, and nothing else should change them until it is done.
+     * @param theGraphics Graphics to draw the shapes with.
+     */
+    public StyleBatch(final Graphics2D theGraphics) {
+        myGraphics = theGraphics;
+    }
+
+    /**
+     * Draws the outline of a shape after the shapes before it.
+     * @param theShape Shape to draw.
+     * @param theStroke Stroke to draw the shape with.
+     * @param theColor Color to draw the shape with.
+     */
+    public void draw(final Shape theShape, final BasicStroke theStroke, final Color theColor) {
+        flush();
+        setColor(theColor);
+        if (myStroke != theStroke) {
+            myGraphics.setStroke(theStroke);
+            myStroke = theStroke;
+        }
+        myGraphics.draw(theShape);
+    }
+
+    /**
+     * Fills the inside of a shape after the shapes before it.
+     * @param theShape Shape to fill.
+     * @param theColor Color to fill the shape with.
+     */
+    public void fill(final Shape theShape, final Color theColor) {
+        flush();
+        setColor(theColor);
+        myGraphics.fill(theShape);
+    }
+
+    /**
+     * Fills a rectangle after the shapes before it, as the pixels standing in for
+     * shapes too small to see are drawn.
+     * @param theX X coordinate of the rectangle.
+     * @param theY Y coordinate of the rectangle.
+     * @param theWidth Width of the rectangle.
+     * @param theHeight Height of the rectangle.
+     * @param theColor Color to fill the rectangle with.
+     */
+    public void fillRect(final int theX, final int theY, final int theWidth,
+                         final int theHeight, final Color theColor) {
+        if (myPending == MAX_RECTS || myPending > 0 && theColor != myRectColor) {
+            flush();
+        }
+        if (theColor.getAlpha() != OPAQUE) {
+            setColor(theColor);
+            myGraphics.fillRect(theX, theY, theWidth, theHeight);
+            return;
+        }
+        if (myRects == null) {
+            myRects = new Path2D.Float();
+        }
+        myRects.moveTo(theX, theY);
+        myRects.lineTo(theX + theWidth, theY);
+        myRects.lineTo(theX + theWidth, theY + theHeight);
+        myRects.lineTo(theX, theY + theHeight);
+        myRects.closePath();
+        myRectColor = theColor;
+        myPending++;
+    }
+
+    /**
+     * Fills every rectangle still waiting to be filled.
+     */
+    public void flush() {
+        if (myPending == 0) {
+            return;
+        }
+        setColor(myRectColor);
+        myGraphics.fill(myRects);
+        myRects.reset();
+        myPending = 0;
+    }
+
+    /**
+     * Sets the color of the graphics, unless it already has that color.
+     * @param theColor Color to set.
+     */
+    private void setColor(final Color theColor) {
+        if (myColor != theColor) {
+            myGraphics.setColor(theColor);
+            myColor = theColor;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package paintwindow;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared strokes and colors. Every stroke of a width and every color of an ARGB value
+ * handed out is the same instance, so shapes drawn in the same style can be recognized
+ * by comparing references, and Graphics2D skips the work of a setColor or setStroke
+ * with the style it already has. The thickness slider only offers a few widths and
+ * drawings only use a handful of colors, so the instances are kept for good.
+ * Can be used from any thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class Styles {
+
+    /** Strokes handed out so far, by width. */
+    private static final ConcurrentMap<Float, BasicStroke> STROKES =
+                    new ConcurrentHashMap<Float, BasicStroke>();
+
+    /** Colors handed out so far, by ARGB value. */
+    private static final ConcurrentMap<Integer, Color> COLORS =
+                    new ConcurrentHashMap<Integer, Color>();
+
+    /** Private constructor to prevent external creation of the class.*/
+    private Styles() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Gets the shared stroke of a width, with the default caps and joins.
+     * @param theWidth Width of the stroke.
+     * @return Stroke of that width.
+     * @throws IllegalArgumentException If the width is negative.
+     */
+    public static BasicStroke stroke(final float theWidth) {
+        BasicStroke stroke = STROKES.get(theWidth);
+        if (stroke == null) {
+            stroke = new BasicStroke(theWidth);
+            final BasicStroke other = STROKES.putIfAbsent(theWidth, stroke);
+            if (other != null) {
+                stroke = other;
+            }
+        }
+        return stroke;
+    }
+
+    /**
+     * Gets the shared color of an ARGB value.
+     * @param theArgb Alpha, red, green and blue of the color.
+     * @return Color with that value.
+     */
+    public static Color color(final int theArgb) {
+        Color color = COLORS.get(theArgb);
+        if (color == null) {
+            color = new Color(theArgb, true);
+            final Color other = COLORS.putIfAbsent(theArgb, color);
+            if (other != null) {
+                color = other;
+            }
+        }
+        return color;
+    }
+
+    /**
+     * Gets the shared color with the same ARGB value as a color.
+     * @param theColor Color to look up.
+     * @return Shared color with the same value.
+     */
+    public static Color color(final Color theColor) {
+        return color(theColor.getRGB());
+    }
+}
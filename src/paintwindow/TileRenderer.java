@@ -0,0 +1,23 @@
+package paintwindow;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * Draws shapes onto the tiles of a TiledCanvas.
+ * The renderer a canvas is constructed with redraws out of date tiles in parallel,
+ * so it may be called from several threads at once, each with its own tile.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface TileRenderer {
+
+    /**
+     * Draws everything the renderer holds that touches an area of the canvas.
+     * The graphics are already translated and clipped to the area, so shapes
+     * are drawn using canvas coordinates.
+     * @param theGraphics Graphics to draw with.
+     * @param theArea Area of the canvas being drawn.
+     */
+    void render(Graphics2D theGraphics, Rectangle theArea);
+}
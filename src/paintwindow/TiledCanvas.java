@@ -0,0 +1,1086 @@
+package paintwindow;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Raster cache of a drawing, split into fixed-size square tiles.
+ * A tile is only created once something is drawn on it, so memory grows with the
+ * painted area rather than the size of the drawing, and painting only touches
+ * the tiles that are visible. Adding a shape draws it straight onto the tiles its
+ * stroke reaches, while invalidated tiles are redrawn in full the next time they are
+ * painted. Every area that holds a shape has a tile, so a missing tile is known to be
+ * empty, and a tile that is up to date but was redrawn empty keeps no image either.
+ * When a paint finds several tiles out of date, as after a load or a clear, they are
+ * redrawn in parallel on a fork-join pool, each into its own image, and then copied
+ * onto the screen on the calling thread. The renderer must therefore be safe to call
+ * from several threads at once while the drawing is not being changed.
+ * <p>
+ * Tiles are kept for each zoom level the canvas is painted at, where level n draws the
+ * drawing at a scale of two to the power n. Level 0 is the full set described above and
+ * is the only one snapshots are taken of. It keeps every tile, but once too many have
+ * images, those painted longest ago drop theirs and are redrawn when next painted.
+ * The other levels are caches of the last few levels painted, holding only the tiles
+ * painted recently, and find out whether a tile they do not have yet is empty by
+ * looking at the tiles of level 0 beneath it.
+ * </p>
+ * <p>
+ * A canvas can also be drawn from the tiles of other canvases, as when layers are
+ * combined: those are brought up to date with update and then copied as they are
+ * with drawCached, so nothing is drawn twice.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class TiledCanvas {
+
+    /** Width and height of each tile, in pixels. */
+    public static final int TILE_SIZE = 256;
+
+    /** Most zoomed out level tiles can be drawn at. */
+    public static final int MIN_LEVEL = -6;
+
+    /** Most zoomed in level tiles can be drawn at. */
+    public static final int MAX_LEVEL = 4;
+
+    /** Number of levels other than level 0 whose tiles are kept. */
+    private static final int CACHED_LEVELS = 2;
+
+    /** Number of tiles each level other than level 0 keeps before dropping old ones. */
+    private static final int CACHED_TILES = 192;
+
+    /** Number of tiles of level 0 that keep their images before old ones drop them. */
+    private static final int CACHED_IMAGES = 256;
+
+    /** Stands in a snapshot for a tile that was up to date with nothing drawn on it. */
+    private static final BufferedImage EMPTY =
+                    new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+
+    /**
+     * System property giving the number of threads out of date tiles are redrawn on,
+     * which is the number of processors when it is not set.
+     */
+    public static final String REDRAW_THREADS_PROPERTY = "paint.redrawThreads";
+
+    /** Pool shared by every canvas for redrawing out of date tiles in parallel. */
+    private static final ForkJoinPool REDRAW_POOL = new ForkJoinPool(Math.max(1,
+                    Integer.getInteger(REDRAW_THREADS_PROPERTY,
+                                       Runtime.getRuntime().availableProcessors())));
+
+    /** Draws everything in an area when a tile needs to be redrawn in full. */
+    private final TileRenderer myRenderer;
+
+    /** Tiles at the drawing's own scale, which hold every area that has drawing. */
+    private final Level myBase;
+
+    /** Tiles of the other levels painted recently, keyed by level. */
+    private final Map<Integer, Level> myLevels;
+
+    /** Number of paints so far, used to find the tiles and levels painted longest ago. */
+    private long myPaintCount;
+
+    /** Number of tiles painted that were already up to date. */
+    private long myTileHits;
+
+    /** Number of tiles painted that had to be drawn first. */
+    private long myTileMisses;
+
+    /**
+     * Constructs an empty canvas.
+     * @param theRenderer Draws everything in an area when a tile needs to be redrawn.
+     */
+    public TiledCanvas(final TileRenderer theRenderer) {
+        myRenderer = theRenderer;
+        myBase = new Level(0);
+        myLevels = new HashMap<Integer, Level>();
+    }
+
+    /**
+     * Gets the scale a zoom level draws at.
+     * @param theLevel Zoom level.
+     * @return Number of pixels per canvas pixel at that level.
+     */
+    public static double getScale(final int theLevel) {
+        return Math.pow(2, theLevel);
+    }
+
+    /**
+     * Gets the number of threads out of date tiles are redrawn on, which is fixed
+     * when the class is loaded.
+     * @return Number of threads in the pool shared by every canvas.
+     */
+    public static int getRedrawThreads() {
+        return REDRAW_POOL.getParallelism();
+    }
+
+    /**
+     * Paints every tile touching an area, redrawing any that are not up to date.
+     * Out of date tiles are redrawn in parallel before any tile is painted.
+     * @param theGraphics Graphics to paint the tiles with, using canvas coordinates.
+     * @param theArea Area of the canvas to paint.
+     */
+    public void paint(final Graphics2D theGraphics, final Rectangle theArea) {
+        paint(theGraphics, theArea, 0);
+    }
+
+    /**
+     * Paints every tile of a zoom level touching an area, redrawing any that are not up
+     * to date. Out of date tiles are redrawn in parallel before any tile is painted.
+     * @param theGraphics Graphics to paint the tiles with, using the pixels of the level,
+     *        which are canvas coordinates times the scale of the level.
+     * @param theArea Area to paint, in the pixels of the level.
+     * @param theLevel Zoom level to paint, from MIN_LEVEL to MAX_LEVEL.
+     */
+    public void paint(final Graphics2D theGraphics, final Rectangle theArea,
+                      final int theLevel) {
+        drawTiles(theGraphics, updateLevel(theArea, theLevel), theArea);
+    }
+
+    /**
+     * Redraws every tile of a zoom level touching an area that is not up to date,
+     * without painting them, so they can be read by drawCached while this canvas
+     * is not being changed. Out of date tiles are redrawn in parallel.
+     * @param theArea Area to bring up to date, in the pixels of the level.
+     * @param theLevel Zoom level, from MIN_LEVEL to MAX_LEVEL.
+     */
+    public void update(final Rectangle theArea, final int theLevel) {
+        updateLevel(theArea, theLevel);
+    }
+
+    /**
+     * Redraws every tile of a zoom level touching an area that is not up to date.
+     * @param theArea Area to bring up to date, in the pixels of the level.
+     * @param theLevel Zoom level, from MIN_LEVEL to MAX_LEVEL.
+     * @return Tiles of the level.
+     */
+    private Level updateLevel(final Rectangle theArea, final int theLevel) {
+        final Level level = level(theLevel);
+        myPaintCount++;
+        level.myLastUsed = myPaintCount;
+        final int minCol = tileOf(theArea.x, TILE_SIZE);
+        final int minRow = tileOf(theArea.y, TILE_SIZE);
+        final int maxCol = tileOf(theArea.x + theArea.width - 1, TILE_SIZE);
+        final int maxRow = tileOf(theArea.y + theArea.height - 1, TILE_SIZE);
+        final List<Tile> stale = new ArrayList<Tile>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Tile tile = level.myTiles.get(key(col, row));
+                if (tile == null && level != myBase) {
+                    tile = level.createTile(col, row);
+                }
+                if (tile != null) {
+                    tile.myLastUsed = myPaintCount;
+                    if (tile.myValid) {
+                        myTileHits++;
+                    } else {
+                        myTileMisses++;
+                        tile.myCol = col;
+                        tile.myRow = row;
+                        stale.add(tile);
+                    }
+                }
+            }
+        }
+        if (stale.size() == 1) {
+            redraw(level, stale.get(0));
+        } else if (!stale.isEmpty()) {
+            REDRAW_POOL.invoke(new RedrawTask(level, stale, 0, stale.size()));
+        }
+        if (level == myBase) {
+            level.dropImages();
+        } else {
+            level.trim();
+        }
+        return level;
+    }
+
+    /**
+     * Tells whether every tile of a zoom level touching an area is up to date, so
+     * painting the area would not redraw anything. Tiles of levels other than 0 that
+     * have not been painted yet count as out of date.
+     * @param theArea Area to check, in the pixels of the level.
+     * @param theLevel Zoom level, from MIN_LEVEL to MAX_LEVEL.
+     * @return Whether the area can be painted straight from the tiles.
+     */
+    public boolean isUpToDate(final Rectangle theArea, final int theLevel) {
+        final Level level;
+        if (theLevel == 0) {
+            level = myBase;
+        } else {
+            level = myLevels.get(theLevel);
+            if (level == null) {
+                return false;
+            }
+        }
+        final int minCol = tileOf(theArea.x, TILE_SIZE);
+        final int minRow = tileOf(theArea.y, TILE_SIZE);
+        final int maxCol = tileOf(theArea.x + theArea.width - 1, TILE_SIZE);
+        final int maxRow = tileOf(theArea.y + theArea.height - 1, TILE_SIZE);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                final Tile tile = level.myTiles.get(key(col, row));
+                if (tile == null ? level != myBase : !tile.myValid) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draws the tiles touching an area as they are, without redrawing any, for drawing
+     * one canvas into the tiles of another. Only reads the tiles, so several threads can
+     * call it at once as long as the canvas is not being changed. The level drawn is the
+     * one matching the scale of the graphics, which must have been brought up to date
+     * over the area with update.
+     * @param theGraphics Graphics to draw with, using canvas coordinates scaled by the
+     *        scale of a zoom level, as handed to a TileRenderer.
+     * @param theArea Area of the canvas to draw.
+     */
+    public void drawCached(final Graphics2D theGraphics, final Rectangle theArea) {
+        final double scale = theGraphics.getTransform().getScaleX();
+        final int exponent = Math.getExponent(scale);
+        final Level level = exponent == 0 ? myBase : myLevels.get(exponent);
+        if (level == null) {
+            return;
+        }
+        final Graphics2D g2d = (Graphics2D) theGraphics.create();
+        g2d.scale(1 / scale, 1 / scale);
+        drawTiles(g2d, level, new Rectangle((int) Math.floor(theArea.x * scale),
+                                            (int) Math.floor(theArea.y * scale),
+                                            (int) Math.ceil(theArea.width * scale),
+                                            (int) Math.ceil(theArea.height * scale)));
+        g2d.dispose();
+    }
+
+    /**
+     * Draws the images of the tiles of a level touching an area, as they are.
+     * @param theGraphics Graphics to draw with, using the pixels of the level.
+     * @param theLevel Level whose tiles are drawn.
+     * @param theArea Area to draw, in the pixels of the level.
+     */
+    private static void drawTiles(final Graphics2D theGraphics, final Level theLevel,
+                                  final Rectangle theArea) {
+        final int minCol = tileOf(theArea.x, TILE_SIZE);
+        final int minRow = tileOf(theArea.y, TILE_SIZE);
+        final int maxCol = tileOf(theArea.x + theArea.width - 1, TILE_SIZE);
+        final int maxRow = tileOf(theArea.y + theArea.height - 1, TILE_SIZE);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                final Tile tile = theLevel.myTiles.get(key(col, row));
+                if (tile != null && tile.myValid && tile.myImage != null) {
+                    theGraphics.drawImage(tile.myImage, col * TILE_SIZE, row * TILE_SIZE, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws something new onto every tile of level 0 it reaches, and every tile of the
+     * other levels its bounds touch. Tiles that are up to date are drawn on directly,
+     * and tiles that do not exist yet are created so they will be drawn in full, new
+     * shape included, when first painted.
+     * @param theBounds Area of the canvas the new drawing covers.
+     * @param theOutline Outline the new drawing is drawn along or fills.
+     * @param theReach Farthest the new drawing reaches past its outline, in pixels.
+     * @param theRenderer Draws only the new drawing.
+     */
+    public void draw(final Rectangle theBounds, final Shape theOutline, final int theReach,
+                     final TileRenderer theRenderer) {
+        final int minCol = tileOf(theBounds.x, TILE_SIZE);
+        final int minRow = tileOf(theBounds.y, TILE_SIZE);
+        final int maxCol = tileOf(theBounds.x + theBounds.width - 1, TILE_SIZE);
+        final int maxRow = tileOf(theBounds.y + theBounds.height - 1, TILE_SIZE);
+        final boolean single = minCol == maxCol && minRow == maxRow;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                if (!single && !reaches(theOutline, theReach, col, row)) {
+                    continue;
+                }
+                final Long key = key(col, row);
+                final Tile tile = myBase.myTiles.get(key);
+                if (tile == null) {
+                    myBase.myTiles.put(key, new Tile());
+                } else if (tile.myValid) {
+                    myBase.drawOnto(tile, col, row, theBounds, theRenderer);
+                }
+            }
+        }
+        for (Level level : myLevels.values()) {
+            for (Map.Entry<Long, Tile> entry : level.tilesIn(theBounds)) {
+                final Tile tile = entry.getValue();
+                final long key = entry.getKey();
+                if (tile.myImage == null) {
+                    //The tile was known to be empty, so it now needs drawing in full.
+                    tile.myValid = false;
+                } else if (tile.myValid) {
+                    level.drawOnto(tile, (int) (key >> 32), (int) key, theBounds, theRenderer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks an area as holding drawing that the tiles do not have yet, such as a
+     * whole document to be drawn on demand. Missing tiles are created and existing
+     * ones are marked out of date, so each is drawn in full when first painted.
+     * @param theArea Area of the canvas that now holds drawing.
+     */
+    public void addArea(final Rectangle theArea) {
+        addArea(theArea, theArea, 0);
+    }
+
+    /**
+     * Marks the tiles of level 0 a drawing reaches, and the tiles of the other levels
+     * its bounds touch, as holding drawing that the tiles do not have yet, such as a
+     * shape to be drawn on demand. Missing tiles are created and existing ones are
+     * marked out of date, so each is drawn in full when first painted.
+     * @param theBounds Area of the canvas the drawing covers.
+     * @param theOutline Outline the drawing is drawn along or fills.
+     * @param theReach Farthest the drawing reaches past its outline, in pixels.
+     */
+    public void addArea(final Rectangle theBounds, final Shape theOutline,
+                        final int theReach) {
+        final int minCol = tileOf(theBounds.x, TILE_SIZE);
+        final int minRow = tileOf(theBounds.y, TILE_SIZE);
+        final int maxCol = tileOf(theBounds.x + theBounds.width - 1, TILE_SIZE);
+        final int maxRow = tileOf(theBounds.y + theBounds.height - 1, TILE_SIZE);
+        final boolean single = minCol == maxCol && minRow == maxRow;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                if (!single && !reaches(theOutline, theReach, col, row)) {
+                    continue;
+                }
+                final Long key = key(col, row);
+                final Tile tile = myBase.myTiles.get(key);
+                if (tile == null) {
+                    myBase.myTiles.put(key, new Tile());
+                } else {
+                    tile.myValid = false;
+                }
+            }
+        }
+        for (Level level : myLevels.values()) {
+            for (Map.Entry<Long, Tile> entry : level.tilesIn(theBounds)) {
+                entry.getValue().myValid = false;
+            }
+        }
+    }
+
+    /**
+     * Tells whether drawing along an outline can reach a tile of level 0. Paths that
+     * are not closed count as closed, so this can answer yes for a tile the drawing
+     * only surrounds, but never answers no for a tile it reaches.
+     * @param theOutline Outline the drawing is drawn along or fills.
+     * @param theReach Farthest the drawing reaches past its outline, in pixels.
+     * @param theCol Column of the tile.
+     * @param theRow Row of the tile.
+     * @return Whether the drawing can touch the tile.
+     */
+    private static boolean reaches(final Shape theOutline, final int theReach,
+                                   final int theCol, final int theRow) {
+        return theOutline.intersects(theCol * TILE_SIZE - theReach,
+                                     theRow * TILE_SIZE - theReach,
+                                     TILE_SIZE + 2 * theReach, TILE_SIZE + 2 * theReach);
+    }
+
+    /**
+     * Marks every area that holds drawing in another canvas as holding drawing that
+     * this canvas does not have yet, for a canvas built from the tiles of others.
+     * @param theCanvas Canvas whose tiles of level 0 are matched.
+     */
+    public void addTilesOf(final TiledCanvas theCanvas) {
+        for (Long key : theCanvas.myBase.myTiles.keySet()) {
+            final Tile tile = myBase.myTiles.get(key);
+            if (tile == null) {
+                myBase.myTiles.put(key, new Tile());
+            } else {
+                tile.myValid = false;
+            }
+        }
+        for (Level level : myLevels.values()) {
+            for (Tile tile : level.myTiles.values()) {
+                tile.myValid = false;
+            }
+        }
+    }
+
+    /**
+     * Marks every tile touching an area as out of date, so it is redrawn in full
+     * the next time it is painted.
+     * @param theArea Area of the canvas that changed.
+     */
+    public void invalidate(final Rectangle theArea) {
+        for (Map.Entry<Long, Tile> entry : myBase.tilesIn(theArea)) {
+            entry.getValue().myValid = false;
+        }
+        for (Level level : myLevels.values()) {
+            for (Map.Entry<Long, Tile> entry : level.tilesIn(theArea)) {
+                if (entry.getValue().myImage != null) {
+                    entry.getValue().myValid = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks every tile as out of date.
+     */
+    public void invalidateAll() {
+        for (Tile tile : myBase.myTiles.values()) {
+            tile.myValid = false;
+        }
+        for (Level level : myLevels.values()) {
+            for (Tile tile : level.myTiles.values()) {
+                if (tile.myImage != null) {
+                    tile.myValid = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every tile, for when the drawing has been emptied.
+     */
+    public void clear() {
+        myBase.myTiles.clear();
+        myLevels.clear();
+    }
+
+    /**
+     * Gets the area covered by the tiles of level 0, which holds every shape drawn on
+     * the canvas. Tiles are kept when the shapes on them are undone, so the area can be
+     * larger than the drawing is now.
+     * @return Area of the canvas covered by tiles, or an empty rectangle if there are none.
+     */
+    public Rectangle getBounds() {
+        if (myBase.myTiles.isEmpty()) {
+            return new Rectangle();
+        }
+        int minCol = Integer.MAX_VALUE;
+        int minRow = Integer.MAX_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        for (long key : myBase.myTiles.keySet()) {
+            final int col = (int) (key >> 32);
+            final int row = (int) key;
+            minCol = Math.min(minCol, col);
+            minRow = Math.min(minRow, row);
+            maxCol = Math.max(maxCol, col);
+            maxRow = Math.max(maxRow, row);
+        }
+        return new Rectangle(minCol * TILE_SIZE, minRow * TILE_SIZE,
+                             (maxCol - minCol + 1) * TILE_SIZE,
+                             (maxRow - minRow + 1) * TILE_SIZE);
+    }
+
+    /**
+     * Gets the number of tiles that have been created at level 0.
+     * @return Number of tiles in the canvas.
+     */
+    public int getTileCount() {
+        return myBase.myTiles.size();
+    }
+
+    /**
+     * Gets the number of tiles painted that were already up to date, at any level.
+     * @return Number of cache hits since the canvas was constructed.
+     */
+    public long getTileHits() {
+        return myTileHits;
+    }
+
+    /**
+     * Gets the number of tiles painted that had to be drawn first, at any level.
+     * @return Number of cache misses since the canvas was constructed.
+     */
+    public long getTileMisses() {
+        return myTileMisses;
+    }
+
+    /**
+     * Gets the memory used by the images of the tiles at every level.
+     * @return Number of bytes used by tile images.
+     */
+    public long getImageByteSize() {
+        long images = countImages(myBase);
+        for (Level level : myLevels.values()) {
+            images += countImages(level);
+        }
+        return images * TILE_SIZE * TILE_SIZE * 4;
+    }
+
+    /**
+     * Counts the tiles of a level that have images.
+     * @param theLevel Level to count.
+     * @return Number of images.
+     */
+    private static int countImages(final Level theLevel) {
+        int images = 0;
+        for (Tile tile : theLevel.myTiles.values()) {
+            if (tile.myImage != null) {
+                images++;
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Gets the memory a snapshot taken now would use, so it can be checked against a
+     * budget before anything is copied.
+     * @return Number of bytes a snapshot would use.
+     */
+    public long getSnapshotByteSize() {
+        long images = 0;
+        for (Tile tile : myBase.myTiles.values()) {
+            if (tile.myValid && tile.myImage != null) {
+                images++;
+            }
+        }
+        return images * TILE_SIZE * TILE_SIZE * 4;
+    }
+
+    /**
+     * Copies every tile of level 0, so the canvas can later be put back the way it is now.
+     * @return Copy of the tiles.
+     */
+    public Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot();
+        for (Map.Entry<Long, Tile> entry : myBase.myTiles.entrySet()) {
+            final Tile tile = entry.getValue();
+            if (!tile.myValid) {
+                snapshot.put(entry.getKey(), null);
+            } else if (tile.myImage == null) {
+                snapshot.put(entry.getKey(), EMPTY);
+            } else {
+                snapshot.put(entry.getKey(), copy(tile.myImage));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Moves every tile of level 0 into a snapshot without copying them, leaving the
+     * canvas empty, for when the drawing is cleared but may be brought back.
+     * @return Snapshot holding the tiles.
+     */
+    public Snapshot detach() {
+        final Snapshot snapshot = new Snapshot();
+        for (Map.Entry<Long, Tile> entry : myBase.myTiles.entrySet()) {
+            final Tile tile = entry.getValue();
+            if (tile.myValid && tile.myImage == null) {
+                snapshot.put(entry.getKey(), EMPTY);
+            } else {
+                snapshot.put(entry.getKey(), tile.myValid ? tile.myImage : null);
+            }
+        }
+        clear();
+        return snapshot;
+    }
+
+    /**
+     * Replaces every tile with a copy of those in a snapshot. Tiles that were out of
+     * date when the snapshot was taken are out of date again. Tiles of the other
+     * levels are dropped, to be drawn again when next painted.
+     * @param theSnapshot Snapshot to restore, which is left unchanged.
+     */
+    public void restore(final Snapshot theSnapshot) {
+        clear();
+        for (Map.Entry<Long, BufferedImage> entry : theSnapshot.myImages.entrySet()) {
+            final Tile tile = new Tile();
+            if (entry.getValue() != null) {
+                tile.myImage = entry.getValue() == EMPTY ? null : copy(entry.getValue());
+                tile.myValid = true;
+            }
+            myBase.myTiles.put(entry.getKey(), tile);
+        }
+    }
+
+    /**
+     * Puts the tiles of level 0 touching an area back the way they were in a snapshot,
+     * for undoing a change to the area without redrawing it from the shapes. Tiles the
+     * snapshot has no image of are left as they are, and the other levels are left alone.
+     * @param theSnapshot Snapshot to restore from, which is left unchanged.
+     * @param theArea Area of the canvas whose tiles are all out of date.
+     * @return Whether any tile was restored.
+     */
+    public boolean restore(final Snapshot theSnapshot, final Rectangle theArea) {
+        boolean restored = false;
+        for (Map.Entry<Long, Tile> entry : myBase.tilesIn(theArea)) {
+            final BufferedImage image = theSnapshot.myImages.get(entry.getKey());
+            if (image != null) {
+                entry.getValue().myImage = image == EMPTY ? null : copy(image);
+                entry.getValue().myValid = true;
+                restored = true;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Draws something again onto the up to date tiles of level 0 touching an area, for
+     * tiles restored from a snapshot taken before it was first drawn. Tiles outside the
+     * area and the other levels still have it, so they are left alone.
+     * @param theBounds Area of the canvas the drawing covers.
+     * @param theArea Area of the canvas whose tiles were restored.
+     * @param theRenderer Draws only the drawing being replayed.
+     */
+    public void replay(final Rectangle theBounds, final Rectangle theArea,
+                       final TileRenderer theRenderer) {
+        for (Map.Entry<Long, Tile> entry : myBase.tilesIn(theArea)) {
+            final long key = entry.getKey();
+            final int col = (int) (key >> 32);
+            final int row = (int) key;
+            if (entry.getValue().myValid
+                            && myBase.tileArea(col, row).intersects(theBounds)) {
+                myBase.drawOnto(entry.getValue(), col, row, theBounds, theRenderer);
+            }
+        }
+    }
+
+    /**
+     * Gets the tiles of a zoom level, creating the level if it is not cached and
+     * dropping the level painted longest ago if too many are.
+     * @param theLevel Zoom level.
+     * @return Tiles of the level.
+     */
+    private Level level(final int theLevel) {
+        if (theLevel < MIN_LEVEL || theLevel > MAX_LEVEL) {
+            throw new IllegalArgumentException("No zoom level " + theLevel);
+        }
+        if (theLevel == 0) {
+            return myBase;
+        }
+        Level level = myLevels.get(theLevel);
+        if (level == null) {
+            if (myLevels.size() == CACHED_LEVELS) {
+                Level oldest = null;
+                for (Level cached : myLevels.values()) {
+                    if (oldest == null || cached.myLastUsed < oldest.myLastUsed) {
+                        oldest = cached;
+                    }
+                }
+                myLevels.remove(oldest.myLevel);
+            }
+            level = new Level(theLevel);
+            myLevels.put(theLevel, level);
+        }
+        return level;
+    }
+
+    /**
+     * Redraws a tile in full, creating or clearing its image first, and drops the
+     * image if nothing was drawn on it.
+     * @param theLevel Level the tile belongs to.
+     * @param theTile Tile to redraw, with its column and row set.
+     */
+    private void redraw(final Level theLevel, final Tile theTile) {
+        if (theTile.myImage == null) {
+            theTile.myImage = createImage();
+        }
+        final Graphics2D g2d = theTile.myImage.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        final Rectangle area = theLevel.tileArea(theTile.myCol, theTile.myRow);
+        theLevel.toTile(g2d, area);
+        g2d.clip(area);
+        myRenderer.render(g2d, area);
+        g2d.dispose();
+        if (isEmpty(theTile.myImage)) {
+            theTile.myImage = null;
+        }
+        theTile.myValid = true;
+    }
+
+    /**
+     * Creates a clear image for a tile.
+     * @return New image the size of a tile.
+     */
+    private static BufferedImage createImage() {
+        return new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    /**
+     * Tells whether every pixel of the image of a tile is clear. The pixels are read
+     * a row at a time through the raster, which leaves the image able to be cached
+     * by the graphics pipeline.
+     * @param theImage Image of a tile.
+     * @return Whether nothing is drawn on the image.
+     */
+    private static boolean isEmpty(final BufferedImage theImage) {
+        final Raster raster = theImage.getRaster();
+        final int[] pixels = new int[TILE_SIZE];
+        for (int y = 0; y < TILE_SIZE; y++) {
+            raster.getDataElements(0, y, TILE_SIZE, 1, pixels);
+            for (int pixel : pixels) {
+                if (pixel != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the image of a tile.
+     * @param theImage Image to copy.
+     * @return New image with the same pixels.
+     */
+    private static BufferedImage copy(final BufferedImage theImage) {
+        final BufferedImage copy = createImage();
+        final Graphics2D g2d = copy.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(theImage, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+
+    /**
+     * Gets the column or row of the tile holding a coordinate.
+     * @param theCoordinate X or Y coordinate.
+     * @param theSpan Width of each tile in the same coordinates.
+     * @return Column or row of the tile, rounding down for negative coordinates.
+     */
+    private static int tileOf(final int theCoordinate, final int theSpan) {
+        if (theCoordinate >= 0) {
+            return theCoordinate / theSpan;
+        }
+        return -((-theCoordinate - 1) / theSpan) - 1;
+    }
+
+    /**
+     * Packs the column and row of a tile into a single map key.
+     * @param theCol Column of the tile.
+     * @param theRow Row of the tile.
+     * @return Key of the tile in the map of tiles.
+     */
+    private static Long key(final int theCol, final int theRow) {
+        return ((long) theCol << 32) | (theRow & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Saved images of the tiles of a canvas at some point in time.
+     */
+    public static final class Snapshot {
+
+        /** Image of each tile, EMPTY for empty tiles, or null for out of date tiles. */
+        private final Map<Long, BufferedImage> myImages;
+
+        /** Number of bytes used by the images. */
+        private long myByteSize;
+
+        /**
+         * Constructs an empty snapshot.
+         */
+        private Snapshot() {
+            myImages = new HashMap<Long, BufferedImage>();
+        }
+
+        /**
+         * Adds the image of a tile.
+         * @param theKey Packed column and row of the tile.
+         * @param theImage Image of the tile, EMPTY if it had nothing on it, or null if
+         *        it was out of date.
+         */
+        private void put(final Long theKey, final BufferedImage theImage) {
+            myImages.put(theKey, theImage);
+            if (theImage != null && theImage != EMPTY) {
+                myByteSize += (long) TILE_SIZE * TILE_SIZE * 4;
+            }
+        }
+
+        /**
+         * Gets the memory used by the saved images.
+         * @return Number of bytes used by the snapshot.
+         */
+        public long getByteSize() {
+            return myByteSize;
+        }
+    }
+
+    /**
+     * One square of the canvas and its cached image. A tile that is up to date without
+     * an image is known to be empty.
+     */
+    private static final class Tile {
+
+        /** Image holding everything drawn on the tile, or null if it is empty or not drawn. */
+        private BufferedImage myImage;
+
+        /** Whether the image is up to date with the drawing. */
+        private boolean myValid;
+
+        /** Column of the tile, set when it is queued to be redrawn. */
+        private int myCol;
+
+        /** Row of the tile, set when it is queued to be redrawn. */
+        private int myRow;
+
+        /** Paint the tile was last painted in. */
+        private long myLastUsed;
+    }
+
+    /**
+     * Tiles of the canvas at one zoom level.
+     */
+    private final class Level {
+
+        /** Zoom level of the tiles. */
+        private final int myLevel;
+
+        /** Width and height of the area of the canvas each tile covers. */
+        private final int mySpan;
+
+        /** Tiles that have been created, keyed by their packed column and row. */
+        private final Map<Long, Tile> myTiles;
+
+        /** Paint the level was last painted in. */
+        private long myLastUsed;
+
+        /**
+         * Constructs a level with no tiles.
+         * @param theLevel Zoom level of the tiles.
+         */
+        private Level(final int theLevel) {
+            myLevel = theLevel;
+            if (theLevel >= 0) {
+                mySpan = TILE_SIZE >> theLevel;
+            } else {
+                mySpan = TILE_SIZE << -theLevel;
+            }
+            myTiles = new HashMap<Long, Tile>();
+        }
+
+        /**
+         * Gets the area of the canvas a tile covers.
+         * @param theCol Column of the tile.
+         * @param theRow Row of the tile.
+         * @return Area of the canvas covered by the tile.
+         */
+        private Rectangle tileArea(final int theCol, final int theRow) {
+            return new Rectangle(theCol * mySpan, theRow * mySpan, mySpan, mySpan);
+        }
+
+        /**
+         * Sets up graphics drawing onto the image of a tile to use canvas coordinates.
+         * @param theGraphics Graphics of the tile image.
+         * @param theArea Area of the canvas the tile covers.
+         */
+        private void toTile(final Graphics2D theGraphics, final Rectangle theArea) {
+            if (myLevel != 0) {
+                theGraphics.scale(getScale(myLevel), getScale(myLevel));
+            }
+            theGraphics.translate(-theArea.x, -theArea.y);
+        }
+
+        /**
+         * Creates a tile that has not been painted before, which is out of date if
+         * level 0 has a tile beneath it and is otherwise known to be empty.
+         * @param theCol Column of the tile.
+         * @param theRow Row of the tile.
+         * @return The new tile.
+         */
+        private Tile createTile(final int theCol, final int theRow) {
+            final Rectangle area = tileArea(theCol, theRow);
+            final int minCol = tileOf(area.x, TILE_SIZE);
+            final int minRow = tileOf(area.y, TILE_SIZE);
+            final int maxCol = tileOf(area.x + area.width - 1, TILE_SIZE);
+            final int maxRow = tileOf(area.y + area.height - 1, TILE_SIZE);
+            final Tile tile = new Tile();
+            tile.myValid = true;
+            for (int row = minRow; row <= maxRow && tile.myValid; row++) {
+                for (int col = minCol; col <= maxCol && tile.myValid; col++) {
+                    tile.myValid = !myBase.myTiles.containsKey(key(col, row));
+                }
+            }
+            myTiles.put(key(theCol, theRow), tile);
+            return tile;
+        }
+
+        /**
+         * Draws something new onto the image of an up to date tile, creating the image
+         * if the tile was empty.
+         * @param theTile Tile to draw onto.
+         * @param theCol Column of the tile.
+         * @param theRow Row of the tile.
+         * @param theBounds Area of the canvas the new drawing covers.
+         * @param theRenderer Draws only the new drawing.
+         */
+        private void drawOnto(final Tile theTile, final int theCol, final int theRow,
+                              final Rectangle theBounds, final TileRenderer theRenderer) {
+            if (theTile.myImage == null) {
+                theTile.myImage = createImage();
+            }
+            final Graphics2D g2d = theTile.myImage.createGraphics();
+            final Rectangle tileArea = tileArea(theCol, theRow);
+            final Rectangle area = tileArea.intersection(theBounds);
+            toTile(g2d, tileArea);
+            g2d.clip(area);
+            theRenderer.render(g2d, area);
+            g2d.dispose();
+        }
+
+        /**
+         * Gets every tile of the level touching an area of the canvas, checking either
+         * each tile position in the area or each tile, whichever is fewer.
+         * @param theArea Area of the canvas.
+         * @return Entries of the tiles touching the area.
+         */
+        private List<Map.Entry<Long, Tile>> tilesIn(final Rectangle theArea) {
+            final List<Map.Entry<Long, Tile>> tiles = new ArrayList<Map.Entry<Long, Tile>>();
+            final int minCol = tileOf(theArea.x, mySpan);
+            final int minRow = tileOf(theArea.y, mySpan);
+            final int maxCol = tileOf(theArea.x + theArea.width - 1, mySpan);
+            final int maxRow = tileOf(theArea.y + theArea.height - 1, mySpan);
+            if ((maxCol - minCol + 1L) * (maxRow - minRow + 1L) > myTiles.size()) {
+                for (Map.Entry<Long, Tile> entry : myTiles.entrySet()) {
+                    final long key = entry.getKey();
+                    final int col = (int) (key >> 32);
+                    final int row = (int) key;
+                    if (col >= minCol && col <= maxCol && row >= minRow && row <= maxRow) {
+                        tiles.add(entry);
+                    }
+                }
+                return tiles;
+            }
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    final Long key = key(col, row);
+                    final Tile tile = myTiles.get(key);
+                    if (tile != null) {
+                        tiles.add(new AbstractMap.SimpleImmutableEntry<Long, Tile>(key, tile));
+                    }
+                }
+            }
+            return tiles;
+        }
+
+        /**
+         * Drops the tiles painted longest ago once there are too many, keeping those
+         * painted in the latest paint. They are drawn again if painted later.
+         */
+        private void trim() {
+            if (myTiles.size() <= CACHED_TILES) {
+                return;
+            }
+            final List<Map.Entry<Long, Tile>> entries =
+                            new ArrayList<Map.Entry<Long, Tile>>(myTiles.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<Long, Tile>>() {
+                @Override
+                public int compare(final Map.Entry<Long, Tile> theFirst,
+                                   final Map.Entry<Long, Tile> theSecond) {
+                    return Long.compare(theFirst.getValue().myLastUsed,
+                                        theSecond.getValue().myLastUsed);
+                }
+            });
+            final Iterator<Map.Entry<Long, Tile>> it = entries.iterator();
+            while (myTiles.size() > CACHED_TILES * 3 / 4 && it.hasNext()) {
+                final Map.Entry<Long, Tile> entry = it.next();
+                if (entry.getValue().myLastUsed == myPaintCount) {
+                    break;
+                }
+                myTiles.remove(entry.getKey());
+            }
+        }
+
+        /**
+         * Drops the images of the tiles painted longest ago once too many tiles have
+         * one, keeping those painted in the latest paint. The tiles themselves are kept,
+         * out of date, so they still mark the area as drawn on and are redrawn from
+         * the drawing if painted later.
+         */
+        private void dropImages() {
+            final List<Tile> drawn = new ArrayList<Tile>();
+            for (Tile tile : myTiles.values()) {
+                if (tile.myImage != null) {
+                    drawn.add(tile);
+                }
+            }
+            if (drawn.size() <= CACHED_IMAGES) {
+                return;
+            }
+            Collections.sort(drawn, new Comparator<Tile>() {
+                @Override
+                public int compare(final Tile theFirst, final Tile theSecond) {
+                    return Long.compare(theFirst.myLastUsed, theSecond.myLastUsed);
+                }
+            });
+            int images = drawn.size();
+            for (Tile tile : drawn) {
+                if (images <= CACHED_IMAGES * 3 / 4 || tile.myLastUsed == myPaintCount) {
+                    break;
+                }
+                tile.myImage = null;
+                tile.myValid = false;
+                images--;
+            }
+        }
+    }
+
+    /**
+     * Redraws a range of out of date tiles, splitting the range in half
+     * until each task redraws a single tile.
+     */
+    private final class RedrawTask extends RecursiveAction {
+
+        /** Auto-generated ID for serialization purposes.*/
+        private static final long serialVersionUID = 6158265283542406871L;
+
+        /** Level the tiles belong to. */
+        private final Level myLevel;
+
+        /** Tiles to redraw. */
+        private final List<Tile> myStale;
+
+        /** Index of the first tile in the range. */
+        private final int myStart;
+
+        /** Index just past the last tile in the range. */
+        private final int myEnd;
+
+        /**
+         * Constructs a task for a range of tiles.
+         * @param theLevel Level the tiles belong to.
+         * @param theStale Tiles to redraw.
+         * @param theStart Index of the first tile in the range.
+         * @param theEnd Index just past the last tile in the range.
+         */
+        private RedrawTask(final Level theLevel, final List<Tile> theStale,
+                           final int theStart, final int theEnd) {
+            super();
+            myLevel = theLevel;
+            myStale = theStale;
+            myStart = theStart;
+            myEnd = theEnd;
+        }
+
+        /**
+         * Redraws the tile, or splits the range between two new tasks.
+         */
+        @Override
+        protected void compute() {
+            if (myEnd - myStart == 1) {
+                redraw(myLevel, myStale.get(myStart));
+                return;
+            }
+            final int middle = (myStart + myEnd) >>> 1;
+            invokeAll(new RedrawTask(myLevel, myStale, myStart, middle),
+                      new RedrawTask(myLevel, myStale, middle, myEnd));
+        }
+    }
+}
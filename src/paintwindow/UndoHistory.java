@@ -0,0 +1,401 @@
+package paintwindow;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Log of the commands applied to a drawing, with a position that moves back and
+ * forth as commands are undone and redone. Recording a new command drops every
+ * command that was undone.
+ * <p>
+ * Undoing a command marks the tiles it touched out of date, and redrawing those from
+ * the shapes means drawing every shape beneath them, which deep into a long history
+ * is most of the drawing. The history keeps raster checkpoints of the tiles instead:
+ * one taken by each command that changes the whole drawing, such as a clear, plus one
+ * every few commands. Undoing a command that added shapes restores just the tiles it
+ * touched from the nearest checkpoint at or before the new position and replays onto
+ * them only the shapes added since. Undoing a clear restores every tile the same way.
+ * Periodic checkpoints are skipped when the tiles would not fit in the memory budget,
+ * and checkpoints are dropped, oldest first, to stay within it. The spacing between them
+ * can be tuned against that budget.
+ * Each layer of the drawing has tiles of its own, so every checkpoint is of the tiles
+ * of one command, and only commands on the same tiles are replayed onto it.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class UndoHistory {
+
+    /** Default number of bytes the checkpoints may use. */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    /** Default number of commands between periodic checkpoints. */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+
+    /** Every command in the history, oldest first. */
+    private final List<DrawCommand> myCommands;
+
+    /** Checkpoints of the tiles, in order of position. */
+    private final List<Checkpoint> myCheckpoints;
+
+    /** Objects to notify whenever the history changes. */
+    private final List<ChangeListener> myListeners;
+
+    /** Number of commands currently applied. Commands past it have been undone. */
+    private int myPosition;
+
+    /** Number of bytes the checkpoints may use. */
+    private long myMemoryBudget;
+
+    /** Number of commands between periodic checkpoints. */
+    private int myCheckpointInterval;
+
+    /** Number of bytes the checkpoints use. */
+    private long myCheckpointBytes;
+
+    /** Commands recorded since the last periodic checkpoint. */
+    private int mySinceCheckpoint;
+
+    /**
+     * Constructs an empty history with the default budget and spacing.
+     */
+    public UndoHistory() {
+        myCommands = new ArrayList<DrawCommand>();
+        myCheckpoints = new ArrayList<Checkpoint>();
+        myListeners = new ArrayList<ChangeListener>();
+        myMemoryBudget = DEFAULT_MEMORY_BUDGET;
+        myCheckpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    }
+
+    /**
+     * Records a command that has just been applied. Every few commands the tiles the
+     * command changed are saved as a periodic checkpoint, unless they would use more
+     * than the whole memory budget.
+     * @param theCommand Command to record.
+     */
+    public void push(final DrawCommand theCommand) {
+        dropRedo();
+        myCommands.add(theCommand);
+        myPosition++;
+        mySinceCheckpoint++;
+        final TiledCanvas canvas = theCommand.getCanvas();
+        if (mySinceCheckpoint >= myCheckpointInterval && canvas != null) {
+            if (canvas.getSnapshotByteSize() <= myMemoryBudget) {
+                addCheckpoint(myPosition, canvas, canvas.snapshot());
+            }
+            mySinceCheckpoint = 0;
+        }
+        fireChanged();
+    }
+
+    /**
+     * Records a command that has just been applied, along with the tiles as they were
+     * before it, which become the checkpoint used to undo it.
+     * @param theCommand Command to record, which must change tiles.
+     * @param theBefore Tiles the command changed, as they were before it was applied.
+     */
+    public void push(final DrawCommand theCommand, final TiledCanvas.Snapshot theBefore) {
+        dropRedo();
+        addCheckpoint(myPosition, theCommand.getCanvas(), theBefore);
+        push(theCommand);
+    }
+
+    /**
+     * Gets whether there is a command to undo.
+     * @return Whether undo can be called.
+     */
+    public boolean canUndo() {
+        return myPosition > 0;
+    }
+
+    /**
+     * Gets whether there is an undone command to redo.
+     * @return Whether redo can be called.
+     */
+    public boolean canRedo() {
+        return myPosition < myCommands.size();
+    }
+
+    /**
+     * Undoes the most recently applied command.
+     */
+    public void undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        final DrawCommand command = myCommands.get(--myPosition);
+        command.undo();
+        if (command.getCanvas() != null) {
+            restoreCheckpoint(command);
+        }
+        fireChanged();
+    }
+
+    /**
+     * Redoes the most recently undone command.
+     */
+    public void redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        myCommands.get(myPosition++).redo();
+        fireChanged();
+    }
+
+    /**
+     * Drops every command and checkpoint, as when a different drawing is opened.
+     */
+    public void reset() {
+        for (DrawCommand command : myCommands) {
+            command.discard();
+        }
+        myCommands.clear();
+        myCheckpoints.clear();
+        myCheckpointBytes = 0;
+        myPosition = 0;
+        mySinceCheckpoint = 0;
+        fireChanged();
+    }
+
+    /**
+     * Gets the number of commands in the history, including undone ones.
+     * @return Number of commands.
+     */
+    public int size() {
+        return myCommands.size();
+    }
+
+    /**
+     * Gets the number of commands currently applied.
+     * @return Position in the history.
+     */
+    public int getPosition() {
+        return myPosition;
+    }
+
+    /**
+     * Gets the number of bytes the checkpoints may use.
+     * @return Memory budget of the checkpoints.
+     */
+    public long getMemoryBudget() {
+        return myMemoryBudget;
+    }
+
+    /**
+     * Sets the number of bytes the checkpoints may use, dropping the oldest
+     * checkpoints if they already use more.
+     * @param theBytes Memory budget of the checkpoints.
+     */
+    public void setMemoryBudget(final long theBytes) {
+        if (theBytes < 0) {
+            throw new IllegalArgumentException("Budget must not be negative: " + theBytes);
+        }
+        myMemoryBudget = theBytes;
+        trimCheckpoints();
+    }
+
+    /**
+     * Gets the number of commands between periodic checkpoints.
+     * @return Spacing of the checkpoints.
+     */
+    public int getCheckpointInterval() {
+        return myCheckpointInterval;
+    }
+
+    /**
+     * Sets the number of commands between periodic checkpoints. Closer checkpoints
+     * mean less to replay when undoing, but more of the budget used by each one.
+     * @param theInterval Spacing of the checkpoints.
+     */
+    public void setCheckpointInterval(final int theInterval) {
+        if (theInterval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + theInterval);
+        }
+        myCheckpointInterval = theInterval;
+    }
+
+    /**
+     * Drops the checkpoints of some tiles, for when they were drawn on outside the
+     * history, so replaying the commands onto a checkpoint would leave that drawing out.
+     * @param theCanvas Tiles that were drawn on.
+     */
+    public void dropCheckpoints(final TiledCanvas theCanvas) {
+        final Iterator<Checkpoint> it = myCheckpoints.iterator();
+        while (it.hasNext()) {
+            final Checkpoint checkpoint = it.next();
+            if (checkpoint.myCanvas == theCanvas) {
+                myCheckpointBytes -= checkpoint.mySnapshot.getByteSize();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes the checkpoints use.
+     * @return Memory used by the checkpoints.
+     */
+    public long getCheckpointBytes() {
+        return myCheckpointBytes;
+    }
+
+    /**
+     * Adds an object to be notified whenever a command is recorded, undone or redone.
+     * @param theListener Listener to add.
+     */
+    public void addChangeListener(final ChangeListener theListener) {
+        myListeners.add(theListener);
+    }
+
+    /**
+     * Removes an object from those notified of changes.
+     * @param theListener Listener to remove.
+     */
+    public void removeChangeListener(final ChangeListener theListener) {
+        myListeners.remove(theListener);
+    }
+
+    /**
+     * Restores the tiles a command that was just undone marked out of date from the
+     * nearest checkpoint of them, then replays the commands on them after it. A command
+     * that added shapes only has the tiles under those shapes restored, while any other
+     * command has every tile restored. Does nothing if there is no checkpoint to use.
+     * @param theCommand Command that was undone.
+     */
+    private void restoreCheckpoint(final DrawCommand theCommand) {
+        final TiledCanvas canvas = theCommand.getCanvas();
+        final Checkpoint checkpoint = findCheckpoint(canvas);
+        if (checkpoint == null) {
+            return;
+        }
+        if (theCommand instanceof AppendCommand) {
+            final Rectangle area = ((AppendCommand) theCommand).getBounds();
+            if (canvas.restore(checkpoint.mySnapshot, area)) {
+                replay(checkpoint, area);
+            }
+        } else {
+            canvas.restore(checkpoint.mySnapshot);
+            replay(checkpoint, canvas.getBounds());
+        }
+    }
+
+    /**
+     * Finds the nearest checkpoint of some tiles at or before the current position that
+     * the commands since can be replayed onto. There is none if the nearest is too far
+     * back, or a command on the tiles in between changes more than adding shapes, in
+     * which case the tiles the undone command marked out of date are redrawn from the
+     * shapes.
+     * @param theCanvas Tiles to restore.
+     * @return Checkpoint to restore, or null if there is none.
+     */
+    private Checkpoint findCheckpoint(final TiledCanvas theCanvas) {
+        for (int i = myCheckpoints.size() - 1; i >= 0; i--) {
+            final Checkpoint checkpoint = myCheckpoints.get(i);
+            if (checkpoint.myPosition > myPosition || checkpoint.myCanvas != theCanvas) {
+                continue;
+            }
+            if (myPosition - checkpoint.myPosition > myCheckpointInterval) {
+                return null;
+            }
+            for (int k = checkpoint.myPosition; k < myPosition; k++) {
+                final DrawCommand command = myCommands.get(k);
+                if (command.getCanvas() == theCanvas && !(command instanceof AppendCommand)) {
+                    return null;
+                }
+            }
+            return checkpoint;
+        }
+        return null;
+    }
+
+    /**
+     * Replays the commands applied since a checkpoint onto the tiles restored from it.
+     * @param theCheckpoint Checkpoint the tiles were restored from.
+     * @param theArea Area of the canvas whose tiles were restored.
+     */
+    private void replay(final Checkpoint theCheckpoint, final Rectangle theArea) {
+        for (int k = theCheckpoint.myPosition; k < myPosition; k++) {
+            final DrawCommand command = myCommands.get(k);
+            if (command.getCanvas() == theCheckpoint.myCanvas) {
+                ((AppendCommand) command).replay(theArea);
+            }
+        }
+    }
+
+    /**
+     * Drops every undone command and the checkpoints after the current position.
+     */
+    private void dropRedo() {
+        while (myCommands.size() > myPosition) {
+            myCommands.remove(myCommands.size() - 1).discard();
+        }
+        while (!myCheckpoints.isEmpty()
+                        && myCheckpoints.get(myCheckpoints.size() - 1).myPosition > myPosition) {
+            myCheckpointBytes -= myCheckpoints.remove(myCheckpoints.size() - 1)
+                            .mySnapshot.getByteSize();
+        }
+    }
+
+    /**
+     * Adds a checkpoint after those already taken, then trims to the budget.
+     * @param thePosition Position in the history the tiles belong to.
+     * @param theCanvas Tiles the checkpoint is of.
+     * @param theSnapshot Tiles at that position.
+     */
+    private void addCheckpoint(final int thePosition, final TiledCanvas theCanvas,
+                               final TiledCanvas.Snapshot theSnapshot) {
+        myCheckpoints.add(new Checkpoint(thePosition, theCanvas, theSnapshot));
+        myCheckpointBytes += theSnapshot.getByteSize();
+        trimCheckpoints();
+    }
+
+    /**
+     * Drops the oldest checkpoints until the rest fit in the budget.
+     */
+    private void trimCheckpoints() {
+        while (myCheckpointBytes > myMemoryBudget && !myCheckpoints.isEmpty()) {
+            myCheckpointBytes -= myCheckpoints.remove(0).mySnapshot.getByteSize();
+        }
+    }
+
+    /**
+     * Notifies every listener that the history has changed.
+     */
+    private void fireChanged() {
+        final ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : myListeners) {
+            listener.stateChanged(event);
+        }
+    }
+
+    /**
+     * Tiles of the drawing saved at a position in the history.
+     */
+    private static final class Checkpoint {
+
+        /** Number of commands applied when the tiles were saved. */
+        private final int myPosition;
+
+        /** Tiles that were saved. */
+        private final TiledCanvas myCanvas;
+
+        /** Saved tiles. */
+        private final TiledCanvas.Snapshot mySnapshot;
+
+        /**
+         * Constructs a checkpoint.
+         * @param thePosition Number of commands applied when the tiles were saved.
+         * @param theCanvas Tiles that were saved.
+         * @param theSnapshot Saved tiles.
+         */
+        private Checkpoint(final int thePosition, final TiledCanvas theCanvas,
+                           final TiledCanvas.Snapshot theSnapshot) {
+            myPosition = thePosition;
+            myCanvas = theCanvas;
+            mySnapshot = theSnapshot;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package paintwindow;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Zoom and pan of a DrawPanel, which maps the canvas coordinates shapes are stored in
+ * to the coordinates of the panel on screen. The zoom moves in steps of a quarter of a
+ * power of two, so every fourth step lands exactly on a zoom level whose tiles the
+ * TiledCanvas caches, and the steps in between scale the tiles of the next level up.
+ * The pan is kept in whole pixels so tiles at an exact level are copied without blurring.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class Viewport {
+
+    /** Number of zoom steps between one zoom level and the next. */
+    public static final int STEPS_PER_LEVEL = 4;
+
+    /** Most zoomed out step. */
+    public static final int MIN_STEP = TiledCanvas.MIN_LEVEL * STEPS_PER_LEVEL;
+
+    /** Most zoomed in step. */
+    public static final int MAX_STEP = TiledCanvas.MAX_LEVEL * STEPS_PER_LEVEL;
+
+    /** Current zoom step, where 0 shows the canvas at its own size. */
+    private int myStep;
+
+    /** X coordinate on the panel that the origin of the canvas is shown at. */
+    private int myOffsetX;
+
+    /** Y coordinate on the panel that the origin of the canvas is shown at. */
+    private int myOffsetY;
+
+    /**
+     * Gets the zoom step.
+     * @return Current zoom step, from MIN_STEP to MAX_STEP.
+     */
+    public int getStep() {
+        return myStep;
+    }
+
+    /**
+     * Gets the zoom.
+     * @return Number of panel pixels per canvas pixel.
+     */
+    public double getZoom() {
+        return Math.pow(2, (double) myStep / STEPS_PER_LEVEL);
+    }
+
+    /**
+     * Gets the zoom level whose tiles are shown, which is the closest level at or
+     * above the zoom so tiles are only ever scaled down.
+     * @return Zoom level of the tiles to paint.
+     */
+    public int getLevel() {
+        return (int) Math.ceil((double) myStep / STEPS_PER_LEVEL);
+    }
+
+    /**
+     * Gets the scale the tiles of the current level are painted at.
+     * @return Number of panel pixels per pixel of the level, at most 1.
+     */
+    public double getLevelScale() {
+        return Math.pow(2, (double) (myStep - getLevel() * STEPS_PER_LEVEL) / STEPS_PER_LEVEL);
+    }
+
+    /**
+     * Gets the X coordinate on the panel that the origin of the canvas is shown at.
+     * @return X offset of the canvas.
+     */
+    public int getOffsetX() {
+        return myOffsetX;
+    }
+
+    /**
+     * Gets the Y coordinate on the panel that the origin of the canvas is shown at.
+     * @return Y offset of the canvas.
+     */
+    public int getOffsetY() {
+        return myOffsetY;
+    }
+
+    /**
+     * Gets the transform from canvas coordinates to panel coordinates.
+     * @return New transform for the current zoom and pan.
+     */
+    public AffineTransform getTransform() {
+        final double zoom = getZoom();
+        return new AffineTransform(zoom, 0, 0, zoom, myOffsetX, myOffsetY);
+    }
+
+    /**
+     * Converts an X coordinate on the panel to the canvas pixel it shows.
+     * @param theX X coordinate on the panel.
+     * @return X coordinate on the canvas.
+     */
+    public int toCanvasX(final int theX) {
+        return (int) Math.floor((theX - myOffsetX) / getZoom());
+    }
+
+    /**
+     * Converts a Y coordinate on the panel to the canvas pixel it shows.
+     * @param theY Y coordinate on the panel.
+     * @return Y coordinate on the canvas.
+     */
+    public int toCanvasY(final int theY) {
+        return (int) Math.floor((theY - myOffsetY) / getZoom());
+    }
+
+    /**
+     * Converts an area of the canvas to the area of the panel it is shown in,
+     * grown by a pixel for strokes that are rounded outward.
+     * @param theArea Area of the canvas.
+     * @return Area of the panel covering it.
+     */
+    public Rectangle toPanel(final Rectangle theArea) {
+        final double zoom = getZoom();
+        final int minX = (int) Math.floor(theArea.x * zoom) + myOffsetX - 1;
+        final int minY = (int) Math.floor(theArea.y * zoom) + myOffsetY - 1;
+        final int maxX = (int) Math.ceil((theArea.x + theArea.width) * zoom) + myOffsetX + 1;
+        final int maxY = (int) Math.ceil((theArea.y + theArea.height) * zoom) + myOffsetY + 1;
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Converts an area of the panel to the pixels of the current zoom level it shows.
+     * @param theArea Area of the panel.
+     * @return Area in the pixels of the level covering it.
+     */
+    public Rectangle toLevel(final Rectangle theArea) {
+        final double scale = getLevelScale();
+        final int minX = (int) Math.floor((theArea.x - myOffsetX) / scale);
+        final int minY = (int) Math.floor((theArea.y - myOffsetY) / scale);
+        final int maxX = (int) Math.ceil((theArea.x + theArea.width - myOffsetX) / scale);
+        final int maxY = (int) Math.ceil((theArea.y + theArea.height - myOffsetY) / scale);
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Zooms in or out by a number of steps, keeping the canvas pixel under a point
+     * of the panel where it is, as when zooming toward the mouse.
+     * @param theSteps Number of steps to zoom in by, or out by if negative.
+     * @param theX X coordinate on the panel to zoom around.
+     * @param theY Y coordinate on the panel to zoom around.
+     * @return Whether the zoom changed, which it does not past either end.
+     */
+    public boolean zoom(final int theSteps, final int theX, final int theY) {
+        final int step = Math.max(MIN_STEP, Math.min(MAX_STEP, myStep + theSteps));
+        if (step == myStep) {
+            return false;
+        }
+        final double canvasX = (theX - myOffsetX) / getZoom();
+        final double canvasY = (theY - myOffsetY) / getZoom();
+        myStep = step;
+        myOffsetX = (int) Math.round(theX - canvasX * getZoom());
+        myOffsetY = (int) Math.round(theY - canvasY * getZoom());
+        return true;
+    }
+
+    /**
+     * Moves the canvas across the panel.
+     * @param theDeltaX Number of panel pixels to move right by.
+     * @param theDeltaY Number of panel pixels to move down by.
+     */
+    public void pan(final int theDeltaX, final int theDeltaY) {
+        myOffsetX += theDeltaX;
+        myOffsetY += theDeltaY;
+    }
+
+    /**
+     * Sets the zoom step and pan directly, as when a recorded view is restored.
+     * @param theStep Zoom step, which is kept from MIN_STEP to MAX_STEP.
+     * @param theOffsetX X coordinate on the panel to show the origin of the canvas at.
+     * @param theOffsetY Y coordinate on the panel to show the origin of the canvas at.
+     */
+    public void setTo(final int theStep, final int theOffsetX, final int theOffsetY) {
+        myStep = Math.max(MIN_STEP, Math.min(MAX_STEP, theStep));
+        myOffsetX = theOffsetX;
+        myOffsetY = theOffsetY;
+    }
+
+    /**
+     * Shows the canvas at its own size with its origin at the top left of the panel.
+     */
+    public void reset() {
+        myStep = 0;
+        myOffsetX = 0;
+        myOffsetY = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package replay;
+
+/**
+ * Constants of the input trace file format, which records the mouse events that reach
+ * a DrawPanel and the changes to its tool, color and stroke so they can be replayed.
+ * All values are big-endian, as written by a DataOutputStream.
+ * A trace starts with a header:
+ * MAGIC, VERSION, the width and height of the panel, the zoom step and X and Y offsets
+ * of its view, the class name of its tool as modified UTF-8, its color as ARGB
+ * and the width of its stroke as an int.
+ * Records follow until the end of the file. Each starts with a type byte and the int
+ * number of milliseconds since recording started, followed by:
+ * PRESS and RELEASE: X, Y, button, extended modifiers and click count, all ints.
+ * DRAG: X, Y and extended modifiers, all ints.
+ * WHEEL: X, Y, extended modifiers and wheel rotation, all ints.
+ * TOOL: Class name of the new tool as modified UTF-8.
+ * COLOR: New color as an ARGB int.
+ * STROKE: New stroke width as an int.
+ * SIZE: New width and height of the panel as ints.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class InputTrace {
+
+    /** First four bytes of every trace, "MPIT". */
+    public static final int MAGIC = 0x4D504954;
+
+    /** Version of the format written. */
+    public static final int VERSION = 1;
+
+    /** File extension of traces. */
+    public static final String EXTENSION = "mpit";
+
+    /** Type of a mouse button press. */
+    public static final byte PRESS = 1;
+
+    /** Type of a mouse button release. */
+    public static final byte RELEASE = 2;
+
+    /** Type of a mouse drag. */
+    public static final byte DRAG = 3;
+
+    /** Type of a mouse wheel movement. */
+    public static final byte WHEEL = 4;
+
+    /** Type of a change of tool. */
+    public static final byte TOOL = 5;
+
+    /** Type of a change of color. */
+    public static final byte COLOR = 6;
+
+    /** Type of a change of stroke width. */
+    public static final byte STROKE = 7;
+
+    /** Type of a change of panel size. */
+    public static final byte SIZE = 8;
+
+    /** Private constructor to prevent external creation of the class.*/
+    private InputTrace() {
+        throw new IllegalStateException();
+    }
+}
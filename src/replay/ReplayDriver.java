@@ -0,0 +1,392 @@
+package replay;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+import javax.swing.SwingUtilities;
+import document.DocumentReader;
+import drawtools.AbstractTool;
+import paintwindow.DrawPanel;
+import paintwindow.LatencyStats;
+import paintwindow.Styles;
+
+/**
+ * Replays an input trace against a new DrawPanel with no display, as a reproducible
+ * performance and correctness check. Every recorded event is sent to the panel as it
+ * was recorded, and whatever area of the panel the event asked to be repainted is then
+ * painted into an off-screen image, so the time of each event covers both handling it
+ * and drawing its frame. Reports the percentiles of those times, the bytes allocated
+ * by every thread during the replay, and a checksum of the final image.
+ * Usage: ReplayDriver trace [document] [--expect checksum]
+ * The document, if given, is loaded before the trace is replayed. With --expect, the
+ * driver exits with status 1 if the checksum of the final image differs.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class ReplayDriver {
+
+    /** Argument that is followed by the checksum the final image must have. */
+    private static final String EXPECT_ARGUMENT = "--expect";
+
+    /** Exit status when the final image does not have the expected checksum. */
+    private static final int MISMATCH_STATUS = 1;
+
+    /** Exit status when the arguments or the trace are not valid. */
+    private static final int ERROR_STATUS = 2;
+
+    /** Number of bytes in a megabyte. */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Panel the trace is replayed against. */
+    private final DrawPanel myPanel;
+
+    /** Time taken by each mouse event, including painting its frame. */
+    private final LatencyStats myLatency;
+
+    /** Image the panel is painted into. */
+    private BufferedImage myImage;
+
+    /** Number of records replayed. */
+    private int myRecordCount;
+
+    /** Milliseconds from the start of the recording to its last record. */
+    private int myRecordedMillis;
+
+    /**
+     * Constructs a driver with a new, empty panel.
+     */
+    public ReplayDriver() {
+        myPanel = new DrawPanel();
+        myLatency = new LatencyStats();
+    }
+
+    /**
+     * Replays a trace given on the command line and prints a report.
+     * @param theArgs Path of the trace, then optionally the path of a document to load
+     * first and --expect followed by the checksum the final image must have.
+     */
+    public static void main(final String[] theArgs) {
+        System.setProperty("java.awt.headless", "true");
+        Path trace = null;
+        Path document = null;
+        String expected = null;
+        for (int i = 0; i < theArgs.length; i++) {
+            if (EXPECT_ARGUMENT.equals(theArgs[i]) && i + 1 < theArgs.length) {
+                expected = theArgs[++i];
+            } else if (trace == null) {
+                trace = Paths.get(theArgs[i]);
+            } else if (document == null) {
+                document = Paths.get(theArgs[i]);
+            } else {
+                trace = null;
+                break;
+            }
+        }
+        if (trace == null) {
+            System.err.println("Usage: ReplayDriver trace [document] [--expect checksum]");
+            System.exit(ERROR_STATUS);
+        }
+        final Path traceFile = trace;
+        final Path documentFile = document;
+        final String[] checksum = new String[1];
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    final ReplayDriver driver = new ReplayDriver();
+                    try {
+                        checksum[0] = driver.replay(traceFile, documentFile);
+                    } catch (final IOException e) {
+                        System.err.println("Could not replay " + traceFile + ": "
+                                           + e.getMessage());
+                    }
+                }
+            });
+        } catch (final InterruptedException | InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        if (checksum[0] == null) {
+            System.exit(ERROR_STATUS);
+        }
+        if (expected != null && !expected.equalsIgnoreCase(checksum[0])) {
+            System.err.println("Checksum " + checksum[0] + " does not match " + expected);
+            System.exit(MISMATCH_STATUS);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Gets the panel the trace is replayed against, to inspect it after a replay.
+     * @return Panel of the driver.
+     */
+    public DrawPanel getPanel() {
+        return myPanel;
+    }
+
+    /**
+     * Replays a trace against the panel and prints a report.
+     * @param theTrace Trace to replay.
+     * @param theDocument Document to load before replaying, or null for an empty drawing.
+     * @return Checksum of the final image as 8 hexadecimal digits.
+     * @throws IOException If the trace or document could not be read or are not valid.
+     */
+    public String replay(final Path theTrace, final Path theDocument) throws IOException {
+        if (theDocument != null) {
+            myPanel.addShapes(DocumentReader.load(theDocument));
+        }
+        final long startBytes = getAllocatedBytes();
+        final long start = System.nanoTime();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(theTrace)))) {
+            readHeader(input);
+            for (int type = input.read(); type >= 0; type = input.read()) {
+                myRecordedMillis = input.readInt();
+                replayRecord((byte) type, input);
+                myRecordCount++;
+            }
+        } catch (final EOFException e) {
+            throw new IOException("Trace ends in the middle of a record", e);
+        }
+        final long replayNanos = System.nanoTime() - start;
+        paint(new Rectangle(0, 0, myImage.getWidth(), myImage.getHeight()));
+        final long endBytes = getAllocatedBytes();
+        final String checksum = checksum();
+        System.out.println("Replayed " + myRecordCount + " records recorded over "
+                           + myRecordedMillis + " ms in "
+                           + String.format("%.1f", replayNanos / NANOS_PER_MILLI) + " ms");
+        System.out.println("Per event: " + myLatency);
+        if (startBytes >= 0 && endBytes >= 0) {
+            System.out.println("Allocated: " + String.format(
+                            "%.1f", (endBytes - startBytes) / BYTES_PER_MEGABYTE) + " MB");
+        }
+        System.out.println("Shapes: " + myPanel.getShapes().size());
+        System.out.println("Checksum: " + checksum);
+        return checksum;
+    }
+
+    /**
+     * Reads the header of a trace and sets up the panel to match it.
+     * @param theInput Stream at the start of the trace.
+     * @throws IOException If the header could not be read or is not valid.
+     */
+    private void readHeader(final DataInputStream theInput) throws IOException {
+        if (theInput.readInt() != InputTrace.MAGIC) {
+            throw new IOException("Not an input trace");
+        }
+        final int version = theInput.readInt();
+        if (version != InputTrace.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        resize(theInput.readInt(), theInput.readInt());
+        myPanel.getViewport().setTo(theInput.readInt(), theInput.readInt(), theInput.readInt());
+        myPanel.setCurrentTool(createTool(theInput.readUTF()));
+        myPanel.setColor(Styles.color(theInput.readInt()));
+        myPanel.setStroke(theInput.readInt());
+    }
+
+    /**
+     * Replays one record, timing it if it is a mouse event.
+     * @param theType Type of the record.
+     * @param theInput Stream positioned after the time of the record.
+     * @throws IOException If the record could not be read or is not valid.
+     */
+    private void replayRecord(final byte theType, final DataInputStream theInput)
+                    throws IOException {
+        switch (theType) {
+            case InputTrace.PRESS:
+                replayButton(MouseEvent.MOUSE_PRESSED, theInput);
+                break;
+            case InputTrace.RELEASE:
+                replayButton(MouseEvent.MOUSE_RELEASED, theInput);
+                break;
+            case InputTrace.DRAG:
+                replayDrag(theInput);
+                break;
+            case InputTrace.WHEEL:
+                replayWheel(theInput);
+                break;
+            case InputTrace.TOOL:
+                myPanel.setCurrentTool(createTool(theInput.readUTF()));
+                break;
+            case InputTrace.COLOR:
+                myPanel.setColor(Styles.color(theInput.readInt()));
+                break;
+            case InputTrace.STROKE:
+                myPanel.setStroke(theInput.readInt());
+                break;
+            case InputTrace.SIZE:
+                resize(theInput.readInt(), theInput.readInt());
+                break;
+            default:
+                throw new IOException("Unknown record type " + theType);
+        }
+    }
+
+    /**
+     * Replays the press or release of a mouse button.
+     * @param theId MOUSE_PRESSED or MOUSE_RELEASED.
+     * @param theInput Stream positioned at the coordinates of the record.
+     * @throws IOException If the record could not be read.
+     */
+    private void replayButton(final int theId, final DataInputStream theInput)
+                    throws IOException {
+        final int x = theInput.readInt();
+        final int y = theInput.readInt();
+        final int button = theInput.readInt();
+        final int modifiers = theInput.readInt();
+        final int clicks = theInput.readInt();
+        dispatch(new MouseEvent(myPanel, theId, System.currentTimeMillis(), modifiers,
+                                x, y, clicks, false, button));
+    }
+
+    /**
+     * Replays a drag of the mouse.
+     * @param theInput Stream positioned at the coordinates of the record.
+     * @throws IOException If the record could not be read.
+     */
+    private void replayDrag(final DataInputStream theInput) throws IOException {
+        final int x = theInput.readInt();
+        final int y = theInput.readInt();
+        final int modifiers = theInput.readInt();
+        dispatch(new MouseEvent(myPanel, MouseEvent.MOUSE_DRAGGED, System.currentTimeMillis(),
+                                modifiers, x, y, 0, false, MouseEvent.NOBUTTON));
+    }
+
+    /**
+     * Replays a movement of the mouse wheel.
+     * @param theInput Stream positioned at the coordinates of the record.
+     * @throws IOException If the record could not be read.
+     */
+    private void replayWheel(final DataInputStream theInput) throws IOException {
+        final int x = theInput.readInt();
+        final int y = theInput.readInt();
+        final int modifiers = theInput.readInt();
+        final int rotation = theInput.readInt();
+        dispatch(new MouseWheelEvent(myPanel, MouseEvent.MOUSE_WHEEL, System.currentTimeMillis(),
+                                     modifiers, x, y, 0, false,
+                                     MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, rotation));
+    }
+
+    /**
+     * Sends a mouse event to the panel and paints the area it asked to be repainted,
+     * recording the time both took. A fill started by the event is waited for, so it is
+     * in the drawing before the next event as it would be for a person clicking.
+     * @param theEvent Event to send.
+     */
+    private void dispatch(final MouseEvent theEvent) {
+        final long start = System.nanoTime();
+        myPanel.dispatchEvent(theEvent);
+        myPanel.finishFill();
+        final Rectangle area = myPanel.getRenderScheduler().takePendingArea();
+        if (area != null) {
+            paint(area);
+        }
+        myLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Paints an area of the panel into the image, with new graphics as Swing would.
+     * @param theArea Area of the panel to paint.
+     */
+    private void paint(final Rectangle theArea) {
+        final Graphics2D graphics = myImage.createGraphics();
+        try {
+            graphics.setClip(theArea.intersection(new Rectangle(0, 0, myImage.getWidth(),
+                                                                myImage.getHeight())));
+            myPanel.paintComponent(graphics);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Resizes the panel and the image it is painted into, painting the whole panel.
+     * @param theWidth New width.
+     * @param theHeight New height.
+     * @throws IOException If the size is not valid.
+     */
+    private void resize(final int theWidth, final int theHeight) throws IOException {
+        if (theWidth <= 0 || theHeight <= 0) {
+            throw new IOException("Invalid panel size " + theWidth + "x" + theHeight);
+        }
+        myPanel.setSize(theWidth, theHeight);
+        myImage = new BufferedImage(theWidth, theHeight, BufferedImage.TYPE_INT_RGB);
+        paint(new Rectangle(0, 0, theWidth, theHeight));
+    }
+
+    /**
+     * Creates a tool from the name of its class.
+     * @param theClassName Fully qualified name of a tool with a public constructor
+     * that takes no arguments.
+     * @return New tool.
+     * @throws IOException If there is no such tool.
+     */
+    private static AbstractTool createTool(final String theClassName) throws IOException {
+        try {
+            return Class.forName(theClassName).asSubclass(AbstractTool.class)
+                            .getConstructor().newInstance();
+        } catch (final ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("Unknown tool " + theClassName, e);
+        }
+    }
+
+    /**
+     * Computes a CRC-32 of the pixels of the image.
+     * @return Checksum as 8 hexadecimal digits.
+     */
+    private String checksum() {
+        final int width = myImage.getWidth();
+        final int[] row = new int[width];
+        final byte[] bytes = new byte[width * 4];
+        final CRC32 crc = new CRC32();
+        for (int y = 0; y < myImage.getHeight(); y++) {
+            myImage.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                bytes[4 * x] = (byte) (row[x] >>> 24);
+                bytes[4 * x + 1] = (byte) (row[x] >>> 16);
+                bytes[4 * x + 2] = (byte) (row[x] >>> 8);
+                bytes[4 * x + 3] = (byte) row[x];
+            }
+            crc.update(bytes);
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Gets the bytes allocated by every live thread so far, which covers the threads
+     * that redraw tiles as well as this one.
+     * @return Bytes allocated, or -1 if the virtual machine cannot measure them.
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean allocations =
+                        (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,254 @@
+package replay;
+
+import java.awt.Color;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import paintwindow.DrawPanel;
+import paintwindow.Viewport;
+
+/**
+ * Records the mouse events that reach a DrawPanel, and the changes to its tool, color,
+ * stroke and size, into an input trace that ReplayDriver can play back.
+ * The recorder listens to the panel like any other listener, so it sees the same events
+ * the panel's own adapters handle. Menu commands such as undo are not recorded.
+ * Traces started on an empty drawing replay exactly; otherwise the drawing has to be
+ * saved as well and loaded before the trace is replayed.
+ * Must only be used on the event dispatch thread.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class TraceRecorder {
+
+    /** Panel being recorded. */
+    private final DrawPanel myPanel;
+
+    /** Stream the trace is written to. */
+    private final DataOutputStream myOutput;
+
+    /** Listener for the mouse events of the panel. */
+    private final MouseAdapter myMouseListener;
+
+    /** Listener for the tool, color and stroke of the panel. */
+    private final PropertyChangeListener myPropertyListener;
+
+    /** Listener for the size of the panel. */
+    private final ComponentAdapter mySizeListener;
+
+    /** Time recording started, from System.currentTimeMillis. */
+    private final long myStart;
+
+    /** First error writing the trace, or null if there has been none. */
+    private IOException myError;
+
+    /** Number of records written. */
+    private int myRecordCount;
+
+    /**
+     * Starts recording a panel into a file, writing its current state as the header.
+     * @param theFile File to write the trace to, which is replaced if it exists.
+     * @param thePanel Panel to record.
+     * @throws IOException If the file could not be created.
+     */
+    public TraceRecorder(final Path theFile, final DrawPanel thePanel) throws IOException {
+        myPanel = thePanel;
+        myOutput = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(theFile)));
+        myStart = System.currentTimeMillis();
+        try {
+            writeHeader();
+        } catch (final IOException e) {
+            myOutput.close();
+            throw e;
+        }
+        myMouseListener = new MouseAdapter() {
+            @Override
+            public void mousePressed(final MouseEvent theEvent) {
+                writeButton(InputTrace.PRESS, theEvent);
+            }
+
+            @Override
+            public void mouseReleased(final MouseEvent theEvent) {
+                writeButton(InputTrace.RELEASE, theEvent);
+            }
+
+            @Override
+            public void mouseDragged(final MouseEvent theEvent) {
+                writeMouse(InputTrace.DRAG, theEvent);
+            }
+
+            @Override
+            public void mouseWheelMoved(final MouseWheelEvent theEvent) {
+                writeMouse(InputTrace.WHEEL, theEvent);
+            }
+        };
+        myPropertyListener = new PropertyChangeListener() {
+            @Override
+            public void propertyChange(final PropertyChangeEvent theEvent) {
+                writeProperty(theEvent);
+            }
+        };
+        mySizeListener = new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent theEvent) {
+                writeSize();
+            }
+        };
+        myPanel.addMouseListener(myMouseListener);
+        myPanel.addMouseMotionListener(myMouseListener);
+        myPanel.addMouseWheelListener(myMouseListener);
+        myPanel.addPropertyChangeListener(myPropertyListener);
+        myPanel.addComponentListener(mySizeListener);
+    }
+
+    /**
+     * Stops recording and closes the trace.
+     * @throws IOException If any part of the trace could not be written.
+     */
+    public void stop() throws IOException {
+        myPanel.removeMouseListener(myMouseListener);
+        myPanel.removeMouseMotionListener(myMouseListener);
+        myPanel.removeMouseWheelListener(myMouseListener);
+        myPanel.removePropertyChangeListener(myPropertyListener);
+        myPanel.removeComponentListener(mySizeListener);
+        try {
+            myOutput.close();
+        } catch (final IOException e) {
+            if (myError == null) {
+                myError = e;
+            }
+        }
+        if (myError != null) {
+            throw myError;
+        }
+    }
+
+    /**
+     * Gets the number of records written after the header.
+     * @return Number of records.
+     */
+    public int getRecordCount() {
+        return myRecordCount;
+    }
+
+    /**
+     * Writes the header holding the current state of the panel.
+     * @throws IOException If the header could not be written.
+     */
+    private void writeHeader() throws IOException {
+        final Viewport view = myPanel.getViewport();
+        myOutput.writeInt(InputTrace.MAGIC);
+        myOutput.writeInt(InputTrace.VERSION);
+        myOutput.writeInt(myPanel.getWidth());
+        myOutput.writeInt(myPanel.getHeight());
+        myOutput.writeInt(view.getStep());
+        myOutput.writeInt(view.getOffsetX());
+        myOutput.writeInt(view.getOffsetY());
+        myOutput.writeUTF(myPanel.getCurrentTool().getClass().getName());
+        myOutput.writeInt(myPanel.getColor().getRGB());
+        myOutput.writeInt(myPanel.getStrokeWidth());
+    }
+
+    /**
+     * Starts a record, once writing has not failed yet.
+     * @param theType Type of the record.
+     * @return Whether the rest of the record should be written.
+     * @throws IOException If the start of the record could not be written.
+     */
+    private boolean startRecord(final byte theType) throws IOException {
+        if (myError != null) {
+            return false;
+        }
+        myOutput.writeByte(theType);
+        myOutput.writeInt((int) (System.currentTimeMillis() - myStart));
+        myRecordCount++;
+        return true;
+    }
+
+    /**
+     * Writes a press or release of a mouse button.
+     * @param theType PRESS or RELEASE.
+     * @param theEvent Event to record.
+     */
+    private void writeButton(final byte theType, final MouseEvent theEvent) {
+        try {
+            if (startRecord(theType)) {
+                myOutput.writeInt(theEvent.getX());
+                myOutput.writeInt(theEvent.getY());
+                myOutput.writeInt(theEvent.getButton());
+                myOutput.writeInt(theEvent.getModifiersEx());
+                myOutput.writeInt(theEvent.getClickCount());
+            }
+        } catch (final IOException e) {
+            myError = e;
+        }
+    }
+
+    /**
+     * Writes a drag or a movement of the wheel.
+     * @param theType DRAG or WHEEL.
+     * @param theEvent Event to record, which is a MouseWheelEvent for WHEEL.
+     */
+    private void writeMouse(final byte theType, final MouseEvent theEvent) {
+        try {
+            if (startRecord(theType)) {
+                myOutput.writeInt(theEvent.getX());
+                myOutput.writeInt(theEvent.getY());
+                myOutput.writeInt(theEvent.getModifiersEx());
+                if (theType == InputTrace.WHEEL) {
+                    myOutput.writeInt(((MouseWheelEvent) theEvent).getWheelRotation());
+                }
+            }
+        } catch (final IOException e) {
+            myError = e;
+        }
+    }
+
+    /**
+     * Writes a change to the tool, color or stroke, ignoring other properties.
+     * @param theEvent Change of a property of the panel.
+     */
+    private void writeProperty(final PropertyChangeEvent theEvent) {
+        final String name = theEvent.getPropertyName();
+        try {
+            if (DrawPanel.TOOL_PROPERTY.equals(name)) {
+                if (startRecord(InputTrace.TOOL)) {
+                    myOutput.writeUTF(theEvent.getNewValue().getClass().getName());
+                }
+            } else if (DrawPanel.COLOR_PROPERTY.equals(name)) {
+                if (startRecord(InputTrace.COLOR)) {
+                    myOutput.writeInt(((Color) theEvent.getNewValue()).getRGB());
+                }
+            } else if (DrawPanel.STROKE_PROPERTY.equals(name)) {
+                if (startRecord(InputTrace.STROKE)) {
+                    myOutput.writeInt(myPanel.getStrokeWidth());
+                }
+            }
+        } catch (final IOException e) {
+            myError = e;
+        }
+    }
+
+    /**
+     * Writes the current size of the panel.
+     */
+    private void writeSize() {
+        try {
+            if (startRecord(InputTrace.SIZE)) {
+                myOutput.writeInt(myPanel.getWidth());
+                myOutput.writeInt(myPanel.getHeight());
+            }
+        } catch (final IOException e) {
+            myError = e;
+        }
+    }
+}
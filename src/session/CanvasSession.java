@@ -0,0 +1,527 @@
+package session;
+
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.SwingUtilities;
+import drawtools.FillTool;
+import paintwindow.DrawPanel;
+import paintwindow.DrawingListener;
+import paintwindow.Layer;
+import paintwindow.LayerStack;
+import paintwindow.ShapeStore;
+import paintwindow.Styles;
+
+/**
+ * Shares the drawing of a DrawPanel with the other peers of a session, and shows theirs
+ * on it as peer layers.
+ * <p>
+ * One layer of the drawing is shared: the active layer when the session is joined, or
+ * when a new drawing is started. Every shape added to it or removed from it is sent as it
+ * happens, undo and redo included. The layers of the other peers are shown over the
+ * drawing and are only changed by their owners, so every peer sees the same thing.
+ * </p>
+ * <p>
+ * Changes from the other peers arrive on the client's reader thread. They are queued,
+ * merging shapes added to the same layer one after another, and applied on the event
+ * dispatch thread in one batch, so a burst of changes costs one pass on that thread
+ * rather than one per message. Only the newest preview from each peer is kept.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class CanvasSession implements DrawingListener, SessionListener, Closeable {
+
+    /** Name of the property fired on the event dispatch thread when the session ends. */
+    public static final String CONNECTED_PROPERTY = "connected";
+
+    /** Type of a queued change for a peer that joined. */
+    private static final int JOINED = 0;
+
+    /** Type of a queued change for a peer that left. */
+    private static final int LEFT = 1;
+
+    /** Type of a queued change for shapes added to the layer of a peer. */
+    private static final int ADDED = 2;
+
+    /** Type of a queued change for shapes removed from the layer of a peer. */
+    private static final int REMOVED = 3;
+
+    /** Panel whose drawing is shared. */
+    private final DrawPanel myPanel;
+
+    /** Client connected to the session. */
+    private final SessionClient myClient;
+
+    /** Listeners told when the session ends. */
+    private final PropertyChangeSupport myChangeSupport;
+
+    /** Listener sending the shape being drawn as a preview. */
+    private final MouseAdapter myPreviewAdapter;
+
+    /** Layer of the drawing being shared. Only used on the event dispatch thread. */
+    private Layer mySharedLayer;
+
+    /** Layers of the other peers, by peer id. Only used on the event dispatch thread. */
+    private final Map<Integer, Layer> myPeerLayers;
+
+    /** Whether the shape being drawn is sent as a preview. */
+    private volatile boolean mySharingPreviews;
+
+    /** Whether a preview of the shape being drawn was sent and not yet taken back. */
+    private boolean myPreviewSent;
+
+    /** Lock guarding the queued changes below. */
+    private final Object myLock;
+
+    /** Changes from the other peers not yet applied, in order. */
+    private List<Change> myChanges;
+
+    /** Newest preview from each peer not yet shown, by peer id, null to stop showing one. */
+    private Map<Integer, ShapeStore> myPreviews;
+
+    /** Whether applying the queued changes has been scheduled. */
+    private boolean myApplyScheduled;
+
+    /** Whether the client disconnected, with the error if it did not close cleanly. */
+    private boolean myDisconnected;
+
+    /** Reason the session ended, or null if it has not or ended cleanly. */
+    private IOException myError;
+
+    /** Whether the session has ended and its layers were removed. */
+    private boolean myEnded;
+
+    /**
+     * Joins a session and starts sharing the active layer of a panel with it.
+     * Must be called on the event dispatch thread.
+     * @param thePanel Panel whose drawing is shared.
+     * @param theHost Name or address of the server.
+     * @param thePort Port of the server.
+     * @throws IOException If the session could not be joined.
+     */
+    public CanvasSession(final DrawPanel thePanel, final String theHost, final int thePort)
+                    throws IOException {
+        myPanel = thePanel;
+        myChangeSupport = new PropertyChangeSupport(this);
+        myPeerLayers = new HashMap<Integer, Layer>();
+        myLock = new Object();
+        myChanges = new ArrayList<Change>();
+        myPreviews = new LinkedHashMap<Integer, ShapeStore>();
+        myPreviewAdapter = new MouseAdapter() {
+            @Override
+            public void mouseDragged(final MouseEvent theEvent) {
+                sendPreview();
+            }
+
+            @Override
+            public void mouseReleased(final MouseEvent theEvent) {
+                clearPreview();
+            }
+        };
+        myClient = new SessionClient(theHost, thePort, this);
+        mySharedLayer = thePanel.getLayers().getActive();
+        thePanel.addDrawingListener(this);
+        thePanel.addMouseMotionListener(myPreviewAdapter);
+        thePanel.addMouseListener(myPreviewAdapter);
+        share(mySharedLayer);
+    }
+
+    /**
+     * Gets the peer id the server gave this panel.
+     * @return Peer id.
+     */
+    public int getPeerId() {
+        return myClient.getPeerId();
+    }
+
+    /**
+     * Gets the client connected to the session, for its statistics.
+     * @return Client.
+     */
+    public SessionClient getClient() {
+        return myClient;
+    }
+
+    /**
+     * Gets the number of other peers in the session.
+     * Must be called on the event dispatch thread.
+     * @return Number of peers.
+     */
+    public int getPeerCount() {
+        return myPeerLayers.size();
+    }
+
+    /**
+     * Sets whether the shape being drawn is shown to the other peers before it is
+     * finished. Off by default.
+     * @param theSharing Whether to share previews.
+     */
+    public void setSharingPreviews(final boolean theSharing) {
+        mySharingPreviews = theSharing;
+    }
+
+    /**
+     * Tells whether the shape being drawn is shown to the other peers.
+     * @return Whether previews are shared.
+     */
+    public boolean isSharingPreviews() {
+        return mySharingPreviews;
+    }
+
+    /**
+     * Gets the reason the session ended.
+     * @return Error, or null if the session has not ended or ended cleanly.
+     */
+    public IOException getError() {
+        synchronized (myLock) {
+            return myError;
+        }
+    }
+
+    /**
+     * Adds a listener told when the session ends, on the event dispatch thread.
+     * @param theListener Listener of the connected property.
+     */
+    public void addPropertyChangeListener(final PropertyChangeListener theListener) {
+        myChangeSupport.addPropertyChangeListener(theListener);
+    }
+
+    /**
+     * Removes a listener added by addPropertyChangeListener.
+     * @param theListener Listener to remove.
+     */
+    public void removePropertyChangeListener(final PropertyChangeListener theListener) {
+        myChangeSupport.removePropertyChangeListener(theListener);
+    }
+
+    /**
+     * Leaves the session, removing the layers of the other peers from the panel.
+     * Must be called on the event dispatch thread.
+     */
+    @Override
+    public void close() {
+        myClient.close();
+        end();
+    }
+
+    /**
+     * Sends a shape added to the shared layer.
+     * @param theLayer Layer the shape was added to.
+     * @param theId Id of the shape.
+     */
+    @Override
+    public void shapeAdded(final Layer theLayer, final int theId) {
+        if (theLayer == mySharedLayer) {
+            myClient.sendShapes(theLayer.getShapes(), theId, theId + 1);
+        }
+    }
+
+    /**
+     * Sends that shapes were removed from the shared layer.
+     * @param theLayer Layer the shapes were removed from.
+     * @param theSize Number of shapes left on the layer.
+     */
+    @Override
+    public void shapesRemoved(final Layer theLayer, final int theSize) {
+        if (theLayer == mySharedLayer) {
+            myClient.sendTruncate(theSize);
+        }
+    }
+
+    /**
+     * Sends the whole shared layer again when everything on it is replaced.
+     * @param theLayer Layer that was replaced.
+     */
+    @Override
+    public void layerReplaced(final Layer theLayer) {
+        if (theLayer == mySharedLayer) {
+            share(theLayer);
+        }
+    }
+
+    /**
+     * Does nothing, since only the shapes of a layer are shared.
+     * @param theLayer Layer that changed.
+     */
+    @Override
+    public void layerChanged(final Layer theLayer) {
+    }
+
+    /**
+     * Shares the active layer instead if the shared layer was removed.
+     * @param theLayers Layers of the drawing as they are now.
+     */
+    @Override
+    public void layersChanged(final LayerStack theLayers) {
+        if (theLayers.indexOf(mySharedLayer) < 0) {
+            share(theLayers.getActive());
+        }
+    }
+
+    /**
+     * Shares the active layer of the new drawing in place of the old shared layer.
+     * @param theLayers Layers of the drawing as they are now.
+     */
+    @Override
+    public void drawingReset(final LayerStack theLayers) {
+        share(theLayers.getActive());
+    }
+
+    /**
+     * Queues adding a layer for a peer.
+     * @param thePeer Peer id of the peer.
+     */
+    @Override
+    public void peerJoined(final int thePeer) {
+        queue(new Change(JOINED, thePeer, 0, null));
+    }
+
+    /**
+     * Queues removing the layer of a peer, dropping any preview from it not yet shown.
+     * @param thePeer Peer id of the peer.
+     */
+    @Override
+    public void peerLeft(final int thePeer) {
+        synchronized (myLock) {
+            myPreviews.remove(thePeer);
+        }
+        queue(new Change(LEFT, thePeer, 0, null));
+    }
+
+    /**
+     * Queues the shapes, adding them to the last queued change if it added shapes to the
+     * same layer.
+     * @param thePeer Peer id of the peer.
+     * @param theShapes Shapes added, which are copied.
+     */
+    @Override
+    public void shapesAdded(final int thePeer, final ShapeStore theShapes) {
+        synchronized (myLock) {
+            if (!myChanges.isEmpty()) {
+                final Change last = myChanges.get(myChanges.size() - 1);
+                if (last.myType == ADDED && last.myPeer == thePeer) {
+                    last.myShapes.addAll(theShapes);
+                    return;
+                }
+            }
+            final ShapeStore shapes = new ShapeStore();
+            shapes.addAll(theShapes);
+            queue(new Change(ADDED, thePeer, 0, shapes));
+        }
+    }
+
+    /**
+     * Queues removing shapes from the layer of a peer.
+     * @param thePeer Peer id of the peer.
+     * @param theSize Number of shapes left on the layer.
+     */
+    @Override
+    public void shapesRemoved(final int thePeer, final int theSize) {
+        queue(new Change(REMOVED, thePeer, theSize, null));
+    }
+
+    /**
+     * Keeps the newest preview from a peer to be shown.
+     * @param thePeer Peer id of the peer.
+     * @param thePreview Store holding the shape, or null to stop showing it.
+     */
+    @Override
+    public void previewChanged(final int thePeer, final ShapeStore thePreview) {
+        synchronized (myLock) {
+            myPreviews.put(thePeer, thePreview);
+            schedule();
+        }
+    }
+
+    /**
+     * Does nothing, since changes are applied as they come.
+     */
+    @Override
+    public void synced() {
+    }
+
+    /**
+     * Queues ending the session.
+     * @param theError Reason the client was disconnected, or null if it was closed.
+     */
+    @Override
+    public void disconnected(final IOException theError) {
+        synchronized (myLock) {
+            myDisconnected = true;
+            myError = theError;
+            schedule();
+        }
+    }
+
+    /**
+     * Shares a layer, replacing whatever the other peers were shown of the shared layer
+     * with all of its shapes.
+     * @param theLayer Layer to share.
+     */
+    private void share(final Layer theLayer) {
+        mySharedLayer = theLayer;
+        final ShapeStore shapes = theLayer.getShapes();
+        myClient.sendTruncate(0);
+        myClient.sendShapes(shapes, 0, shapes.size());
+    }
+
+    /**
+     * Sends the shape the current tool is drawing as a preview, if previews are shared.
+     */
+    private void sendPreview() {
+        if (!mySharingPreviews || !myPanel.getCurrentTool().getEnabled()
+                        || myPanel.getCurrentTool() instanceof FillTool) {
+            return;
+        }
+        final ShapeStore preview = new ShapeStore();
+        preview.add(myPanel.getCurrentTool().getShape(),
+                    Styles.stroke(myPanel.getStrokeWidth()), myPanel.getColor());
+        myClient.sendPreview(preview);
+        myPreviewSent = true;
+    }
+
+    /**
+     * Takes back the preview sent, once the shape it showed is finished.
+     */
+    private void clearPreview() {
+        if (myPreviewSent) {
+            myClient.sendPreview(null);
+            myPreviewSent = false;
+        }
+    }
+
+    /**
+     * Queues a change from another peer.
+     * @param theChange Change to queue.
+     */
+    private void queue(final Change theChange) {
+        synchronized (myLock) {
+            myChanges.add(theChange);
+            schedule();
+        }
+    }
+
+    /**
+     * Schedules applying the queued changes on the event dispatch thread, unless it
+     * already is. Must hold the lock.
+     */
+    private void schedule() {
+        if (!myApplyScheduled) {
+            myApplyScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    applyChanges();
+                }
+            });
+        }
+    }
+
+    /**
+     * Applies every queued change to the panel, on the event dispatch thread.
+     */
+    private void applyChanges() {
+        final List<Change> changes;
+        final Map<Integer, ShapeStore> previews;
+        final boolean disconnected;
+        synchronized (myLock) {
+            changes = myChanges;
+            previews = myPreviews;
+            disconnected = myDisconnected;
+            myChanges = new ArrayList<Change>();
+            myPreviews = new LinkedHashMap<Integer, ShapeStore>();
+            myApplyScheduled = false;
+        }
+        if (myEnded) {
+            return;
+        }
+        for (Change change : changes) {
+            if (change.myType == JOINED) {
+                myPeerLayers.put(change.myPeer, myPanel.addPeerLayer("Peer " + change.myPeer));
+                continue;
+            }
+            final Layer layer = myPeerLayers.get(change.myPeer);
+            if (layer == null) {
+                continue;
+            }
+            if (change.myType == LEFT) {
+                myPeerLayers.remove(change.myPeer);
+                myPanel.removePeerLayer(layer);
+            } else if (change.myType == ADDED) {
+                myPanel.addPeerShapes(layer, change.myShapes);
+            } else {
+                myPanel.truncatePeerLayer(layer, change.mySize);
+            }
+        }
+        for (Map.Entry<Integer, ShapeStore> preview : previews.entrySet()) {
+            final Layer layer = myPeerLayers.get(preview.getKey());
+            if (layer != null) {
+                myPanel.setPeerPreview(layer, preview.getValue());
+            }
+        }
+        if (disconnected) {
+            end();
+        }
+    }
+
+    /**
+     * Stops sharing and removes the layers of the other peers, telling the listeners the
+     * session ended. Does nothing if it already ended.
+     */
+    private void end() {
+        if (myEnded) {
+            return;
+        }
+        myEnded = true;
+        myPanel.removeDrawingListener(this);
+        myPanel.removeMouseMotionListener(myPreviewAdapter);
+        myPanel.removeMouseListener(myPreviewAdapter);
+        for (Layer layer : myPeerLayers.values()) {
+            myPanel.removePeerLayer(layer);
+        }
+        myPeerLayers.clear();
+        myChangeSupport.firePropertyChange(CONNECTED_PROPERTY, true, false);
+    }
+
+    /**
+     * A change from another peer, queued until it is applied.
+     */
+    private static final class Change {
+
+        /** Type of the change. */
+        private final int myType;
+
+        /** Peer id of the peer that made the change. */
+        private final int myPeer;
+
+        /** Number of shapes left on the layer, for removed shapes. */
+        private final int mySize;
+
+        /** Shapes added, for added shapes, or null. */
+        private final ShapeStore myShapes;
+
+        /**
+         * Constructs a change.
+         * @param theType Type of the change.
+         * @param thePeer Peer id of the peer that made the change.
+         * @param theSize Number of shapes left on the layer, for removed shapes.
+         * @param theShapes Shapes added, for added shapes, or null.
+         */
+        private Change(final int theType, final int thePeer, final int theSize,
+                       final ShapeStore theShapes) {
+            myType = theType;
+            myPeer = thePeer;
+            mySize = theSize;
+            myShapes = theShapes;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package session;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One end of a session connection, framing messages as described in SessionProtocol.
+ * <p>
+ * Messages are sent by copying them into a buffer in memory, which never blocks, and a
+ * writer thread writes everything buffered since its last write at once, so however
+ * many messages are sent while a write is in progress they go out together in one.
+ * Previews are kept apart and only the newest from each peer is written, so they are
+ * dropped rather than queued when the other end cannot keep up. If the other end falls
+ * so far behind that more than a limit is buffered, the connection fails instead of
+ * buffering without bound.
+ * </p>
+ * Messages are received one at a time by a single reading thread. Any thread may send.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+final class Connection implements Closeable {
+
+    /** Peer id given for messages that have none, as those sent by clients. */
+    static final int NO_PEER = -1;
+
+    /** Longest time close waits for the buffered messages to be written, in milliseconds. */
+    private static final long CLOSE_MILLIS = 2000;
+
+    /** Initial size of the buffers messages are copied into. */
+    private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+    /** Socket of the connection. */
+    private final SocketChannel myChannel;
+
+    /** Most bytes buffered before the connection fails. */
+    private final int myLimit;
+
+    /** Lock guarding everything shared with the writer thread below. */
+    private final Object myLock;
+
+    /** Messages sent and not yet handed to the writer thread. */
+    private ByteBuffer myPending;
+
+    /** Messages being written by the writer thread. Swapped with the pending messages. */
+    private ByteBuffer myWriting;
+
+    /** Newest preview from each peer not yet written, by peer id. */
+    private final Map<Integer, ByteBuffer> myPreviews;
+
+    /** Whether the connection is being closed. */
+    private boolean myClosed;
+
+    /** First error on the connection, or null if there has been none. */
+    private IOException myError;
+
+    /** Number of messages sent. */
+    private long myMessageCount;
+
+    /** Number of writes the messages were written in. */
+    private long myWriteCount;
+
+    /** Number of bytes written. */
+    private long myByteCount;
+
+    /**
+     * Bytes received and not yet taken as messages, from its position to its limit.
+     * Only used by the reading thread.
+     */
+    private ByteBuffer myInput;
+
+    /** Thread writing the messages. */
+    private final Thread myWriter;
+
+    /**
+     * Starts a connection over a connected socket.
+     * @param theChannel Socket of the connection, in blocking mode.
+     * @param theName Name of the writer thread.
+     * @param theLimit Most bytes to buffer before the connection fails.
+     * @throws IOException If the socket could not be set up.
+     */
+    Connection(final SocketChannel theChannel, final String theName, final int theLimit)
+                    throws IOException {
+        myChannel = theChannel;
+        myChannel.socket().setTcpNoDelay(true);
+        myLimit = theLimit;
+        myLock = new Object();
+        myPending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        myWriting = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        myPreviews = new LinkedHashMap<Integer, ByteBuffer>();
+        myInput = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        myInput.limit(0);
+        myWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeMessages();
+            }
+        }, theName);
+        myWriter.setDaemon(true);
+        myWriter.start();
+    }
+
+    /**
+     * Frames a message into a buffer of its own, as for a preview.
+     * @param theType Type of the message.
+     * @param thePeer Peer id of the sender, or NO_PEER for none.
+     * @param theBody Parts of the body of the message, which are not changed.
+     * @return Framed message, ready to be read.
+     */
+    static ByteBuffer frame(final byte theType, final int thePeer, final ByteBuffer... theBody) {
+        final ByteBuffer message = ByteBuffer.allocate(frameSize(thePeer, theBody));
+        put(message, theType, thePeer, theBody);
+        message.flip();
+        return message;
+    }
+
+    /**
+     * Sends a message.
+     * @param theType Type of the message.
+     * @param thePeer Peer id of the sender, or NO_PEER for none.
+     * @param theBody Parts of the body of the message, which are not changed.
+     * @return Whether the message was buffered, which it is not once the connection has
+     *         failed or is closed, or if buffering it made the connection fail.
+     */
+    boolean send(final byte theType, final int thePeer, final ByteBuffer... theBody) {
+        final int size = frameSize(thePeer, theBody);
+        synchronized (myLock) {
+            if (!reserve(size)) {
+                return false;
+            }
+            put(myPending, theType, thePeer, theBody);
+            myMessageCount++;
+            myLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Sends a preview, replacing any preview from the same peer not yet written.
+     * @param thePeer Peer id the preview is from.
+     * @param theMessage Framed preview message, shared between connections, which is
+     *        not changed.
+     * @return Whether the preview was buffered.
+     */
+    boolean sendPreview(final int thePeer, final ByteBuffer theMessage) {
+        synchronized (myLock) {
+            if (myError != null || myClosed) {
+                return false;
+            }
+            myPreviews.put(thePeer, theMessage.duplicate());
+            myLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Receives the next message, waiting until it has all arrived. Reads take whatever
+     * the socket has, so many small messages are received with one read.
+     * @return Buffer holding the type and then the body of the message, valid until the
+     *         next message is received, or null if the other end closed the connection.
+     * @throws IOException If the message could not be read or is too large.
+     */
+    ByteBuffer receive() throws IOException {
+        if (!fill(SessionProtocol.LENGTH_SIZE, true)) {
+            return null;
+        }
+        final int length = myInput.getInt(myInput.position());
+        if (length < 1 || length > SessionProtocol.MAX_MESSAGE_SIZE) {
+            throw new IOException("Corrupt message length " + length);
+        }
+        fill(SessionProtocol.LENGTH_SIZE + length, false);
+        final int start = myInput.position();
+        final ByteBuffer message = myInput.duplicate();
+        message.position(start + SessionProtocol.LENGTH_SIZE);
+        message.limit(start + SessionProtocol.LENGTH_SIZE + length);
+        myInput.position(start + SessionProtocol.LENGTH_SIZE + length);
+        return message.slice();
+    }
+
+    /**
+     * Closes the connection once the buffered messages are written, waiting a short
+     * while for them before giving up.
+     */
+    @Override
+    public void close() {
+        synchronized (myLock) {
+            myClosed = true;
+            myLock.notifyAll();
+        }
+        if (Thread.currentThread() != myWriter) {
+            try {
+                myWriter.join(CLOSE_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeChannel();
+    }
+
+    /**
+     * Fails the connection right away, dropping anything buffered.
+     * @param theError Reason the connection failed.
+     */
+    void fail(final IOException theError) {
+        synchronized (myLock) {
+            if (myError == null) {
+                myError = theError;
+            }
+            myPending.clear();
+            myPreviews.clear();
+            myLock.notifyAll();
+        }
+        closeChannel();
+    }
+
+    /**
+     * Gets the first error on the connection.
+     * @return Error, or null if there has been none.
+     */
+    IOException getError() {
+        synchronized (myLock) {
+            return myError;
+        }
+    }
+
+    /**
+     * Gets the number of messages sent, not counting previews.
+     * @return Number of messages.
+     */
+    long getMessageCount() {
+        synchronized (myLock) {
+            return myMessageCount;
+        }
+    }
+
+    /**
+     * Gets the number of writes the messages were written in. Fewer than the number of
+     * messages when messages were sent faster than they could be written.
+     * @return Number of writes.
+     */
+    long getWriteCount() {
+        synchronized (myLock) {
+            return myWriteCount;
+        }
+    }
+
+    /**
+     * Gets the number of bytes written.
+     * @return Number of bytes.
+     */
+    long getByteCount() {
+        synchronized (myLock) {
+            return myByteCount;
+        }
+    }
+
+    /**
+     * Makes sure a message fits in the pending buffer, failing the connection if it
+     * would take the buffer past its limit. Must hold the lock.
+     * @param theSize Size of the framed message in bytes.
+     * @return Whether the message should be copied into the buffer.
+     */
+    private boolean reserve(final int theSize) {
+        if (myError != null || myClosed) {
+            return false;
+        }
+        if (myPending.position() + (long) theSize > myLimit) {
+            myError = new IOException("Other end fell more than " + myLimit
+                                      + " bytes behind");
+            myPending.clear();
+            myPreviews.clear();
+            myLock.notifyAll();
+            return false;
+        }
+        if (myPending.remaining() < theSize) {
+            final ByteBuffer buffer = ByteBuffer.allocate(
+                            Math.max(myPending.position() + theSize, myPending.capacity() * 2));
+            myPending.flip();
+            buffer.put(myPending);
+            myPending = buffer;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the messages until the connection is closed or fails, on the writer thread.
+     * Each pass takes everything sent since the last one and writes it in one write,
+     * followed by the newest previews.
+     */
+    private void writeMessages() {
+        final List<ByteBuffer> batch = new ArrayList<ByteBuffer>();
+        try {
+            while (true) {
+                batch.clear();
+                synchronized (myLock) {
+                    while (myError == null && !myClosed && myPending.position() == 0
+                                    && myPreviews.isEmpty()) {
+                        myLock.wait();
+                    }
+                    if (myError != null
+                                    || myPending.position() == 0 && myPreviews.isEmpty()) {
+                        break;
+                    }
+                    final ByteBuffer pending = myPending;
+                    myPending = myWriting;
+                    myWriting = pending;
+                    myWriting.flip();
+                    batch.add(myWriting);
+                    batch.addAll(myPreviews.values());
+                    myPreviews.clear();
+                }
+                final ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+                long written = 0;
+                while (hasRemaining(buffers)) {
+                    written += myChannel.write(buffers);
+                }
+                myWriting.clear();
+                synchronized (myLock) {
+                    myWriteCount++;
+                    myByteCount += written;
+                }
+            }
+        } catch (final IOException e) {
+            fail(e);
+            return;
+        } catch (final InterruptedException e) {
+            fail(new IOException("Connection writer interrupted", e));
+            return;
+        }
+        closeChannel();
+    }
+
+    /**
+     * Tells whether any of a set of buffers has bytes left to write.
+     * @param theBuffers Buffers to check.
+     * @return Whether any is not yet written.
+     */
+    private static boolean hasRemaining(final ByteBuffer[] theBuffers) {
+        for (ByteBuffer buffer : theBuffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads from the socket until the input buffer holds a number of bytes not yet
+     * received, moving them to the start of the buffer or growing it to make room.
+     * @param theSize Number of bytes needed.
+     * @param theAtStart Whether the read is at the start of a message, where the other
+     *        end may close the connection.
+     * @return Whether the bytes were read, or false if the connection was closed at the
+     *         start of a message.
+     * @throws IOException If the connection closed in the middle of a message, or failed.
+     */
+    private boolean fill(final int theSize, final boolean theAtStart) throws IOException {
+        while (myInput.remaining() < theSize) {
+            if (!myInput.hasRemaining()) {
+                myInput.position(0);
+                myInput.limit(0);
+            }
+            if (myInput.capacity() < theSize) {
+                final ByteBuffer buffer = ByteBuffer.allocate(
+                                Math.max(theSize, myInput.capacity() * 2));
+                buffer.put(myInput);
+                buffer.flip();
+                myInput = buffer;
+            } else if (myInput.capacity() - myInput.position() < theSize) {
+                myInput.compact();
+                myInput.flip();
+            }
+            final int start = myInput.position();
+            myInput.position(myInput.limit());
+            myInput.limit(myInput.capacity());
+            final int read = myChannel.read(myInput);
+            myInput.limit(myInput.position());
+            myInput.position(start);
+            if (read < 0) {
+                if (theAtStart && !myInput.hasRemaining()) {
+                    return false;
+                }
+                throw new EOFException("Connection closed in the middle of a message");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the socket, ignoring any error since nothing more can be done with it.
+     */
+    private void closeChannel() {
+        try {
+            myChannel.close();
+        } catch (final IOException e) {
+            //The socket is unusable either way.
+        }
+    }
+
+    /**
+     * Gets the size of a message once framed.
+     * @param thePeer Peer id of the sender, or NO_PEER for none.
+     * @param theBody Parts of the body of the message.
+     * @return Size in bytes, counting the length.
+     */
+    private static int frameSize(final int thePeer, final ByteBuffer[] theBody) {
+        int size = SessionProtocol.LENGTH_SIZE + 1;
+        if (thePeer != NO_PEER) {
+            size += SessionProtocol.PEER_SIZE;
+        }
+        for (ByteBuffer part : theBody) {
+            size += part.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Frames a message into a buffer with room for it.
+     * @param theBuffer Buffer to put the message into.
+     * @param theType Type of the message.
+     * @param thePeer Peer id of the sender, or NO_PEER for none.
+     * @param theBody Parts of the body of the message, which are not changed.
+     */
+    private static void put(final ByteBuffer theBuffer, final byte theType, final int thePeer,
+                            final ByteBuffer[] theBody) {
+        theBuffer.putInt(frameSize(thePeer, theBody) - SessionProtocol.LENGTH_SIZE);
+        theBuffer.put(theType);
+        if (thePeer != NO_PEER) {
+            theBuffer.putInt(thePeer);
+        }
+        for (ByteBuffer part : theBody) {
+            theBuffer.put(part.duplicate());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import document.ShapeRecord;
+import paintwindow.ShapeStore;
+
+/**
+ * A peer of a shared canvas session, connected to a SessionServer.
+ * <p>
+ * Changes to the layer this peer shares are sent with the send methods, which only
+ * copy them into the connection's buffer, so they return right away and may be called
+ * on the event dispatch thread. The changes of the other peers are decoded on a thread
+ * of the client's own and given to a SessionListener.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class SessionClient implements Closeable {
+
+    /** Longest time to wait for the server to accept the connection, in milliseconds. */
+    private static final int CONNECT_MILLIS = 5000;
+
+    /** Most bytes buffered for the server before the client gives up on it. */
+    private static final int SEND_LIMIT = 64 << 20;
+
+    /** Most bytes of shapes put in one message, well under the largest message allowed. */
+    private static final int MESSAGE_SIZE = 1 << 20;
+
+    /** Connection to the server. */
+    private final Connection myConnection;
+
+    /** Listener told of what the other peers do. */
+    private final SessionListener myListener;
+
+    /** Peer id the server gave this client. */
+    private final int myPeerId;
+
+    /** Codec encoding the shapes sent. Guarded by the client. */
+    private final ShapeRecord myEncoder;
+
+    /** Buffer shapes are encoded into before being sent. Guarded by the client. */
+    private ByteBuffer myOutput;
+
+    /** Codec decoding the shapes received. Only used by the reader thread. */
+    private final ShapeRecord myDecoder;
+
+    /** Store shapes received are decoded into. Only used by the reader thread. */
+    private final ShapeStore myReceived;
+
+    /** Number of messages received. */
+    private volatile long myReceivedCount;
+
+    /** Whether the client was closed. */
+    private volatile boolean myClosed;
+
+    /**
+     * Joins a session, waiting until the server welcomes this client. The listener is
+     * told of the peers already in the session and their drawing once this returns.
+     * @param theHost Name or address of the server.
+     * @param thePort Port of the server.
+     * @param theListener Listener told of what the other peers do.
+     * @throws IOException If the server could not be reached or did not welcome the client.
+     */
+    public SessionClient(final String theHost, final int thePort,
+                         final SessionListener theListener) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(theHost, thePort), CONNECT_MILLIS);
+            myConnection = new Connection(channel, "Session client writer", SEND_LIMIT);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        try {
+            final ByteBuffer hello = ByteBuffer.allocate(8);
+            hello.putInt(SessionProtocol.MAGIC);
+            hello.putInt(SessionProtocol.VERSION);
+            hello.flip();
+            myConnection.send(SessionProtocol.HELLO, Connection.NO_PEER, hello);
+            final ByteBuffer welcome = myConnection.receive();
+            if (welcome == null || welcome.remaining() != 5
+                            || welcome.get() != SessionProtocol.WELCOME) {
+                throw new IOException("Server did not welcome the client");
+            }
+            myPeerId = welcome.getInt();
+        } catch (final IOException e) {
+            myConnection.fail(e);
+            throw e;
+        }
+        myListener = theListener;
+        myEncoder = new ShapeRecord();
+        myOutput = ByteBuffer.allocate(MESSAGE_SIZE);
+        myDecoder = new ShapeRecord();
+        myReceived = new ShapeStore();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readMessages();
+            }
+        }, "Session client reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Gets the peer id the server gave this client, which the other peers know it by.
+     * @return Peer id.
+     */
+    public int getPeerId() {
+        return myPeerId;
+    }
+
+    /**
+     * Sends shapes added to the end of the shared layer, splitting them into several
+     * messages if there are many.
+     * @param theShapes Store holding the shapes.
+     * @param theFrom Id of the first shape to send.
+     * @param theTo Id after the last shape to send.
+     * @return Whether the shapes were sent, which they are not once disconnected.
+     */
+    public synchronized boolean sendShapes(final ShapeStore theShapes, final int theFrom,
+                                           final int theTo) {
+        int first = theFrom;
+        while (first < theTo) {
+            myOutput.clear();
+            myOutput.putInt(0);
+            int last = first;
+            while (last < theTo && (last == first
+                            || myOutput.position() + ShapeRecord.size(theShapes, last)
+                                            <= MESSAGE_SIZE)) {
+                encode(theShapes, last);
+                last++;
+            }
+            myOutput.putInt(0, last - first);
+            myOutput.flip();
+            if (!myConnection.send(SessionProtocol.SHAPES, Connection.NO_PEER, myOutput)) {
+                return false;
+            }
+            first = last;
+        }
+        return true;
+    }
+
+    /**
+     * Sends that shapes were removed from the end of the shared layer.
+     * @param theSize Number of shapes left on the layer.
+     * @return Whether the change was sent, which it is not once disconnected.
+     */
+    public synchronized boolean sendTruncate(final int theSize) {
+        final ByteBuffer body = ByteBuffer.allocate(4);
+        body.putInt(0, theSize);
+        return myConnection.send(SessionProtocol.TRUNCATE, Connection.NO_PEER, body);
+    }
+
+    /**
+     * Sends the shape being drawn, replacing any preview not yet sent.
+     * @param thePreview Store holding the shape as its first, or null to stop showing it.
+     * @return Whether the preview was sent, which it is not once disconnected.
+     */
+    public synchronized boolean sendPreview(final ShapeStore thePreview) {
+        myOutput.clear();
+        if (thePreview == null || thePreview.isEmpty()) {
+            myOutput.putInt(0);
+        } else {
+            myOutput.putInt(1);
+            encode(thePreview, 0);
+        }
+        myOutput.flip();
+        return myConnection.sendPreview(0, Connection.frame(SessionProtocol.PREVIEW,
+                                                            Connection.NO_PEER, myOutput));
+    }
+
+    /**
+     * Leaves the session once the changes sent are written. The listener is told the
+     * client disconnected without an error.
+     */
+    @Override
+    public void close() {
+        myClosed = true;
+        myConnection.close();
+    }
+
+    /**
+     * Gets the number of messages sent, not counting previews.
+     * @return Number of messages.
+     */
+    public long getMessageCount() {
+        return myConnection.getMessageCount();
+    }
+
+    /**
+     * Gets the number of writes the messages were sent in. Fewer than the number of
+     * messages when they were sent faster than they could be written.
+     * @return Number of writes.
+     */
+    public long getWriteCount() {
+        return myConnection.getWriteCount();
+    }
+
+    /**
+     * Gets the number of bytes sent.
+     * @return Number of bytes.
+     */
+    public long getByteCount() {
+        return myConnection.getByteCount();
+    }
+
+    /**
+     * Gets the number of messages received from the server.
+     * @return Number of messages.
+     */
+    public long getReceivedCount() {
+        return myReceivedCount;
+    }
+
+    /**
+     * Encodes a shape into the output buffer, growing it if the shape does not fit.
+     * @param theShapes Store holding the shape.
+     * @param theId Id of the shape.
+     */
+    private void encode(final ShapeStore theShapes, final int theId) {
+        final int size = ShapeRecord.size(theShapes, theId);
+        if (myOutput.remaining() < size) {
+            final ByteBuffer buffer = ByteBuffer.allocate(
+                            Math.max(myOutput.position() + size, myOutput.capacity() * 2));
+            myOutput.flip();
+            buffer.put(myOutput);
+            myOutput = buffer;
+        }
+        myEncoder.write(myOutput, theShapes, theId);
+    }
+
+    /**
+     * Receives messages until disconnected, on the reader thread.
+     */
+    private void readMessages() {
+        IOException error = null;
+        try {
+            for (ByteBuffer message = myConnection.receive(); message != null;
+                            message = myConnection.receive()) {
+                myReceivedCount++;
+                dispatch(message);
+            }
+        } catch (final IOException e) {
+            error = e;
+        }
+        if (myConnection.getError() != null) {
+            error = myConnection.getError();
+        }
+        if (myClosed) {
+            error = null;
+        } else if (error != null) {
+            myConnection.fail(error);
+        } else {
+            myConnection.close();
+        }
+        myListener.disconnected(error);
+    }
+
+    /**
+     * Tells the listener of a message from the server.
+     * @param theMessage Type and body of the message.
+     * @throws IOException If the message is corrupt.
+     */
+    private void dispatch(final ByteBuffer theMessage) throws IOException {
+        try {
+            final byte type = theMessage.get();
+            if (type == SessionProtocol.SYNCED) {
+                myListener.synced();
+                return;
+            }
+            final int peer = theMessage.getInt();
+            if (type == SessionProtocol.JOIN) {
+                myListener.peerJoined(peer);
+            } else if (type == SessionProtocol.LEAVE) {
+                myListener.peerLeft(peer);
+            } else if (type == SessionProtocol.SHAPES) {
+                myReceived.clear();
+                final int count = theMessage.getInt();
+                for (int i = 0; i < count; i++) {
+                    myDecoder.read(theMessage, myReceived);
+                }
+                myListener.shapesAdded(peer, myReceived);
+            } else if (type == SessionProtocol.TRUNCATE) {
+                myListener.shapesRemoved(peer, theMessage.getInt());
+            } else if (type == SessionProtocol.PREVIEW) {
+                ShapeStore preview = null;
+                if (theMessage.getInt() > 0) {
+                    preview = new ShapeStore();
+                    myDecoder.read(theMessage, preview);
+                }
+                myListener.previewChanged(peer, preview);
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Corrupt message", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package session;
+
+import java.io.IOException;
+import java.util.EventListener;
+import paintwindow.ShapeStore;
+
+/**
+ * Listener for what the other peers of a shared canvas session do, as received by a
+ * SessionClient. Called on the thread reading messages from the server, never on the
+ * event dispatch thread, in the order the server relayed the changes.
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public interface SessionListener extends EventListener {
+
+    /**
+     * Called when a peer is in the session, either because it joined or because it was
+     * already there when this client joined. Its layer starts empty.
+     * @param thePeer Peer id of the peer.
+     */
+    void peerJoined(int thePeer);
+
+    /**
+     * Called when a peer leaves the session, taking its layer with it.
+     * @param thePeer Peer id of the peer.
+     */
+    void peerLeft(int thePeer);
+
+    /**
+     * Called when shapes are added to the end of the layer of a peer.
+     * @param thePeer Peer id of the peer.
+     * @param theShapes Shapes added, which are only valid during the call.
+     */
+    void shapesAdded(int thePeer, ShapeStore theShapes);
+
+    /**
+     * Called when shapes are removed from the end of the layer of a peer.
+     * @param thePeer Peer id of the peer.
+     * @param theSize Number of shapes left on the layer.
+     */
+    void shapesRemoved(int thePeer, int theSize);
+
+    /**
+     * Called when the shape a peer is drawing changes.
+     * @param thePeer Peer id of the peer.
+     * @param thePreview Store holding the shape as its only one, which may be kept, or
+     *        null if the peer stopped drawing it.
+     */
+    void previewChanged(int thePeer, ShapeStore thePreview);
+
+    /**
+     * Called once the client has caught up with the drawing of every peer that was in the
+     * session when it joined.
+     */
+    void synced();
+
+    /**
+     * Called once when the client is disconnected from the session.
+     * @param theError Reason the client was disconnected, or null if it was closed or the
+     *        server closed the connection.
+     */
+    void disconnected(IOException theError);
+}
@@ -0,0 +1,79 @@
+package session;
+
+/**
+ * Constants describing the binary protocol of shared canvas sessions.
+ * <p>
+ * Clients connect to a SessionServer over TCP and send a hello message. The server
+ * answers with a welcome message holding the peer id of the client, then catches it up
+ * with the drawing of every other peer already in the session, and then relays every
+ * message any peer sends to all of the others as it comes. Each peer shares one layer,
+ * which only that peer changes, so applying its messages in order keeps the layer the
+ * same everywhere however the messages of different peers interleave.
+ * </p>
+ * <p>
+ * Every message starts with the number of bytes in its type and body, then its type.
+ * Messages relayed by the server have the peer id of their sender right after their
+ * type, followed by the body as the sender wrote it. All values are big-endian.
+ * </p>
+ * <p>
+ * Shapes are stored as the same record a document holds them in, encoded and decoded
+ * by ShapeRecord.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class SessionProtocol {
+
+    /** Magic number starting the hello message, the characters "MPSS". */
+    public static final int MAGIC = 0x4D505353;
+
+    /** Version of the protocol spoken by this program. */
+    public static final int VERSION = 1;
+
+    /** Port servers listen on unless told otherwise. */
+    public static final int DEFAULT_PORT = 7466;
+
+    /** Size of the length that starts each message, in bytes. */
+    public static final int LENGTH_SIZE = 4;
+
+    /** Size of the peer id of a relayed message, in bytes. */
+    public static final int PEER_SIZE = 4;
+
+    /** Largest message either side accepts, to reject corrupt lengths before allocating. */
+    public static final int MAX_MESSAGE_SIZE = 16 << 20;
+
+    /** Type of the message a client starts with, holding the magic number and version. */
+    public static final byte HELLO = 1;
+
+    /** Type of the message the server answers a hello with, holding the client's peer id. */
+    public static final byte WELCOME = 2;
+
+    /** Type of the message telling a client another peer is in the session. */
+    public static final byte JOIN = 3;
+
+    /** Type of the message telling a client a peer left, taking its layer with it. */
+    public static final byte LEAVE = 4;
+
+    /** Type of the message telling a client it has caught up with the session. */
+    public static final byte SYNCED = 5;
+
+    /** Type of a message holding the number of shapes added to a layer, then each shape. */
+    public static final byte SHAPES = 6;
+
+    /**
+     * Type of a message holding the number of shapes left on a layer after those at its
+     * end were removed, as when they are undone or the layer is cleared.
+     */
+    public static final byte TRUNCATE = 7;
+
+    /**
+     * Type of a message holding the number of shapes a peer is drawing, 0 or 1, and the
+     * shape. Previews can be dropped in favor of newer ones from the same peer.
+     */
+    public static final byte PREVIEW = 8;
+
+    /** Private constructor to prevent external creation of the class.*/
+    private SessionProtocol() {
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,556 @@
+package session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import document.ShapeRecord;
+
+/**
+ * Relays a shared canvas session between its peers, as described in SessionProtocol.
+ * <p>
+ * Each peer has a thread reading its messages, which checks each one, applies it to
+ * the server's copy of the peer's layer, and hands it to the connection of every other
+ * peer. Handing a message over only copies it into a buffer, and each connection
+ * writes whatever has built up in one write, so a peer that reads slowly gets its
+ * messages in larger batches without holding up the others. A peer that falls so far
+ * behind that its buffer passes a limit is dropped, and can join again to catch up.
+ * </p>
+ * <p>
+ * The server keeps the shapes of every peer's layer, still encoded, so a peer that
+ * joins late is caught up by copying them to it before anything else is relayed. The
+ * layer of a peer goes away when it leaves.
+ * </p>
+ * @author DWLooney
+ * @version 17 October 2026
+ */
+public final class SessionServer implements Closeable {
+
+    /** Most bytes buffered for a peer before it is dropped. */
+    private static final int PEER_LIMIT = 64 << 20;
+
+    /** Most bytes of shapes sent in one message while catching a peer up. */
+    private static final int CATCH_UP_SIZE = 1 << 20;
+
+    /** Socket accepting peers. */
+    private final ServerSocketChannel myServer;
+
+    /** Lock guarding the peers and the statistics below. */
+    private final Object myLock;
+
+    /** Peers in the session, in the order they joined. */
+    private final List<Peer> myPeers;
+
+    /** Peer id to give the next peer that joins. */
+    private int myNextId;
+
+    /** Number of messages received from peers. */
+    private long myMessageCount;
+
+    /** Number of messages handed to peers, counting each peer a message goes to. */
+    private long myDeliveryCount;
+
+    /** Number of writes to peers that have left, for the batching statistics. */
+    private long myLeftWriteCount;
+
+    /** Number of bytes written to peers that have left. */
+    private long myLeftByteCount;
+
+    /** Number of peers dropped for falling behind. */
+    private int myDroppedCount;
+
+    /** Whether the server is closed. */
+    private boolean myClosed;
+
+    /**
+     * Starts a server listening on a port of every address of this machine.
+     * @param thePort Port to listen on, or 0 for any free port.
+     * @throws IOException If the port could not be listened on.
+     */
+    public SessionServer(final int thePort) throws IOException {
+        myServer = ServerSocketChannel.open();
+        myServer.socket().setReuseAddress(true);
+        myServer.bind(new InetSocketAddress(thePort));
+        myLock = new Object();
+        myPeers = new ArrayList<Peer>();
+        myNextId = 1;
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptPeers();
+            }
+        }, "Session acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Runs a server until the program is stopped.
+     * @param theArgs Port to listen on, or nothing for the default port.
+     */
+    public static void main(final String[] theArgs) {
+        int port = SessionProtocol.DEFAULT_PORT;
+        if (theArgs.length > 0) {
+            try {
+                port = Integer.parseInt(theArgs[0]);
+            } catch (final NumberFormatException e) {
+                System.err.println("Usage: SessionServer [port]");
+                System.exit(2);
+            }
+        }
+        try {
+            final SessionServer server = new SessionServer(port);
+            System.out.println("Session server listening on port " + server.getPort());
+        } catch (final IOException e) {
+            System.err.println("Could not listen on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return Port number.
+     */
+    public int getPort() {
+        return myServer.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the number of peers in the session.
+     * @return Number of peers.
+     */
+    public int getPeerCount() {
+        synchronized (myLock) {
+            return myPeers.size();
+        }
+    }
+
+    /**
+     * Gets the number of messages received from peers, not counting their hellos.
+     * @return Number of messages.
+     */
+    public long getMessageCount() {
+        synchronized (myLock) {
+            return myMessageCount;
+        }
+    }
+
+    /**
+     * Gets the number of messages handed to peers, counting each peer a message goes to.
+     * Previews that were replaced before being written are counted too.
+     * @return Number of deliveries.
+     */
+    public long getDeliveryCount() {
+        synchronized (myLock) {
+            return myDeliveryCount;
+        }
+    }
+
+    /**
+     * Gets the number of writes the messages to peers took. Fewer than the number of
+     * deliveries when messages were batched.
+     * @return Number of writes.
+     */
+    public long getWriteCount() {
+        synchronized (myLock) {
+            long writes = myLeftWriteCount;
+            for (Peer peer : myPeers) {
+                writes += peer.myConnection.getWriteCount();
+            }
+            return writes;
+        }
+    }
+
+    /**
+     * Gets the number of bytes written to peers.
+     * @return Number of bytes.
+     */
+    public long getByteCount() {
+        synchronized (myLock) {
+            long bytes = myLeftByteCount;
+            for (Peer peer : myPeers) {
+                bytes += peer.myConnection.getByteCount();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets the number of peers dropped for falling behind.
+     * @return Number of peers dropped.
+     */
+    public int getDroppedCount() {
+        synchronized (myLock) {
+            return myDroppedCount;
+        }
+    }
+
+    /**
+     * Stops the server and disconnects every peer.
+     */
+    @Override
+    public void close() {
+        final List<Peer> peers;
+        synchronized (myLock) {
+            myClosed = true;
+            peers = new ArrayList<Peer>(myPeers);
+        }
+        try {
+            myServer.close();
+        } catch (final IOException e) {
+            //The server is stopping either way.
+        }
+        for (Peer peer : peers) {
+            peer.myConnection.fail(new IOException("Server closed"));
+        }
+    }
+
+    /**
+     * Accepts peers until the server is closed, starting a thread to serve each.
+     */
+    private void acceptPeers() {
+        while (true) {
+            final SocketChannel channel;
+            try {
+                channel = myServer.accept();
+            } catch (final IOException e) {
+                return;
+            }
+            final Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(channel);
+                }
+            }, "Session peer reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Serves a peer until it disconnects, on its reading thread.
+     * @param theChannel Socket of the peer.
+     */
+    private void serve(final SocketChannel theChannel) {
+        final Connection connection;
+        try {
+            connection = new Connection(theChannel, "Session peer writer", PEER_LIMIT);
+        } catch (final IOException e) {
+            try {
+                theChannel.close();
+            } catch (final IOException closing) {
+                //The peer never joined.
+            }
+            return;
+        }
+        Peer peer = null;
+        try {
+            final ByteBuffer hello = connection.receive();
+            if (hello == null || hello.remaining() < 9 || hello.get() != SessionProtocol.HELLO
+                            || hello.getInt() != SessionProtocol.MAGIC) {
+                throw new IOException("Not a session client");
+            }
+            final int version = hello.getInt();
+            if (version != SessionProtocol.VERSION) {
+                throw new IOException("Unsupported protocol version " + version);
+            }
+            peer = join(connection);
+            for (ByteBuffer message = connection.receive(); message != null;
+                            message = connection.receive()) {
+                relay(peer, message);
+            }
+        } catch (final IOException e) {
+            connection.fail(e);
+        } finally {
+            if (peer != null) {
+                leave(peer);
+            }
+            connection.close();
+        }
+    }
+
+    /**
+     * Adds a peer to the session, welcoming it, catching it up with the layers of the
+     * other peers, and telling them it joined. Nothing else is relayed to it until it
+     * is caught up, since this holds the lock.
+     * @param theConnection Connection to the peer.
+     * @return New peer.
+     * @throws IOException If the server is closed.
+     */
+    private Peer join(final Connection theConnection) throws IOException {
+        synchronized (myLock) {
+            if (myClosed) {
+                throw new IOException("Server closed");
+            }
+            final Peer peer = new Peer(myNextId++, theConnection);
+            theConnection.send(SessionProtocol.WELCOME, Connection.NO_PEER, intBody(peer.myId));
+            for (Peer other : myPeers) {
+                theConnection.send(SessionProtocol.JOIN, other.myId);
+                other.myLog.sendTo(theConnection, other.myId);
+                deliver(other, SessionProtocol.JOIN, peer.myId);
+            }
+            theConnection.send(SessionProtocol.SYNCED, Connection.NO_PEER);
+            myPeers.add(peer);
+            return peer;
+        }
+    }
+
+    /**
+     * Removes a peer from the session and tells the others it left.
+     * @param thePeer Peer that disconnected.
+     */
+    private void leave(final Peer thePeer) {
+        synchronized (myLock) {
+            if (!myPeers.remove(thePeer)) {
+                return;
+            }
+            myLeftWriteCount += thePeer.myConnection.getWriteCount();
+            myLeftByteCount += thePeer.myConnection.getByteCount();
+            for (Peer other : myPeers) {
+                deliver(other, SessionProtocol.LEAVE, thePeer.myId);
+            }
+        }
+    }
+
+    /**
+     * Checks a message from a peer, applies it to the server's copy of the peer's layer,
+     * and hands it to every other peer. Messages of unknown types are ignored.
+     * @param thePeer Peer the message is from.
+     * @param theMessage Type and body of the message.
+     * @throws IOException If the message is not valid.
+     */
+    private void relay(final Peer thePeer, final ByteBuffer theMessage) throws IOException {
+        final byte type = theMessage.get();
+        final ByteBuffer body = theMessage.slice();
+        if (type == SessionProtocol.SHAPES) {
+            final int count = checkShapes(body);
+            synchronized (myLock) {
+                myMessageCount++;
+                thePeer.myLog.append(body, count);
+                for (Peer other : myPeers) {
+                    if (other != thePeer) {
+                        deliver(other, type, thePeer.myId, body);
+                    }
+                }
+            }
+        } else if (type == SessionProtocol.TRUNCATE) {
+            if (body.remaining() != 4) {
+                throw new IOException("Corrupt truncate message");
+            }
+            synchronized (myLock) {
+                myMessageCount++;
+                thePeer.myLog.truncate(body.getInt(0));
+                for (Peer other : myPeers) {
+                    if (other != thePeer) {
+                        deliver(other, type, thePeer.myId, body);
+                    }
+                }
+            }
+        } else if (type == SessionProtocol.PREVIEW) {
+            final int count = checkShapes(body);
+            if (count > 1) {
+                throw new IOException("Corrupt preview message");
+            }
+            final ByteBuffer preview = Connection.frame(type, thePeer.myId, body);
+            synchronized (myLock) {
+                myMessageCount++;
+                for (Peer other : myPeers) {
+                    if (other != thePeer) {
+                        myDeliveryCount++;
+                        other.myConnection.sendPreview(thePeer.myId, preview);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a message to a peer, counting the peer as dropped if it fell too far behind.
+     * Must hold the lock.
+     * @param thePeer Peer to send to.
+     * @param theType Type of the message.
+     * @param theFrom Peer id the message is from.
+     * @param theBody Parts of the body of the message.
+     */
+    private void deliver(final Peer thePeer, final byte theType, final int theFrom,
+                         final ByteBuffer... theBody) {
+        myDeliveryCount++;
+        if (!thePeer.myConnection.send(theType, theFrom, theBody) && !thePeer.myDropped) {
+            thePeer.myDropped = true;
+            if (thePeer.myConnection.getError() != null) {
+                myDroppedCount++;
+            }
+        }
+    }
+
+    /**
+     * Checks that the body of a shapes or preview message holds the number of shapes it
+     * says and nothing more.
+     * @param theBody Body of the message, which is not changed.
+     * @return Number of shapes.
+     * @throws IOException If the body is not valid.
+     */
+    private static int checkShapes(final ByteBuffer theBody) throws IOException {
+        final ByteBuffer shapes = theBody.duplicate();
+        if (shapes.remaining() < 4) {
+            throw new IOException("Corrupt shapes message");
+        }
+        final int count = shapes.getInt();
+        if (count < 0) {
+            throw new IOException("Corrupt shapes message");
+        }
+        for (int i = 0; i < count; i++) {
+            ShapeRecord.skip(shapes);
+        }
+        if (shapes.hasRemaining()) {
+            throw new IOException("Corrupt shapes message");
+        }
+        return count;
+    }
+
+    /**
+     * Wraps a single int as the body of a message.
+     * @param theValue Value of the body.
+     * @return Body ready to be read.
+     */
+    private static ByteBuffer intBody(final int theValue) {
+        final ByteBuffer body = ByteBuffer.allocate(4);
+        body.putInt(0, theValue);
+        return body;
+    }
+
+    /**
+     * A peer in the session.
+     */
+    private static final class Peer {
+
+        /** Peer id of the peer. */
+        private final int myId;
+
+        /** Connection to the peer. */
+        private final Connection myConnection;
+
+        /** Server's copy of the peer's layer. */
+        private final ShapeLog myLog;
+
+        /** Whether the peer was found to have fallen too far behind. */
+        private boolean myDropped;
+
+        /**
+         * Constructs a peer with an empty layer.
+         * @param theId Peer id of the peer.
+         * @param theConnection Connection to the peer.
+         */
+        private Peer(final int theId, final Connection theConnection) {
+            myId = theId;
+            myConnection = theConnection;
+            myLog = new ShapeLog();
+        }
+    }
+
+    /**
+     * Shapes of a peer's layer, kept encoded one after another.
+     */
+    private static final class ShapeLog {
+
+        /** Encoded shapes. */
+        private byte[] myBytes;
+
+        /** Number of bytes of encoded shapes. */
+        private int mySize;
+
+        /** Position of each shape in the bytes. */
+        private int[] myOffsets;
+
+        /** Number of shapes. */
+        private int myCount;
+
+        /**
+         * Constructs an empty layer.
+         */
+        private ShapeLog() {
+            myBytes = new byte[4096];
+            myOffsets = new int[64];
+        }
+
+        /**
+         * Adds shapes to the end of the layer.
+         * @param theBody Body of a checked shapes message, which is not changed.
+         * @param theCount Number of shapes in it.
+         */
+        private void append(final ByteBuffer theBody, final int theCount) {
+            final ByteBuffer shapes = theBody.duplicate();
+            shapes.position(shapes.position() + 4);
+            if (myOffsets.length < myCount + theCount) {
+                myOffsets = Arrays.copyOf(myOffsets,
+                                          Math.max(myCount + theCount, myOffsets.length * 2));
+            }
+            if (myBytes.length - mySize < shapes.remaining()) {
+                myBytes = Arrays.copyOf(myBytes, (int) Math.min(Integer.MAX_VALUE - 8,
+                                Math.max((long) mySize + shapes.remaining(),
+                                         myBytes.length * 2L)));
+            }
+            final int start = mySize;
+            final int base = shapes.position();
+            for (int i = 0; i < theCount; i++) {
+                myOffsets[myCount++] = start + shapes.position() - base;
+                try {
+                    ShapeRecord.skip(shapes);
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Shapes were already checked", e);
+                }
+            }
+            shapes.position(base);
+            shapes.get(myBytes, mySize, shapes.remaining());
+            mySize = start + shapes.position() - base;
+        }
+
+        /**
+         * Removes shapes from the end of the layer.
+         * @param theCount Number of shapes to leave.
+         * @throws IOException If the layer holds fewer shapes than that.
+         */
+        private void truncate(final int theCount) throws IOException {
+            if (theCount < 0 || theCount > myCount) {
+                throw new IOException("Cannot truncate " + myCount + " shapes to " + theCount);
+            }
+            if (theCount < myCount) {
+                mySize = myOffsets[theCount];
+                myCount = theCount;
+            }
+        }
+
+        /**
+         * Sends every shape of the layer to a connection, in messages of about
+         * CATCH_UP_SIZE bytes.
+         * @param theConnection Connection to send to.
+         * @param theId Peer id the layer belongs to.
+         */
+        private void sendTo(final Connection theConnection, final int theId) {
+            int first = 0;
+            while (first < myCount) {
+                int last = first + 1;
+                while (last < myCount && myOffsets[last] - myOffsets[first] < CATCH_UP_SIZE) {
+                    last++;
+                }
+                final int end = last < myCount ? myOffsets[last] : mySize;
+                theConnection.send(SessionProtocol.SHAPES, theId, intBody(last - first),
+                                   ByteBuffer.wrap(myBytes, myOffsets[first],
+                                                   end - myOffsets[first]));
+                first = last;
+            }
+        }
+    }
+}